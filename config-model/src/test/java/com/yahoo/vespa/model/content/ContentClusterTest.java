@@ -1276,6 +1276,7 @@ public class ContentClusterTest extends ContentBaseTest {
         verifyQueryDispatchPolicy("best-of-random-2", DispatchConfig.DistributionPolicy.BEST_OF_RANDOM_2);
         verifyQueryDispatchPolicy("latency-amortized-over-requests", DispatchConfig.DistributionPolicy.LATENCY_AMORTIZED_OVER_REQUESTS);
         verifyQueryDispatchPolicy("latency-amortized-over-time", DispatchConfig.DistributionPolicy.LATENCY_AMORTIZED_OVER_TIME);
+        verifyQueryDispatchPolicy("latency-aware", DispatchConfig.DistributionPolicy.LATENCY_AWARE);
         try {
             verifyQueryDispatchPolicy("unknown", DispatchConfig.DistributionPolicy.ADAPTIVE);
             fail();
@@ -8,6 +8,7 @@ import com.yahoo.component.chain.dependencies.After;
 import com.yahoo.component.provider.ComponentRegistry;
 import com.yahoo.container.core.documentapi.VespaDocumentAccess;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.ClusterParams;
 import com.yahoo.prelude.fastsearch.DocumentdbInfoConfig;
 import com.yahoo.prelude.fastsearch.IndexedBackend;
@@ -76,7 +77,8 @@ public class ClusterSearcher extends Searcher {
                            ComponentRegistry<Dispatcher> dispatchers,
                            GlobalPhaseRanker globalPhaseRanker,
                            VipStatus vipStatus,
-                           VespaDocumentAccess access) {
+                           VespaDocumentAccess access,
+                           MetricReceiver metric) {
         super(id);
         this.executor = executor;
         this.schemaInfo = schemaInfo;
@@ -88,7 +90,7 @@ public class ClusterSearcher extends Searcher {
         maxQueryCacheTimeout = ParameterParser.asMilliSeconds(clusterConfig.maxQueryCacheTimeout(), DEFAULT_MAX_QUERY_CACHE_TIMEOUT);
 
         VespaBackend streaming = null, indexed = null;
-        ClusterParams clusterParams = makeClusterParams(searchClusterName, documentDbConfig, schemaInfo);
+        ClusterParams clusterParams = makeClusterParams(searchClusterName, documentDbConfig, schemaInfo, metric);
         for (DocumentdbInfoConfig.Documentdb docDb : documentDbConfig.documentdb()) {
             if (docDb.mode() == DocumentdbInfoConfig.Documentdb.Mode.Enum.INDEX) {
                 if (indexed == null) {
@@ -105,10 +107,11 @@ public class ClusterSearcher extends Searcher {
         }
     }
 
-    private static ClusterParams makeClusterParams(String searchclusterName, DocumentdbInfoConfig documentDbConfig, SchemaInfo schemaInfo)
+    private static ClusterParams makeClusterParams(String searchclusterName, DocumentdbInfoConfig documentDbConfig,
+                                                   SchemaInfo schemaInfo, MetricReceiver metric)
     {
         return new ClusterParams(searchclusterName + ".num" + 0, UUID.randomUUID().toString(),
-                                 null, documentDbConfig, schemaInfo);
+                                 null, documentDbConfig, schemaInfo, metric);
     }
 
     private static IndexedBackend searchDispatch(ClusterParams clusterParams,
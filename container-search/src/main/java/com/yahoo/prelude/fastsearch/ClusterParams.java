@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.search.schema.SchemaInfo;
 
 /**
@@ -16,12 +17,17 @@ public class ClusterParams {
     private final String defaultSummary;
     private final DocumentdbInfoConfig documentdbInfoConfig;
     private final SchemaInfo schemaInfo;
+    private final MetricReceiver metric;
 
     public ClusterParams(String name) {
         this(name, "server.0", null, null, null);
     }
     public ClusterParams(String name, String serverId, String defaultSummary,
                          DocumentdbInfoConfig documentdbInfoConfig, SchemaInfo schemaInfo) {
+        this(name, serverId, defaultSummary, documentdbInfoConfig, schemaInfo, MetricReceiver.nullImplementation);
+    }
+    public ClusterParams(String name, String serverId, String defaultSummary,
+                         DocumentdbInfoConfig documentdbInfoConfig, SchemaInfo schemaInfo, MetricReceiver metric) {
         this.searcherName = name;
         this.serverId = serverId;
         if (defaultSummary != null && defaultSummary.isEmpty())
@@ -30,6 +36,7 @@ public class ClusterParams {
             this.defaultSummary = defaultSummary;
         this.documentdbInfoConfig = documentdbInfoConfig;
         this.schemaInfo = schemaInfo;
+        this.metric = metric;
     }
 
     public String getServerId() { return serverId; }
@@ -37,4 +44,5 @@ public class ClusterParams {
     public String getDefaultSummary() { return defaultSummary; }
     public DocumentdbInfoConfig getDocumentdbInfoConfig() { return documentdbInfoConfig; }
     public SchemaInfo getSchemaInfo() { return schemaInfo; }
+    public MetricReceiver getMetric() { return metric; }
 }
@@ -1,7 +1,11 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
+import ai.vespa.metrics.ContainerMetrics;
 import com.yahoo.data.access.Inspector;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
 import com.yahoo.search.schema.DocumentSummary;
 
 import java.util.Map;
@@ -22,13 +26,29 @@ public class DocsumDefinition {
     /** True if this contains dynamic fields */
     private final boolean dynamic;
 
+    private final Counter fieldsAvailable;
+    private final Counter fieldsDecoded;
+
     public DocsumDefinition(DocumentSummary documentSummary) {
+        this(documentSummary, MetricReceiver.nullImplementation, null);
+    }
+
+    /**
+     * Creates a docsum definition which counts the fields received and decoded in summaries of this class.
+     *
+     * @param schema the name of the schema this is a summary class of, or null if unknown
+     */
+    public DocsumDefinition(DocumentSummary documentSummary, MetricReceiver metric, String schema) {
         this.name = documentSummary.name();
         this.dynamic = documentSummary.isDynamic();
         this.fields = documentSummary.fields().values()
                                      .stream()
                                      .map(field -> DocsumField.create(field.name(), field.type().asString()))
                                      .collect(Collectors.toUnmodifiableMap(DocsumField::getName, field -> field));
+        Point dimensions = new Point(schema == null ? Map.of("summaryclass", name)
+                                                    : Map.of("summaryclass", name, "documenttype", schema));
+        this.fieldsAvailable = metric.declareCounter(ContainerMetrics.DOCSUM_FIELDS_AVAILABLE.baseName(), dimensions);
+        this.fieldsDecoded = metric.declareCounter(ContainerMetrics.DOCSUM_FIELDS_DECODED.baseName(), dimensions);
     }
 
     public String name() { return name; }
@@ -49,6 +69,16 @@ public class DocsumDefinition {
         return field.convert(value);
     }
 
+    /** Records that a summary of this class containing the given number of fields is received */
+    void countAvailable(int fields) {
+        fieldsAvailable.add(fields);
+    }
+
+    /** Records that a field of a summary of this class is decoded for the first time */
+    void countDecoded() {
+        fieldsDecoded.add();
+    }
+
     @Override
     public String toString() {
         return "docsum definition '" + name() + "'";
@@ -1,11 +1,12 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.search.schema.DocumentSummary;
 import com.yahoo.search.schema.Schema;
-import com.yahoo.slime.BinaryFormat;
 import com.yahoo.data.access.Inspector;
-import com.yahoo.slime.Slime;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.BinaryView;
 import com.yahoo.data.access.slime.SlimeAdapter;
 import com.yahoo.prelude.ConfigurationException;
 
@@ -30,12 +31,20 @@ public final class DocsumDefinitionSet {
     private final Map<String, DocsumDefinition> definitionsByName;
 
     public DocsumDefinitionSet(Schema schema) {
-        this(schema.documentSummaries().values());
+        this(schema, MetricReceiver.nullImplementation);
+    }
+
+    public DocsumDefinitionSet(Schema schema, MetricReceiver metric) {
+        this(schema.documentSummaries().values(), metric, schema.name());
     }
 
     public DocsumDefinitionSet(Collection<DocumentSummary> docsumDefinitions) {
+        this(docsumDefinitions, MetricReceiver.nullImplementation, null);
+    }
+
+    private DocsumDefinitionSet(Collection<DocumentSummary> docsumDefinitions, MetricReceiver metric, String schema) {
         this.definitionsByName = docsumDefinitions.stream()
-                                                  .map(DocsumDefinition::new)
+                                                  .map(summary -> new DocsumDefinition(summary, metric, schema))
                                                   .collect(Collectors.toUnmodifiableMap(DocsumDefinition::name,
                                                                                         summary -> summary));
     }
@@ -82,8 +91,7 @@ public final class DocsumDefinitionSet {
             throw new IllegalArgumentException("Only expecting SchemaLess docsums - summary class:" + summaryClass + " hit:" + hit);
         }
         DocsumDefinition docsumDefinition = getDocsum(summaryClass);
-        Slime value = BinaryFormat.decode(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
-        Inspector docsum = new SlimeAdapter(value.get());
+        Inspector docsum = inspect(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
         if (docsum.type() != OBJECT) {
             return "Hit " + hit + " failed: " + docsum.asString();
         }
@@ -91,6 +99,16 @@ public final class DocsumDefinitionSet {
         return null;
     }
 
+    /** Returns a read-only view of the given slime data, such that fields are only decoded when accessed */
+    private static Inspector inspect(byte[] data, int offset, int length) {
+        try {
+            return new SlimeAdapter(BinaryView.inspect(data, offset, length));
+        }
+        catch (IllegalArgumentException e) { // not valid slime: Decode to get the same error value as the decoder produces
+            return new SlimeAdapter(BinaryFormat.decode(data, offset, length).get());
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
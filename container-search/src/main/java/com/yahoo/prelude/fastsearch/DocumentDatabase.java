@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.prelude.fastsearch;
 
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.search.schema.Schema;
 
 
@@ -18,8 +19,12 @@ public class DocumentDatabase {
     private final DocsumDefinitionSet docsumDefSet;
 
     public DocumentDatabase(Schema schema) {
+        this(schema, MetricReceiver.nullImplementation);
+    }
+
+    public DocumentDatabase(Schema schema, MetricReceiver metric) {
         this.schema = schema;
-        this.docsumDefSet = new DocsumDefinitionSet(schema);
+        this.docsumDefSet = new DocsumDefinitionSet(schema, metric);
     }
 
     public Schema schema() { return schema; }
@@ -160,6 +160,7 @@ public class FastHit extends Hit {
             removedFields.removeAll(docsumDef.fields().keySet());
         if ( ! (summaries instanceof ArrayList) ) summaries = new ArrayList<>(8);
         summaries.add(0, new SummaryData(this, docsumDef, value, 1 + summaries.size()));
+        docsumDef.countAvailable(value.fieldCount());
     }
 
     /**
@@ -509,6 +510,9 @@ public class FastHit extends Hit {
         /** The index from the end of this summary in the list of summaries */
         private final int index;
 
+        /** The names of the fields of this which are decoded at least once, or null if none */
+        private Set<String> decoded = null;
+
         SummaryData(FastHit hit, DocsumDefinition type, Inspector data, int index) {
             this.hit = hit;
             this.type = type;
@@ -517,13 +521,28 @@ public class FastHit extends Hit {
         }
 
         Object getField(String name) {
-            return type.convert(name, data.field(name));
+            return convert(name, data.field(name));
+        }
+
+        private Object convert(String name, Inspector value) {
+            Object convertedValue = type.convert(name, value);
+            if (convertedValue != null)
+                countDecoded(name);
+            return convertedValue;
+        }
+
+        /** Counts a field as decoded, unless it has been decoded before */
+        private void countDecoded(String name) {
+            if (decoded == null)
+                decoded = new HashSet<>();
+            if (decoded.add(name))
+                type.countDecoded();
         }
 
         void forEachField(BiConsumer<String, Object> consumer) {
             data.traverse((ObjectTraverser)(name, value) -> {
                 if (!shadowed(name) && !removed(name)) {
-                    Object convertedValue = type.convert(name, value);
+                    Object convertedValue = convert(name, value);
                     if (convertedValue != null)
                         consumer.accept(name, convertedValue);
                 }
@@ -536,9 +555,11 @@ public class FastHit extends Hit {
                     DocsumField fieldType = type.fields().get(name);
                     if (fieldType != null) {
                         if (fieldType.isString()) {
+                            countDecoded(name);
                             byte[] utf8Value = value.asUtf8();
                             consumer.accept(name, utf8Value, 0, utf8Value.length);
                         } else {
+                            countDecoded(name);
                             Object convertedValue = fieldType.convert(value);
                             if (convertedValue != null)
                                 consumer.accept(name, convertedValue);
@@ -549,7 +570,7 @@ public class FastHit extends Hit {
         }
 
         Iterator<Map.Entry<String, Object>> fieldIterator() {
-            return new SummaryDataFieldIterator(this, type, data.fields().iterator());
+            return new SummaryDataFieldIterator(this, data.fields().iterator());
         }
 
         Iterator<String> fieldNameIterator() {
@@ -622,19 +643,17 @@ public class FastHit extends Hit {
         /** Iterator over the fields in a SummaryData instance. Read only. */
         private static class SummaryDataFieldIterator extends SummaryDataIterator<Map.Entry<String, Object>> {
 
-            private final DocsumDefinition type;
+            private final SummaryData data;
 
-            SummaryDataFieldIterator(SummaryData summaryData,
-                                     DocsumDefinition type,
-                                     Iterator<Map.Entry<String, Inspector>> fieldIterator) {
+            SummaryDataFieldIterator(SummaryData summaryData, Iterator<Map.Entry<String, Inspector>> fieldIterator) {
                 super(summaryData, fieldIterator);
-                this.type = type;
+                this.data = summaryData;
                 advanceNext();
             }
 
             @Override
             protected Map.Entry<String, Object> toValue(Map.Entry<String, Inspector> field) {
-                Object convertedValue = type.convert(field.getKey(), field.getValue());
+                Object convertedValue = data.convert(field.getKey(), field.getValue());
                 if (convertedValue == null) return null;
                 return new SummaryFieldEntry(field.getKey(), convertedValue);
             }
@@ -28,7 +28,12 @@ public class GroupingListHit extends Hit {
     public Schema getSchema() { return documentDatabase.schema(); }
     public DocumentDatabase getDocumentDatBase() { return documentDatabase; }
 
+    /** Returns the number of serialized bytes the grouping list of this was received as, or 0 if not known */
+    public long getSerializedSize() { return serializedSize; }
+    public void setSerializedSize(long serializedSize) { this.serializedSize = serializedSize; }
+
     private final List<Grouping> groupingList;
     private final DocumentDatabase documentDatabase;
+    private long serializedSize = 0;
 
 }
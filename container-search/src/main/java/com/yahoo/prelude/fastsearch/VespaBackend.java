@@ -64,7 +64,8 @@ public abstract class VespaBackend {
         List<DocumentDatabase> dbs = new ArrayList<>();
         if (clusterParams.getDocumentdbInfoConfig() != null) {
             for (DocumentdbInfoConfig.Documentdb docDb : clusterParams.getDocumentdbInfoConfig().documentdb()) {
-                DocumentDatabase db = new DocumentDatabase(clusterParams.getSchemaInfo().schemas().get(docDb.name()));
+                DocumentDatabase db = new DocumentDatabase(clusterParams.getSchemaInfo().schemas().get(docDb.name()),
+                                                           clusterParams.getMetric());
                 dbs.add(db);
             }
         }
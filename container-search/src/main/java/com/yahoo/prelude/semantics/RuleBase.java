@@ -121,6 +121,7 @@ public class RuleBase {
         productionRules.add(new IncludeDirective(include));
         includedNames.addAll(include.includedNames);
         includedNames.add(include.getName());
+        analyzer.invalidate();
     }
 
     /** Rules are order based - they are included recursively depth first */
@@ -170,6 +171,7 @@ public class RuleBase {
         Condition condition = namedCondition.getCondition();
         Condition superCondition = findIncludedCondition(namedCondition.getName());
         resolveSuper(condition, superCondition);
+        analyzer.invalidate();
     }
 
     private void resolveSuper(Condition condition, Condition superCondition) {
@@ -286,6 +288,7 @@ public class RuleBase {
     // Note that included rules are added though a list iterator, not this */
     public void addRule(ProductionRule productionRule) {
         productionRules.add(productionRule);
+        analyzer.invalidate();
     }
 
     /** Returns a named condition, or null if no condition with that name exists */
@@ -301,6 +304,7 @@ public class RuleBase {
     public void initialize() {
         inlineIncluded();
         makeReferences();
+        analyzer.compile();
     }
 
     /**
@@ -366,8 +370,11 @@ public class RuleBase {
         }
     }
 
-    /** Returns the rules in added order */
-    public ListIterator<ProductionRule> ruleIterator() { return productionRules.listIterator(); }
+    /**
+     * Returns the rules in added order. Modifying the rules through this discards the index of the rules
+     * until {@link #initialize} is called again.
+     */
+    public ListIterator<ProductionRule> ruleIterator() { return new RuleIterator(productionRules.listIterator()); }
 
     /** Returns the rules unmodifiable */
     public List<ProductionRule> rules() {
@@ -426,4 +433,40 @@ public class RuleBase {
 
     }
 
+    /** An iterator over the rules which discards the index of the rules when they are modified */
+    private class RuleIterator implements ListIterator<ProductionRule> {
+
+        private final ListIterator<ProductionRule> rules;
+
+        RuleIterator(ListIterator<ProductionRule> rules) {
+            this.rules = rules;
+        }
+
+        @Override public boolean hasNext() { return rules.hasNext(); }
+        @Override public ProductionRule next() { return rules.next(); }
+        @Override public boolean hasPrevious() { return rules.hasPrevious(); }
+        @Override public ProductionRule previous() { return rules.previous(); }
+        @Override public int nextIndex() { return rules.nextIndex(); }
+        @Override public int previousIndex() { return rules.previousIndex(); }
+
+        @Override
+        public void remove() {
+            rules.remove();
+            analyzer.invalidate();
+        }
+
+        @Override
+        public void set(ProductionRule rule) {
+            rules.set(rule);
+            analyzer.invalidate();
+        }
+
+        @Override
+        public void add(ProductionRule rule) {
+            rules.add(rule);
+            analyzer.invalidate();
+        }
+
+    }
+
 }
@@ -0,0 +1,79 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.benchmark;
+
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.engine.RuleEngine;
+import com.yahoo.search.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares evaluating all the rules of a generated rule base of synonym and phrase rules with
+ * evaluating only the candidate rules found by the rule index, for increasing numbers of rules.
+ */
+public class RuleIndexBenchmark {
+
+    public void benchmark(int maxRuleCount, int iterations) throws Exception {
+        List<String> queries = queries(100);
+        for (int ruleCount = 1000; ruleCount <= maxRuleCount; ruleCount *= 10) {
+            RuleBase ruleBase = RuleBase.createFromString("benchmark", rules(ruleCount), null, new SimpleLinguistics());
+            RuleEngine all = new RuleEngine(ruleBase);
+            RuleEngine indexed = new RuleEngine(ruleBase);
+            indexed.compile();
+
+            long allNanos = time(all, queries, Math.max(1, iterations * 1000 / ruleCount));
+            long indexedNanos = time(indexed, queries, iterations);
+            System.out.print("BENCHMARK: rules=" + ruleCount +
+                             "\n           all rules:       " + allNanos / 1000 + " us/query" +
+                             "\n           candidate rules: " + indexedNanos / 1000 + " us/query\n");
+        }
+    }
+
+    /** Returns the average time in nanoseconds to evaluate a query */
+    private long time(RuleEngine engine, List<String> queries, int iterations) {
+        for (String query : queries) // warmup
+            engine.evaluate(new Query("?query=" + query), 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            for (String query : queries)
+                engine.evaluate(new Query("?query=" + query), 0);
+        return (System.nanoTime() - start) / ((long)iterations * queries.size());
+    }
+
+    private static String rules(int ruleCount) {
+        StringBuilder rules = new StringBuilder("@stemming(false);\n");
+        for (int i = 0; i < ruleCount; i++) {
+            if (i % 2 == 0)
+                rules.append("word").append(i).append(" +> synonym").append(i).append(";\n");
+            else
+                rules.append("word").append(i).append(" word").append(i + 1).append(" -> \"word").append(i)
+                     .append(" word").append(i + 1).append("\";\n");
+        }
+        return rules.toString();
+    }
+
+    private static List<String> queries(int count) {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            queries.add("word" + (i * 7) + "+word" + (i * 7 + 1) + "+other" + i);
+        return queries;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("USAGE: RuleIndexBenchmark maxRuleCount iterations");
+            System.exit(1);
+        }
+
+        try {
+            new RuleIndexBenchmark().benchmark(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        }
+        catch (Exception e) {
+            System.out.println("ERROR: " + e);
+            System.exit(1);
+        }
+    }
+
+}
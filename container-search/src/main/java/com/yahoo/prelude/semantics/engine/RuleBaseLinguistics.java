@@ -51,4 +51,14 @@ public class RuleBaseLinguistics {
         return stems.get(0).get(0);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if ( ! (o instanceof RuleBaseLinguistics other)) return false;
+        return stemMode == other.stemMode && language == other.language && linguistics == other.linguistics;
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(stemMode, language, System.identityHashCode(linguistics)); }
+
 }
@@ -7,7 +7,8 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.RuleBaseException;
 import com.yahoo.prelude.semantics.rule.ProductionRule;
 
-import java.util.ListIterator;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Evaluates the rules of a rule base. This method is thread safe on analyze calls, but
@@ -19,10 +20,27 @@ public class RuleEngine {
 
     private final RuleBase rules;
 
+    /** The index of the rules to evaluate, or null to evaluate all rules */
+    private volatile RuleIndex index = null;
+
     public RuleEngine(RuleBase rules) {
         this.rules=rules;
     }
 
+    /**
+     * Indexes the rules of the rule base on the terms they require, such that only the rules which may match
+     * a query are evaluated. This is called when the rule base is initialized, and the index is discarded by
+     * any subsequent modification of the rule base.
+     */
+    public void compile() {
+        index = new RuleIndex(rules.rules());
+    }
+
+    /** Discards the rule index such that all rules are evaluated until this is compiled again */
+    public void invalidate() {
+        index = null;
+    }
+
     /**
      * Evaluates a rule base over a query
      *
@@ -32,19 +50,25 @@ public class RuleEngine {
      *         If there is an error, this query is destroyed (unusable)
      */
     public String evaluate(Query query, int traceLevel) {
-        // TODO: This is O(query size*rule base size). We'll eventually need to create indices
-        //       on rules to look up rule candidates per term to make it O(query size) instead
-        //       Probably create indices on the first term like Prolog implementations use to
-
         boolean matchedAnything = false;
         Evaluation evaluation = new Evaluation(query, rules, traceLevel);
         if (traceLevel >= 2)
             evaluation.trace(2,"Evaluating query '" + evaluation.getQuery().getModel().getQueryTree().getRoot() + "':");
-        for (ListIterator<ProductionRule> i = rules.ruleIterator(); i.hasNext(); ) {
+
+        RuleIndex index = this.index;
+        List<ProductionRule> ruleList = rules.rules();
+        BitSet candidates = candidates(index, ruleList, query);
+        if (traceLevel >= 3 && index != null)
+            evaluation.trace(3, "Evaluating " + candidates.cardinality() + " candidate rules of " + ruleList.size());
+
+        for (int position = 0; position < ruleList.size(); position++) {
+            if ( ! candidates.get(position)) continue;
+
             evaluation.reset();
-            ProductionRule rule = i.next();
-            boolean matched = matchRuleAtAllStartPoints(evaluation,rule);
+            boolean matched = matchRuleAtAllStartPoints(evaluation, ruleList.get(position));
             matchedAnything |= matched;
+            if (matched) // The query has changed, and so may the rules which can match it
+                candidates = candidates(index, ruleList, query);
         }
 
         if ( ! matchedAnything) return null;
@@ -54,6 +78,15 @@ public class RuleEngine {
         return error;
     }
 
+    private BitSet candidates(RuleIndex index, List<ProductionRule> ruleList, Query query) {
+        if (index == null) {
+            BitSet all = new BitSet(ruleList.size());
+            all.set(0, ruleList.size());
+            return all;
+        }
+        return index.candidates(query.getModel().getQueryTree().getRoot());
+    }
+
     /** Match a rule at any starting point in the query */
     private boolean matchRuleAtAllStartPoints(Evaluation evaluation, ProductionRule rule) {
         boolean matchedAtLeastOnce = false;
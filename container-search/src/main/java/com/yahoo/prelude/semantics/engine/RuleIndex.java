@@ -0,0 +1,82 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.engine;
+
+import com.yahoo.prelude.query.CompositeItem;
+import com.yahoo.prelude.query.Item;
+import com.yahoo.prelude.query.TermItem;
+import com.yahoo.prelude.semantics.rule.ProductionRule;
+import com.yahoo.prelude.semantics.rule.TermCondition;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index from query terms to the rules which may match a query containing them, used to
+ * evaluate only the rules which may match a query rather than all the rules of a rule base.
+ * <p>
+ * A rule is indexed on the terms of which at least one must be in the query for the rule to match.
+ * Rules where this is not known, e.g. because they contain ellipses, negations or automata references
+ * in all alternatives, are candidates for all queries.
+ * <p>
+ * This is immutable and thread safe.
+ */
+final class RuleIndex {
+
+    /** The positions of the rules which may match a query containing the key term */
+    private final Map<String, BitSet> rulesByTerm = new HashMap<>();
+
+    /** The positions of the rules which are candidates for any query */
+    private final BitSet unindexedRules = new BitSet();
+
+    /** The distinct linguistics which query terms must be processed by to look them up in this */
+    private final List<RuleBaseLinguistics> linguistics;
+
+    RuleIndex(List<ProductionRule> rules) {
+        Set<RuleBaseLinguistics> linguistics = new LinkedHashSet<>();
+        for (int position = 0; position < rules.size(); position++) {
+            Set<TermCondition> terms = rules.get(position).getCondition().requiredTerms(new HashSet<>());
+            if (terms == null) {
+                unindexedRules.set(position);
+                continue;
+            }
+            for (TermCondition term : terms) {
+                rulesByTerm.computeIfAbsent(term.term(), __ -> new BitSet()).set(position);
+                linguistics.add(term.linguistics());
+            }
+        }
+        this.linguistics = List.copyOf(linguistics);
+    }
+
+    /** Returns the positions of the rules which may match a query with the given root item */
+    BitSet candidates(Item root) {
+        BitSet candidates = (BitSet)unindexedRules.clone();
+        addCandidates(root, candidates);
+        return candidates;
+    }
+
+    private void addCandidates(Item item, BitSet candidates) {
+        if (item == null || item.isFilter()) return;
+        if (item instanceof TermItem term) {
+            String value = term.stringValue();
+            if (value == null) return;
+            for (RuleBaseLinguistics termLinguistics : linguistics) {
+                BitSet rules = rulesByTerm.get(termLinguistics.process(value));
+                if (rules != null)
+                    candidates.or(rules);
+            }
+        }
+        else if (item instanceof CompositeItem composite) {
+            for (Item child : composite.items())
+                addCandidates(child, candidates);
+        }
+    }
+
+    /** Returns the number of rules which are candidates for any query */
+    int unindexedRuleCount() { return unindexedRules.cardinality(); }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Iterator;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.engine.Choicepoint;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -32,6 +33,11 @@ public class AndCondition extends CompositeCondition {
                 && ! (getParent() instanceof ChoiceCondition));
     }
 
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        return requiredTermsOfAllConditions(visiting);
+    }
+
     protected String toInnerString() {
          return toInnerString(" & ");
      }
@@ -4,6 +4,7 @@ package com.yahoo.prelude.semantics.rule;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.engine.Choicepoint;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -63,6 +64,11 @@ public class ComparisonCondition extends CompositeCondition {
             e.trace(3,"Did not match '" + this + "' at " + e.currentItem() + " as " + left + operator + right + " is false");
     }
 
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        return requiredTermsOfAllConditions(visiting);
+    }
+
     public Condition getLeftCondition() {
         return getCondition(0);
     }
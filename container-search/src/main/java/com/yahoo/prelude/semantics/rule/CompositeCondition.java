@@ -2,8 +2,10 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -92,6 +94,28 @@ public abstract class CompositeCondition extends Condition {
         }
     }
 
+    /** Returns the required terms of the condition with the fewest, for conditions requiring all subconditions to match */
+    protected final Set<TermCondition> requiredTermsOfAllConditions(Set<Condition> visiting) {
+        Set<TermCondition> fewest = null;
+        for (Condition condition : conditions) {
+            Set<TermCondition> terms = condition.requiredTerms(visiting);
+            if (terms != null && (fewest == null || terms.size() < fewest.size()))
+                fewest = terms;
+        }
+        return fewest;
+    }
+
+    /** Returns the union of the required terms of all subconditions, for conditions requiring any subcondition to match */
+    protected final Set<TermCondition> requiredTermsOfAnyCondition(Set<Condition> visiting) {
+        Set<TermCondition> union = new HashSet<>();
+        for (Condition condition : conditions) {
+            Set<TermCondition> terms = condition.requiredTerms(visiting);
+            if (terms == null) return null;
+            union.addAll(terms);
+        }
+        return union;
+    }
+
     /** Whether this should be output with parentheses, default is parent!=null */
     protected boolean useParentheses() {
         return getParent() != null;
@@ -6,6 +6,8 @@ import com.yahoo.prelude.semantics.RuleBase;
 import com.yahoo.prelude.semantics.engine.FlattenedItem;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
+import java.util.Set;
+
 /**
  * Superclass of all kinds of conditions of production rules
  *
@@ -211,6 +213,15 @@ public abstract class Condition {
     /** Override if references needs to be set in this condition of its children */
     public void makeReferences(RuleBase rules) { }
 
+    /**
+     * Returns the term conditions of which at least one must match a term in the query for this to match,
+     * or null if this may match without any particular term in the query. This is used to index rules
+     * on terms. Override for conditions which require a term to be present, or contain such conditions.
+     *
+     * @param visiting the condition references currently being resolved, to break reference cycles
+     */
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) { return null; }
+
     protected String getLabelString() {
         if (label == null) return "";
         return label + ":";
@@ -10,6 +10,8 @@ import com.yahoo.prelude.semantics.engine.FlattenedItem;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 import com.yahoo.protect.Validator;
 
+import java.util.Set;
+
 /**
  * A reference to a named condition
  *
@@ -105,6 +107,18 @@ public class ConditionReference extends Condition {
         }
     }
 
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        if (automataLookup || namedCondition == null) return null;
+        if ( ! visiting.add(this)) return null;
+        try {
+            return namedCondition.getCondition().requiredTerms(visiting);
+        }
+        finally {
+            visiting.remove(this);
+        }
+    }
+
     protected boolean hasOpenChoicepoint(RuleEvaluation e) {
         if (namedCondition == null) return false;
         return namedCondition.getCondition().hasOpenChoicepoint(e);
@@ -2,6 +2,7 @@
 package com.yahoo.prelude.semantics.rule;
 
 import java.util.Iterator;
+import java.util.Set;
 
 import com.yahoo.prelude.semantics.engine.Choicepoint;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
@@ -34,4 +35,9 @@ public class SequenceCondition extends CompositeCondition {
         return toInnerString(" ");
     }
 
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        return requiredTermsOfAllConditions(visiting);
+    }
+
 }
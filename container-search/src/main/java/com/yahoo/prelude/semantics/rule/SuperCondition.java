@@ -3,6 +3,8 @@ package com.yahoo.prelude.semantics.rule;
 
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
+import java.util.Set;
+
 /**
  * A condition which evaluates the <i>last included</i> version of
  * the named condition this is a premise of.
@@ -25,6 +27,11 @@ public class SuperCondition extends Condition {
         return condition.matches(e);
     }
 
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        return condition == null ? null : condition.requiredTerms(visiting);
+    }
+
     public String toInnerString() {
         if (condition==null)
             return "@super";
@@ -5,6 +5,8 @@ import com.yahoo.prelude.semantics.engine.NameSpace;
 import com.yahoo.prelude.semantics.engine.RuleBaseLinguistics;
 import com.yahoo.prelude.semantics.engine.RuleEvaluation;
 
+import java.util.Set;
+
 /**
  * A term in a rule
  *
@@ -50,6 +52,15 @@ public class TermCondition extends Condition {
 
     public String term() { return term; }
 
+    /** Returns the linguistics used to process query terms before comparing them to the term of this */
+    public RuleBaseLinguistics linguistics() { return linguistics; }
+
+    @Override
+    public Set<TermCondition> requiredTerms(Set<Condition> visiting) {
+        if (getNameSpace() != null) return null;
+        return Set.of(this);
+    }
+
     @Override
     public String toInnerString() {
         return getLabelString() + term;
@@ -6,6 +6,7 @@ import com.yahoo.component.ComponentId;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
@@ -17,6 +18,7 @@ import com.yahoo.search.dispatch.rpc.RpcInvokerFactory;
 import com.yahoo.search.dispatch.rpc.RpcPingFactory;
 import com.yahoo.search.dispatch.rpc.RpcResourcePool;
 import com.yahoo.search.dispatch.searchcluster.Group;
+import com.yahoo.search.dispatch.searchcluster.MonitoringPolicy;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
 import com.yahoo.search.dispatch.searchcluster.SearchGroups;
@@ -34,6 +36,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * A dispatcher communicates with search nodes to perform queries and fill hits.
@@ -53,18 +56,32 @@ public class Dispatcher extends AbstractComponent {
     private static final String TOP_K_PROBABILITY = "topKProbability";
     private static final String DOCSUM_RETRY_LIMIT = "docsumRetryLimit";
     private static final String DOCSUM_RETRY_FACTOR  = "docsumRetryFactor";
+    private static final String EARLY_RETURN = "earlyReturn";
+    private static final String HEDGE = "hedge";
     private static final int MAX_GROUP_SELECTION_ATTEMPTS = 3;
 
     /** If set will control computation of how many hits will be fetched from each partition.*/
     public static final CompoundName topKProbability = CompoundName.from(DISPATCH + "." + TOP_K_PROBABILITY);
     public static final CompoundName docsumRetryLimit = CompoundName.from(DISPATCH + "." + DOCSUM_RETRY_LIMIT);
     public static final CompoundName docsumRetryFactor  = CompoundName.from(DISPATCH + "." + DOCSUM_RETRY_FACTOR);
+    /**
+     * If set, stop waiting for the remaining nodes as soon as min search coverage is reached and the
+     * top k hits estimated to be held by the remaining nodes are within the accepted coverage loss.
+     */
+    public static final CompoundName earlyReturn = CompoundName.from(DISPATCH + "." + EARLY_RETURN);
+    /**
+     * If set, the query is also sent to a second group if the first has not answered within the hedge percentile
+     * latency, and the first result to arrive is used. Overrides the hedging config value.
+     */
+    public static final CompoundName hedge = CompoundName.from(DISPATCH + "." + HEDGE);
 
     private final InvokerFactoryFactory invokerFactories;
     private final DispatchConfig dispatchConfig;
     private final RpcConnectionPool rpcResourcePool;
     private final SearchCluster searchCluster;
     private final ClusterMonitor<Node> clusterMonitor;
+    private final MetricReceiver metric;
+    private final Hedging hedging;
     private volatile VolatileItems volatileItems;
 
     private static class VolatileItems {
@@ -107,6 +124,8 @@ public class Dispatcher extends AbstractComponent {
         argumentType.addField(new FieldDescription(TOP_K_PROBABILITY, FieldType.doubleType));
         argumentType.addField(new FieldDescription(DOCSUM_RETRY_LIMIT, FieldType.integerType));
         argumentType.addField(new FieldDescription(DOCSUM_RETRY_FACTOR, FieldType.doubleType));
+        argumentType.addField(new FieldDescription(EARLY_RETURN, FieldType.booleanType));
+        argumentType.addField(new FieldDescription(HEDGE, FieldType.booleanType));
         argumentType.freeze();
     }
 
@@ -116,33 +135,49 @@ public class Dispatcher extends AbstractComponent {
         InvokerFactory create(RpcConnectionPool rpcConnectionPool, SearchGroups searchGroups, DispatchConfig dispatchConfig);
     }
 
-    @Inject
     public Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig, VipStatus vipStatus) {
-        this(clusterId, dispatchConfig, new RpcResourcePool(dispatchConfig, nodesConfig), nodesConfig, vipStatus, RpcInvokerFactory::new);
+        this(clusterId, dispatchConfig, nodesConfig, vipStatus, MetricReceiver.nullImplementation);
+    }
+
+    @Inject
+    public Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, DispatchNodesConfig nodesConfig,
+                      VipStatus vipStatus, MetricReceiver metric) {
+        this(clusterId, dispatchConfig, new RpcResourcePool(dispatchConfig, nodesConfig), nodesConfig, vipStatus,
+             RpcInvokerFactory::new, metric);
         initialWarmup(dispatchConfig.warmuptime());
     }
 
     Dispatcher(ComponentId clusterId, DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
-               DispatchNodesConfig nodesConfig, VipStatus vipStatus, InvokerFactoryFactory invokerFactories) {
+               DispatchNodesConfig nodesConfig, VipStatus vipStatus, InvokerFactoryFactory invokerFactories,
+               MetricReceiver metric) {
         this(dispatchConfig, rpcConnectionPool,
              new SearchCluster(clusterId.stringValue(), dispatchConfig.minActivedocsPercentage(),
-                               toNodes(clusterId.stringValue(), nodesConfig), vipStatus, new RpcPingFactory(rpcConnectionPool)),
-             invokerFactories);
+                               toNodes(clusterId.stringValue(), nodesConfig), vipStatus, new RpcPingFactory(rpcConnectionPool),
+                               MonitoringPolicy.from(dispatchConfig), metric),
+             invokerFactories, metric);
     }
 
     Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
                SearchCluster searchCluster, InvokerFactoryFactory invokerFactories) {
-        this(dispatchConfig, rpcConnectionPool, searchCluster, new ClusterMonitor<>(searchCluster, false), invokerFactories);
+        this(dispatchConfig, rpcConnectionPool, searchCluster, invokerFactories, MetricReceiver.nullImplementation);
+    }
+
+    Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
+               SearchCluster searchCluster, InvokerFactoryFactory invokerFactories, MetricReceiver metric) {
+        this(dispatchConfig, rpcConnectionPool, searchCluster, new ClusterMonitor<>(searchCluster, false), invokerFactories, metric);
         this.clusterMonitor.start(); // Populate nodes to monitor before starting it.
     }
 
     Dispatcher(DispatchConfig dispatchConfig, RpcConnectionPool rpcConnectionPool,
-               SearchCluster searchCluster, ClusterMonitor<Node> clusterMonitor, InvokerFactoryFactory invokerFactories) {
+               SearchCluster searchCluster, ClusterMonitor<Node> clusterMonitor, InvokerFactoryFactory invokerFactories,
+               MetricReceiver metric) {
         this.dispatchConfig = dispatchConfig;
         this.rpcResourcePool = rpcConnectionPool;
         this.searchCluster = searchCluster;
         this.invokerFactories = invokerFactories;
         this.clusterMonitor = clusterMonitor;
+        this.metric = metric;
+        this.hedging = new Hedging(dispatchConfig, metric);
         this.volatileItems = update();
         searchCluster.addMonitoring(clusterMonitor);
     }
@@ -150,7 +185,7 @@ public class Dispatcher extends AbstractComponent {
     /* For simple mocking in tests. Beware that searchCluster is shutdown in deconstruct() */
     Dispatcher(ClusterMonitor<Node> clusterMonitor, SearchCluster searchCluster,
                DispatchConfig dispatchConfig, InvokerFactory invokerFactory) {
-        this(dispatchConfig, null, searchCluster, clusterMonitor, (__, ___, ____) -> invokerFactory);
+        this(dispatchConfig, null, searchCluster, clusterMonitor, (__, ___, ____) -> invokerFactory, MetricReceiver.nullImplementation);
     }
 
     /** Returns the snapshot of volatile items that need to be kept together, incrementing its reference counter. */
@@ -206,7 +241,7 @@ public class Dispatcher extends AbstractComponent {
     }
 
     private VolatileItems update() {
-        return new VolatileItems(new LoadBalancer(searchCluster.groupList().groups(), toLoadBalancerPolicy(dispatchConfig.distributionPolicy())),
+        return new VolatileItems(new LoadBalancer(searchCluster.groupList().groups(), toLoadBalancerPolicy(dispatchConfig.distributionPolicy()), metric),
                                  invokerFactories.create(rpcResourcePool, searchCluster.groupList(), dispatchConfig));
     }
 
@@ -233,6 +268,7 @@ public class Dispatcher extends AbstractComponent {
             case BEST_OF_RANDOM_2 -> LoadBalancer.Policy.BEST_OF_RANDOM_2;
             case ADAPTIVE,LATENCY_AMORTIZED_OVER_REQUESTS -> LoadBalancer.Policy.LATENCY_AMORTIZED_OVER_REQUESTS;
             case LATENCY_AMORTIZED_OVER_TIME -> LoadBalancer.Policy.LATENCY_AMORTIZED_OVER_TIME;
+            case LATENCY_AWARE -> LoadBalancer.Policy.LATENCY_AWARE;
         };
     }
     private static List<Node> toNodes(String clusterName, DispatchNodesConfig nodesConfig) {
@@ -249,6 +285,11 @@ public class Dispatcher extends AbstractComponent {
         new Compressor().warmup(seconds);
     }
 
+    /** Returns a number which changes whenever the content of the cluster of this is observed to change */
+    public long contentGeneration() {
+        return searchCluster.contentGeneration();
+    }
+
     public boolean allGroupsHaveSize1() {
         return searchCluster.groupList().groups().stream().allMatch(g -> g.nodes().size() == 1);
     }
@@ -272,7 +313,8 @@ public class Dispatcher extends AbstractComponent {
         try (var items = volatileItems()) { // Take a snapshot, and release it when we're done.
             int maxHitsPerNode = dispatchConfig.maxHitsPerNode();
             SearchInvoker invoker = getSearchPathInvoker(query, searcher, searchCluster.groupList(), items.get().invokerFactory, maxHitsPerNode)
-                    .orElseGet(() -> getInternalInvoker(query, searcher, searchCluster, items.get().loadBalancer, items.get().invokerFactory, maxHitsPerNode));
+                    .orElseGet(() -> getInternalInvoker(query, searcher, searchCluster, items.get().loadBalancer, items.get().invokerFactory, maxHitsPerNode, hedging,
+                                                        rejected -> getHedgeInvoker(query, searcher, maxHitsPerNode, rejected)));
 
             if (query.properties().getBoolean(com.yahoo.search.query.Model.ESTIMATE)) {
                 query.setHits(0);
@@ -304,7 +346,8 @@ public class Dispatcher extends AbstractComponent {
     }
 
     private static SearchInvoker getInternalInvoker(Query query, VespaBackend searcher, SearchCluster cluster,
-                                                    LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode) {
+                                                    LoadBalancer loadBalancer, InvokerFactory invokerFactory, int maxHitsPerNode,
+                                                    Hedging hedging, Function<Set<Integer>, Optional<SearchInvoker>> hedgeInvokers) {
         Optional<Node> directNode = cluster.localCorpusDispatchTarget();
         if (directNode.isPresent()) {
             Node node = directNode.get();
@@ -321,8 +364,14 @@ public class Dispatcher extends AbstractComponent {
         int groups = cluster.groupList().size();
         int max = Integer.min(Integer.min(covered + 1, groups), MAX_GROUP_SELECTION_ATTEMPTS);
         Set<Integer> rejected = rejectGroupBlockingFeed(cluster.groupList().groups());
+        Duration timeLeft = Duration.ofMillis(query.getTimeLeft());
+        if (loadBalancer.shouldShed(rejected, timeLeft)) {
+            query.trace(false, 2, "Rejecting query as no group is predicted to complete it within the ", timeLeft.toMillis(), " ms left");
+            return new SearchErrorInvoker(ErrorMessage.createTimeout("No group is predicted to complete the query within the " +
+                                                                     timeLeft.toMillis() + " ms left"));
+        }
         for (int i = 0; i < max; i++) {
-            Optional<Group> groupInCluster = loadBalancer.takeGroup(rejected);
+            Optional<Group> groupInCluster = loadBalancer.takeGroup(rejected, timeLeft);
             if (groupInCluster.isEmpty()) break; // No groups available
 
             Group group = groupInCluster.get();
@@ -335,7 +384,12 @@ public class Dispatcher extends AbstractComponent {
             if (invoker.isPresent()) {
                 query.trace(false, 2, "Dispatching to group ", group.id(), " after retries = ", i);
                 query.getModel().setSearchPath("/" + group.id());
-                invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
+                invoker.get().teardown((success, time) -> releaseGroup(loadBalancer, hedging, group, success, time));
+                if (groups > 1 && query.properties().getBoolean(hedge, hedging.enabledByDefault())) {
+                    Set<Integer> hedgeRejected = (rejected == null) ? new HashSet<>() : new HashSet<>(rejected);
+                    hedgeRejected.add(group.id());
+                    return new HedgedSearchInvoker(invoker.get(), () -> hedgeInvokers.apply(hedgeRejected), hedging);
+                }
                 return invoker.get();
             } else {
                 loadBalancer.releaseGroup(group, false, RequestDuration.of(Duration.ZERO));
@@ -348,6 +402,35 @@ public class Dispatcher extends AbstractComponent {
         throw new IllegalStateException("No suitable groups to dispatch query. Rejected: " + rejected);
     }
 
+    /**
+     * Returns an invoker for sending a query which is already dispatched to some group to another group, if possible.
+     * This uses the current snapshot of volatile items, as the one the query was first dispatched with may have been
+     * replaced and cleaned up when the query is hedged.
+     */
+    private Optional<SearchInvoker> getHedgeInvoker(Query query, VespaBackend searcher, int maxHitsPerNode, Set<Integer> rejected) {
+        try (var items = volatileItems()) { // Take a snapshot, and release it when we're done.
+            LoadBalancer loadBalancer = items.get().loadBalancer;
+            Optional<Group> groupInCluster = loadBalancer.takeGroup(rejected, Duration.ofMillis(query.getTimeLeft()));
+            if (groupInCluster.isEmpty()) return Optional.empty();
+
+            Group group = groupInCluster.get();
+            Optional<SearchInvoker> invoker = items.get().invokerFactory.createSearchInvoker(searcher, query, group.nodes(), false, maxHitsPerNode);
+            if (invoker.isEmpty()) {
+                loadBalancer.releaseGroup(group, false, RequestDuration.of(Duration.ZERO));
+                return Optional.empty();
+            }
+            query.trace(false, 2, "Hedging to group ", group.id());
+            invoker.get().teardown((success, time) -> releaseGroup(loadBalancer, hedging, group, success, time));
+            return Optional.of(items.register(invoker.get()));
+        }
+    }
+
+    private static void releaseGroup(LoadBalancer loadBalancer, Hedging hedging, Group group, boolean success, RequestDuration time) {
+        loadBalancer.releaseGroup(group, success, time);
+        if (success)
+            hedging.sample(time);
+    }
+
     /**
      * We want to avoid groups blocking feed because their data may be out of date.
      * If there is a single group blocking feed, we want to reject it.
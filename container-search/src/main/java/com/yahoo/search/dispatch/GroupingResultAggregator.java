@@ -5,6 +5,7 @@ import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.prelude.fastsearch.GroupingListHit;
 import com.yahoo.search.Query;
 import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.aggregation.GroupingMerger;
 import com.yahoo.searchlib.aggregation.Hit;
 
 import java.util.LinkedHashMap;
@@ -15,30 +16,31 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Incrementally merges underlying {@link Grouping} instances from {@link GroupingListHit} hits.
+ * Merges underlying {@link Grouping} instances from {@link GroupingListHit} hits.
+ * The groupings are collected per grouping request as hits are added, and merged level by level
+ * by a {@link GroupingMerger} when the aggregated hit is created.
  *
  * @author bjorncs
  */
 class GroupingResultAggregator {
     private static final Logger log = Logger.getLogger(GroupingResultAggregator.class.getName());
 
-    private final Map<Integer, Grouping> groupings = new LinkedHashMap<>();
+    private final Map<Integer, GroupingMerger> groupings = new LinkedHashMap<>();
     private DocumentDatabase documentDatabase = null;
     private Query query = null;
     private int groupingHitsMerged = 0;
+    private long serializedSize = 0;
 
     void mergeWith(GroupingListHit result) {
         ++groupingHitsMerged;
         if (documentDatabase == null) documentDatabase = result.getDocumentDatBase();
         if (query == null) query = result.getQuery();
+        serializedSize += result.getSerializedSize();
         log.log(Level.FINE, () ->
                 String.format("Merging hit #%d having %d groupings",
                         groupingHitsMerged, result.getGroupingList().size()));
         for (Grouping grouping : result.getGroupingList()) {
-            groupings.merge(grouping.getId(), grouping, (existingGrouping, newGrouping) -> {
-                existingGrouping.merge(newGrouping);
-                return existingGrouping;
-            });
+            groupings.computeIfAbsent(grouping.getId(), __ -> new GroupingMerger()).add(grouping);
         }
     }
 
@@ -47,12 +49,11 @@ class GroupingResultAggregator {
         log.log(Level.FINE, () ->
                 String.format("Creating aggregated hit containing %d groupings from %d hits with docsums '%s' and %s",
                         groupings.size(), groupingHitsMerged, documentDatabase.getDocsumDefinitionSet(), query));
-        GroupingListHit groupingHit = new GroupingListHit(List.copyOf(groupings.values()), documentDatabase, query);
+        List<Grouping> merged = groupings.values().stream().map(GroupingMerger::merge).toList();
+        GroupingListHit groupingHit = new GroupingListHit(merged, documentDatabase, query);
         groupingHit.setQuery(query);
-        groupingHit.getGroupingList().forEach(g -> {
-            g.select(o -> o instanceof Hit, o -> ((Hit)o).setContext(groupingHit));
-            g.postMerge();
-        });
+        groupingHit.setSerializedSize(serializedSize);
+        groupingHit.getGroupingList().forEach(g -> g.select(o -> o instanceof Hit, o -> ((Hit)o).setContext(groupingHit)));
         return Optional.of(groupingHit);
     }
 
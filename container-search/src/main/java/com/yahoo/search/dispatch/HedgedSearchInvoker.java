@@ -0,0 +1,106 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Query;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends a query to one group, and if that has not answered completely when the hedging delay has passed,
+ * also to a second group. The result is taken from the group which answers completely first, and the other
+ * invoker is closed. If neither group has answered completely when little time is left, the result is taken
+ * from the first group, with whatever coverage it has.
+ * <p>
+ * The latencies used to compute the hedging delay are sampled when queries to a group complete. When the second
+ * group answers first, the time the first group had spent when it was abandoned is sampled in its place, as only
+ * sampling the fastest of hedged queries would make the delay too low.
+ */
+class HedgedSearchInvoker extends SearchInvoker implements ResponseMonitor<SearchInvoker> {
+
+    /** The fraction of the timeout reserved for collecting a partial result from the first group */
+    private static final double partialResultReserve = 0.1;
+
+    private final SearchInvoker primary;
+    private final Supplier<Optional<SearchInvoker>> secondaryFactory;
+    private final Hedging hedging;
+    private final LinkedBlockingQueue<SearchInvoker> completed = new LinkedBlockingQueue<>();
+
+    private SearchInvoker secondary = null;
+    private SearchInvoker abandoned = null;
+    private Query query;
+    private RequestDuration primaryDuration;
+
+    HedgedSearchInvoker(SearchInvoker primary, Supplier<Optional<SearchInvoker>> secondaryFactory, Hedging hedging) {
+        super(Optional.empty());
+        this.primary = primary;
+        this.secondaryFactory = secondaryFactory;
+        this.hedging = hedging;
+    }
+
+    @Override
+    protected Object sendSearchRequest(Query query, Object context) throws IOException {
+        this.query = query;
+        primaryDuration = new RequestDuration();
+        primary.setMonitor(this);
+        return primary.sendSearchRequest(query, context);
+    }
+
+    @Override
+    protected InvokerResult getSearchResult() throws IOException {
+        try {
+            long reserve = (long)(query.getTimeout() * partialResultReserve);
+            long delay = hedging.delay().toMillis();
+            SearchInvoker first = completed.poll(Math.min(delay, query.getTimeLeft() - reserve), TimeUnit.MILLISECONDS);
+            if (first == null && query.getTimeLeft() - reserve > delay && hedging.tryAcquire())
+                sendToSecondary();
+            if (first == null)
+                first = completed.poll(query.getTimeLeft() - reserve, TimeUnit.MILLISECONDS);
+            if (first == null)
+                first = primary;
+
+            if (first == secondary) {
+                hedging.won();
+                hedging.sample(primaryDuration.complete());
+                query.trace(false, 2, "Using the result from the hedged query");
+            }
+            abandoned = (first == primary) ? secondary : primary;
+            if (abandoned != null) abandoned.close();
+            InvokerResult result = first.getSearchResult();
+            first.setFinalStatus(result.getResult().hits().getError() == null);
+            return result;
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for search results", e);
+        }
+    }
+
+    private void sendToSecondary() throws IOException {
+        secondary = secondaryFactory.get().orElse(null);
+        if (secondary == null) return;
+        query.trace(false, 2, "No answer after ", hedging.delay().toMillis(), " ms: Also sending the query to another group");
+        secondary.setMonitor(this);
+        secondary.sendSearchRequest(query, null);
+        hedging.hedged();
+    }
+
+    @Override
+    protected void release() {
+        if (primary != abandoned)
+            primary.close();
+        if (secondary != null && secondary != abandoned)
+            secondary.close();
+    }
+
+    @Override
+    public void responseAvailable(SearchInvoker from) {
+        completed.add(from);
+    }
+
+    // For testing
+    SearchInvoker secondary() { return secondary; }
+
+}
@@ -0,0 +1,81 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.dispatch.LoadBalancer.LatencyAwareScheduler.LatencyStats;
+import com.yahoo.vespa.config.search.DispatchConfig;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when queries should be hedged, i.e. also sent to a second group, and how many:
+ * A query is hedged when the first group has not answered within the configured latency percentile
+ * of the queries to this cluster, and there is budget left for one more hedged query in the current second.
+ * <p>
+ * This is multithread safe.
+ */
+class Hedging {
+
+    private final boolean enabledByDefault;
+    private final double budgetPerSecond;
+    private final double maxBudget;
+    private final LongSupplier nanoClock;
+    private final LatencyStats latency;
+    private final Counter hedgedCounter;
+    private final Counter winCounter;
+
+    private double budget;
+    private long lastRefillNanos;
+
+    Hedging(DispatchConfig config, MetricReceiver metric) {
+        this(config, metric, System::nanoTime);
+    }
+
+    Hedging(DispatchConfig config, MetricReceiver metric, LongSupplier nanoClock) {
+        this.enabledByDefault = config.hedging();
+        this.budgetPerSecond = config.hedgeBudget();
+        this.nanoClock = nanoClock;
+        this.latency = new LatencyStats(Duration.ofMillis(10), config.hedgePercentile() / 100);
+        this.hedgedCounter = metric.declareCounter(ContainerMetrics.DISPATCH_HEDGED.baseName());
+        this.winCounter = metric.declareCounter(ContainerMetrics.DISPATCH_HEDGE_WINS.baseName());
+        this.maxBudget = Math.max(1, budgetPerSecond);
+        this.budget = maxBudget;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    boolean enabledByDefault() { return enabledByDefault; }
+
+    /** Records the latency of a query to a group */
+    synchronized void sample(RequestDuration duration) {
+        latency.decay(duration);
+    }
+
+    /** Returns the time to wait for the first group before hedging */
+    synchronized Duration delay() {
+        return latency.percentileLatency();
+    }
+
+    /** Returns whether there is budget for one more hedged query, and if so takes it */
+    synchronized boolean tryAcquire() {
+        long now = nanoClock.getAsLong();
+        budget = Math.min(maxBudget, budget + (now - lastRefillNanos) * budgetPerSecond / 1_000_000_000.0);
+        lastRefillNanos = now;
+        if (budget < 1) return false;
+        budget--;
+        return true;
+    }
+
+    /** Records that a query was sent to a second group */
+    void hedged() {
+        hedgedCounter.add();
+    }
+
+    /** Records that the second group answered first */
+    void won() {
+        winCounter.add();
+    }
+
+}
@@ -12,7 +12,6 @@ import com.yahoo.search.searchchain.Execution;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -21,13 +20,14 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
  * InterleavedSearchInvoker uses multiple {@link SearchInvoker} objects to interface with content
  * nodes in parallel. Operationally it first sends requests to all contained invokers and then
- * collects the results. The user of this class is responsible for merging the results if needed.
+ * collects the results, merging the hits of each into the top hits as they arrive.
  *
  * @author ollivir
  */
@@ -43,6 +43,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     private final Set<Integer> alreadyFailedNodes;
     private final CoverageAggregator coverageAggregator;
     private final TopKEstimator hitEstimator;
+    private final AtomicInteger pendingResponses;
     private Query query;
 
     private TimeoutHandler timeoutHandler;
@@ -61,6 +62,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         this.alreadyFailedNodes = alreadyFailedNodes;
         this.coverageAggregator = new CoverageAggregator(invokers.size());
         this.hitEstimator = hitEstimator;
+        this.pendingResponses = new AtomicInteger(invokers.size());
     }
 
     private int estimateHitsToFetch(int wantedHits, int numPartitions) {
@@ -116,7 +118,8 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     @Override
     protected InvokerResult getSearchResult() throws IOException {
         InvokerResult result = new InvokerResult(query, query.getHits());
-        List<LeanHit> merged = List.of();
+        TopHits merged = new TopHits(query.getOffset() + query.getHits());
+        boolean earlyReturn = query.properties().getBoolean(Dispatcher.earlyReturn, false);
         long nextTimeout = query.getTimeLeft();
         var groupingResultAggregator = new GroupingResultAggregator();
         try {
@@ -128,9 +131,14 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                     break;
                 } else {
                     InvokerResult toMerge = invoker.getSearchResult();
-                    merged = mergeResult(result.getResult(), toMerge, merged, groupingResultAggregator);
+                    mergeResult(result.getResult(), toMerge, merged, groupingResultAggregator);
                     ejectInvoker(invoker);
                 }
+                if (earlyReturn && ! invokers.isEmpty() && hasSufficientTopK(merged)) {
+                    query.trace(false, 3, "Returning early with ", coverageAggregator.getAnsweredNodes(), " of ",
+                                coverageAggregator.getAskedNodes(), " nodes answered");
+                    break;
+                }
                 nextTimeout = timeoutHandler.nextTimeoutMS(coverageAggregator.getAnsweredNodes());
             }
         } catch (InterruptedException e) {
@@ -142,14 +150,30 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         CoverageAggregator adjusted = coverageAggregator.adjustedDegradedCoverage((int)dispatchConfig.redundancy(), timeoutHandler);
         result.getResult().setCoverage(adjusted.createCoverage(timeoutHandler));
 
-        int needed = query.getOffset() + query.getHits();
-        for (int index = query.getOffset(); (index < merged.size()) && (index < needed); index++) {
-            result.getLeanHits().add(merged.get(index));
-        }
+        result.getLeanHits().addAll(merged.hits(query.getOffset()));
+        if (query.getTrace().isTraceable(3))
+            query.trace(false, 3, "Merged ", merged.size(), " hits from ", merged.mergedLists(), " nodes in ",
+                        String.format("%.3f", merged.mergeNanos() / 1_000_000.0), " ms");
         query.setOffset(0);  // Now we are all trimmed down
         return result;
     }
 
+    /**
+     * Returns whether we have the minimum coverage, and the top k hits estimated to be held by the nodes
+     * which have not yet answered are within the loss accepted by the min search coverage.
+     */
+    private boolean hasSufficientTopK(TopHits merged) {
+        double minCoverage = dispatchConfig.minSearchCoverage();
+        if (minCoverage >= 100.0) return false;
+        if ( ! query.getSelect().getGrouping().isEmpty()) return false; // Groups must be merged from all nodes
+        int k = query.getOffset() + query.getHits();
+        if (k == 0 || ! merged.isFull()) return false;
+        int answered = coverageAggregator.getAnsweredNodes();
+        int asked = coverageAggregator.getAskedNodes();
+        if (answered * 100.0 < asked * minCoverage) return false;
+        return hitEstimator.estimateMissingK(k, answered, asked) <= k * (100.0 - minCoverage) / 100.0;
+    }
+
     private void insertNetworkErrors(Result result) {
         // Network errors will be reported as errors only when all nodes fail, otherwise they are just traced
         boolean asErrors = coverageAggregator.hasNoAnswers();
@@ -178,8 +202,8 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         }
     }
 
-    private List<LeanHit> mergeResult(Result result, InvokerResult partialResult, List<LeanHit> current,
-                                      GroupingResultAggregator groupingResultAggregator) {
+    private void mergeResult(Result result, InvokerResult partialResult, TopHits merged,
+                             GroupingResultAggregator groupingResultAggregator) {
         coverageAggregator.add(partialResult.getResult().getCoverage(true));
 
         result.mergeWith(partialResult.getResult());
@@ -193,44 +217,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                 }
             }
         }
-        if (current.isEmpty() ) {
-            return partialResult.getLeanHits();
-        }
-        List<LeanHit> partial = partialResult.getLeanHits();
-        if (partial.isEmpty()) {
-            return current;
-        }
-
-        int needed = query.getOffset() + query.getHits();
-        List<LeanHit> merged = new ArrayList<>(needed);
-        int indexCurrent = 0;
-        int indexPartial = 0;
-        while (indexCurrent < current.size() && indexPartial < partial.size() && merged.size() < needed) {
-            LeanHit incomingHit = partial.get(indexPartial);
-            LeanHit currentHit = current.get(indexCurrent);
-
-            int cmpRes = currentHit.compareTo(incomingHit);
-            if (cmpRes < 0) {
-                merged.add(currentHit);
-                indexCurrent++;
-            } else if (cmpRes > 0) {
-                merged.add(incomingHit);
-                indexPartial++;
-            } else { // Duplicates
-                merged.add(currentHit);
-                indexCurrent++;
-                indexPartial++;
-            }
-        }
-        appendRemainingIfNeeded(merged, needed, current, indexCurrent);
-        appendRemainingIfNeeded(merged, needed, partial, indexPartial);
-        return merged;
-    }
-
-    private void appendRemainingIfNeeded(List<LeanHit> merged, int needed, List<LeanHit> hits, int index) {
-        while ((index < hits.size()) && (merged.size() < needed)) {
-            merged.add(hits.get(index++));
-        }
+        merged.merge(partialResult.getLeanHits());
     }
 
     private void ejectInvoker(SearchInvoker invoker) {
@@ -251,11 +238,8 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         if (availableForProcessing != null) {
             availableForProcessing.add(from);
         }
-    }
-
-    @Override
-    protected void setMonitor(ResponseMonitor<SearchInvoker> monitor) {
-        // never to be called
+        if (pendingResponses.decrementAndGet() == 0)
+            responseAvailable(); // Let any monitor of this know that all the responses are available
     }
 
     // For overriding in tests
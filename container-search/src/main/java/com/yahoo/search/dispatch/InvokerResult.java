@@ -5,6 +5,7 @@ import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.query.Sorting;
+import com.yahoo.search.result.FeatureData;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +30,11 @@ public class InvokerResult {
         leanHits = new ArrayList<>(expectedHits);
     }
 
+    public InvokerResult(Query query, LeanHits leanHits) {
+        this.result = new Result(query);
+        this.leanHits = leanHits;
+    }
+
     public Result getResult() {
         return result;
     }
@@ -40,21 +46,30 @@ public class InvokerResult {
     void complete() {
         Query query = result.getQuery();
         Sorting sorting = query.getRanking().getSorting();
-        for (LeanHit hit : leanHits) {
-            FastHit fh = new FastHit(hit.getGid(), hit.getRelevance(), hit.getPartId(), hit.getDistributionKey());
-            if (hit.hasSortData()) {
-                fh.setSortData(hit.getSortData(), sorting);
-            }
-            if (hit.hasMatchFeatures()) {
-                fh.setField("matchfeatures", hit.getMatchFeatures());
-            }
-            fh.setQuery(query);
-            fh.setFillable();
-            fh.setCached(false);
-            result.hits().add(fh);
+        if (leanHits instanceof LeanHits columns) {
+            for (int i = 0; i < columns.size(); i++)
+                add(columns.toFastHit(i), columns.sortData(i), columns.matchFeatures(i), query, sorting);
+        }
+        else {
+            for (LeanHit hit : leanHits)
+                add(new FastHit(hit.getGid(), hit.getRelevance(), hit.getPartId(), hit.getDistributionKey()),
+                    hit.getSortData(), hit.getMatchFeatures(), query, sorting);
         }
         if (!leanHits.isEmpty())
             leanHits.clear();
     }
 
+    private void add(FastHit fh, byte[] sortData, FeatureData matchFeatures, Query query, Sorting sorting) {
+        if (sortData != null) {
+            fh.setSortData(sortData, sorting);
+        }
+        if (matchFeatures != null) {
+            fh.setField("matchfeatures", matchFeatures);
+        }
+        fh.setQuery(query);
+        fh.setFillable();
+        fh.setCached(false);
+        result.hits().add(fh);
+    }
+
 }
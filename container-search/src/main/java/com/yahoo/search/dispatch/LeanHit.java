@@ -42,6 +42,9 @@ public class LeanHit implements Comparable<LeanHit> {
     public void addMatchFeatures(Inspector features) {
         matchFeatures = new FeatureData(features);
     }
+    void setMatchFeatures(FeatureData features) {
+        matchFeatures = features;
+    }
 
     @Override
     public int compareTo(LeanHit o) {
@@ -0,0 +1,127 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.google.protobuf.ByteString;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.result.FeatureData;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The sorted hits returned from a single content node, stored column-wise: Relevance scores are held in
+ * a primitive array, and the gids and sort data of all the hits are copied into one shared byte slab.
+ * This avoids allocating objects per hit when decoding large replies, as most of these hits are normally
+ * discarded when merging with the hits from other nodes.
+ * <p>
+ * This is a List of {@link LeanHit}, but the hits are materialized on each access, so callers which
+ * only need to compare or keep a few of the hits should use the indexed accessors instead.
+ */
+public class LeanHits extends AbstractList<LeanHit> {
+
+    private static final int estimatedBytesPerHit = 32;
+
+    private final int partId;
+    private final int distributionKey;
+
+    private int size = 0;
+    private double[] relevance;
+    /** The start of the gid of hit i in the slab is at 2*i, the start of its sort data at 2*i+1 */
+    private int[] offsets;
+    private byte[] slab;
+    private FeatureData[] matchFeatures = null;
+
+    public LeanHits(int partId, int distributionKey, int expectedHits) {
+        this.partId = partId;
+        this.distributionKey = distributionKey;
+        this.relevance = new double[Math.max(1, expectedHits)];
+        this.offsets = new int[2 * relevance.length + 1];
+        this.slab = new byte[relevance.length * estimatedBytesPerHit];
+    }
+
+    /** Adds a hit to the end of this. An empty sortData means the hit has no sort data. Returns the index of the hit. */
+    public int add(ByteString gid, double relevance, ByteString sortData) {
+        if (size == this.relevance.length) {
+            this.relevance = Arrays.copyOf(this.relevance, size * 2);
+            offsets = Arrays.copyOf(offsets, 4 * size + 1);
+        }
+        int start = offsets[2 * size];
+        ensureSlabCapacity(start + gid.size() + sortData.size());
+        gid.copyTo(slab, start);
+        offsets[2 * size + 1] = start + gid.size();
+        sortData.copyTo(slab, start + gid.size());
+        offsets[2 * size + 2] = start + gid.size() + sortData.size();
+        this.relevance[size] = Double.isNaN(relevance) ? Double.NEGATIVE_INFINITY : relevance;
+        return size++;
+    }
+
+    public void setMatchFeatures(int index, FeatureData features) {
+        if (matchFeatures == null)
+            matchFeatures = new FeatureData[this.relevance.length];
+        else if (matchFeatures.length <= index)
+            matchFeatures = Arrays.copyOf(matchFeatures, this.relevance.length);
+        matchFeatures[index] = features;
+    }
+
+    public int partId() { return partId; }
+    public int distributionKey() { return distributionKey; }
+    public double relevance(int index) { return relevance[checkIndex(index)]; }
+    public boolean hasSortData(int index) { return sortDataStart(index) < sortDataEnd(index); }
+    public byte[] gid(int index) { return Arrays.copyOfRange(slab, gidStart(index), sortDataStart(index)); }
+    public FeatureData matchFeatures(int index) {
+        checkIndex(index);
+        return matchFeatures != null && index < matchFeatures.length ? matchFeatures[index] : null;
+    }
+
+    /** Returns the sort data of the hit at this index, or null if it has none */
+    public byte[] sortData(int index) {
+        return hasSortData(index) ? Arrays.copyOfRange(slab, sortDataStart(index), sortDataEnd(index)) : null;
+    }
+
+    /** Compares the hit at the given index to the given hit, in the same way as {@link LeanHit#compareTo} */
+    public int compareTo(int index, LeanHit other) {
+        int res = hasSortData(index)
+                  ? Arrays.compareUnsigned(slab, sortDataStart(index), sortDataEnd(index), other.getSortData(), 0, other.getSortData().length)
+                  : Double.compare(other.getRelevance(), relevance[index]);
+        return (res != 0) ? res : Arrays.compareUnsigned(slab, gidStart(index), sortDataStart(index), other.getGid(), 0, other.getGid().length);
+    }
+
+    /** Materializes the hit at the given index */
+    @Override
+    public LeanHit get(int index) {
+        LeanHit hit = new LeanHit(gid(index), partId, distributionKey, relevance[index], sortData(index));
+        FeatureData features = matchFeatures(index);
+        if (features != null)
+            hit.setMatchFeatures(features);
+        return hit;
+    }
+
+    /** Materializes the hit at the given index as a FastHit */
+    public FastHit toFastHit(int index) {
+        return new FastHit(gid(index), relevance[checkIndex(index)], partId, distributionKey);
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public void clear() {
+        size = 0;
+        matchFeatures = null;
+    }
+
+    private int gidStart(int index) { return offsets[2 * checkIndex(index)]; }
+    private int sortDataStart(int index) { return offsets[2 * checkIndex(index) + 1]; }
+    private int sortDataEnd(int index) { return offsets[2 * checkIndex(index) + 2]; }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    private void ensureSlabCapacity(int capacity) {
+        if (capacity > slab.length)
+            slab = Arrays.copyOf(slab, Math.max(capacity, slab.length * 2));
+    }
+
+}
@@ -1,6 +1,10 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch;
 
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.search.dispatch.searchcluster.Group;
 
 import java.time.Duration;
@@ -12,6 +16,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.LongSupplier;
 import java.util.logging.Logger;
 
 /**
@@ -30,13 +35,18 @@ public class LoadBalancer {
     private static final double LATENCY_DECAY_TIME = Duration.ofSeconds(5).toMillis()/1000.0;
     private static final Duration INITIAL_QUERY_TIME = Duration.ofMillis(1);
     private static final double MIN_QUERY_TIME = Duration.ofMillis(1).toMillis()/1000.0;
+    private static final long STALE_LATENCY_NANOS = Duration.ofSeconds(1).toNanos();
 
     private final Map<Integer, GroupStatus> scoreboard;
     private final GroupScheduler scheduler;
 
-    public enum Policy { ROUNDROBIN, LATENCY_AMORTIZED_OVER_REQUESTS, LATENCY_AMORTIZED_OVER_TIME, BEST_OF_RANDOM_2}
+    public enum Policy { ROUNDROBIN, LATENCY_AMORTIZED_OVER_REQUESTS, LATENCY_AMORTIZED_OVER_TIME, BEST_OF_RANDOM_2, LATENCY_AWARE}
 
     public LoadBalancer(Collection<Group> groups, Policy policy) {
+        this(groups, policy, MetricReceiver.nullImplementation);
+    }
+
+    public LoadBalancer(Collection<Group> groups, Policy policy, MetricReceiver metric) {
         this.scoreboard = new HashMap<>();
         for (Group group : groups) {
             scoreboard.put(group.id(), new GroupStatus(group));
@@ -49,6 +59,7 @@ public class LoadBalancer {
             case BEST_OF_RANDOM_2: yield new BestOfRandom2(new Random(), scoreboard);
             case LATENCY_AMORTIZED_OVER_REQUESTS: yield new AdaptiveScheduler(AdaptiveScheduler.Type.REQUESTS, new Random(), scoreboard);
             case LATENCY_AMORTIZED_OVER_TIME: yield new AdaptiveScheduler(AdaptiveScheduler.Type.TIME, new Random(), scoreboard);
+            case LATENCY_AWARE: yield new LatencyAwareScheduler(scoreboard, metric);
         };
     }
 
@@ -60,8 +71,21 @@ public class LoadBalancer {
      * @return the node group to target, or <i>empty</i> if the internal dispatch logic cannot be used
      */
     public Optional<Group> takeGroup(Set<Integer> rejectedGroups) {
+        return takeGroup(rejectedGroups, null);
+    }
+
+    /**
+     * Select and allocate the search cluster group which is to be used for the next search query.
+     * Callers <b>must</b> call {@link #releaseGroup} symmetrically for each taken allocation.
+     *
+     * @param rejectedGroups if not null, the load balancer will only return groups with IDs not in the set
+     * @param timeLeft the time left of the query to dispatch, or null if not known. Used by schedulers which
+     *                 avoid groups which are predicted to not complete the query in time
+     * @return the node group to target, or <i>empty</i> if the internal dispatch logic cannot be used
+     */
+    public Optional<Group> takeGroup(Set<Integer> rejectedGroups, Duration timeLeft) {
         synchronized (this) {
-            Optional<GroupStatus> best = scheduler.takeNextGroup(rejectedGroups);
+            Optional<GroupStatus> best = scheduler.takeNextGroup(rejectedGroups, timeLeft);
 
             if (best.isPresent()) {
                 GroupStatus gs = best.get();
@@ -75,6 +99,17 @@ public class LoadBalancer {
         }
     }
 
+    /**
+     * Returns whether a query with the given time left should be rejected rather than dispatched,
+     * because none of the groups not rejected are predicted to complete it in time.
+     * This is only ever true with the {@link Policy#LATENCY_AWARE} policy.
+     */
+    public boolean shouldShed(Set<Integer> rejectedGroups, Duration timeLeft) {
+        synchronized (this) {
+            return scheduler.shouldShed(rejectedGroups, timeLeft);
+        }
+    }
+
     /**
      * Release an allocation given by {@link #takeGroup}. The release must be done exactly once for each allocation.
      *
@@ -132,6 +167,10 @@ public class LoadBalancer {
             return 1.0 / decayer.averageCost();
         }
 
+        int allocations() {
+            return allocations;
+        }
+
         int groupId() {
             return group.id();
         }
@@ -140,6 +179,10 @@ public class LoadBalancer {
 
     private interface GroupScheduler {
         Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups);
+        default Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups, Duration timeLeft) {
+            return takeNextGroup(rejectedGroups);
+        }
+        default boolean shouldShed(Set<Integer> rejectedGroups, Duration timeLeft) { return false; }
     }
 
     private static class RoundRobinScheduler implements GroupScheduler {
@@ -331,4 +374,179 @@ public class LoadBalancer {
 
     }
 
+    /**
+     * Selects the group with the lowest expected cost of one more query, given by its average latency
+     * times the number of queries in flight to it, among the groups which are predicted to complete
+     * the query within its time left. The completion time predicted for a group is its 99 percentile
+     * latency, scaled up by how much the queries in flight to it exceed the number normally in flight,
+     * such that groups which stall (e.g. due to GC or compaction) are avoided before the latency
+     * of the queries already sent to them is known.
+     * <p>
+     * Latencies are only known for queries which complete, so a group which has completed no queries for a while,
+     * and has none in flight, is never shed, and its latency stats restart from the next query it completes.
+     * Otherwise, shedding all queries would keep the predicted latencies from changing, and the cluster would
+     * stay rejected.
+     */
+    static class LatencyAwareScheduler implements GroupScheduler {
+
+        private final Map<Integer, GroupStatus> scoreboard;
+        private final Counter shedGroups;
+        private final Counter shedQueries;
+        private final Gauge predictedLatency;
+
+        LatencyAwareScheduler(Map<Integer, GroupStatus> scoreboard, MetricReceiver metric) {
+            this(scoreboard, metric, System::nanoTime);
+        }
+
+        LatencyAwareScheduler(Map<Integer, GroupStatus> scoreboard, MetricReceiver metric, LongSupplier nanoClock) {
+            this.scoreboard = scoreboard;
+            this.shedGroups = metric.declareCounter(ContainerMetrics.DISPATCH_GROUP_SHED.baseName());
+            this.shedQueries = metric.declareCounter(ContainerMetrics.DISPATCH_QUERY_SHED.baseName());
+            this.predictedLatency = metric.declareGauge(ContainerMetrics.DISPATCH_PREDICTED_LATENCY.baseName());
+            scoreboard.forEach((id, gs) -> gs.setDecayer(new LatencyStats(INITIAL_QUERY_TIME, 0.99, nanoClock)));
+        }
+
+        /** Tracks an exponentially weighted average, an estimated high percentile and the usual concurrency of a group */
+        static class LatencyStats implements GroupStatus.Decayer {
+
+            private static final double averageWeight = 0.05;
+
+            private final double percentile;
+            private final LongSupplier nanoClock;
+            private double average;
+            private double percentileLatency;
+            private double averageInFlight = 0;
+            private long lastSampleNanos;
+
+            /** Creates latency stats tracking the given percentile, given as a fraction */
+            LatencyStats(Duration initialSearchTime, double percentile) {
+                this(initialSearchTime, percentile, null);
+            }
+
+            /**
+             * Creates latency stats tracking the given percentile, given as a fraction, which become stale when
+             * no samples are added for a while, by the given clock, or never if this is null
+             */
+            LatencyStats(Duration initialSearchTime, double percentile, LongSupplier nanoClock) {
+                this.percentile = percentile;
+                this.nanoClock = nanoClock;
+                average = AdaptiveScheduler.toDouble(initialSearchTime);
+                percentileLatency = average;
+                lastSampleNanos = nanoClock == null ? 0 : nanoClock.getAsLong();
+            }
+
+            @Override
+            public void decay(RequestDuration duration) {
+                double searchTime = Math.max(AdaptiveScheduler.toDouble(duration.duration()), MIN_QUERY_TIME);
+                if (isStale()) {
+                    average = percentileLatency = searchTime;
+                }
+                if (nanoClock != null)
+                    lastSampleNanos = nanoClock.getAsLong();
+                average += averageWeight * (searchTime - average);
+                // Stochastic approximation of the percentile, moving in steps proportional to the average
+                double step = averageWeight * Math.max(average, searchTime - percentileLatency);
+                percentileLatency += (searchTime > percentileLatency) ? step * percentile : - step * (1 - percentile);
+                percentileLatency = Math.max(percentileLatency, average);
+            }
+
+            @Override
+            public double averageCost() { return average; }
+
+            /** Returns whether no samples have been added for so long that the predicted latency is not to be trusted */
+            boolean isStale() {
+                return nanoClock != null && nanoClock.getAsLong() - lastSampleNanos > STALE_LATENCY_NANOS;
+            }
+
+            void sampleInFlight(int inFlight) {
+                averageInFlight += averageWeight * (inFlight - averageInFlight);
+            }
+
+            /** Returns the predicted time to complete a query sent now, in seconds */
+            double predictedLatency(int inFlight) {
+                return percentileLatency * Math.max(1.0, (inFlight + 1) / (averageInFlight + 1));
+            }
+
+            Duration percentileLatency() { return AdaptiveScheduler.fromDouble(percentileLatency); }
+
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
+            return takeNextGroup(rejectedGroups, null);
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups, Duration timeLeft) {
+            GroupStatus best = selectBest(rejectedGroups, timeLeft, true);
+            if (best == null)
+                best = selectBest(rejectedGroups, timeLeft, false);
+            if (best == null) return Optional.empty();
+
+            LatencyStats stats = stats(best);
+            predictedLatency.sample(stats.predictedLatency(best.allocations) * 1000);
+            stats.sampleInFlight(best.allocations);
+            return Optional.of(best);
+        }
+
+        @Override
+        public boolean shouldShed(Set<Integer> rejectedGroups, Duration timeLeft) {
+            if (timeLeft == null) return false;
+            double secondsLeft = AdaptiveScheduler.toDouble(timeLeft);
+            for (GroupStatus gs : scoreboard.values()) {
+                if (rejectedGroups != null && rejectedGroups.contains(gs.groupId())) continue;
+                if (predictedLatency(gs) <= secondsLeft) return false;
+            }
+            shedQueries.add();
+            return true;
+        }
+
+        /**
+         * Returns the group with the lowest cost among those predicted to complete within the time left,
+         * or if there are none, the group predicted to complete first.
+         */
+        private GroupStatus selectBest(Set<Integer> rejectedGroups, Duration timeLeft, boolean requireCoverage) {
+            double secondsLeft = timeLeft == null ? Double.POSITIVE_INFINITY : AdaptiveScheduler.toDouble(timeLeft);
+            GroupStatus best = null;
+            double bestCost = Double.POSITIVE_INFINITY;
+            GroupStatus fastest = null;
+            double fastestLatency = Double.POSITIVE_INFINITY;
+            int shed = 0;
+            for (GroupStatus gs : scoreboard.values()) {
+                if (rejectedGroups != null && rejectedGroups.contains(gs.groupId())) continue;
+                if (requireCoverage && ! gs.group.hasSufficientCoverage()) continue;
+
+                double latency = predictedLatency(gs);
+                if (latency < fastestLatency) {
+                    fastest = gs;
+                    fastestLatency = latency;
+                }
+                if (latency > secondsLeft) {
+                    shed++;
+                    continue;
+                }
+                double cost = gs.decayer.averageCost() * (gs.allocations + 1);
+                if (cost < bestCost) {
+                    best = gs;
+                    bestCost = cost;
+                }
+            }
+            if (best == null) return fastest;
+            shedGroups.add(shed);
+            return best;
+        }
+
+        /** Returns the predicted latency of a query sent to the given group now, or 0 if this is not known */
+        private static double predictedLatency(GroupStatus gs) {
+            LatencyStats stats = stats(gs);
+            if (gs.allocations == 0 && stats.isStale()) return 0;
+            return stats.predictedLatency(gs.allocations);
+        }
+
+        private static LatencyStats stats(GroupStatus gs) {
+            return (LatencyStats)gs.decayer;
+        }
+
+    }
+
 }
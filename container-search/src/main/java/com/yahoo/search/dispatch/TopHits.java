@@ -0,0 +1,77 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Incrementally merges the sorted hit lists returned from content nodes into the best n hits,
+ * as each list arrives, such that no more than n hits are retained at any time.
+ * Hits which compare as equal are duplicates and are only kept once.
+ * <p>
+ * This is not multithread safe.
+ */
+class TopHits {
+
+    private final int maxHits;
+    private final TreeSet<LeanHit> hits = new TreeSet<>();
+    private int mergedLists = 0;
+    private long mergeNanos = 0;
+
+    TopHits(int maxHits) {
+        this.maxHits = maxHits;
+    }
+
+    /** Merges a list of hits, which must be sorted, into this */
+    void merge(List<LeanHit> partial) {
+        long start = System.nanoTime();
+        if (maxHits > 0) // otherwise no hits are kept, e.g. when only grouping or the total hit count is requested
+            addAll(partial);
+        mergedLists++;
+        mergeNanos += System.nanoTime() - start;
+    }
+
+    private void addAll(List<LeanHit> partial) {
+        if (partial instanceof LeanHits columns) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (isFull() && columns.compareTo(i, hits.last()) >= 0) break; // only materialize hits which may be kept
+                add(columns.get(i));
+            }
+        }
+        else {
+            for (LeanHit hit : partial) {
+                if (isFull() && hit.compareTo(hits.last()) >= 0) break; // this and all the remaining hits are worse
+                add(hit);
+            }
+        }
+    }
+
+    private void add(LeanHit hit) {
+        if (hits.add(hit) && hits.size() > maxHits)
+            hits.pollLast();
+    }
+
+    /** Returns whether this holds the max number of hits, such that only better hits will change it */
+    boolean isFull() { return hits.size() >= maxHits; }
+
+    int size() { return hits.size(); }
+
+    /** Returns the number of hit lists merged into this */
+    int mergedLists() { return mergedLists; }
+
+    /** Returns the total time spent merging hits into this, in nanoseconds */
+    long mergeNanos() { return mergeNanos; }
+
+    /** Returns the hits of this in order, skipping the given number of hits at the start */
+    List<LeanHit> hits(int offset) {
+        List<LeanHit> result = new ArrayList<>(Math.max(0, hits.size() - offset));
+        int index = 0;
+        for (LeanHit hit : hits) {
+            if (index++ >= offset)
+                result.add(hit);
+        }
+        return result;
+    }
+
+}
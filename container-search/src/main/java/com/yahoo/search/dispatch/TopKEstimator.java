@@ -75,5 +75,20 @@ public class TopKEstimator {
                 ? Math.min(k, (int)Math.ceil(estimateExactK(k, n, p)))
                 : k;
     }
+
+    /**
+     * Returns an upper estimate, with the default probability, of how many of the global top k hits
+     * may be held by the nodes which have not yet answered.
+     *
+     * @param k the number of top hits wanted
+     * @param answered the number of nodes which have answered
+     * @param n the total number of nodes asked
+     */
+    public int estimateMissingK(int k, int answered, int n) {
+        int missing = n - answered;
+        if (missing <= 0) return 0;
+        if ( ! estimate || n < MIN_N) return k;
+        return Math.min(k, (int)Math.ceil(missing * estimateExactK(k, n, defaultP)));
+    }
 }
 
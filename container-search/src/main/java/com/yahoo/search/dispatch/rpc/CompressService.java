@@ -26,6 +26,8 @@ public class CompressService implements CompressPayload {
     @Override
     public byte[] decompress(Client.ProtobufResponse response) {
         CompressionType compression = CompressionType.valueOf(response.compression());
+        if (compression == CompressionType.NONE || compression == CompressionType.INCOMPRESSIBLE)
+            return response.compressedPayload(); // owned by the response, so there's no need to copy it
         return compressor.decompress(response.compressedPayload(), compression, response.uncompressedSize());
     }
     Compressor compressor() { return compressor; }
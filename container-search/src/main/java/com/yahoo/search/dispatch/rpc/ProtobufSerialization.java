@@ -5,7 +5,10 @@ import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol.StringProperty;
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol.TensorProperty;
 import com.google.protobuf.ByteString;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
 import com.yahoo.data.access.helpers.MatchFeatureData;
 import com.yahoo.data.access.simple.Value;
 import com.yahoo.data.access.slime.SlimeAdapter;
@@ -18,7 +21,7 @@ import com.yahoo.prelude.fastsearch.VespaBackend;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.dispatch.InvokerResult;
-import com.yahoo.search.dispatch.LeanHit;
+import com.yahoo.search.dispatch.LeanHits;
 import com.yahoo.search.grouping.vespa.GroupingExecutor;
 import com.yahoo.search.query.Model;
 import com.yahoo.search.query.QueryTree;
@@ -28,11 +31,13 @@ import com.yahoo.search.query.Sorting.Order;
 import com.yahoo.search.query.profiling.Profiling;
 import com.yahoo.search.result.Coverage;
 import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.FeatureData;
 import com.yahoo.searchlib.aggregation.FS4Hit;
 import com.yahoo.searchlib.aggregation.Grouping;
 import com.yahoo.slime.BinaryFormat;
 import com.yahoo.vespa.objects.BufferSerializer;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -49,6 +54,8 @@ public class ProtobufSerialization {
      * There is a limited number of threads that will use this so the upper bound should be fine.
      */
     private static final ThreadLocal<GrowableByteBuffer> threadLocalBuffer = ThreadLocal.withInitial(() -> new GrowableByteBuffer(4096));
+    private static final int slimeSummariesTag = (SearchProtocol.DocsumReply.SLIME_SUMMARIES_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int errorsTag = (SearchProtocol.DocsumReply.ERRORS_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
 
     static byte[] serializeSearchRequest(Query query, int hits, String serverId, double requestTimeout) {
         return convertFromQuery(query, hits, serverId, requestTimeout).toByteArray();
@@ -229,15 +236,49 @@ public class ProtobufSerialization {
     }
 
     static InvokerResult deserializeToSearchResult(byte[] payload, Query query, VespaBackend searcher, int partId, int distKey)
-            throws InvalidProtocolBufferException {
-        var protobuf = SearchProtocol.SearchReply.parseFrom(payload);
+            throws IOException {
+        var protobuf = SearchProtocol.SearchReply.parseFrom(aliasingInput(payload));
         return convertToResult(query, protobuf, searcher.getDocumentDatabase(query), partId, distKey);
     }
 
+    /**
+     * Returns the slime summaries and errors of a docsum reply, where the slime summaries are
+     * a range of the given payload rather than a copy of it.
+     */
+    static DocsumReply deserializeDocsumReply(byte[] payload) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(payload);
+        int summariesOffset = 0;
+        int summariesLength = 0;
+        List<SearchProtocol.Error> errors = new ArrayList<>(0);
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            if (tag == slimeSummariesTag) {
+                summariesLength = input.readRawVarint32();
+                summariesOffset = input.getTotalBytesRead();
+                input.skipRawBytes(summariesLength);
+            } else if (tag == errorsTag) {
+                errors.add(input.readMessage(SearchProtocol.Error.parser(), ExtensionRegistryLite.getEmptyRegistry()));
+            } else if ( ! input.skipField(tag)) {
+                break;
+            }
+        }
+        return new DocsumReply(payload, summariesOffset, summariesLength, errors);
+    }
+
+    /** A decoded docsum reply, where the slime summaries are the given range of the reply payload */
+    record DocsumReply(byte[] payload, int summariesOffset, int summariesLength, List<SearchProtocol.Error> errors) {}
+
+    /** Returns an input parsing the given payload, where bytes fields are views into the payload rather than copies */
+    private static CodedInputStream aliasingInput(byte[] payload) {
+        CodedInputStream input = UnsafeByteOperations.unsafeWrap(payload).newCodedInput();
+        input.enableAliasing(true);
+        return input;
+    }
+
     static InvokerResult convertToResult(Query query, SearchProtocol.SearchReply protobuf,
                                          DocumentDatabase documentDatabase, int partId, int distKey)
     {
-        InvokerResult result = new InvokerResult(query, protobuf.getHitsCount());
+        LeanHits hits = new LeanHits(partId, distKey, protobuf.getHitsCount());
+        InvokerResult result = new InvokerResult(query, hits);
 
         result.getResult().setTotalHitCount(protobuf.getTotalHitCount());
         result.getResult().setCoverage(convertToCoverage(protobuf));
@@ -258,12 +299,11 @@ public class ProtobufSerialization {
                 list.add(g);
             }
             GroupingListHit hit = new GroupingListHit(list, documentDatabase, query);
+            hit.setSerializedSize(protobuf.getGroupingBlob().size());
             result.getResult().hits().add(hit);
         }
         for (var replyHit : protobuf.getHitsList()) {
-            LeanHit hit = (replyHit.getSortData().isEmpty())
-                    ? new LeanHit(replyHit.getGlobalId().toByteArray(), partId, distKey, replyHit.getRelevance())
-                    : new LeanHit(replyHit.getGlobalId().toByteArray(), partId, distKey, replyHit.getRelevance(), replyHit.getSortData().toByteArray());
+            int hit = hits.add(replyHit.getGlobalId(), replyHit.getRelevance(), replyHit.getSortData());
             if (haveMatchFeatures) {
                 var hitFeatures = matchFeatures.addHit();
                 var featureList = replyHit.getMatchFeaturesList();
@@ -277,12 +317,11 @@ public class ProtobufSerialization {
                             hitFeatures.set(idx++, tensorBlob.toByteArray());
                         }
                     }
-                    hit.addMatchFeatures(hitFeatures);
+                    hits.setMatchFeatures(hit, new FeatureData(hitFeatures));
                 } else {
                     result.getResult().hits().addError(ErrorMessage.createBackendCommunicationError("mismatch in match feature sizes"));
                 }
             }
-            result.getLeanHits().add(hit);
         }
 
         var slimeTrace = protobuf.getSlimeTrace();
@@ -2,7 +2,6 @@
 package com.yahoo.search.dispatch.rpc;
 
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
-import com.google.protobuf.InvalidProtocolBufferException;
 import com.yahoo.collections.ListMap;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.protect.Error;
@@ -22,6 +21,7 @@ import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.slime.BinaryFormat;
 import com.yahoo.slime.BinaryView;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -227,17 +227,17 @@ public class RpcProtobufFillInvoker extends FillInvoker {
 
     private List<FastHit> fill(Result result, List<FastHit> hits, String summaryClass, byte[] payload, boolean ignoreErrors) {
         try {
-            var protobuf = SearchProtocol.DocsumReply.parseFrom(payload);
+            var reply = ProtobufSerialization.deserializeDocsumReply(payload);
             var root = (decodePolicy == DecodePolicy.ONDEMAND)
-                    ? BinaryView.inspect(protobuf.getSlimeSummaries().toByteArray())
-                    : BinaryFormat.decode(protobuf.getSlimeSummaries().toByteArray()).get();
+                    ? BinaryView.inspect(reply.payload(), reply.summariesOffset(), reply.summariesLength())
+                    : BinaryFormat.decode(reply.payload(), reply.summariesOffset(), reply.summariesLength()).get();
             if (! ignoreErrors) {
                 var errors = root.field("errors");
                 boolean hasErrors = errors.valid() && (errors.entries() > 0);
                 if (hasErrors) {
                     addErrors(result, errors);
                 }
-                convertErrorsFromDocsumReply(result, protobuf.getErrorsList());
+                convertErrorsFromDocsumReply(result, reply.errors());
             }
             Inspector summaries = new SlimeAdapter(root.field("docsums"));
             if (!summaries.valid()) {
@@ -257,7 +257,7 @@ public class RpcProtobufFillInvoker extends FillInvoker {
                 }
             }
             return skippedHits;
-        } catch (InvalidProtocolBufferException ex) {
+        } catch (IOException ex) {
             if (! ignoreErrors) {
                 log.log(Level.WARNING, "Invalid response to docsum request", ex);
                 result.hits().addError(ErrorMessage.createInternalServerError("Invalid response to docsum request from backend"));
@@ -3,6 +3,7 @@ package com.yahoo.search.dispatch.searchcluster;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -29,6 +30,7 @@ public class Group {
     private volatile long targetActiveDocuments = 0;
     private volatile boolean isBlockingWrites = false;
     private volatile boolean isBalanced = true;
+    private final AtomicBoolean nodeStateChanged = new AtomicBoolean(true);
 
     public Group(int id, List<Node> nodes) {
         this.id = id;
@@ -37,6 +39,7 @@ public class Group {
         int idx = 0;
         for (var node: nodes) {
             node.setPathIndex(idx);
+            node.setOwningGroup(this);
             idx++;
         }
     }
@@ -109,6 +112,15 @@ public class Group {
         return activeDocuments() / nodes.size() < minDocsPerNodeToRequireLowSkew;
     }
 
+    /** Called by a node in this group when its state changes */
+    void nodeStateChanged() { nodeStateChanged.set(true); }
+
+    /** Returns whether the state of a node in this has changed since the last call to this, or since creation */
+    boolean takeNodeStateChanged() { return nodeStateChanged.getAndSet(false); }
+
+    /** Returns whether this had full coverage at the last check */
+    boolean hasFullCoverage() { return hasFullCoverage; }
+
     public boolean fullCoverageStatusChanged(boolean hasFullCoverageNow) {
         boolean previousState = hasFullCoverage;
         hasFullCoverage = hasFullCoverageNow;
@@ -0,0 +1,34 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.searchcluster;
+
+import com.yahoo.vespa.config.search.DispatchConfig;
+
+/**
+ * How the nodes of a search cluster are monitored.
+ *
+ * @param eventDriven whether the coverage of a group is only recomputed when the state of one of its nodes has changed,
+ *                    and nodes which have answered pings without any change for a while are pinged less often.
+ *                    Otherwise, all nodes are pinged and the coverage of all groups recomputed in every ping round
+ * @param stablePingRounds the number of unchanged pongs after which the number of rounds between pings of a node
+ *                         is doubled, when event driven
+ * @param maxRoundsBetweenPings the max number of ping rounds between each ping of a node which is stable,
+ *                              when event driven
+ */
+public record MonitoringPolicy(boolean eventDriven, int stablePingRounds, int maxRoundsBetweenPings) {
+
+    /** Pings all nodes and recomputes the coverage of all groups in every ping round */
+    public static final MonitoringPolicy periodic = new MonitoringPolicy(false, 1, 1);
+
+    public MonitoringPolicy {
+        if (stablePingRounds < 1)
+            throw new IllegalArgumentException("stablePingRounds must be at least 1, but was " + stablePingRounds);
+        if (maxRoundsBetweenPings < 1)
+            throw new IllegalArgumentException("maxRoundsBetweenPings must be at least 1, but was " + maxRoundsBetweenPings);
+    }
+
+    public static MonitoringPolicy from(DispatchConfig config) {
+        if ( ! config.eventDrivenMonitoring()) return periodic;
+        return new MonitoringPolicy(true, config.stablePingRounds(), config.maxPingRoundsBetweenStablePings());
+    }
+
+}
@@ -26,6 +26,13 @@ public class Node {
     private volatile boolean working = true;
     private volatile boolean isBlockingWrites = false;
 
+    /** The group this currently belongs to, which is notified when the state of this changes */
+    private volatile Group owningGroup = null;
+
+    // Used by the ping thread to skip pinging this when it has been stable for a while
+    private volatile int unchangedPongs = 0;
+    private volatile int pingRoundsToSkip = 0;
+
     public Node(String clusterName, int key, String hostname, int group) {
         this.clusterName = clusterName;
         this.key = key;
@@ -54,6 +61,10 @@ public class Node {
         pathIndex = index;
     }
 
+    void setOwningGroup(Group group) {
+        owningGroup = group;
+    }
+
     public String hostname() { return hostname; }
 
     /**
@@ -64,12 +75,16 @@ public class Node {
     public int group() { return group; }
 
     public void setWorking(boolean working) {
+        boolean changed = ! statusIsKnown || this.working != working;
         this.statusIsKnown = true;
         this.working = working;
         if ( ! working ) {
+            changed |= activeDocuments != 0 || targetActiveDocuments != 0;
             activeDocuments = 0;
             targetActiveDocuments = 0;
         }
+        if (changed)
+            stateChanged();
     }
 
     /** Returns whether this node is currently responding to requests, or null if status is not known */
@@ -78,17 +93,64 @@ public class Node {
     }
 
     /** Updates the active documents on this node */
-    public void setActiveDocuments(long documents) { this.activeDocuments = documents; }
-    public void setTargetActiveDocuments(long documents) { this.targetActiveDocuments = documents; }
+    public void setActiveDocuments(long documents) {
+        if (activeDocuments == documents) return;
+        this.activeDocuments = documents;
+        stateChanged();
+    }
+
+    public void setTargetActiveDocuments(long documents) {
+        if (targetActiveDocuments == documents) return;
+        this.targetActiveDocuments = documents;
+        stateChanged();
+    }
 
     /** Returns the active documents on this node. If unknown, 0 is returned. */
     long getActiveDocuments() { return activeDocuments; }
     long getTargetActiveDocuments() { return targetActiveDocuments; }
 
-    public void setBlockingWrites(boolean isBlockingWrites) { this.isBlockingWrites = isBlockingWrites; }
+    public void setBlockingWrites(boolean isBlockingWrites) {
+        if (this.isBlockingWrites == isBlockingWrites) return;
+        this.isBlockingWrites = isBlockingWrites;
+        stateChanged();
+    }
 
     boolean isBlockingWrites() { return isBlockingWrites; }
 
+    private void stateChanged() {
+        unchangedPongs = 0;
+        pingRoundsToSkip = 0;
+        Group group = owningGroup;
+        if (group != null)
+            group.nodeStateChanged();
+    }
+
+    /** Called when a pong is received from this node, after its state has been updated from it */
+    void pongReceived() { unchangedPongs++; }
+
+    /** Called when pinging this node failed */
+    void pongFailed() {
+        unchangedPongs = 0;
+        pingRoundsToSkip = 0;
+    }
+
+    /**
+     * Returns whether pinging this node should be skipped in the current ping round, because it is working and
+     * has answered pings without any change for a while. The number of rounds between pings is doubled each time
+     * this has answered the given number of stable rounds without change, up to the given max.
+     */
+    boolean skipPing(int stableRounds, int maxRoundsBetweenPings) {
+        if (pingRoundsToSkip > 0) {
+            pingRoundsToSkip--;
+            return true;
+        }
+        int unchanged = unchangedPongs;
+        if (isWorking() != Boolean.TRUE || unchanged < stableRounds) return false;
+        int roundsBetweenPings = (int)Math.min(maxRoundsBetweenPings, 1L << Math.min(30, unchanged / stableRounds));
+        pingRoundsToSkip = roundsBetweenPings - 1;
+        return false;
+    }
+
     @Override
     public int hashCode() { return Objects.hash(hostname, key, group); }
 
@@ -1,7 +1,12 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.dispatch.searchcluster;
 
+import ai.vespa.metrics.ContainerMetrics;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
 import com.yahoo.net.HostName;
 import com.yahoo.prelude.Pong;
 import com.yahoo.search.cluster.ClusterMonitor;
@@ -13,7 +18,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import static java.util.stream.Collectors.groupingBy;
@@ -21,6 +28,10 @@ import static java.util.stream.Collectors.toMap;
 
 /**
  * A model of a search cluster we might want to dispatch queries to.
+ * <p>
+ * With an event driven {@link MonitoringPolicy}, only the groups where the state of a node has changed since the last
+ * ping round are aggregated anew, coverage is not recomputed at all when no node has changed, and nodes which have
+ * been stable for a while are pinged less often.
  *
  * @author bratseth
  */
@@ -31,9 +42,14 @@ public class SearchCluster implements NodeManager<Node> {
     private final String clusterId;
     private final VipStatus vipStatus;
     private final PingFactory pingFactory;
+    private final MonitoringPolicy monitoring;
+    private final Gauge coverageComputationTime;
+    private final Counter skippedPings;
+    private final Map<Integer, Point> groupPoints = new ConcurrentHashMap<>();
     private volatile SearchGroupsImpl groups;           // Groups in this cluster
     private volatile SearchGroupsImpl monitoredGroups;  // Same as groups, except during reconfiguration.
     private volatile long nextLogTime = 0;
+    private final AtomicLong contentGeneration = new AtomicLong(0);
 
     /**
      * A search node on this local machine having the entire corpus, which we therefore
@@ -50,10 +66,23 @@ public class SearchCluster implements NodeManager<Node> {
         this(clusterId, toGroups(nodes, minActivedocsPercentage), vipStatus, pingFactory);
     }
 
+    public SearchCluster(String clusterId, double minActivedocsPercentage, Collection<Node> nodes,
+                         VipStatus vipStatus, PingFactory pingFactory, MonitoringPolicy monitoring, MetricReceiver metric) {
+        this(clusterId, toGroups(nodes, minActivedocsPercentage), vipStatus, pingFactory, monitoring, metric);
+    }
+
     public SearchCluster(String clusterId, SearchGroupsImpl groups, VipStatus vipStatus, PingFactory pingFactory) {
+        this(clusterId, groups, vipStatus, pingFactory, MonitoringPolicy.periodic, MetricReceiver.nullImplementation);
+    }
+
+    public SearchCluster(String clusterId, SearchGroupsImpl groups, VipStatus vipStatus, PingFactory pingFactory,
+                         MonitoringPolicy monitoring, MetricReceiver metric) {
         this.clusterId = clusterId;
         this.vipStatus = vipStatus;
         this.pingFactory = pingFactory;
+        this.monitoring = monitoring;
+        this.coverageComputationTime = metric.declareGauge(ContainerMetrics.DISPATCH_COVERAGE_COMPUTATION_TIME.baseName());
+        this.skippedPings = metric.declareCounter(ContainerMetrics.DISPATCH_SKIPPED_PINGS.baseName());
         this.monitoredGroups = groups;
         this.groups = groups;
         this.localCorpusDispatchTarget = findLocalCorpusDispatchTarget(HostName.getLocalhost(), groups);
@@ -77,6 +106,7 @@ public class SearchCluster implements NodeManager<Node> {
         this.monitoredGroups = groups;
         monitor.reconfigure(groups.nodes());
         this.groups = groups;
+        contentGeneration.incrementAndGet();
     }
 
     public void addMonitoring(ClusterMonitor<Node> clusterMonitor) {
@@ -113,6 +143,13 @@ public class SearchCluster implements NodeManager<Node> {
 
     public SearchGroups groupList() { return groups; }
 
+    /**
+     * Returns a number which changes whenever the content of this cluster is observed to change,
+     * that is, when the nodes of the cluster or the number of active documents on any node changes.
+     * This is a cheap, conservative signal for invalidating results cached in the container.
+     */
+    public long contentGeneration() { return contentGeneration.get(); }
+
     public Group group(int id) { return groups.get(id); }
 
     private Collection<Group> groups() { return groups.groups(); }
@@ -215,34 +252,57 @@ public class SearchCluster implements NodeManager<Node> {
     /** Used by the cluster monitor to manage node status */
     @Override
     public void ping(ClusterMonitor<Node> clusterMonitor, Node node, Executor executor) {
+        if (monitoring.eventDriven() && node.skipPing(monitoring.stablePingRounds(), monitoring.maxRoundsBetweenPings())) {
+            skippedPings.add();
+            return;
+        }
         log.fine(() -> "Pinging " + node);
-        Pinger pinger = pingFactory.createPinger(node, clusterMonitor, new PongCallback(node, clusterMonitor));
+        Pinger pinger = pingFactory.createPinger(node, clusterMonitor, new PongCallback(node, clusterMonitor, contentGeneration));
         pinger.ping();
     }
 
-    private void pingIterationCompletedSingleGroup(SearchGroupsImpl groups) {
+    private void pingIterationCompletedSingleGroup(SearchGroupsImpl groups, boolean aggregate, boolean hasInformationAboutAllNodes) {
         Group group = groups.groups().iterator().next();
-        group.aggregateNodeValues();
+        long startTime = System.nanoTime();
+        if (aggregate)
+            group.aggregateNodeValues();
         // With just one group sufficient coverage may not be the same as full coverage, as the
         // group will always be marked sufficient for use.
         updateSufficientCoverage(group, true);
         boolean sufficientCoverage = groups.isGroupCoverageSufficient(group.hasSufficientCoverage(),
                                                                       group.activeDocuments(), group.activeDocuments(), group.activeDocuments());
-        trackGroupCoverageChanges(group, sufficientCoverage, group.activeDocuments(), group.activeDocuments());
+        trackGroupCoverageChanges(group, sufficientCoverage, group.activeDocuments(), group.activeDocuments(), hasInformationAboutAllNodes);
+        sampleCoverageComputationTime(group, System.nanoTime() - startTime);
     }
 
-    private void pingIterationCompletedMultipleGroups(SearchGroupsImpl groups) {
-        groups.groups().forEach(Group::aggregateNodeValues);
+    private void pingIterationCompletedMultipleGroups(SearchGroupsImpl groups, Collection<Group> groupsToAggregate,
+                                                      boolean hasInformationAboutAllNodes) {
+        Map<Group, Long> aggregationNanos = new HashMap<>();
+        for (Group group : groupsToAggregate) {
+            long startTime = System.nanoTime();
+            group.aggregateNodeValues();
+            aggregationNanos.put(group, System.nanoTime() - startTime);
+        }
         long medianDocuments = groups.medianDocumentCount();
         long maxDocuments = groups.maxDocumentCount();
         for (Group group : groups.groups()) {
+            long startTime = System.nanoTime();
             boolean sufficientCoverage = groups.isGroupCoverageSufficient(group.hasSufficientCoverage(),
                                                                           group.activeDocuments(), medianDocuments, maxDocuments);
             updateSufficientCoverage(group, sufficientCoverage);
-            trackGroupCoverageChanges(group, sufficientCoverage, medianDocuments, maxDocuments);
+            trackGroupCoverageChanges(group, sufficientCoverage, medianDocuments, maxDocuments, hasInformationAboutAllNodes);
+            sampleCoverageComputationTime(group, System.nanoTime() - startTime + aggregationNanos.getOrDefault(group, 0L));
         }
     }
 
+    private void sampleCoverageComputationTime(Group group, long nanos) {
+        Point point = groupPoints.computeIfAbsent(group.id(), id -> coverageComputationTime.builder()
+                                                                                          .set("clusterid", clusterId)
+                                                                                          .set("group", id)
+                                                                                          .build());
+        coverageComputationTime.sample(nanos / 1_000_000.0, point);
+    }
+
     /**
      * Update statistics after a round of issuing pings.
      * Note that this doesn't wait for pings to return, so it will typically accumulate data from
@@ -254,18 +314,30 @@ public class SearchCluster implements NodeManager<Node> {
     }
 
     private void pingIterationCompleted(SearchGroupsImpl groups) {
+        Collection<Group> groupsToAggregate = groups.groups();
+        if (monitoring.eventDriven()) {
+            groupsToAggregate = groups.groups().stream().filter(Group::takeNodeStateChanged).toList();
+            if (groupsToAggregate.isEmpty() && ! isReducedCoverageLogDue(groups)) return; // coverage is unchanged
+        }
+        boolean hasInformationAboutAllNodes = hasInformationAboutAllNodes();
         if (groups.size() == 1) {
-            pingIterationCompletedSingleGroup(groups);
+            pingIterationCompletedSingleGroup(groups, ! groupsToAggregate.isEmpty(), hasInformationAboutAllNodes);
         } else {
-            pingIterationCompletedMultipleGroups(groups);
+            pingIterationCompletedMultipleGroups(groups, groupsToAggregate, hasInformationAboutAllNodes);
         }
     }
 
+    /** Returns whether it is time to repeat logging a group which has reduced coverage */
+    private boolean isReducedCoverageLogDue(SearchGroupsImpl groups) {
+        return System.currentTimeMillis() > nextLogTime && groups.groups().stream().anyMatch(group -> ! group.hasFullCoverage());
+    }
+
     /**
      * Calculate whether a subset of nodes in a group has enough coverage
      */
-    private void trackGroupCoverageChanges(Group group, boolean fullCoverage, long medianDocuments, long maxDocuments) {
-        if ( ! hasInformationAboutAllNodes()) return; // Be silent until we know what we are talking about.
+    private void trackGroupCoverageChanges(Group group, boolean fullCoverage, long medianDocuments, long maxDocuments,
+                                           boolean hasInformationAboutAllNodes) {
+        if ( ! hasInformationAboutAllNodes) return; // Be silent until we know what we are talking about.
         boolean changed = group.fullCoverageStatusChanged(fullCoverage);
         if (changed || (!fullCoverage && System.currentTimeMillis() > nextLogTime)) {
             nextLogTime = System.currentTimeMillis() + 30 * 1000;
@@ -297,24 +369,30 @@ public class SearchCluster implements NodeManager<Node> {
 
         private final ClusterMonitor<Node> clusterMonitor;
         private final Node node;
+        private final AtomicLong contentGeneration;
 
-        PongCallback(Node node, ClusterMonitor<Node> clusterMonitor) {
+        PongCallback(Node node, ClusterMonitor<Node> clusterMonitor, AtomicLong contentGeneration) {
             this.node = node;
             this.clusterMonitor = clusterMonitor;
+            this.contentGeneration = contentGeneration;
         }
 
         @Override
         public void handle(Pong pong) {
             log.fine(() -> "Got pong from " + node + ": " + pong);
             if (pong.badResponse()) {
+                node.pongFailed();
                 clusterMonitor.failed(node, pong.error().get());
             } else {
                 if (pong.activeDocuments().isPresent()) {
+                    if (node.getActiveDocuments() != pong.activeDocuments().get())
+                        contentGeneration.incrementAndGet();
                     node.setActiveDocuments(pong.activeDocuments().get());
                     node.setTargetActiveDocuments(pong.targetActiveDocuments().get());
                     node.setBlockingWrites(pong.isBlockingWrites());
                 }
                 clusterMonitor.responded(node);
+                node.pongReceived();
             }
         }
 
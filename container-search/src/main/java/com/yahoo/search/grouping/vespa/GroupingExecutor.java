@@ -11,6 +11,7 @@ import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.grouping.GroupingQueryParser;
 import com.yahoo.search.grouping.GroupingRequest;
 import com.yahoo.search.grouping.GroupingValidator;
 import com.yahoo.search.grouping.result.Group;
@@ -19,7 +20,11 @@ import com.yahoo.search.query.Trace;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
 import com.yahoo.search.searchchain.Execution;
+import com.yahoo.searchlib.aggregation.AggregationResult;
 import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.aggregation.GroupingLevel;
+import com.yahoo.searchlib.expression.ResultNode;
+import com.yahoo.vespa.objects.BufferSerializer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -34,6 +39,13 @@ import java.util.logging.Logger;
  * Executes the {@link GroupingRequest grouping requests} set up by other searchers. This does the necessary
  * transformation from the abstract request to Vespa grouping expressions (using {@link RequestBuilder}), and the
  * corresponding transformation of results (using {@link ResultBuilder}).
+ * <p>
+ * Groupings ordered by their aggregation results are normally executed in a single pass, where each content node
+ * returns precision groups with all their aggregates. If {@link GroupingQueryParser#PARAM_ADAPTIVE_PRECISION} is
+ * set, such groupings of a single level are instead executed in two passes: The first asks each node for only
+ * max groups, and the merged top groups become the candidates. The second pass asks only for the aggregates of
+ * the candidates, which are then exact. The bytes transferred in each pass, and how many of the candidates
+ * had exact aggregates already in the first pass, are traced at level 3.
  *
  * @author Simon Thoresen Hult
  */
@@ -88,7 +100,8 @@ public class GroupingExecutor extends Searcher {
         if (groupingMap.isEmpty()) return execution.search(query);
 
         // Perform the necessary passes to execute grouping.
-        Result result = performSearch(query, execution, groupingMap);
+        boolean adaptivePrecision = query.properties().getBoolean(GroupingQueryParser.PARAM_ADAPTIVE_PRECISION, false);
+        Result result = performSearch(query, execution, groupingMap, adaptivePrecision);
 
         // Convert Vespa style results to hits.
         HitConverter hitConverter = new HitConverter(this);
@@ -205,13 +218,19 @@ public class GroupingExecutor extends Searcher {
      * @param query       the query to execute
      * @param execution   the execution context used to run the queries
      * @param groupingMap the map of grouping requests to perform
+     * @param adaptivePrecision whether to execute groupings ordered by aggregates in two passes when possible
      * @return the search result to pass back from this searcher
      */
-    private Result performSearch(Query query, Execution execution, Map<Integer, Grouping> groupingMap) {
+    private Result performSearch(Query query, Execution execution, Map<Integer, Grouping> groupingMap,
+                                 boolean adaptivePrecision) {
         // Determine how many passes to perform.
         int lastPass = 0;
+        Map<Integer, AdaptiveGrouping> adaptiveGroupings = new HashMap<>();
         for (Grouping grouping : groupingMap.values()) {
-            if ( ! grouping.useSinglePass()) {
+            if (adaptivePrecision && AdaptiveGrouping.canApply(grouping)) {
+                adaptiveGroupings.put(grouping.getId(), new AdaptiveGrouping(grouping));
+                lastPass = Math.max(lastPass, 1);
+            } else if ( ! grouping.useSinglePass()) {
                 lastPass = Math.max(lastPass, grouping.getLevels().size());
             }
         }
@@ -228,7 +247,7 @@ public class GroupingExecutor extends Searcher {
         }
         for (int pass = 0; pass <= lastPass; ++pass) {
             boolean firstPass = (pass == 0);
-            List<Grouping> passList = getGroupingListForPassN(groupingMap, pass);
+            List<Grouping> passList = getGroupingListForPassN(groupingMap, adaptiveGroupings, pass);
             if (passList.isEmpty()) {
                 throw new RuntimeException("No grouping request for pass " + pass + ", bug!");
             }
@@ -254,8 +273,19 @@ public class GroupingExecutor extends Searcher {
             }
             setGroupingList(query, passList);
             Result passResult = execution.search(query);
+            if (query.getTrace().isTraceable(3)) {
+                query.trace("Grouping pass #" + pass + " sent " + serializedSize(passList) + " bytes per node and received " +
+                            receivedSize(passResult) + " bytes.", 3);
+            }
             Map<Integer, Grouping> passGroupingMap = mergeGroupingResults(passResult);
             mergeGroupingMaps(groupingMap, passGroupingMap);
+            if (pass == 1) {
+                for (AdaptiveGrouping adaptive : adaptiveGroupings.values()) {
+                    adaptive.completeExactPass();
+                    if (query.getTrace().isTraceable(3))
+                        query.trace(adaptive.toString(), 3);
+                }
+            }
             if (firstPass) {
                 ret = passResult;
             } else {
@@ -294,13 +324,24 @@ public class GroupingExecutor extends Searcher {
      * Returns a list of {@link Grouping} objects that are to be used for the given pass.
      *
      * @param groupingMap the map of all grouping objects
+     * @param adaptiveGroupings the groupings of the map which are executed in two passes with adaptive precision
      * @param pass        the pass about to be performed
      * @return a list of grouping objects
      */
-    private List<Grouping> getGroupingListForPassN(Map<Integer, Grouping> groupingMap, int pass) {
+    private List<Grouping> getGroupingListForPassN(Map<Integer, Grouping> groupingMap,
+                                                   Map<Integer, AdaptiveGrouping> adaptiveGroupings, int pass) {
         List<Grouping> ret = new ArrayList<>();
         for (Grouping grouping : groupingMap.values()) {
-            if (grouping.useSinglePass()) {
+            AdaptiveGrouping adaptive = adaptiveGroupings.get(grouping.getId());
+            if (adaptive != null) {
+                if (pass == 0) {
+                    adaptive.prepareCandidatePass();
+                    ret.add(grouping);
+                } else if (pass == 1) {
+                    adaptive.prepareExactPass();
+                    ret.add(grouping);
+                }
+            } else if (grouping.useSinglePass()) {
                 if (pass == 0) {
                     grouping.setFirstLevel(0);
                     grouping.setLastLevel(grouping.getLevels().size());
@@ -350,6 +391,22 @@ public class GroupingExecutor extends Searcher {
         return ret;
     }
 
+    private static long serializedSize(List<Grouping> groupingList) {
+        BufferSerializer buffer = new BufferSerializer();
+        for (Grouping grouping : groupingList)
+            grouping.serialize(buffer);
+        return buffer.position();
+    }
+
+    private static long receivedSize(Result result) {
+        long size = 0;
+        for (Iterator<Hit> i = result.hits().unorderedIterator(); i.hasNext(); ) {
+            if (i.next() instanceof GroupingListHit groupingListHit)
+                size += groupingListHit.getSerializedSize();
+        }
+        return size;
+    }
+
     /**
      * Returns the list of {@link Grouping} objects assigned to the given query. If no list has been assigned, this
      * method returns an empty list.
@@ -386,6 +443,102 @@ public class GroupingExecutor extends Searcher {
         return CompoundName.from(GroupingExecutor.class.getName() + "." + name);
     }
 
+    /**
+     * A single level grouping ordered by aggregates which is executed in two passes: The first collects max
+     * candidate groups from each node, and the second collects the exact aggregates of the merged candidates,
+     * using that the groups of levels before the first level of a grouping are frozen on the content nodes.
+     */
+    static class AdaptiveGrouping {
+
+        private final Grouping grouping;
+        private final GroupingLevel level;
+        private final long precision;
+        private List<com.yahoo.searchlib.aggregation.Group> candidates = List.of();
+        private int exactCandidates = 0;
+        private boolean orderChanged = false;
+
+        AdaptiveGrouping(Grouping grouping) {
+            this.grouping = grouping;
+            this.level = grouping.getLevels().get(0);
+            this.precision = level.getPrecision();
+        }
+
+        /** Returns whether the given grouping would transfer fewer groups when executed in two passes */
+        static boolean canApply(Grouping grouping) {
+            if (grouping.getForceSinglePass() || grouping.getLevels().size() != 1) return false;
+            GroupingLevel level = grouping.getLevels().get(0);
+            return level.needResultCollection() && level.getMaxGroups() > 0 && level.getPrecision() > level.getMaxGroups();
+        }
+
+        /** Sets up the grouping to collect just max groups, with their aggregates, from each node */
+        void prepareCandidatePass() {
+            level.setPrecision(level.getMaxGroups());
+            grouping.setFirstLevel(0);
+            grouping.setLastLevel(1);
+        }
+
+        /**
+         * Replaces the groups merged in the candidate pass by empty groups with the same ids,
+         * and sets up the grouping to collect only the aggregates of those.
+         */
+        void prepareExactPass() {
+            com.yahoo.searchlib.aggregation.Group merged = grouping.getRoot();
+            candidates = merged.getChildren();
+            com.yahoo.searchlib.aggregation.Group root = new com.yahoo.searchlib.aggregation.Group()
+                    .setTag(merged.getTag())
+                    .setRank(merged.getRank());
+            for (AggregationResult result : merged.getAggregationResults())
+                root.addAggregationResult(result);
+            for (com.yahoo.searchlib.aggregation.Group candidate : candidates)
+                root.addChild(level.getGroupPrototype().clone().setId(candidate.getId()).setRank(candidate.getRank()));
+            grouping.setRoot(root);
+            level.setPrecision(precision);
+            grouping.setFirstLevel(1);
+            grouping.setLastLevel(1);
+        }
+
+        /** Orders the candidates by their exact aggregates, and compares them with those of the candidate pass */
+        void completeExactPass() {
+            grouping.postMerge();
+            Map<ResultNode, com.yahoo.searchlib.aggregation.Group> exact = new HashMap<>();
+            for (com.yahoo.searchlib.aggregation.Group group : grouping.getRoot().getChildren())
+                exact.put(group.getId(), group);
+            exactCandidates = 0;
+            for (com.yahoo.searchlib.aggregation.Group candidate : candidates) {
+                var group = exact.get(candidate.getId());
+                if (group != null && group.getAggregationResults().equals(candidate.getAggregationResults()))
+                    exactCandidates++;
+            }
+            grouping.getRoot().sortChildrenByRank();
+            List<com.yahoo.searchlib.aggregation.Group> ordered = grouping.getRoot().getChildren();
+            var candidatesByRank = new com.yahoo.searchlib.aggregation.Group();
+            candidates.forEach(candidatesByRank::addChild);
+            candidatesByRank.sortChildrenByRank();
+            orderChanged = ! ids(ordered).equals(ids(candidatesByRank.getChildren()));
+        }
+
+        private static List<ResultNode> ids(List<com.yahoo.searchlib.aggregation.Group> groups) {
+            return groups.stream().map(com.yahoo.searchlib.aggregation.Group::getId).toList();
+        }
+
+        /** Returns the number of candidate groups whose aggregates were exact already in the candidate pass */
+        int exactCandidates() { return exactCandidates; }
+
+        /** Returns the number of candidate groups */
+        int candidates() { return candidates.size(); }
+
+        /** Returns whether the order of the candidates changed when their exact aggregates were collected */
+        boolean orderChanged() { return orderChanged; }
+
+        @Override
+        public String toString() {
+            return "Grouping(" + grouping.getId() + ") with adaptive precision: " + exactCandidates + " of " +
+                   candidates.size() + " candidate groups had exact aggregates after the first pass" +
+                   (orderChanged ? ", and their order changed." : ".");
+        }
+
+    }
+
     private static class RequestContext {
 
         final List<Integer> idList = new LinkedList<>();
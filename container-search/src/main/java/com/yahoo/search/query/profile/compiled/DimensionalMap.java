@@ -5,31 +5,132 @@ import com.google.common.collect.ImmutableMap;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.query.profile.DimensionBinding;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A map which may return different values depending on the values given in a context
  * supplied with the key on all operations.
  * <p>
- * Dimensional maps are immutable and created through a DimensionalMap.Builder
+ * Dimensional maps are immutable and created through a DimensionalMap.Builder.
+ * Values are resolved into a table indexed by key for each combination of dimension values as they are looked up,
+ * such that later lookups in contexts with the same dimension values are a key index lookup and an array access.
+ * These tables are dropped with the map when query profiles are reconfigured.
  *
  * @author bratseth
  */
 public class DimensionalMap<VALUE> {
 
+    /**
+     * The max number of combinations of dimension values to keep resolved tables for.
+     * Lookups in further combinations resolve the value of the key in the context each time.
+     */
+    private static final int maxResolvedContexts = 128;
+
+    /** The size of the hash table of resolved tables, a power of two larger than the max number of them */
+    private static final int resolvedSlots = 2 * maxResolvedContexts;
+
+    /** Marks a key which has no value in a resolved table */
+    private static final Object noValue = new Object();
+
     private final Map<CompoundName, DimensionalValue<VALUE>> values;
 
+    /** The index of each key in the resolved tables */
+    private final Map<CompoundName, Integer> indexes;
+
+    /** The values of each key, by index */
+    private final List<DimensionalValue<VALUE>> valuesByIndex;
+
+    /** The dimensions which have values in any variant in this */
+    private final String[] dimensions;
+
+    /**
+     * The values resolved so far, in an open addressing hash table by the values of this' dimensions in the
+     * contexts they are resolved for, such that looking up the table of a context allocates nothing.
+     * Each table is indexed by key index, and holds null for keys not resolved yet.
+     */
+    private final AtomicReferenceArray<ResolvedContext> resolved = new AtomicReferenceArray<>(resolvedSlots);
+
+    /** The number of resolved tables */
+    private final AtomicInteger resolvedCount = new AtomicInteger();
+
     private DimensionalMap(Map<CompoundName, DimensionalValue<VALUE>> values) {
         this.values = ImmutableMap.copyOf(values);
+        Map<CompoundName, Integer> indexes = new HashMap<>();
+        List<DimensionalValue<VALUE>> valuesByIndex = new ArrayList<>(values.size());
+        Set<String> dimensions = new TreeSet<>();
+        for (var entry : this.values.entrySet()) {
+            indexes.put(entry.getKey(), valuesByIndex.size());
+            valuesByIndex.add(entry.getValue());
+            entry.getValue().collectDimensions(dimensions);
+        }
+        this.indexes = ImmutableMap.copyOf(indexes);
+        this.valuesByIndex = List.copyOf(valuesByIndex);
+        this.dimensions = dimensions.toArray(new String[0]);
     }
 
     /** Returns the value for this key matching a context, or null if none */
+    @SuppressWarnings("unchecked")
     public VALUE get(CompoundName key, Map<String, String> context) {
-        DimensionalValue<VALUE> variants = values.get(key);
-        if (variants == null) return null;
-        return variants.get(context);
+        Integer index = indexes.get(key);
+        if (index == null) return null;
+
+        Object[] table = resolvedTable(context);
+        if (table == null) return valuesByIndex.get(index).get(context);
+
+        // Values are immutable and the same for all threads, so racing to resolve one is harmless
+        Object value = table[index];
+        if (value == null) {
+            value = valuesByIndex.get(index).get(context);
+            table[index] = value = value == null ? noValue : value;
+        }
+        return value == noValue ? null : (VALUE)value;
+    }
+
+    /** Returns the table of resolved values for this context, or null if there are too many to keep one for it */
+    private Object[] resolvedTable(Map<String, String> context) {
+        int hash = contextHash(context);
+        for (int probe = 0; probe < resolvedSlots; probe++) {
+            int slot = (hash + probe) & (resolvedSlots - 1);
+            ResolvedContext resolvedContext = resolved.get(slot);
+            if (resolvedContext == null) {
+                if (resolvedCount.get() >= maxResolvedContexts) return null;
+                resolvedContext = new ResolvedContext(dimensionValues(context), hash, new Object[valuesByIndex.size()]);
+                if (resolved.compareAndSet(slot, null, resolvedContext)) {
+                    resolvedCount.incrementAndGet();
+                    return resolvedContext.table();
+                }
+                resolvedContext = resolved.get(slot); // Another thread added one here first
+            }
+            if (resolvedContext.hash() == hash && resolvedContext.matches(dimensions, context))
+                return resolvedContext.table();
+        }
+        return null;
+    }
+
+    /** Returns a hash of the values of the dimensions of this in the given context */
+    private int contextHash(Map<String, String> context) {
+        int hash = 1;
+        for (String dimension : dimensions)
+            hash = 31 * hash + Objects.hashCode(context == null ? null : context.get(dimension));
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the values of the dimensions of this in the given context, which determines the values of all keys */
+    private String[] dimensionValues(Map<String, String> context) {
+        String[] dimensionValues = new String[dimensions.length];
+        if (context != null) {
+            for (int i = 0; i < dimensions.length; i++)
+                dimensionValues[i] = context.get(dimensions[i]);
+        }
+        return dimensionValues;
     }
 
     /** Returns the set of dimensional entries across all contexts. */
@@ -42,6 +143,20 @@ public class DimensionalMap<VALUE> {
         return values.isEmpty();
     }
 
+    /** The values resolved for a combination of dimension values */
+    private record ResolvedContext(String[] dimensionValues, int hash, Object[] table) {
+
+        /** Returns whether the given context has the dimension values of this */
+        boolean matches(String[] dimensions, Map<String, String> context) {
+            for (int i = 0; i < dimensions.length; i++) {
+                if ( ! Objects.equals(dimensionValues[i], context == null ? null : context.get(dimensions[i])))
+                    return false;
+            }
+            return true;
+        }
+
+    }
+
     public static class Builder<VALUE> {
 
         private final Map<CompoundName, DimensionalValue.Builder<VALUE>> entries = new HashMap<>();
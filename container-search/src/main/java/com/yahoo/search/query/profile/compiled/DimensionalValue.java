@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Contains the values a given key in a DimensionalMap may take for different dimensional contexts.
@@ -54,6 +55,12 @@ public class DimensionalValue<VALUE> {
 
     public boolean isEmpty() { return indexedVariants.isEmpty(); }
 
+    /** Adds the dimensions which have values in some variant of this to the given set */
+    void collectDimensions(Set<String> dimensions) {
+        for (BindingSpec spec : bindingSpecs)
+            dimensions.addAll(Arrays.asList(spec.dimensions()));
+    }
+
     @Override
     public String toString() {
         return indexedVariants.toString();
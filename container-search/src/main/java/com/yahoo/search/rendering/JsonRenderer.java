@@ -49,6 +49,7 @@ import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.serialization.JsonFormat;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
@@ -79,6 +80,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final CompoundName WRAP_DEEP_MAPS = CompoundName.from("renderer.json.jsonMaps");
     private static final CompoundName WRAP_WSETS = CompoundName.from("renderer.json.jsonWsets");
     private static final CompoundName DEBUG_RENDERING_KEY = CompoundName.from("renderer.json.debug");
+    private static final CompoundName DIRECT_UTF8 = CompoundName.from("renderer.json.directUtf8");
     private static final CompoundName JSON_CALLBACK = CompoundName.from("jsoncallback");
 
     // if this must be optimized, simply use com.fasterxml.jackson.core.SerializableString
@@ -120,6 +122,9 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
     private static final String GROUPING_VALUE = "value";
     private static final String VESPA_HIDDEN_FIELD_PREFIX = "$";
 
+    /** The number of rendered bytes after which the output is flushed at the end of the next hit */
+    private static final int FLUSH_BYTES = 1 << 16;
+
     private static final JsonFactory generatorFactory = createGeneratorFactory();
 
     private volatile JsonGenerator generator;
@@ -134,6 +139,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         volatile boolean jsonWsetsAll = false;
         volatile boolean tensorShortForm = true;
         volatile boolean tensorDirectValues = false;
+        volatile boolean directUtf8 = true;
         boolean convertDeep() { return (jsonDeepMaps || jsonWsets); }
         void init() {
             this.debugRendering = false;
@@ -143,6 +149,7 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             this.jsonWsetsAll = true;
             this.tensorShortForm = true;
             this.tensorDirectValues = false;
+            this.directUtf8 = true;
         }
         void getSettings(Query q) {
             if (q == null) {
@@ -158,12 +165,15 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             this.jsonWsetsAll = props.getBoolean(WRAP_WSETS, true);
             this.tensorShortForm = q.getPresentation().getTensorShortForm();
             this.tensorDirectValues = q.getPresentation().getTensorDirectValues();
-            }
+            this.directUtf8 = props.getBoolean(DIRECT_UTF8, true);
+        }
     }
 
     private volatile FieldConsumerSettings fieldConsumerSettings;
     private volatile LongSupplier timeSource;
     private volatile OutputStream stream;
+    /** The output of the generator when flushing while rendering hits, or null if not */
+    private volatile FlushCountingStream flushingOutput;
 
     public JsonRenderer() {
         this(null);
@@ -192,13 +202,17 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         renderedChildren = null;
         timeSource = System::currentTimeMillis;
         stream = null;
+        flushingOutput = null;
     }
 
     @Override
     public void beginResponse(OutputStream stream) throws IOException {
         beginJsonCallback(stream);
         fieldConsumerSettings.getSettings(getResult().getQuery());
-        setGenerator(generatorFactory.createGenerator(stream, JsonEncoding.UTF8), fieldConsumerSettings);
+        if (fieldConsumerSettings.directUtf8)
+            flushingOutput = new FlushCountingStream(stream);
+        setGenerator(generatorFactory.createGenerator(flushingOutput != null ? flushingOutput : stream, JsonEncoding.UTF8),
+                     fieldConsumerSettings);
         renderedChildren = new ArrayDeque<>();
         generator.writeStartObject();
         renderTrace(getExecution().trace());
@@ -350,6 +364,14 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         generator.writeStartObject();
         renderHitContents(hit);
         generator.writeEndObject();
+        flushIfFull();
+    }
+
+    /** Passes rendered hits on to the network as we go, rather than at the end of each list */
+    private void flushIfFull() throws IOException {
+        if (flushingOutput == null) return;
+        if (flushingOutput.unflushed() + Math.max(0, generator.getOutputBuffered()) < FLUSH_BYTES) return;
+        generator.flush();
     }
 
     protected boolean shouldRender(Hit hit) {
@@ -554,6 +576,8 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
      */
     public static class FieldConsumer implements Hit.RawUtf8Consumer, TraceRenderer.FieldConsumer {
 
+        private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
         private final JsonGenerator generator;
         private final FieldConsumerSettings settings;
         private MutableBoolean hasFieldsField;
@@ -753,7 +777,51 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         }
 
         private void renderInspectorDirect(Inspector data) throws IOException {
-            generator().writeRawValue(JsonRender.render(data, new StringBuilder(), true).toString());
+            if (settings.directUtf8)
+                writeInspector(data);
+            else
+                generator().writeRawValue(JsonRender.render(data, new StringBuilder(), true).toString());
+        }
+
+        /** Writes the given value in the same way as {@link JsonRender}, but directly to the generator */
+        private void writeInspector(Inspector data) throws IOException {
+            switch (data.type()) {
+                case EMPTY -> generator().writeNull();
+                case BOOL -> generator().writeBoolean(data.asBool());
+                case LONG -> generator().writeNumber(data.asLong());
+                case DOUBLE -> {
+                    if (Double.isFinite(data.asDouble()))
+                        generator().writeNumber(data.asDouble());
+                    else
+                        generator().writeNull();
+                }
+                case STRING -> {
+                    byte[] utf8 = data.asUtf8();
+                    generator().writeUTF8String(utf8, 0, utf8.length);
+                }
+                case DATA -> generator().writeString(toHex(data.asData()));
+                case ARRAY -> {
+                    generator().writeStartArray();
+                    for (int i = 0; i < data.entryCount(); i++)
+                        writeInspector(data.entry(i));
+                    generator().writeEndArray();
+                }
+                case OBJECT -> {
+                    generator().writeStartObject();
+                    for (Map.Entry<String, Inspector> field : data.fields()) {
+                        generator().writeFieldName(field.getKey());
+                        writeInspector(field.getValue());
+                    }
+                    generator().writeEndObject();
+                }
+            }
+        }
+
+        private static String toHex(byte[] data) {
+            StringBuilder b = new StringBuilder(2 + data.length * 2).append("0x");
+            for (byte value : data)
+                b.append(HEX[(value >> 4) & 0xf]).append(HEX[value & 0xf]);
+            return b.toString();
         }
 
         protected void renderFieldContents(Object field) throws IOException {
@@ -815,9 +883,12 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
         }
 
         private void renderTensor(Optional<Tensor> tensor) throws IOException {
-            generator().writeRawValue(new String(JsonFormat.encode(tensor.orElse(Tensor.Builder.of(TensorType.empty).build()),
-                                                                   settings.tensorShortForm, settings.tensorDirectValues),
-                                                 StandardCharsets.UTF_8));
+            byte[] json = JsonFormat.encode(tensor.orElse(Tensor.Builder.of(TensorType.empty).build()),
+                                            settings.tensorShortForm, settings.tensorDirectValues);
+            if (settings.directUtf8)
+                generator().writeRawValue(new RawUtf8Value(json));
+            else
+                generator().writeRawValue(new String(json, StandardCharsets.UTF_8));
         }
 
         private JsonGenerator generator() {
@@ -829,4 +900,35 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
 
     }
 
+    /** Counts the bytes written to a stream since it was last flushed */
+    private static final class FlushCountingStream extends FilterOutputStream {
+
+        private long unflushed = 0;
+
+        FlushCountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            unflushed++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            unflushed += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            unflushed = 0;
+        }
+
+        long unflushed() { return unflushed; }
+
+    }
+
 }
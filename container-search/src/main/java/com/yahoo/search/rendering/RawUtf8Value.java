@@ -0,0 +1,101 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An already encoded JSON value in UTF-8, which lets a generator copy the bytes to its output
+ * without decoding them to a String and encoding them again.
+ * Only the unquoted UTF-8 methods are used when writing raw values. The quoted methods return the
+ * JSON escaped value, as other serializable strings do.
+ */
+final class RawUtf8Value implements SerializableString {
+
+    private final byte[] utf8;
+
+    /** The value of this as a serialized string which escapes it, or null if not needed yet */
+    private SerializedString quoted = null;
+
+    RawUtf8Value(byte[] utf8) {
+        this.utf8 = utf8;
+    }
+
+    @Override
+    public String getValue() { return new String(utf8, StandardCharsets.UTF_8); }
+
+    @Override
+    public int charLength() { return getValue().length(); }
+
+    @Override
+    public char[] asQuotedChars() { return quoted().asQuotedChars(); }
+
+    @Override
+    public byte[] asUnquotedUTF8() { return utf8; }
+
+    @Override
+    public byte[] asQuotedUTF8() { return quoted().asQuotedUTF8(); }
+
+    @Override
+    public int appendQuotedUTF8(byte[] buffer, int offset) {
+        return quoted().appendQuotedUTF8(buffer, offset);
+    }
+
+    @Override
+    public int appendQuoted(char[] buffer, int offset) {
+        return quoted().appendQuoted(buffer, offset);
+    }
+
+    @Override
+    public int appendUnquotedUTF8(byte[] buffer, int offset) {
+        if (offset + utf8.length > buffer.length) return -1;
+        System.arraycopy(utf8, 0, buffer, offset, utf8.length);
+        return utf8.length;
+    }
+
+    @Override
+    public int appendUnquoted(char[] buffer, int offset) {
+        String value = getValue();
+        if (offset + value.length() > buffer.length) return -1;
+        value.getChars(0, value.length(), buffer, offset);
+        return value.length();
+    }
+
+    @Override
+    public int writeQuotedUTF8(OutputStream out) throws IOException {
+        return quoted().writeQuotedUTF8(out);
+    }
+
+    @Override
+    public int writeUnquotedUTF8(OutputStream out) throws IOException {
+        out.write(utf8);
+        return utf8.length;
+    }
+
+    @Override
+    public int putQuotedUTF8(ByteBuffer buffer) {
+        return quoted().putQuotedUTF8(buffer);
+    }
+
+    @Override
+    public int putUnquotedUTF8(ByteBuffer buffer) {
+        if (utf8.length > buffer.remaining()) return -1;
+        buffer.put(utf8);
+        return utf8.length;
+    }
+
+    @Override
+    public String toString() { return getValue(); }
+
+    private SerializedString quoted() {
+        if (quoted == null)
+            quoted = new SerializedString(getValue());
+        return quoted;
+    }
+
+}
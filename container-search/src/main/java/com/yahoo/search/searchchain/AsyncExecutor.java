@@ -0,0 +1,144 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.container.QrSearchersConfig;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The executor of asynchronous executions, which runs them either on the container thread pool,
+ * or each on a new virtual thread, and tracks their concurrency.
+ * <p>
+ * Timeouts and cancellation work the same way in both modes: Callers wait for the tasks with a timeout,
+ * and cancelling a task interrupts the thread running it.
+ * <p>
+ * Virtual threads and the events telling when they pin their carrier thread are looked up at runtime,
+ * as they are not available in the Java version this is compiled for.
+ */
+final class AsyncExecutor implements Executor, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(AsyncExecutor.class.getName());
+
+    private static final String pinnedEvent = "jdk.VirtualThreadPinned";
+
+    /** Only pinning for longer than this is counted, which is also the JVM default for the pinned event */
+    private static final Duration pinnedThreshold = Duration.ofMillis(20);
+
+    private final Executor executor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter taskCounter;
+    private final Gauge activeGauge;
+    private final AutoCloseable pinnedEvents;
+
+    private AsyncExecutor(Executor executor, MetricReceiver metric, AutoCloseable pinnedEvents) {
+        this.executor = executor;
+        this.taskCounter = metric.declareCounter(ContainerMetrics.SEARCH_ASYNC_TASKS.baseName());
+        this.activeGauge = metric.declareGauge(ContainerMetrics.SEARCH_ASYNC_ACTIVE.baseName());
+        this.pinnedEvents = pinnedEvents;
+    }
+
+    /** Returns an executor running tasks on the given executor */
+    static AsyncExecutor onPool(Executor pool, MetricReceiver metric) {
+        return new AsyncExecutor(pool, metric, () -> { });
+    }
+
+    /** Returns an executor running each task on a new thread from the given factory */
+    static AsyncExecutor onThreads(ThreadFactory threads, MetricReceiver metric, AutoCloseable pinnedEvents) {
+        return new AsyncExecutor(task -> threads.newThread(task).start(), metric, pinnedEvents);
+    }
+
+    /** Returns an executor of the type configured, falling back to the given pool if virtual threads are not available */
+    static AsyncExecutor create(QrSearchersConfig.AsyncExecution.Enum type, Executor pool, MetricReceiver metric) {
+        if (type != QrSearchersConfig.AsyncExecution.VIRTUAL_THREADS) return onPool(pool, metric);
+
+        Optional<ThreadFactory> virtualThreads = virtualThreadFactory();
+        if (virtualThreads.isEmpty()) {
+            log.log(Level.WARNING, "Virtual threads are not available in this JVM: Running asynchronous executions " +
+                                   "on the container thread pool");
+            return onPool(pool, metric);
+        }
+        Counter pinnedCounter = metric.declareCounter(ContainerMetrics.SEARCH_ASYNC_PINNED.baseName());
+        return onThreads(virtualThreads.get(), metric, countEvents(pinnedEvent, pinnedThreshold, __ -> pinnedCounter.add()));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        taskCounter.add();
+        activeGauge.sample(active.incrementAndGet());
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                }
+                finally {
+                    active.decrementAndGet();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            active.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /** Returns the number of tasks submitted to this which have not completed */
+    int active() { return active.get(); }
+
+    @Override
+    public void close() {
+        try {
+            pinnedEvents.close();
+        }
+        catch (Exception e) {
+            log.log(Level.FINE, "Failed closing the pinned thread event stream", e);
+        }
+    }
+
+    /** Returns a factory of virtual threads if this JVM has them */
+    static Optional<ThreadFactory> virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "search-async-", 0L);
+            return Optional.of((ThreadFactory)builderClass.getMethod("factory").invoke(builder));
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Starts streaming the given JFR event to the given consumer and returns the stream to close,
+     * or a no-op closeable if that is not possible.
+     */
+    private static AutoCloseable countEvents(String event, Duration threshold, Consumer<Object> consumer) {
+        try {
+            ClassLoader loader = ClassLoader.getPlatformClassLoader();
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream", true, loader);
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings", true, loader);
+            AutoCloseable stream = (AutoCloseable)streamClass.getConstructor().newInstance();
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, event);
+            settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, threshold);
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, event, consumer);
+            streamClass.getMethod("startAsync").invoke(stream);
+            return stream;
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            log.log(Level.INFO, "Could not listen for " + event + " events: Pinned virtual threads will not be counted", e);
+            return () -> { };
+        }
+    }
+
+}
@@ -87,6 +87,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
 
         private Executor executor;
 
+        /** Samples the cost of each searcher in some executions */
+        private SearcherProfiler profiler = SearcherProfiler.disabled;
+
         /** Always set if this context belongs to an execution, never set if it does not. */
         private final Execution owner;
 
@@ -203,6 +206,7 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             if (linguistics == null)
                 linguistics = sourceContext.linguistics;
             executor = sourceContext.executor; // executor will always either be the same, or we're in a test
+            profiler = sourceContext.profiler;
         }
 
         /**
@@ -220,6 +224,7 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             breakdown = other.breakdown;
             linguistics = other.linguistics;
             executor = other.executor;
+            profiler = other.profiler;
         }
 
         public boolean equals(Context other) {
@@ -233,7 +238,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
                    && other.detailedDiagnostics == detailedDiagnostics
                    && other.breakdown == breakdown
                    && other.linguistics == linguistics
-                   && other.executor == executor;
+                   && other.executor == executor
+                   && other.profiler == profiler;
         }
 
         @Override
@@ -243,7 +249,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
                                           rendererRegistry, tokenRegistry, searchChainRegistry,
                                           detailedDiagnostics, breakdown,
                                           linguistics,
-                                          executor);
+                                          executor,
+                                          profiler);
         }
 
         @Override
@@ -370,6 +377,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
          */
         public Executor executor() { return executor; }
 
+        void setProfiler(SearcherProfiler profiler) { this.profiler = Objects.requireNonNull(profiler); }
+
         /** Creates a child trace if this has an owner, or a root trace otherwise */
         private Trace createChildTrace() {
             return owner!=null ? owner.trace().createChild() : Trace.createRoot(0);
@@ -403,6 +412,12 @@ public class Execution extends com.yahoo.processing.execution.Execution {
      */
     private final Context[] contextCache;
 
+    /**
+     * The profile of the searchers invoked by this if this is sampled, or null if not.
+     * This is rebound to the thread invoking this when search or fill starts, see {@link #profile()}.
+     */
+    private SearcherProfiler.Profile profile;
+
     /**
      * <p>
      * Creates an execution from another. This execution will start at the
@@ -480,6 +495,24 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         contextCache = new Context[searchChain.components().size()];
         entryIndex = searcherIndex;
         timer = new TimeTracker(searchChain, searcherIndex);
+        profile = profileOf(context);
+    }
+
+    /** Continues the profile of the execution owning the given context if it is in this thread, or samples anew */
+    private static SearcherProfiler.Profile profileOf(Context context) {
+        if (context.owner != null && context.owner.profile != null && context.owner.profile.isCurrentThread())
+            return context.owner.profile;
+        return context.profiler.sample();
+    }
+
+    /**
+     * Returns the profile of this bound to the current thread, or null if this is not sampled.
+     * The profile may have been created or continued in another thread, e.g. when this is created by an
+     * {@link AsyncExecution}, and is then replaced by a new profile, as a profile is used by a single thread only.
+     */
+    private SearcherProfiler.Profile profile() {
+        if (profile == null || profile.isCurrentThread()) return profile;
+        return profile = profile.inCurrentThread();
     }
 
     /** Does return search(((Query)request) */
@@ -496,7 +529,17 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         query.getModel().setExecution(this);
         trace().setTraceLevel(query.getTrace().getLevel());
 
-        return (Result)super.process(query);
+        SearcherProfiler.Profile profile = profile();
+        Processor next = profile != null ? next() : null;
+        if (next == null) return (Result)super.process(query);
+
+        profile.enter();
+        try {
+            return (Result)super.process(query);
+        }
+        finally {
+            profile.exit(next.getId().stringValue(), SearcherProfiler.searchOperation);
+        }
     }
 
     /**
@@ -549,6 +592,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         Searcher current = (Searcher)next(); // TODO: Allow but skip processors which are not searchers
         if (current == null) return;
 
+        SearcherProfiler.Profile profile = profile();
+        if (profile != null)
+            profile.enter();
         try {
             nextProcessor();
             onInvokingFill(current, summaryClass);
@@ -558,6 +604,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             previousProcessor();
             onReturningFill(current, summaryClass);
             timer.sampleFillReturn(nextIndex(), context.getDetailedDiagnostics(), result);
+            if (profile != null)
+                profile.exit(current.getId().stringValue(), SearcherProfiler.fillOperation);
         }
     }
 
@@ -18,6 +18,7 @@ import com.yahoo.language.simple.SimpleLinguistics;
 import com.yahoo.prelude.IndexFacts;
 import com.yahoo.prelude.IndexModel;
 import com.yahoo.language.process.SpecialTokenRegistry;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.processing.rendering.Renderer;
 import com.yahoo.search.Searcher;
 import com.yahoo.search.config.IndexInfoConfig;
@@ -47,7 +48,8 @@ public class ExecutionFactory extends AbstractComponent {
     private final Linguistics linguistics;
     private final ThreadPoolExecutor renderingExecutor;
     private final RendererRegistry rendererRegistry;
-    private final Executor executor;
+    private final AsyncExecutor executor;
+    private final SearcherProfiler profiler;
 
     // TODO: Fix tests depending on HandlersConfigurerTestWrapper so that this constructor can be removed
     @Beta
@@ -60,7 +62,8 @@ public class ExecutionFactory extends AbstractComponent {
                             SpecialtokensConfig specialTokens,
                             Linguistics linguistics,
                             ComponentRegistry<Renderer> renderers,
-                            Executor executor) {
+                            Executor executor,
+                            MetricReceiver metric) {
         this(chainsConfig,
              indexInfo,
              new SchemaInfo(schemaInfo, clusters),
@@ -69,7 +72,22 @@ public class ExecutionFactory extends AbstractComponent {
              specialTokens,
              linguistics,
              renderers,
-             executor);
+             executor,
+             metric);
+    }
+
+    @Beta
+    public ExecutionFactory(ChainsConfig chainsConfig,
+                            IndexInfoConfig indexInfo,
+                            SchemaInfoConfig schemaInfo,
+                            QrSearchersConfig clusters,
+                            ComponentRegistry<Searcher> searchers,
+                            SpecialtokensConfig specialTokens,
+                            Linguistics linguistics,
+                            ComponentRegistry<Renderer> renderers,
+                            Executor executor) {
+        this(chainsConfig, indexInfo, schemaInfo, clusters, searchers, specialTokens, linguistics, renderers, executor,
+             MetricReceiver.nullImplementation);
     }
 
     public ExecutionFactory(ChainsConfig chainsConfig,
@@ -81,6 +99,20 @@ public class ExecutionFactory extends AbstractComponent {
                             Linguistics linguistics,
                             ComponentRegistry<Renderer> renderers,
                             Executor executor) {
+        this(chainsConfig, indexInfo, schemaInfo, clusters, searchers, specialTokens, linguistics, renderers, executor,
+             MetricReceiver.nullImplementation);
+    }
+
+    public ExecutionFactory(ChainsConfig chainsConfig,
+                            IndexInfoConfig indexInfo,
+                            SchemaInfo schemaInfo,
+                            QrSearchersConfig clusters,
+                            ComponentRegistry<Searcher> searchers,
+                            SpecialtokensConfig specialTokens,
+                            Linguistics linguistics,
+                            ComponentRegistry<Renderer> renderers,
+                            Executor executor,
+                            MetricReceiver metric) {
         this.searchChainRegistry = createSearchChainRegistry(searchers, chainsConfig);
         this.indexFacts = new IndexFacts(new IndexModel(indexInfo, clusters)).freeze();
         this.schemaInfo = schemaInfo;
@@ -88,7 +120,10 @@ public class ExecutionFactory extends AbstractComponent {
         this.linguistics = linguistics;
         this.renderingExecutor = new RenderingExecutorFactory().createExecutor();
         this.rendererRegistry = new RendererRegistry(renderers.allComponents(), renderingExecutor);
-        this.executor = executor != null ? executor : Executors.newSingleThreadExecutor();
+        this.executor = AsyncExecutor.create(clusters.asyncExecution(),
+                                             executor != null ? executor : Executors.newSingleThreadExecutor(),
+                                             metric);
+        this.profiler = SearcherProfiler.create(metric, clusters.searcherProfiling().sampleRate());
     }
 
     private SearchChainRegistry createSearchChainRegistry(ComponentRegistry<Searcher> searchers,
@@ -105,8 +140,7 @@ public class ExecutionFactory extends AbstractComponent {
      * An execution instance should be used once to execute a (tree of) search chains.
      */
     public Execution newExecution(Chain<? extends Searcher> searchChain) {
-        return new Execution(searchChain,
-                             new Execution.Context(searchChainRegistry, indexFacts, schemaInfo, specialTokens, rendererRegistry, linguistics, executor));
+        return new Execution(searchChain, newContext());
     }
 
     /**
@@ -114,8 +148,14 @@ public class ExecutionFactory extends AbstractComponent {
      * An execution instance should be used once to execute a (tree of) search chains.
      */
     public Execution newExecution(String searchChainId) {
-        return new Execution(searchChainRegistry().getChain(searchChainId),
-                             new Execution.Context(searchChainRegistry, indexFacts, schemaInfo, specialTokens, rendererRegistry, linguistics, executor));
+        return new Execution(searchChainRegistry().getChain(searchChainId), newContext());
+    }
+
+    private Execution.Context newContext() {
+        Execution.Context context = new Execution.Context(searchChainRegistry, indexFacts, schemaInfo, specialTokens,
+                                                          rendererRegistry, linguistics, executor);
+        context.setProfiler(profiler);
+        return context;
     }
 
     /** Returns the search chain registry used by this */
@@ -128,6 +168,7 @@ public class ExecutionFactory extends AbstractComponent {
 
     @Override
     public void deconstruct() {
+        executor.close();
         rendererRegistry.deconstruct();
         renderingExecutor.shutdown();
         try {
@@ -0,0 +1,217 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.MetricSettings;
+import com.yahoo.metrics.simple.Point;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples the wall time, CPU time and allocated bytes spent in each searcher of a fraction of the executions,
+ * and exports these as histograms with the searcher id and the operation (search or fill) as dimensions.
+ * <p>
+ * Whether to sample is decided once per execution, and an execution created in the same thread by a searcher of a
+ * sampled execution continues its profile. An execution which runs in another thread than the one creating it, such
+ * as an {@link AsyncExecution}, starts a new profile in that thread. The values recorded for a searcher are those
+ * spent in the searcher itself, excluding the searchers it calls in the same thread, while work it hands off to other
+ * threads is not included.
+ * <p>
+ * CPU time and allocated bytes are only recorded when the JVM supports measuring them for the current thread.
+ */
+final class SearcherProfiler {
+
+    private static final Logger log = Logger.getLogger(SearcherProfiler.class.getName());
+
+    static final String searchOperation = "search";
+    static final String fillOperation = "fill";
+
+    /** A profiler which never samples */
+    static final SearcherProfiler disabled = new SearcherProfiler();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported = cpuTimeSupported();
+    private static final MethodHandle allocatedBytes = allocatedBytesHandle();
+
+    private final double sampleRate;
+    private final MetricReceiver metric;
+    private final Gauge wallTime;
+    private final Gauge cpuTime;
+    private final Gauge allocated;
+    private final Map<String, Point> searchPoints = new ConcurrentHashMap<>();
+    private final Map<String, Point> fillPoints = new ConcurrentHashMap<>();
+
+    private SearcherProfiler() {
+        this.sampleRate = 0;
+        this.metric = null;
+        this.wallTime = null;
+        this.cpuTime = null;
+        this.allocated = null;
+    }
+
+    private SearcherProfiler(MetricReceiver metric, double sampleRate) {
+        this.sampleRate = sampleRate;
+        this.metric = metric;
+        this.wallTime = declareHistogram(metric, ContainerMetrics.SEARCH_SEARCHER_WALL_TIME);
+        this.cpuTime = declareHistogram(metric, ContainerMetrics.SEARCH_SEARCHER_CPU_TIME);
+        this.allocated = declareHistogram(metric, ContainerMetrics.SEARCH_SEARCHER_ALLOCATED_BYTES);
+    }
+
+    /** Returns a profiler sampling the given fraction of executions, which is disabled if it is 0 */
+    static SearcherProfiler create(MetricReceiver metric, double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1)
+            throw new IllegalArgumentException("The searcher profiling sample rate must be in [0, 1], but was " + sampleRate);
+        if (sampleRate == 0 || metric == MetricReceiver.nullImplementation) return disabled;
+        return new SearcherProfiler(metric, sampleRate);
+    }
+
+    /** Returns a new profile of an execution if it should be sampled, and null otherwise */
+    Profile sample() {
+        if (sampleRate == 0) return null;
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return null;
+        return new Profile();
+    }
+
+    private void record(String searcherId, String operation, long wallNanos, long cpuNanos, long allocatedBytes) {
+        Point point = point(searcherId, operation);
+        wallTime.sample(wallNanos / 1_000_000.0, point);
+        if (cpuNanos >= 0)
+            cpuTime.sample(cpuNanos / 1_000_000.0, point);
+        if (allocatedBytes >= 0)
+            allocated.sample(allocatedBytes, point);
+    }
+
+    private Point point(String searcherId, String operation) {
+        Map<String, Point> points = operation.equals(searchOperation) ? searchPoints : fillPoints;
+        Point point = points.get(searcherId);
+        if (point != null) return point;
+        return points.computeIfAbsent(searcherId, id -> metric.pointBuilder().set("searcher", id)
+                                                                             .set("operation", operation)
+                                                                             .build());
+    }
+
+    private static Gauge declareHistogram(MetricReceiver metric, ContainerMetrics name) {
+        return metric.declareGauge(name.baseName(), Optional.empty(), new MetricSettings.Builder().histogram(true).build());
+    }
+
+    private static boolean cpuTimeSupported() {
+        try {
+            return threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a handle to get the bytes allocated by the current thread, or null if not supported.
+     * This is looked up through the interface implemented by the platform bean, to avoid depending
+     * on the JDK specific package at compile time.
+     */
+    private static MethodHandle allocatedBytesHandle() {
+        try {
+            for (Class<?> type : threads.getClass().getInterfaces()) {
+                if ( ! type.getName().equals("com.sun.management.ThreadMXBean")) continue;
+                if ( ! (boolean)type.getMethod("isThreadAllocatedMemorySupported").invoke(threads)) return null;
+                if ( ! (boolean)type.getMethod("isThreadAllocatedMemoryEnabled").invoke(threads)) return null;
+                return MethodHandles.publicLookup()
+                                    .findVirtual(type, "getCurrentThreadAllocatedBytes", MethodType.methodType(long.class))
+                                    .bindTo(threads);
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            log.log(Level.FINE, "Measuring allocated bytes per thread is not supported", e);
+        }
+        return null;
+    }
+
+    private static long currentCpuNanos() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long currentAllocatedBytes() {
+        if (allocatedBytes == null) return -1;
+        try {
+            return (long)allocatedBytes.invokeExact();
+        }
+        catch (Throwable e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The state of profiling a sampled execution, which is a stack of the searcher invocations in progress.
+     * This is used by the thread which created it only.
+     */
+    final class Profile {
+
+        private final Thread thread = Thread.currentThread();
+
+        private int depth = 0;
+
+        // The values at the start of each invocation in progress, and the values spent in the invocations it made
+        private long[] startWall = new long[8];
+        private long[] startCpu = new long[8];
+        private long[] startAllocated = new long[8];
+        private long[] nestedWall = new long[8];
+        private long[] nestedCpu = new long[8];
+        private long[] nestedAllocated = new long[8];
+
+        /** Returns whether this is used by the current thread */
+        boolean isCurrentThread() { return thread == Thread.currentThread(); }
+
+        /** Returns this if it is used by the current thread, and a new profile of the same execution otherwise */
+        Profile inCurrentThread() { return isCurrentThread() ? this : new Profile(); }
+
+        /** Call before invoking a searcher */
+        void enter() {
+            if (depth == startWall.length) grow();
+            nestedWall[depth] = nestedCpu[depth] = nestedAllocated[depth] = 0;
+            startAllocated[depth] = currentAllocatedBytes();
+            startCpu[depth] = currentCpuNanos();
+            startWall[depth] = System.nanoTime();
+            depth++;
+        }
+
+        /** Call when the searcher passed to the matching {@link #enter} returns, normally or by throwing */
+        void exit(String searcherId, String operation) {
+            long wall = System.nanoTime() - startWall[--depth];
+            long cpu = startCpu[depth] < 0 ? -1 : currentCpuNanos() - startCpu[depth];
+            long allocated = startAllocated[depth] < 0 ? -1 : currentAllocatedBytes() - startAllocated[depth];
+            if (depth > 0) {
+                nestedWall[depth - 1] += wall;
+                nestedCpu[depth - 1] += cpu;
+                nestedAllocated[depth - 1] += allocated;
+            }
+            record(searcherId,
+                   operation,
+                   Math.max(0, wall - nestedWall[depth]),
+                   cpu < 0 ? -1 : Math.max(0, cpu - nestedCpu[depth]),
+                   allocated < 0 ? -1 : Math.max(0, allocated - nestedAllocated[depth]));
+        }
+
+        private void grow() {
+            startWall = Arrays.copyOf(startWall, depth * 2);
+            startCpu = Arrays.copyOf(startCpu, depth * 2);
+            startAllocated = Arrays.copyOf(startAllocated, depth * 2);
+            nestedWall = Arrays.copyOf(nestedWall, depth * 2);
+            nestedCpu = Arrays.copyOf(nestedCpu, depth * 2);
+            nestedAllocated = Arrays.copyOf(nestedAllocated, depth * 2);
+        }
+
+    }
+
+}
@@ -5,6 +5,7 @@ import ai.vespa.metrics.ContainerMetrics;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.cloud.config.ClusterInfoConfig;
 
+import com.yahoo.metrics.simple.Gauge;
 import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.metrics.simple.Counter;
 import com.yahoo.metrics.simple.Point;
@@ -21,7 +22,9 @@ import com.yahoo.yolean.chain.Provides;
 import java.time.Clock;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple rate limiter.
@@ -45,7 +48,11 @@ import java.util.concurrent.ThreadLocalRandom;
  * If rate.id or rate.quota is not set in Query.properties this searcher will do nothing.
  * <p>
  * Metrics: This will emit the count metric requestsOverQuota with the dimension [rate.idDimension=rate.id]
- * counting rejected requests.
+ * counting rejected requests. It also emits the time threads spend obtaining more capacity from the capacity
+ * shared by all threads, and the number of times this had to be retried due to concurrent updates.
+ * <p>
+ * Threads take capacity from the shared capacity of an id without locking, and only when they have spent
+ * what they took the last time, so most queries only update capacity held by the thread itself.
  * <p>
  * Ordering: This searcher Provides rateLimiting
  *
@@ -73,11 +80,12 @@ public class RateLimitingSearcher extends Searcher {
 
     private final boolean localRate;
 
-    /** Capacity already allocated to this thread */
-    private final ThreadLocal<Map<String, Double>> allocatedCapacity = new ThreadLocal<>();
+    /** Capacity already allocated to this thread, by id */
+    private final ThreadLocal<Map<String, AllocatedCapacity>> allocatedCapacity = ThreadLocal.withInitial(HashMap::new);
 
     /** For emitting metrics */
     private final Counter overQuotaCounter;
+    private final Gauge capacityRequestTime;
 
     /**
      * How much capacity to allocate to a thread each time it runs out.
@@ -100,38 +108,41 @@ public class RateLimitingSearcher extends Searcher {
                                 Clock clock) {
         this.capacityIncrement = rateLimitingConfig.capacityIncrement();
         this.recheckForCapacityProbability = rateLimitingConfig.recheckForCapacityProbability();
-        this.availableCapacity = new AvailableCapacity(rateLimitingConfig.maxAvailableCapacity(), clock);
         this.localRate = rateLimitingConfig.localRate();
 
         this.nodeCount = clusterInfoConfig.nodeCount();
 
         this.overQuotaCounter = metric.declareCounter(requestsOverQuotaMetricName);
+        this.capacityRequestTime = metric.declareGauge(ContainerMetrics.RATE_LIMITING_CAPACITY_REQUEST_TIME.baseName());
+        this.availableCapacity = new AvailableCapacity(rateLimitingConfig.maxAvailableCapacity(), clock,
+                                                       metric.declareCounter(ContainerMetrics.RATE_LIMITING_CAPACITY_CONTENTION.baseName()));
     }
 
     @Override
     public Result search(Query query, Execution execution) {
         String id = query.properties().getString(idKey);
-        Double rate = query.properties().getDouble(quotaKey);
-        if (id == null || rate == null) {
+        Double quota = query.properties().getDouble(quotaKey);
+        if (id == null || quota == null) {
             query.trace(false, 6, "Skipping rate limiting check. Need both " + idKey + " and " + quotaKey + " set");
             return execution.search(query);
         }
 
-        if ( ! localRate)
-            rate = rate / nodeCount;
+        double rate = localRate ? quota : quota / nodeCount;
 
-        if (allocatedCapacity.get() == null) // new thread
-            allocatedCapacity.set(new HashMap<>());
-        if (allocatedCapacity.get().get(id) == null) // new id in this thread
-            requestCapacity(id, rate);
+        AllocatedCapacity allocated = allocatedCapacity.get().get(id);
+        if (allocated == null) { // new id in this thread
+            allocated = new AllocatedCapacity();
+            allocatedCapacity.get().put(id, allocated);
+            requestCapacity(id, allocated, rate);
+        }
 
         // Check if there is capacity available. Cannot check for exact cost as it may be computed after execution
-        // no capacity means we're over rate. Only recheck occasionally to limit synchronization.
-        if (getAllocatedCapacity(id) <= 0 && ThreadLocalRandom.current().nextDouble() < recheckForCapacityProbability) {
-            requestCapacity(id, rate);
+        // no capacity means we're over rate. Only recheck occasionally to limit contention.
+        if (allocated.value <= 0 && ThreadLocalRandom.current().nextDouble() < recheckForCapacityProbability) {
+            requestCapacity(id, allocated, rate);
         }
 
-        if (rate == 0 || getAllocatedCapacity(id) <= 0) { // we are still over rate: reject
+        if (rate == 0 || allocated.value <= 0) { // we are still over rate: reject
             String idDim = query.properties().getString(idDimensionKey, null);
             if (idDim == null) {
                 overQuotaCounter.add(1);
@@ -143,10 +154,10 @@ public class RateLimitingSearcher extends Searcher {
         }
 
         Result result = execution.search(query);
-        addAllocatedCapacity(id, - query.properties().getDouble(costKey, 1.0));
+        allocated.value -= query.properties().getDouble(costKey, 1.0);
 
-        if (getAllocatedCapacity(id) <= 0) // make sure we ask for more with 100% probability when first running out
-            requestCapacity(id, rate);
+        if (allocated.value <= 0) // make sure we ask for more with 100% probability when first running out
+            requestCapacity(id, allocated, rate);
 
         return result;
     }
@@ -155,23 +166,19 @@ public class RateLimitingSearcher extends Searcher {
         return overQuotaCounter.builder().set(dimensionName, dimensionValue).build();
     }
 
-    private double getAllocatedCapacity(String id) {
-        Double value = allocatedCapacity.get().get(id);
-        if (value == null) return 0;
-        return value;
+    private void requestCapacity(String id, AllocatedCapacity allocated, double rate) {
+        double minimumRequested = Math.max(0, -allocated.value); // If we are below, make sure we reach 0
+        double preferredRequested = Math.max(capacityIncrement, -allocated.value);
+        long startTime = System.nanoTime();
+        allocated.value += availableCapacity.request(id, minimumRequested, preferredRequested, rate);
+        capacityRequestTime.sample((System.nanoTime() - startTime) / 1_000_000.0);
     }
 
-    private void addAllocatedCapacity(String id, double newCapacity) {
-        Double capacity = allocatedCapacity.get().get(id);
-        if (capacity != null)
-            newCapacity += capacity;
-        allocatedCapacity.get().put(id, newCapacity);
-    }
+    /** The capacity allocated to a thread for an id, which is only accessed by that thread */
+    private static class AllocatedCapacity {
+
+        double value = 0;
 
-    private void requestCapacity(String id, double rate) {
-        double minimumRequested = Math.max(0, -getAllocatedCapacity(id)); // If we are below, make sure we reach 0
-        double preferredRequested = Math.max(capacityIncrement, -getAllocatedCapacity(id));
-        addAllocatedCapacity(id, availableCapacity.request(id, minimumRequested, preferredRequested, rate));
     }
 
     /**
@@ -184,50 +191,82 @@ public class RateLimitingSearcher extends Searcher {
 
         private final double maxAvailableCapacity;
         private final Clock clock;
+        private final Counter contentionCounter;
 
-        private final Map<String, CapacityAllocation> available = new HashMap<>();
+        /** Lookups do not lock, and updates only lock the bin of the map holding the id */
+        private final Map<String, CapacityAllocation> available = new ConcurrentHashMap<>();
 
-        public AvailableCapacity(double maxAvailableCapacity, Clock clock) {
+        public AvailableCapacity(double maxAvailableCapacity, Clock clock, Counter contentionCounter) {
             this.maxAvailableCapacity = maxAvailableCapacity;
             this.clock = clock;
+            this.contentionCounter = contentionCounter;
         }
 
         /** Returns an amount of capacity between 0 and the requested amount based on availability for this id */
-        public synchronized double request(String id, double minimumRequested, double preferredRequested, double rate) {
+        public double request(String id, double minimumRequested, double preferredRequested, double rate) {
             CapacityAllocation allocation = available.get(id);
-            if (allocation == null) {
-                allocation = new CapacityAllocation(rate, clock);
-                available.put(id, allocation);
-            }
-            return allocation.request(minimumRequested, preferredRequested, rate, maxAvailableCapacity);
+            if (allocation == null)
+                allocation = available.computeIfAbsent(id, __ -> new CapacityAllocation(rate, clock));
+            return allocation.request(minimumRequested, preferredRequested, rate, maxAvailableCapacity, contentionCounter);
         }
 
     }
 
+    /**
+     * The capacity of an id shared by all threads. This is a token bucket which is updated by compare-and-set
+     * of the bits of the capacity, and of the time of the last refill, such that only one thread adds capacity
+     * for each point in time.
+     */
     private static class CapacityAllocation {
 
-        private double capacity;
+        private final AtomicLong capacity;
         private final Clock clock;
-        private long lastAllocatedTime;
+        private final AtomicLong lastAllocatedTime;
 
         public CapacityAllocation(double initialCapacity, Clock clock) {
-            this.capacity = initialCapacity;
+            this.capacity = new AtomicLong(Double.doubleToRawLongBits(initialCapacity));
             this.clock = clock;
-            lastAllocatedTime = clock.millis();
+            this.lastAllocatedTime = new AtomicLong(clock.millis());
         }
 
-        public double request(double minimumRequested, double preferredRequested, double rate, double maxAvailableCapacity) {
-            if ( preferredRequested > capacity) { // attempt to allocate more
+        /**
+         * Returns an amount of capacity between 0 and the requested amount, and counts the number of times
+         * an update had to be retried due to concurrent updates.
+         */
+        public double request(double minimumRequested, double preferredRequested, double rate, double maxAvailableCapacity,
+                              Counter contentionCounter) {
+            int retries = 0;
+            if (preferredRequested > capacity()) { // attempt to allocate more
                 // rate is per second so we get rate/1000 per millisecond
+                long lastTime = lastAllocatedTime.get();
                 long currentTime = clock.millis();
-                capacity += Math.min(maxAvailableCapacity, rate/1000d * (Math.max(0, currentTime - lastAllocatedTime)));
-                lastAllocatedTime = currentTime;
+                if (lastAllocatedTime.compareAndSet(lastTime, currentTime)) { // otherwise another thread just did this
+                    double added = Math.min(maxAvailableCapacity, rate/1000d * (Math.max(0, currentTime - lastTime)));
+                    while ( ! add(capacity(), added))
+                        retries++;
+                }
+                else {
+                    retries++;
+                }
+            }
+            while (true) {
+                double available = capacity();
+                double grantedCapacity = Math.min(available/10, preferredRequested); // /10 to avoid stealing all capacity when low
+                if (grantedCapacity < minimumRequested)
+                    grantedCapacity = Math.min(minimumRequested, available);
+                if (add(available, -grantedCapacity)) {
+                    if (retries > 0)
+                        contentionCounter.add(retries);
+                    return grantedCapacity;
+                }
+                retries++;
             }
-            double grantedCapacity = Math.min(capacity/10, preferredRequested); // /10 to avoid stealing all capacity when low
-            if (grantedCapacity < minimumRequested)
-                grantedCapacity = Math.min(minimumRequested, capacity);
-            capacity = capacity - grantedCapacity;
-            return grantedCapacity;
+        }
+
+        private double capacity() { return Double.longBitsToDouble(capacity.get()); }
+
+        private boolean add(double expected, double delta) {
+            return capacity.compareAndSet(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(expected + delta));
         }
 
     }
@@ -0,0 +1,224 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.component.annotation.Inject;
+import com.yahoo.component.chain.dependencies.After;
+import com.yahoo.component.chain.dependencies.Before;
+import com.yahoo.component.provider.ComponentRegistry;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ResultCacheConfig;
+import com.yahoo.search.dispatch.Dispatcher;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchchain.PhaseNames;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache of complete (filled) results, for avoiding repeated dispatch of identical queries
+ * to the content nodes.
+ * <p>
+ * Results are cached by a canonical form of the query, consisting of the query tree, the ranking and
+ * presentation settings, hits and offset, and all other query properties (including query profile values),
+ * except those which only concern this node's handling of the request, such as tracing and timeout.
+ * <p>
+ * A cached result is served for at most the configured ttl, and is invalidated whenever the content of
+ * any of the content clusters of this container is observed to change (see {@link Dispatcher#contentGeneration()}).
+ * Results with errors or degraded coverage are never cached. When the total estimated size of the cached
+ * results exceeds the configured max, the least recently used results are evicted.
+ * <p>
+ * This takes these query parameter arguments:
+ * <ul>
+ *     <li>resultCache.enabled - (Boolean) whether to use the cache for this query. The default is
+ *     given by the enabledByDefault config value. Queries with noCache set never use the cache.
+ * </ul>
+ * <p>
+ * Metrics: This emits the count metrics query_result_cache.hits, query_result_cache.misses and
+ * query_result_cache.evictions, and the gauge query_result_cache.size.
+ */
+@After(PhaseNames.TRANSFORMED_QUERY)
+@Before(PhaseNames.BLENDED_RESULT)
+public class ResultCacheSearcher extends Searcher {
+
+    public static final CompoundName enabledKey = CompoundName.from("resultCache.enabled");
+
+    /** Properties which do not influence the result returned from the backend, by their first name component */
+    private static final Set<String> ignoredProperties = Set.of("resultCache", "trace", "tracelevel", "timeout",
+                                                                "rate", "noCache", "nocache");
+
+    private final boolean enabledByDefault;
+    private final long ttlMillis;
+    private final long maxResultSizeBytes;
+    private final LongSupplier contentGeneration;
+    private final Clock clock;
+    private final Cache cache;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+    private final Gauge sizeGauge;
+
+    @Inject
+    public ResultCacheSearcher(ResultCacheConfig config, ComponentRegistry<Dispatcher> dispatchers, MetricReceiver metric) {
+        this(config, () -> contentGenerationOf(dispatchers), metric, Clock.systemUTC());
+    }
+
+    /** For testing - allows injection of the content generation and a clock */
+    public ResultCacheSearcher(ResultCacheConfig config, LongSupplier contentGeneration, MetricReceiver metric, Clock clock) {
+        this.enabledByDefault = config.enabledByDefault();
+        this.ttlMillis = (long)(config.ttl() * 1000);
+        this.maxResultSizeBytes = config.maxResultSizeBytes();
+        this.contentGeneration = contentGeneration;
+        this.clock = clock;
+        this.cache = new Cache(config.maxSizeBytes());
+        this.hitCounter = metric.declareCounter(ContainerMetrics.QUERY_RESULT_CACHE_HITS.baseName());
+        this.missCounter = metric.declareCounter(ContainerMetrics.QUERY_RESULT_CACHE_MISSES.baseName());
+        this.evictionCounter = metric.declareCounter(ContainerMetrics.QUERY_RESULT_CACHE_EVICTIONS.baseName());
+        this.sizeGauge = metric.declareGauge(ContainerMetrics.QUERY_RESULT_CACHE_SIZE.baseName());
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        if ( ! useCache(query)) return execution.search(query);
+
+        String key = canonicalForm(query);
+        long generation = contentGeneration.getAsLong();
+        long now = clock.millis();
+        Result cached = cache.get(key, generation, now);
+        if (cached != null) {
+            hitCounter.add();
+            query.trace("Returning result from the result cache", false, 3);
+            Result result = cached.clone();
+            result.setQuery(query);
+            return result;
+        }
+
+        missCounter.add();
+        Result result = execution.search(query);
+        if ( ! isCacheable(result)) return result;
+
+        execution.fill(result, query.getPresentation().getSummary());
+        if ( ! isCacheable(result)) return result;
+
+        long size = estimateSize(result);
+        if (size > maxResultSizeBytes) return result;
+        evictionCounter.add(cache.put(key, new Entry(result.clone(), size, generation, now + ttlMillis)));
+        sizeGauge.sample(cache.sizeBytes());
+        return result;
+    }
+
+    private boolean useCache(Query query) {
+        if (query.getNoCache()) return false;
+        return query.properties().getBoolean(enabledKey, enabledByDefault);
+    }
+
+    private static boolean isCacheable(Result result) {
+        if (result.hits().getErrorHit() != null) return false;
+        Coverage coverage = result.getCoverage(false);
+        return coverage == null || coverage.getFull();
+    }
+
+    /** Returns a string which is equal for queries which will produce the same result given the same content */
+    static String canonicalForm(Query query) {
+        StringBuilder b = new StringBuilder();
+        b.append(query.getModel().getQueryTree()).append('\n');
+        b.append(query.getModel().getRestrict()).append(query.getModel().getSources()).append('\n');
+        b.append(query.getHits()).append(' ').append(query.getOffset()).append('\n');
+        b.append(query.getRanking().getProfile()).append(' ').append(query.getRanking().getSorting()).append('\n');
+        b.append(query.getRanking().getFeatures()).append(query.getRanking().getProperties()).append('\n');
+        b.append(query.getPresentation().getSummary()).append(query.getPresentation().getSummaryFields()).append('\n');
+        for (var property : new TreeMap<>(query.properties().listProperties()).entrySet()) {
+            if (ignoredProperties.contains(CompoundName.from(property.getKey()).first())) continue;
+            b.append(property.getKey()).append('=').append(property.getValue()).append('\n');
+        }
+        return b.toString();
+    }
+
+    /** Returns a rough estimate of the number of bytes of heap used by this result */
+    static long estimateSize(Result result) {
+        long size = 256;
+        for (Iterator<Hit> i = result.hits().unorderedDeepIterator(); i.hasNext(); ) {
+            Hit hit = i.next();
+            size += 256;
+            for (var field : hit.fields().entrySet())
+                size += 48 + 2L * field.getKey().length() + estimateSize(field.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value instanceof CharSequence s) return 40 + 2L * s.length();
+        if (value instanceof byte[] bytes) return 16 + bytes.length;
+        return 64;
+    }
+
+    private static long contentGenerationOf(ComponentRegistry<Dispatcher> dispatchers) {
+        long generation = 0;
+        for (Dispatcher dispatcher : dispatchers.allComponents())
+            generation += dispatcher.contentGeneration();
+        return generation;
+    }
+
+    private record Entry(Result result, long size, long contentGeneration, long expiresAt) {}
+
+    /** An LRU map of results bounded by total estimated size */
+    private static class Cache {
+
+        private final long maxSizeBytes;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeBytes = 0;
+
+        Cache(long maxSizeBytes) {
+            this.maxSizeBytes = maxSizeBytes;
+        }
+
+        /** Returns the cached result for this key, or null if none or if it is no longer valid */
+        synchronized Result get(String key, long contentGeneration, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.contentGeneration() != contentGeneration || entry.expiresAt() <= now) {
+                remove(key);
+                return null;
+            }
+            return entry.result();
+        }
+
+        /** Adds an entry to this and returns the number of entries which were evicted to make room for it */
+        synchronized int put(String key, Entry entry) {
+            remove(key);
+            entries.put(key, entry);
+            sizeBytes += entry.size();
+            int evicted = 0;
+            for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); sizeBytes > maxSizeBytes && i.hasNext(); ) {
+                sizeBytes -= i.next().getValue().size();
+                i.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized long sizeBytes() { return sizeBytes; }
+
+        private void remove(String key) {
+            Entry removed = entries.remove(key);
+            if (removed != null)
+                sizeBytes -= removed.size();
+        }
+
+    }
+
+}
@@ -5,6 +5,7 @@ import com.yahoo.api.annotations.Beta;
 import com.yahoo.component.annotation.Inject;
 import com.yahoo.language.Linguistics;
 import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.processing.IllegalInputException;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
@@ -45,12 +46,22 @@ public class MinimalQueryInserter extends Searcher {
     private static final CompoundName MAX_OFFSET = CompoundName.from("maxOffset");
     private static final Logger log = Logger.getLogger(MinimalQueryInserter.class.getName());
 
+    /** The max number of distinct YQL programs, modulo literals, to keep parsed */
+    private static final int parseCacheSize = 1000;
+
+    private final YqlParseCache parseCache;
+
     @Inject
-    public MinimalQueryInserter(Linguistics linguistics) {
+    public MinimalQueryInserter(Linguistics linguistics, MetricReceiver metric) {
+        this.parseCache = new YqlParseCache(parseCacheSize, metric);
         // Warmup is needed to avoid a large 400ms init cost during first execution of yql code.
         warmup(linguistics);
     }
 
+    public MinimalQueryInserter(Linguistics linguistics) {
+        this(linguistics, MetricReceiver.nullImplementation);
+    }
+
     public MinimalQueryInserter() {
         this(new SimpleLinguistics());
     }
@@ -61,7 +72,7 @@ public class MinimalQueryInserter extends Searcher {
 
     private static boolean warmup(Linguistics linguistics) {
         Query query = new Query("search/?yql=select%20*%20from%20sources%20where%20title%20contains%20'xyz'");
-        Result result = insertQuery(query, new ParserEnvironment().setLinguistics(linguistics));
+        Result result = insertQuery(query, new ParserEnvironment().setLinguistics(linguistics), null);
         if (result != null) {
             log.warning("Warmup code trigger an error. Error = " + result);
             return false;
@@ -78,7 +89,7 @@ public class MinimalQueryInserter extends Searcher {
         if (query.properties().get(YQL) == null) return execution.search(query);
         Result errorResult;
         try {
-            errorResult = insertQuery(query, ParserEnvironment.fromExecutionContext(execution.context()));
+            errorResult = insertQuery(query, ParserEnvironment.fromExecutionContext(execution.context()), parseCache);
         }
         catch (IllegalArgumentException e) {
             throw new IllegalInputException("Illegal YQL query", e);
@@ -86,9 +97,10 @@ public class MinimalQueryInserter extends Searcher {
         return (errorResult == null) ? execution.search(query) : errorResult;
     }
 
-    private static Result insertQuery(Query query, ParserEnvironment env) {
+    private static Result insertQuery(Query query, ParserEnvironment env, YqlParseCache parseCache) {
         YqlParser parser = (YqlParser) ParserFactory.newInstance(Query.Type.YQL, env);
         parser.setQueryParser(false);
+        parser.setParseCache(parseCache);
         parser.setUserQuery(query);
         QueryTree newTree;
         try {
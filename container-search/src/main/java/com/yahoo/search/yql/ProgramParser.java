@@ -93,19 +93,31 @@ final class ProgramParser {
     }
 
     private yqlplusParser prepareParser(String programName, CharStream input) {
-        ErrorListener errorListener = new ErrorListener(programName);
-        yqlplusLexer lexer = new yqlplusLexer(input);
-        lexer.removeErrorListeners();
-        lexer.addErrorListener(errorListener);
-        TokenStream tokens = new CommonTokenStream(lexer);
+        return prepareParser(programName, new CommonTokenStream(lexer(programName, input)));
+    }
 
+    private yqlplusParser prepareParser(String programName, TokenStream tokens) {
         yqlplusParser parser = new yqlplusParser(tokens);
         parser.removeErrorListeners();
-        parser.addErrorListener(errorListener);
+        parser.addErrorListener(new ErrorListener(programName));
         parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
         return parser;
     }
 
+    private yqlplusLexer lexer(String programName, CharStream input) {
+        yqlplusLexer lexer = new yqlplusLexer(input);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new ErrorListener(programName));
+        return lexer;
+    }
+
+    /** Returns all the tokens of the given program, or throws ProgramCompileException if it cannot be tokenized */
+    CommonTokenStream tokenize(String programName, String program) {
+        CommonTokenStream tokens = new CommonTokenStream(lexer(programName, new CaseInsensitiveCharStream(CharStreams.fromString(program))));
+        tokens.fill();
+        return tokens;
+    }
+
     private ProgramContext parseProgram(yqlplusParser parser) throws  RecognitionException {
         try {
             return parser.program();
@@ -122,6 +134,13 @@ final class ProgramParser {
         return convertProgram(parseProgram(parser), parser, programName);
     }
 
+    /** Parses a program which is already tokenized by {@link #tokenize} */
+    OperatorNode<StatementOperator> parse(String programName, CommonTokenStream tokens) throws RecognitionException {
+        tokens.seek(0);
+        yqlplusParser parser = prepareParser(programName, tokens);
+        return convertProgram(parseProgram(parser), parser, programName);
+    }
+
     private Location toLocation(Scope scope, ParseTree node) {
         Token start;
         if (node instanceof ParserRuleContext) {
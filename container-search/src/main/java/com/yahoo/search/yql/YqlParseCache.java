@@ -0,0 +1,232 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.yql;
+
+import ai.vespa.metrics.ContainerMetrics;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of parsed YQL programs, keyed on the program with its literals lifted out as parameters.
+ * Queries which differ from a cached program only in literal values are bound to the cached template
+ * instead of being parsed again. Literals which are not represented as literal nodes in the
+ * parsed program, like annotation values and grouping expressions, are part of the template
+ * and must match exactly. Only the literal nodes of a bound program have locations in the
+ * bound program, the other nodes have their locations in the template program.
+ * <p>
+ * The cache holds parsed programs rather than item trees, as creating items depends on the
+ * linguistics, index facts and properties of each query.
+ * <p>
+ * This is multithread safe.
+ */
+class YqlParseCache {
+
+    private static final String programName = "query";
+
+    private final Lru templates;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    YqlParseCache(int maxSize, MetricReceiver metric) {
+        this.templates = new Lru(maxSize);
+        this.hitCounter = metric.declareCounter(ContainerMetrics.YQL_PARSE_CACHE_HITS.baseName());
+        this.missCounter = metric.declareCounter(ContainerMetrics.YQL_PARSE_CACHE_MISSES.baseName());
+        this.evictionCounter = metric.declareCounter(ContainerMetrics.YQL_PARSE_CACHE_EVICTIONS.baseName());
+    }
+
+    /** Parses the given program, binding it to a cached template if possible */
+    OperatorNode<StatementOperator> parse(String program) throws Exception {
+        ProgramParser parser = new ProgramParser();
+        CommonTokenStream tokens;
+        try {
+            tokens = parser.tokenize(programName, program);
+        }
+        catch (ProgramCompileException e) { // Let the parser produce the error it would without the cache
+            return parser.parse(programName, program);
+        }
+
+        List<Token> literals = new ArrayList<>();
+        String key = normalize(tokens, literals);
+        Template template = templates.get(key);
+        if (template != null) {
+            OperatorNode<StatementOperator> bound = template.bind(literals);
+            if (bound != null) {
+                hitCounter.add();
+                return bound;
+            }
+        }
+
+        missCounter.add();
+        OperatorNode<StatementOperator> ast = parser.parse(programName, tokens);
+        if (templates.put(key, new Template(ast, literals)))
+            evictionCounter.add();
+        return ast;
+    }
+
+    int size() { return templates.size(); }
+
+    /** Returns the visible tokens of this program separated by space, with literals replaced by their type */
+    private static String normalize(CommonTokenStream tokens, List<Token> literals) {
+        StringBuilder b = new StringBuilder();
+        for (Token token : tokens.getTokens()) {
+            if (token.getChannel() != Token.DEFAULT_CHANNEL) continue;
+            if (isLiteral(token)) {
+                literals.add(token);
+                b.append('?').append(token.getType());
+            }
+            else {
+                b.append(token.getText());
+            }
+            b.append(' ');
+        }
+        return b.toString();
+    }
+
+    private static boolean isLiteral(Token token) {
+        return switch (token.getType()) {
+            case yqlplusParser.INT, yqlplusParser.LONG_INT, yqlplusParser.FLOAT, yqlplusParser.STRING -> true;
+            default -> false;
+        };
+    }
+
+    /** Returns the value of a literal token in the same way as the parser converts it */
+    private static Object valueOf(Token token) {
+        String text = token.getText();
+        return switch (token.getType()) {
+            case yqlplusParser.INT -> {
+                long value = Long.parseLong(text);
+                yield (int)value == value ? (Object)(int)value : (Object)value;
+            }
+            case yqlplusParser.LONG_INT -> Long.parseLong(text.substring(0, text.length() - 1));
+            case yqlplusParser.FLOAT -> Double.valueOf(text);
+            case yqlplusParser.STRING -> StringUnescaper.unquote(text);
+            default -> throw new IllegalArgumentException("Unexpected literal token " + token);
+        };
+    }
+
+    /** A parsed program and the literal tokens which are parameters of it. Instances are immutable. */
+    private static class Template {
+
+        private final OperatorNode<StatementOperator> ast;
+
+        /** The index of the literal token of each literal node in the program which is a parameter */
+        private final Map<OperatorNode<?>, Integer> parameters = new IdentityHashMap<>();
+
+        /** The texts of the literal tokens which are not parameters, by index */
+        private final Map<Integer, String> fixed = new HashMap<>();
+
+        /** The value classes of the parameters, by index */
+        private final Map<Integer, Class<?>> types = new HashMap<>();
+
+        Template(OperatorNode<StatementOperator> ast, List<Token> literals) {
+            this.ast = ast;
+            Map<Long, Integer> literalAtPosition = new HashMap<>();
+            for (int i = 0; i < literals.size(); i++)
+                literalAtPosition.put(position(literals.get(i).getLine(), literals.get(i).getCharPositionInLine()), i);
+            ast.visit(new OperatorVisitor() {
+                @Override
+                public <T extends Operator> boolean enter(OperatorNode<T> node) {
+                    if (node.getOperator() != ExpressionOperator.LITERAL || node.getLocation() == null) return true;
+                    Integer index = literalAtPosition.get(position(node.getLocation().getLineNumber(),
+                                                                   node.getLocation().getCharacterOffset()));
+                    if (index == null) return true;
+                    Object value = node.getArgument(0);
+                    if (value == null || ! value.equals(valueOf(literals.get(index)))) return true;
+                    parameters.put(node, index);
+                    types.put(index, value.getClass());
+                    return true;
+                }
+                @Override
+                public <T extends Operator> void exit(OperatorNode<T> node) { }
+            });
+            for (int i = 0; i < literals.size(); i++)
+                if ( ! types.containsKey(i))
+                    fixed.put(i, literals.get(i).getText());
+        }
+
+        /** Returns this template bound to the given literals, or null if they do not fit it */
+        OperatorNode<StatementOperator> bind(List<Token> literals) {
+            for (Map.Entry<Integer, String> entry : fixed.entrySet())
+                if ( ! entry.getValue().equals(literals.get(entry.getKey()).getText())) return null;
+
+            List<Object> values = new ArrayList<>(literals.size());
+            for (int i = 0; i < literals.size(); i++) {
+                Class<?> type = types.get(i);
+                if (type == null) {
+                    values.add(null);
+                    continue;
+                }
+                Object value = valueOf(literals.get(i));
+                if (value.getClass() != type) return null;
+                values.add(value);
+            }
+            return bind(ast, literals, values);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Operator> OperatorNode<T> bind(OperatorNode<T> node, List<Token> literals, List<Object> values) {
+            Integer index = parameters.get(node);
+            if (index != null) {
+                Token token = literals.get(index);
+                return (OperatorNode<T>)OperatorNode.create(new Location(programName, token.getLine(), token.getCharPositionInLine()),
+                                                            node.getAnnotations(), ExpressionOperator.LITERAL, values.get(index));
+            }
+            return node.transform(argument -> bindArgument(argument, literals, values));
+        }
+
+        private Object bindArgument(Object argument, List<Token> literals, List<Object> values) {
+            if (argument instanceof OperatorNode<?> node)
+                return bind(node, literals, values);
+            if (argument instanceof List<?> list) {
+                List<Object> bound = new ArrayList<>(list.size());
+                for (Object element : list)
+                    bound.add(bindArgument(element, literals, values));
+                return bound;
+            }
+            return argument;
+        }
+
+        private static long position(int line, int charPositionInLine) {
+            return (long)line << 32 | charPositionInLine;
+        }
+
+    }
+
+    private static class Lru {
+
+        private final int maxSize;
+        private final LinkedHashMap<String, Template> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Lru(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized Template get(String key) {
+            return entries.get(key);
+        }
+
+        /** Adds an entry and returns whether another had to be evicted to make room for it */
+        synchronized boolean put(String key, Template template) {
+            if (maxSize <= 0) return false;
+            entries.put(key, template);
+            if (entries.size() <= maxSize) return false;
+            var eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            return true;
+        }
+
+        synchronized int size() { return entries.size(); }
+
+    }
+
+}
@@ -224,6 +224,7 @@ public class YqlParser implements Parser {
     private Set<String> docTypes;
     private Sorting sorting;
     private boolean queryParser = true;
+    private YqlParseCache parseCache = null;
     private final Deque<OperatorNode<?>> annotationStack = new ArrayDeque<>();
     private final ParserEnvironment environment;
 
@@ -887,7 +888,8 @@ public class YqlParser implements Parser {
     private OperatorNode<?> parseYqlProgram() {
         OperatorNode<?> ast;
         try {
-            ast = new ProgramParser().parse("query", currentlyParsing.getQuery());
+            ast = parseCache != null ? parseCache.parse(currentlyParsing.getQuery())
+                                     : new ProgramParser().parse("query", currentlyParsing.getQuery());
         } catch (Exception e) {
             throw new IllegalInputException(e);
         }
@@ -1693,6 +1695,9 @@ public class YqlParser implements Parser {
     @Beta
     public void setUserQuery(Query userQuery) { this.userQuery = userQuery; }
 
+    /** Sets a cache of parsed programs to use when parsing, or null (default) to parse every program from scratch */
+    void setParseCache(YqlParseCache parseCache) { this.parseCache = parseCache; }
+
     @Beta
     public Set<String> getYqlSummaryFields() { return yqlSummaryFields; }
 
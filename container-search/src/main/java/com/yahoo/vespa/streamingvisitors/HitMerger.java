@@ -0,0 +1,109 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.streamingvisitors;
+
+import com.yahoo.vdslib.DocumentSummary;
+import com.yahoo.vdslib.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the hits and summaries of the replies to a streaming query as they arrive, keeping only
+ * the best hits up to a max count, and the summaries of those hits.
+ * The same document may be hit in several replies, so a summary is kept until no hit in this refers to it.
+ * Hits are kept in a heap with the worst hit first, such that merging a reply with n hits
+ * costs O(n log maxHits) and memory stays at O(maxHits) regardless of the number of replies.
+ * <p>
+ * This is not thread safe.
+ */
+class HitMerger {
+
+    private final int maxHits;
+
+    /** The best hits so far, worst first */
+    private final PriorityQueue<SearchResult.Hit> hits;
+
+    /** The number of hits in this, by document id */
+    private final Map<String, Integer> hitCounts = new HashMap<>();
+
+    /** The summaries of the hits in this, by document id */
+    private final Map<String, DocumentSummary.Summary> summaries = new HashMap<>();
+
+    /** The hits of this, best first, or null if it has changed since this was last sorted */
+    private List<SearchResult.Hit> sorted = null;
+
+    private int replies = 0;
+    private long hitsReceived = 0;
+    private long summariesReceived = 0;
+
+    HitMerger(int maxHits) {
+        this.maxHits = maxHits;
+        this.hits = new PriorityQueue<>(Math.max(1, Math.min(maxHits, 1024)), Collections.reverseOrder());
+    }
+
+    /** Merges the hits of a reply into this */
+    void addHits(SearchResult reply) {
+        replies++;
+        hitsReceived += reply.getHitCount();
+        for (int i = 0; i < reply.getHitCount(); i++)
+            add(reply.getHit(i));
+    }
+
+    private void add(SearchResult.Hit hit) {
+        if (hits.size() < maxHits) {
+            keep(hit);
+        }
+        else if (maxHits > 0 && hit.compareTo(hits.peek()) < 0) {
+            // Keep the new hit first, such that a summary it shares with the evicted hit is retained
+            keep(hit);
+            evict(hits.poll());
+        }
+    }
+
+    private void keep(SearchResult.Hit hit) {
+        hits.add(hit);
+        hitCounts.merge(hit.getDocId(), 1, Integer::sum);
+        sorted = null;
+    }
+
+    private void evict(SearchResult.Hit hit) {
+        String docId = hit.getDocId();
+        if (hitCounts.merge(docId, -1, Integer::sum) == 0) {
+            hitCounts.remove(docId);
+            summaries.remove(docId);
+        }
+    }
+
+    /** Adds the summaries of the hits in this from a reply */
+    void addSummaries(DocumentSummary summary) {
+        summariesReceived += summary.getSummaryCount();
+        if (summary.getSummaryCount() == 0) return;
+
+        for (int i = 0; i < summary.getSummaryCount(); i++) {
+            DocumentSummary.Summary docsum = summary.getSummary(i);
+            if (hitCounts.containsKey(docsum.getDocId()))
+                summaries.put(docsum.getDocId(), docsum);
+        }
+    }
+
+    /** Returns the hits of this, best first */
+    List<SearchResult.Hit> hits() {
+        if (sorted == null) {
+            sorted = new ArrayList<>(hits);
+            Collections.sort(sorted);
+        }
+        return sorted;
+    }
+
+    /** Returns the summaries of the hits in this, by document id */
+    Map<String, DocumentSummary.Summary> summaries() { return summaries; }
+
+    ReplyStatistics statistics() {
+        return new ReplyStatistics(replies, hitsReceived, hits.size(), summariesReceived, summaries.size());
+    }
+
+}
@@ -0,0 +1,22 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.streamingvisitors;
+
+/**
+ * Statistics of the replies merged into the result of a streaming query.
+ *
+ * @param replies the number of replies received
+ * @param hitsReceived the number of hits received in all replies
+ * @param hitsKept the number of hits kept after merging
+ * @param summariesReceived the number of summaries received in all replies
+ * @param summariesKept the number of summaries kept after merging
+ */
+record ReplyStatistics(int replies, long hitsReceived, int hitsKept, long summariesReceived, int summariesKept) {
+
+    @Override
+    public String toString() {
+        return "replies: " + replies +
+               ", hits received: " + hitsReceived + ", hits kept: " + hitsKept +
+               ", summaries received: " + summariesReceived + ", summaries kept: " + summariesKept;
+    }
+
+}
@@ -207,6 +207,7 @@ public class StreamingBackend extends VespaBackend {
         result.setTotalHitCount(visitor.getTotalHitCount());
         result.setCoverage(new Coverage(stats.getDocumentsVisited(), stats.getDocumentsVisited(), 1, 1));
         query.trace(visitor.getStatistics().toString(), false, 2);
+        query.trace(visitor.getReplyStatistics().toString(), false, 2);
         query.getContext(true).setProperty(STREAMING_STATISTICS, stats);
 
         DocsumPacket[] summaryPackets = new DocsumPacket [hits.size()];
@@ -30,7 +30,6 @@ import com.yahoo.vespa.objects.BufferSerializer;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,8 +42,8 @@ import java.util.logging.Level;
 /**
  * A visitor data handler that performs a query in a content cluster with the
  * searchvisitor visitor plugin. It collects and merges hits (sorted
- * descending on rank), summaries (sorted on document id), and
- * groupings. The resulting data can be fetched when the query has
+ * descending on rank) and the summaries of those hits, as each reply arrives,
+ * and groupings. The resulting data can be fetched when the query has
  * completed.
  *
  * @author Ulf Carlin
@@ -63,11 +62,10 @@ class StreamingVisitor extends VisitorDataHandler implements Visitor {
 
     private static final Logger log = Logger.getLogger(StreamingVisitor.class.getName());
     private final VisitorParameters params = new VisitorParameters("");
-    private List<SearchResult.Hit> hits = new ArrayList<>();
+    private final HitMerger hits;
     private Set<String> errors = new TreeSet<>();
     private int totalHitCount = 0;
 
-    private final Map<String, DocumentSummary.Summary> summaryMap = new HashMap<>();
     private final Map<Integer, Grouping> groupingMap = new ConcurrentHashMap<>();
     private Query query = null;
     private final VisitorSessionFactory visitorSessionFactory;
@@ -83,6 +81,7 @@ class StreamingVisitor extends VisitorDataHandler implements Visitor {
                             int traceLevelOverride)
     {
         this.query = query;
+        this.hits = new HitMerger(query.getOffset() + query.getHits());
         this.visitorSessionFactory = visitorSessionFactory;
         this.traceLevelOverride = traceLevelOverride;
         setVisitorParameters(searchCluster, route, schema);
@@ -309,30 +308,21 @@ class StreamingVisitor extends VisitorDataHandler implements Visitor {
     }
 
     public void onQueryResult(SearchResult sr, DocumentSummary summary) {
-        handleSearchResult(sr);
-        handleSummary(summary);
-    }
-
-    private void handleSearchResult(SearchResult result) {
-        log.log(Level.FINE, () -> "Got SearchResult with " + result.getTotalHitCount() +
-                                  " in total and " + result.getHitCount() +
-                                  " hits in real for query with selection " + params.getDocumentSelection());
-
-        List<SearchResult.Hit> newHits = new ArrayList<>(result.getHitCount());
-        for (int i = 0; i < result.getHitCount(); i++)
-            newHits.add(result.getHit(i));
+        log.log(Level.FINE, () -> "Got SearchResult with " + sr.getTotalHitCount() +
+                                  " in total and " + sr.getHitCount() +
+                                  " hits in real, and DocumentSummary with " + summary.getSummaryCount() +
+                                  " summaries for query with selection " + params.getDocumentSelection());
 
+        // Hits and summaries are merged together such that only the summaries of the hits kept are stored
         synchronized (this) {
-            totalHitCount += result.getTotalHitCount();
-            hits = ListMerger.mergeIntoArrayList(hits, newHits, query.getOffset() + query.getHits());
-            var newErrors = result.getErrors();
-            for (var error : newErrors) {
+            totalHitCount += sr.getTotalHitCount();
+            hits.addHits(sr);
+            hits.addSummaries(summary);
+            for (var error : sr.getErrors())
                 errors.add(error);
-            }
         }
 
-        Map<Integer, byte[]> newGroupingMap = result.getGroupingList();
-        mergeGroupingMaps(newGroupingMap);
+        mergeGroupingMaps(sr.getGroupingList());
     }
 
     private void mergeGroupingMaps(Map<Integer, byte []> newGroupingMap) {
@@ -359,27 +349,19 @@ class StreamingVisitor extends VisitorDataHandler implements Visitor {
         }
     }
 
-    private void handleSummary(DocumentSummary ds) {
-        int summaryCount = ds.getSummaryCount();
-        log.log(Level.FINE, () -> "Got DocumentSummary with " + summaryCount + " summaries for query with selection " +
-                                  params.getDocumentSelection());
-        synchronized (summaryMap) {
-            for (int i = 0; i < summaryCount; i++) {
-                DocumentSummary.Summary summary = ds.getSummary(i);
-                summaryMap.put(summary.getDocId(), summary);
-            }
-        }
+    @Override
+    final public synchronized List<SearchResult.Hit> getHits() {
+        List<SearchResult.Hit> merged = hits.hits();
+        int fromIndex = Math.min(merged.size(), query.getOffset());
+        int toIndex = Math.min(merged.size(), query.getOffset() + query.getHits());
+        return merged.subList(fromIndex, toIndex);
     }
 
     @Override
-    final public List<SearchResult.Hit> getHits() {
-        int fromIndex = Math.min(hits.size(), query.getOffset());
-        int toIndex = Math.min(hits.size(), query.getOffset() + query.getHits());
-        return hits.subList(fromIndex, toIndex);
-    }
+    final public synchronized Map<String, DocumentSummary.Summary> getSummaryMap() { return hits.summaries(); }
 
     @Override
-    final public Map<String, DocumentSummary.Summary> getSummaryMap() { return summaryMap; }
+    final public synchronized ReplyStatistics getReplyStatistics() { return hits.statistics(); }
 
     @Override
     final public int getTotalHitCount() { return totalHitCount; }
@@ -24,6 +24,8 @@ interface Visitor {
 
     VisitorStatistics getStatistics();
 
+    ReplyStatistics getReplyStatistics();
+
     List<SearchResult.Hit> getHits();
 
     Map<String, DocumentSummary.Summary> getSummaryMap();
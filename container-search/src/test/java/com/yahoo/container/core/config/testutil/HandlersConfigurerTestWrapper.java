@@ -19,6 +19,7 @@ import com.yahoo.jdisc.test.MockMetric;
 import com.yahoo.language.Linguistics;
 import com.yahoo.language.process.Embedder;
 import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.metrics.simple.MetricReceiver;
 
 import java.io.File;
 import java.io.IOException;
@@ -146,6 +147,7 @@ public class HandlersConfigurerTestWrapper {
                 bind(ai.vespa.cloud.ZoneInfo.class).to(MockZoneInfo.class);
                 bind(ContainerThreadPool.class).to(SimpleContainerThreadpool.class);
                 bind(Metric.class).to(MockMetric.class);
+                bind(MetricReceiver.class).toInstance(MetricReceiver.nullImplementation);
             }
         });
     }
@@ -7,6 +7,7 @@ import com.yahoo.concurrent.InThreadExecutorService;
 import com.yahoo.container.QrSearchersConfig;
 import com.yahoo.container.handler.ClustersStatus;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.prelude.fastsearch.ClusterParams;
 import com.yahoo.prelude.fastsearch.DocumentdbInfoConfig;
 import com.yahoo.prelude.fastsearch.FastHit;
@@ -494,7 +495,8 @@ public class ClusterSearcherTestCase {
                                    dispatchers,
                                    null,
                                    vipStatus,
-                                   null);
+                                   null,
+                                   MetricReceiver.nullImplementation);
     }
 
     private static class QueryTimeoutFixture {
@@ -3,6 +3,8 @@ package com.yahoo.prelude.fastsearch;
 
 import com.google.common.collect.ImmutableSet;
 import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
 import com.yahoo.prelude.hitfield.JSONString;
 import com.yahoo.prelude.hitfield.RawData;
 import com.yahoo.prelude.hitfield.XMLString;
@@ -119,6 +121,39 @@ public class SlimeSummaryTestCase {
         assertEquals(tensor2, featureData.getTensor("tensor2_feature"));
     }
 
+    @Test
+    void testOnlyAccessedFieldsAreDecoded() {
+        Tensor tensor1 = Tensor.from("tensor(x{},y{}):{{x:foo,y:bar}:0.1}");
+        Tensor tensor2 = Tensor.from("tensor(x[1],y[1]):{{x:0,y:0}:-0.3}");
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        DocsumDefinitionSet docsum = new DocsumDefinitionSet(createSchema(), metric);
+        FastHit hit = new FastHit();
+        assertNull(docsum.lazyDecode("default", fullSummary(tensor1, tensor2), hit));
+        assertEquals(4, hit.getField("integer_field"));
+        assertEquals(4, hit.getField("integer_field"));
+        assertEquals("string_value", hit.getField("string_field"));
+
+        var snapshot = metric.getSnapshot();
+        Point point = new Point(Map.of("summaryclass", "default", "documenttype", "test"));
+        assertEquals(15, snapshot.getMapForMetric("docsum.fields_available").get(point).getCount());
+        assertEquals(2, snapshot.getMapForMetric("docsum.fields_decoded").get(point).getCount());
+    }
+
+    @Test
+    void testFieldsAreCountedAsDecodedOnce() {
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        DocsumDefinitionSet docsum = new DocsumDefinitionSet(createSchema(), metric);
+        FastHit hit = new FastHit();
+        assertNull(docsum.lazyDecode("default", fullSummary(Tensor.from("tensor(x{}):{a:1}"), Tensor.from("tensor(x[1]):[2]")), hit));
+        assertEquals((short)2, hit.setField("short_field", (short)3));
+        hit.forEachField((name, value) -> { });
+        hit.forEachField((name, value) -> { });
+
+        var snapshot = metric.getSnapshot();
+        Point point = new Point(Map.of("summaryclass", "default", "documenttype", "test"));
+        assertEquals(15, snapshot.getMapForMetric("docsum.fields_decoded").get(point).getCount());
+    }
+
     @Test
     void testFieldAccessAPI() {
         DocsumDefinitionSet partialDocsum1 = createPartialDocsumDefinitionSet1();
@@ -431,6 +466,10 @@ public class SlimeSummaryTestCase {
     }
 
     private DocsumDefinitionSet createDocsumDefinitionSet() {
+        return new DocsumDefinitionSet(createSchema());
+    }
+
+    private Schema createSchema() {
         var schema = new Schema.Builder("test");
         var summary = new DocumentSummary.Builder("default");
         summary.add(new DocumentSummary.Field("integer_field", "integer"));
@@ -449,7 +488,7 @@ public class SlimeSummaryTestCase {
         summary.add(new DocumentSummary.Field("tensor_field2", "tensor"));
         summary.add(new DocumentSummary.Field("summaryfeatures", "featuredata"));
         schema.add(summary.build());
-        return new DocsumDefinitionSet(schema.build());
+        return schema.build();
     }
 
     private DocsumDefinitionSet createPartialDocsumDefinitionSet1() {
@@ -0,0 +1,96 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.prelude.semantics.test;
+
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.prelude.semantics.RuleBase;
+import com.yahoo.prelude.semantics.rule.ProductionRule;
+import com.yahoo.search.Query;
+import com.yahoo.search.test.QueryTestCase;
+import org.junit.jupiter.api.Test;
+
+import java.util.ListIterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that only the rules which may match a query are evaluated, with the same result as evaluating all.
+ */
+public class RuleIndexTestCase {
+
+    private static final RuleBase ruleBase = createRuleBase();
+
+    @Test
+    void testOnlyCandidateRulesAreEvaluated() {
+        Query query = assertSemantics("WEAKAND(100) automobile sony nothing", "car sony", 3);
+        assertTrue(query.getContext(false).getTrace().toString().contains("Evaluating 3 candidate rules of 1005"),
+                   query.getContext(false).getTrace().toString());
+        assertSemantics("WEAKAND(100) other7 other999", "filler7 filler999", 0);
+        assertSemantics("WEAKAND(100) brand:hp laptop", "hp laptop", 0);
+        assertSemantics("WEAKAND(100) unrelated", "unrelated", 0);
+    }
+
+    @Test
+    void testRulesMatchingTheOutputOfEarlierRulesAreEvaluated() {
+        assertSemantics("WEAKAND(100) automobile wheels", "car tyres", 0);
+        assertSemantics("WEAKAND(100) automobile wheels", "automobile tyres", 0);
+    }
+
+    @Test
+    void testRulesWhichCannotBeIndexedAreAlwaysEvaluated() {
+        assertSemantics("WEAKAND(100) uno", "one", 0);
+        assertSemantics("WEAKAND(100) two three", "two three", 0);
+    }
+
+    @Test
+    void testModifyingTheRulesDiscardsTheIndex() {
+        RuleBase modified = createRuleBase();
+        assertSemantics("WEAKAND(100) truck", "truck", modified);
+
+        ListIterator<ProductionRule> rules = modified.ruleIterator();
+        rules.next();
+        rules.set(createRuleBase("truck -> lorry;\n").rules().get(0)); // Replaces 'car -> automobile'
+        assertSemantics("WEAKAND(100) lorry", "truck", modified);
+        assertSemantics("WEAKAND(100) car", "car", modified);
+    }
+
+    private Query assertSemantics(String result, String input, int traceLevel) {
+        return assertSemantics(result, input, traceLevel, ruleBase);
+    }
+
+    private void assertSemantics(String result, String input, RuleBase ruleBase) {
+        assertSemantics(result, input, 0, ruleBase);
+    }
+
+    private Query assertSemantics(String result, String input, int traceLevel, RuleBase ruleBase) {
+        Query query = new Query("?query=" + QueryTestCase.httpEncode(input) + "&tracelevel=" + traceLevel + "&language=und");
+        ruleBase.analyze(query, traceLevel);
+        assertEquals(result, query.getModel().getQueryTree().getRoot().toString());
+        return query;
+    }
+
+    private static RuleBase createRuleBase() {
+        StringBuilder rules = new StringBuilder();
+        rules.append("@default;\n");
+        rules.append("@stemming(false);\n");
+        rules.append("car -> automobile;\n");
+        rules.append("[brand] -> brand:[brand];\n");
+        rules.append("[brand] :- dell, hp;\n");
+        for (int i = 0; i < 1000; i++)
+            rules.append("filler").append(i).append(" -> other").append(i).append(";\n");
+        rules.append("automobile tyres -> automobile wheels;\n");
+        rules.append("[...] = 'one' -> uno;\n");
+        rules.append("sony +> nothing;\n");
+        return createRuleBase(rules.toString());
+    }
+
+    private static RuleBase createRuleBase(String rules) {
+        try {
+            return RuleBase.createFromString("test", rules, null, new SimpleLinguistics());
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
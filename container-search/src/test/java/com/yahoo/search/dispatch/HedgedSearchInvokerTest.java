@@ -0,0 +1,118 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Hit;
+import com.yahoo.vespa.config.search.DispatchConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgedSearchInvokerTest {
+
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+    private final AtomicLong nanoClock = new AtomicLong(0);
+    private final Hedging hedging = new Hedging(new DispatchConfig.Builder().hedgeBudget(1).build(), metric, nanoClock::get);
+
+    @Test
+    void requireThatAnsweringPrimaryIsNotHedged() throws Exception {
+        var primary = new AnsweringInvoker("primary", true);
+        var invoker = new HedgedSearchInvoker(primary, () -> { throw new AssertionError("Should not hedge"); }, hedging);
+        assertEquals("primary", search(invoker));
+        assertNull(invoker.secondary());
+        invoker.close();
+        assertTrue(primary.closed);
+    }
+
+    @Test
+    void requireThatSilentPrimaryIsHedgedWithinBudget() throws Exception {
+        var primary = new AnsweringInvoker("primary", false);
+        var secondary = new AnsweringInvoker("secondary", true);
+        var invoker = new HedgedSearchInvoker(primary, () -> Optional.of(secondary), hedging);
+        assertEquals("secondary", search(invoker));
+        assertTrue(primary.closed, "The slow invoker is closed when the result is available");
+        assertFalse(secondary.closed);
+        invoker.close();
+        assertTrue(secondary.closed);
+
+        // No budget left
+        var silentPrimary = new AnsweringInvoker("primary", false);
+        var unused = new AnsweringInvoker("secondary", true);
+        var budgetExhausted = new HedgedSearchInvoker(silentPrimary, () -> Optional.of(unused), hedging);
+        assertEquals("primary", search(budgetExhausted));
+        assertNull(budgetExhausted.secondary());
+
+        // Budget is refilled over time
+        nanoClock.addAndGet(1_000_000_000);
+        var refilled = new HedgedSearchInvoker(new AnsweringInvoker("primary", false),
+                                               () -> Optional.of(new AnsweringInvoker("secondary", true)), hedging);
+        assertEquals("secondary", search(refilled));
+
+        var snapshot = metric.getSnapshot();
+        assertEquals(2, snapshot.getMapForMetric("dispatch.hedged").values().iterator().next().getCount());
+        assertEquals(2, snapshot.getMapForMetric("dispatch.hedge_wins").values().iterator().next().getCount());
+    }
+
+    @Test
+    void requireThatAbandonedPrimaryIsSampled() throws Exception {
+        Duration initialDelay = hedging.delay();
+        var invoker = new HedgedSearchInvoker(new AnsweringInvoker("primary", false),
+                                              () -> Optional.of(new AnsweringInvoker("secondary", true)), hedging);
+        assertEquals("secondary", search(invoker));
+        assertTrue(hedging.delay().compareTo(initialDelay) > 0,
+                   "The time spent by the primary, which is at least the delay, is sampled: " + hedging.delay());
+    }
+
+    private String search(SearchInvoker invoker) throws Exception {
+        Query query = new Query("?query=test&timeout=200ms");
+        Result result = invoker.search(query);
+        return result.hits().get(0).getId().toString();
+    }
+
+    /** An invoker which answers immediately or never */
+    private static class AnsweringInvoker extends SearchInvoker {
+
+        private final String name;
+        private final boolean answers;
+        private Query query;
+        boolean closed = false;
+
+        AnsweringInvoker(String name, boolean answers) {
+            super(Optional.empty());
+            this.name = name;
+            this.answers = answers;
+        }
+
+        @Override
+        protected Object sendSearchRequest(Query query, Object context) {
+            this.query = query;
+            if (answers)
+                responseAvailable();
+            return context;
+        }
+
+        @Override
+        protected InvokerResult getSearchResult() {
+            InvokerResult result = new InvokerResult(query, 1);
+            result.getResult().hits().add(new Hit(name));
+            return result;
+        }
+
+        @Override
+        protected void release() {
+            closed = true;
+        }
+
+    }
+
+}
@@ -331,6 +331,33 @@ public class InterleavedSearchInvokerTest {
         }
     }
 
+    @Test
+    void requireThatEarlyReturnStopsWaitingWhenTopKIsSufficient() throws IOException {
+        DispatchConfig dispatchConfig = MockSearchCluster.createDispatchConfig(50.0);
+        TopKEstimator hitEstimator = new TopKEstimator(30, 0.99);
+        List<SearchInvoker> invokers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            invokers.add(new MockInvoker(i).setHits(createHits(15, i)));
+        query.setHits(40);
+        query.properties().set(Dispatcher.earlyReturn, true);
+        try (InterleavedSearchInvoker invoker = new InterleavedSearchInvoker(Timer.monotonic, invokers, hitEstimator, dispatchConfig, new Group(0, List.of()), Set.of())) {
+            invoker.responseAvailable(invokers.get(0));
+            invoker.responseAvailable(invokers.get(1));
+            invoker.responseAvailable(invokers.get(2));
+            Result result = invoker.search(query);
+            assertEquals(40, result.hits().size());
+            assertTrue(findTrace(result, "Returning early with 3 of 4 nodes answered").isPresent());
+            assertTrue(result.getCoverage(false).isDegradedByAdapativeTimeout());
+        }
+    }
+
+    private static List<Hit> createHits(int count, int distributionKey) {
+        List<Double> scores = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            scores.add(count * 4.0 - i * 4 - distributionKey);
+        return createHits(scores, distributionKey, distributionKey);
+    }
+
     @Test
     void requireThatGroupingsAreMerged() throws IOException {
         List<SearchInvoker> invokers = new ArrayList<>();
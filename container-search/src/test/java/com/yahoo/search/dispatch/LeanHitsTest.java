@@ -0,0 +1,91 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LeanHitsTest {
+
+    @Test
+    void testColumnsGrowAndMaterializeAsLeanHits() {
+        LeanHits hits = new LeanHits(3, 7, 1);
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, hits.add(bytes("gid" + i), 100 - i, i % 2 == 0 ? ByteString.EMPTY : bytes("sort" + i)));
+        hits.add(bytes("nan"), Double.NaN, ByteString.EMPTY);
+
+        assertEquals(101, hits.size());
+        assertArrayEquals("gid42".getBytes(), hits.gid(42));
+        assertEquals(58.0, hits.relevance(42), 0.0);
+        assertFalse(hits.hasSortData(42));
+        assertNull(hits.sortData(42));
+        assertArrayEquals("sort43".getBytes(), hits.sortData(43));
+        assertEquals(Double.NEGATIVE_INFINITY, hits.relevance(100), 0.0);
+
+        LeanHit hit = hits.get(43);
+        assertArrayEquals("gid43".getBytes(), hit.getGid());
+        assertArrayEquals("sort43".getBytes(), hit.getSortData());
+        assertEquals(57.0, hit.getRelevance(), 0.0);
+        assertEquals(3, hit.getPartId());
+        assertEquals(7, hit.getDistributionKey());
+        assertFalse(hit.hasMatchFeatures());
+
+        hits.clear();
+        assertTrue(hits.isEmpty());
+    }
+
+    @Test
+    void testComparisonIsEquivalentToLeanHit() {
+        LeanHits byRelevance = new LeanHits(0, 0, 4);
+        byRelevance.add(bytes("a"), 2, ByteString.EMPTY);
+        byRelevance.add(bytes("b"), 1, ByteString.EMPTY);
+        byRelevance.add(bytes("c"), 1, ByteString.EMPTY);
+        LeanHits bySortData = new LeanHits(0, 0, 4);
+        bySortData.add(bytes("a"), 0, ByteString.copyFrom(new byte[] { 1 }));
+        bySortData.add(bytes("b"), 0, ByteString.copyFrom(new byte[] { (byte)0xff }));
+        bySortData.add(bytes("c"), 0, ByteString.copyFrom(new byte[] { (byte)0xff, 0 }));
+
+        for (LeanHits hits : List.of(byRelevance, bySortData)) {
+            for (int i = 0; i < hits.size(); i++) {
+                for (int j = 0; j < hits.size(); j++) {
+                    assertEquals(Integer.signum(hits.get(i).compareTo(hits.get(j))),
+                                 Integer.signum(hits.compareTo(i, hits.get(j))));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMergingOnlyMaterializesRetainedHits() {
+        LeanHits first = new LeanHits(0, 0, 3);
+        first.add(bytes("a"), 9, ByteString.EMPTY);
+        first.add(bytes("b"), 5, ByteString.EMPTY);
+        first.add(bytes("c"), 1, ByteString.EMPTY);
+        LeanHits second = new LeanHits(0, 1, 3);
+        second.add(bytes("d"), 8, ByteString.EMPTY);
+        second.add(bytes("e"), 6, ByteString.EMPTY);
+        second.add(bytes("f"), 2, ByteString.EMPTY);
+
+        TopHits top = new TopHits(3);
+        top.merge(first);
+        top.merge(second);
+        List<LeanHit> merged = top.hits(0);
+        assertEquals(3, merged.size());
+        assertArrayEquals("a".getBytes(), merged.get(0).getGid());
+        assertArrayEquals("d".getBytes(), merged.get(1).getGid());
+        assertEquals(1, merged.get(1).getDistributionKey());
+        assertArrayEquals("e".getBytes(), merged.get(2).getGid());
+    }
+
+    private static ByteString bytes(String s) {
+        return ByteString.copyFromUtf8(s);
+    }
+
+}
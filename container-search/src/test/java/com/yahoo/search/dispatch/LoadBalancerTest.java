@@ -4,6 +4,7 @@ package com.yahoo.search.dispatch;
 import com.yahoo.search.dispatch.LoadBalancer.AdaptiveScheduler;
 import com.yahoo.search.dispatch.LoadBalancer.BestOfRandom2;
 import com.yahoo.search.dispatch.LoadBalancer.GroupStatus;
+import com.yahoo.search.dispatch.LoadBalancer.LatencyAwareScheduler;
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import org.junit.jupiter.api.Test;
@@ -15,8 +16,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+
+import com.yahoo.metrics.simple.MetricReceiver;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -184,6 +189,82 @@ public class LoadBalancerTest {
         assertEquals(0, allocate(sched.takeNextGroup(null).get()).groupId());
     }
 
+    @Test
+    void requireLatencyAwareSchedulerPrefersFastGroupsAndShedsSlowOnes() {
+        var scoreboard = createScoreBoard(2);
+        var metric = new MetricReceiver.MockReceiver();
+        LatencyAwareScheduler sched = new LatencyAwareScheduler(scoreboard, metric);
+        GroupStatus fast = scoreboard.get(0);
+        GroupStatus slow = scoreboard.get(1);
+        for (int i = 0; i < 200; i++) {
+            updateSearchTime(fast, RequestDuration.of(Duration.ofMillis(10)));
+            updateSearchTime(slow, RequestDuration.of(Duration.ofMillis(35)));
+        }
+        assertEquals(0, sched.takeNextGroup(null, Duration.ofSeconds(1)).get().groupId());
+
+        // Queries queue up in the fast group until its cost exceeds that of the slow group
+        for (int i = 0; i < 3; i++)
+            allocate(sched.takeNextGroup(null, Duration.ofSeconds(1)).get());
+        assertEquals(3, fast.allocations());
+        assertEquals(1, sched.takeNextGroup(null, Duration.ofSeconds(1)).get().groupId());
+
+        // The slow group is shed when it is predicted to not complete within the time left
+        for (int i = 0; i < 3; i++) fast.release(true, RequestDuration.of(Duration.ofMillis(10)));
+        assertEquals(0, sched.takeNextGroup(null, Duration.ofMillis(20)).get().groupId());
+        assertFalse(sched.shouldShed(null, Duration.ofMillis(20)));
+        assertTrue(sched.shouldShed(null, Duration.ofMillis(5)));
+        assertTrue(sched.shouldShed(Set.of(0), Duration.ofMillis(20)));
+
+        var snapshot = metric.getSnapshot();
+        assertEquals(2, snapshot.getMapForMetric("dispatch.query_shed").values().iterator().next().getCount());
+        assertEquals(1, snapshot.getMapForMetric("dispatch.group_shed").values().iterator().next().getCount());
+    }
+
+    @Test
+    void requireLatencyAwareSchedulerRecoversFromSheddingAllQueries() {
+        var scoreboard = createScoreBoard(2);
+        long[] nanos = { 0 };
+        LatencyAwareScheduler sched = new LatencyAwareScheduler(scoreboard, new MetricReceiver.MockReceiver(), () -> nanos[0]);
+        for (int i = 0; i < 200; i++) {
+            updateSearchTime(scoreboard.get(0), RequestDuration.of(Duration.ofMillis(200)));
+            updateSearchTime(scoreboard.get(1), RequestDuration.of(Duration.ofMillis(300)));
+        }
+        assertTrue(sched.shouldShed(null, Duration.ofMillis(100)));
+
+        // No queries complete while all are shed, but the stats only become stale after a while
+        nanos[0] += Duration.ofMillis(500).toNanos();
+        assertTrue(sched.shouldShed(null, Duration.ofMillis(100)));
+
+        // Queries are let through to groups with stale stats, and the stats restart from the next query completed
+        nanos[0] += Duration.ofSeconds(1).toNanos();
+        assertFalse(sched.shouldShed(null, Duration.ofMillis(100)));
+        GroupStatus probed = allocate(sched.takeNextGroup(null, Duration.ofMillis(100)).get());
+        assertEquals(0, probed.groupId());
+        assertTrue(sched.shouldShed(Set.of(1), Duration.ofMillis(100)), "Shed again while the first query is in flight");
+        probed.release(true, RequestDuration.of(Duration.ofMillis(10)));
+        assertFalse(sched.shouldShed(Set.of(1), Duration.ofMillis(100)));
+        assertEquals(0, sched.takeNextGroup(null, Duration.ofMillis(100)).get().groupId());
+
+        // A group which is still slow is shed again as soon as a query completes
+        GroupStatus slow = scoreboard.get(1);
+        updateSearchTime(slow, RequestDuration.of(Duration.ofMillis(300)));
+        assertTrue(sched.shouldShed(Set.of(0), Duration.ofMillis(100)));
+    }
+
+    @Test
+    void requireLatencyStatsTrackAverageAndHighPercentile() {
+        var stats = new LatencyAwareScheduler.LatencyStats(Duration.ofMillis(10), 0.99);
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++)
+            stats.decay(RequestDuration.of(Duration.ofMillis(random.nextInt(100) < 98 ? 10 : 100)));
+        assertEquals(0.0118, stats.averageCost(), 0.005);
+        assertTrue(stats.percentileLatency().toMillis() > 20, "p99 is above the common latency: " + stats.percentileLatency());
+        assertTrue(stats.percentileLatency().toMillis() <= 100, "p99 is not above the max latency: " + stats.percentileLatency());
+        assertEquals(stats.percentileLatency().toNanos() / 1e9, stats.predictedLatency(0), 1e-6);
+        stats.sampleInFlight(1);
+        assertTrue(stats.predictedLatency(10) > stats.predictedLatency(0), "Predicted latency increases with queries in flight");
+    }
+
     private static int countRequestsToReach90p(Duration timeBetweenSample, Duration searchTime) {
         double p90 = 0.9*searchTime.toMillis()/1000.0;
         GroupStatus.Decayer decayer = new AdaptiveScheduler.DecayByTime(Duration.ofMillis(1), RequestDuration.of(Instant.EPOCH, Duration.ZERO));
@@ -0,0 +1,70 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TopHitsTest {
+
+    @Test
+    void testMergingRetainsTheBestHitsInOrder() {
+        TopHits top = new TopHits(4);
+        top.merge(hits("a", 9, "b", 5, "c", 1));
+        assertFalse(top.isFull());
+        top.merge(hits("d", 8, "e", 6, "f", 2));
+        assertTrue(top.isFull());
+        assertEquals(4, top.size());
+        assertEquals(List.of(9.0, 8.0, 6.0, 5.0), relevances(top.hits(0)));
+        top.merge(hits("g", 7, "h", 0));
+        assertEquals(List.of(9.0, 8.0, 7.0, 6.0), relevances(top.hits(0)));
+        assertEquals(List.of(7.0, 6.0), relevances(top.hits(2)));
+        assertEquals(3, top.mergedLists());
+    }
+
+    @Test
+    void testDuplicatesAreRemoved() {
+        TopHits top = new TopHits(10);
+        top.merge(hits("a", 3, "b", 2));
+        top.merge(hits("a", 3, "c", 1));
+        assertEquals(List.of(3.0, 2.0, 1.0), relevances(top.hits(0)));
+    }
+
+    @Test
+    void testOffsetBeyondHits() {
+        TopHits top = new TopHits(10);
+        top.merge(hits("a", 3));
+        assertEquals(List.of(), top.hits(5));
+    }
+
+    @Test
+    void testNoHitsAreKeptWhenNoHitsAreRequested() {
+        TopHits top = new TopHits(0);
+        top.merge(hits("a", 3, "b", 2));
+        LeanHits columns = new LeanHits(0, 0, 1);
+        columns.add(ByteString.copyFromUtf8("c"), 1, ByteString.EMPTY);
+        top.merge(columns);
+        assertTrue(top.isFull());
+        assertEquals(0, top.size());
+        assertEquals(List.of(), top.hits(0));
+        assertEquals(2, top.mergedLists());
+    }
+
+    private static List<LeanHit> hits(Object ... gidsAndRelevances) {
+        List<LeanHit> hits = new ArrayList<>();
+        for (int i = 0; i < gidsAndRelevances.length; i += 2)
+            hits.add(new LeanHit(((String)gidsAndRelevances[i]).getBytes(), 0, 0, ((Integer)gidsAndRelevances[i + 1]).doubleValue()));
+        return hits;
+    }
+
+    private static List<Double> relevances(List<LeanHit> hits) {
+        return hits.stream().map(LeanHit::getRelevance).toList();
+    }
+
+}
@@ -166,4 +166,16 @@ public class TopKEstimatorTest {
         return sb.toString();
     }
 
+
+    @Test
+    void requireMissingTopKIsEstimatedFromUnansweredNodes() {
+        TopKEstimator estimator = new TopKEstimator(30, 0.999);
+        assertEquals(0, estimator.estimateMissingK(200, 10, 10));
+        assertEquals(38, estimator.estimateMissingK(200, 9, 10));
+        assertEquals(76, estimator.estimateMissingK(200, 8, 10));
+        assertEquals(200, estimator.estimateMissingK(200, 0, 10));
+        assertEquals(200, estimator.estimateMissingK(200, 0, 1));
+        assertEquals(200, new TopKEstimator(30, 1.0).estimateMissingK(200, 9, 10));
+    }
+
 }
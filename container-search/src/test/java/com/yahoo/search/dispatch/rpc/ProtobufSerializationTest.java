@@ -14,6 +14,7 @@ import com.yahoo.search.query.profile.compiled.CompiledQueryProfileRegistry;
 import com.yahoo.search.query.profile.config.QueryProfileXMLReader;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -136,6 +137,25 @@ public class ProtobufSerializationTest {
         }
     }
 
+    @Test
+    void testDocsumReplyDecodingReferencesPayload() throws Exception {
+        byte[] summaries = new byte[] { 1, 2, 3, 4, 5 };
+        var reply = SearchProtocol.DocsumReply.newBuilder()
+                .addErrors(SearchProtocol.Error.newBuilder().setMessage("first"))
+                .setSlimeSummaries(ByteString.copyFrom(summaries))
+                .addErrors(SearchProtocol.Error.newBuilder().setMessage("second"))
+                .build().toByteArray();
+        var decoded = ProtobufSerialization.deserializeDocsumReply(reply);
+        assertSame(reply, decoded.payload());
+        assertEquals(summaries.length, decoded.summariesLength());
+        assertArrayEquals(summaries, Arrays.copyOfRange(reply, decoded.summariesOffset(), decoded.summariesOffset() + decoded.summariesLength()));
+        assertEquals(List.of("first", "second"), decoded.errors().stream().map(SearchProtocol.Error::getMessage).toList());
+
+        var empty = ProtobufSerialization.deserializeDocsumReply(new byte[0]);
+        assertEquals(0, empty.summariesLength());
+        assertTrue(empty.errors().isEmpty());
+    }
+
     @Test
     void profiling_parameters_are_serialized_in_search_request() {
         var q = new Query("?query=test&trace.level=1&" +
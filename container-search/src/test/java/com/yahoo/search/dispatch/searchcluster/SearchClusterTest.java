@@ -4,6 +4,8 @@ package com.yahoo.search.dispatch.searchcluster;
 import com.yahoo.container.QrSearchersConfig;
 import com.yahoo.container.handler.ClustersStatus;
 import com.yahoo.container.handler.VipStatus;
+import com.yahoo.metrics.simple.Bucket;
+import com.yahoo.metrics.simple.MetricReceiver;
 import com.yahoo.net.HostName;
 import com.yahoo.prelude.Pong;
 import com.yahoo.search.cluster.BaseNodeMonitor;
@@ -49,6 +51,10 @@ public class SearchClusterTest {
         }
 
         State(String clusterId, int nodesPerGroup, List<String> nodeNames) {
+            this(clusterId, nodesPerGroup, MonitoringPolicy.periodic, MetricReceiver.nullImplementation, nodeNames);
+        }
+
+        State(String clusterId, int nodesPerGroup, MonitoringPolicy monitoring, MetricReceiver metric, List<String> nodeNames) {
             this.clusterId = clusterId;
             this.nodesPerGroup = nodesPerGroup;
             vipStatus = new VipStatus(new QrSearchersConfig.Builder().searchcluster(new QrSearchersConfig.Searchcluster.Builder().name(clusterId)).build(),
@@ -65,7 +71,8 @@ public class SearchClusterTest {
                 pingCounts.add(new AtomicInteger(0));
             }
             searchCluster = new SearchCluster(clusterId, 100.0, nodes,
-                                              vipStatus, new Factory(nodesPerGroup, numDocsPerNode, pingCounts));
+                                              vipStatus, new Factory(nodesPerGroup, numDocsPerNode, pingCounts),
+                                              monitoring, metric);
             clusterMonitor = new ClusterMonitor<>(searchCluster, false);
             searchCluster.addMonitoring(clusterMonitor);
         }
@@ -332,6 +339,34 @@ public class SearchClusterTest {
         verifyThatVipStatusUpRequireOnlyOneOnlineNode(3, 3);
     }
 
+    @Test
+    void requireThatEventDrivenMonitoringPingsStableNodesLessOften() {
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        try (State test = new State("cluster.1", 2, new MonitoringPolicy(true, 2, 4), metric, List.of("a", "b", "c", "d"))) {
+            for (int round = 1; round <= 22; round++)
+                test.clusterMonitor.ping(Runnable::run);
+            assertTrue(test.vipStatus.isInRotation());
+            // Pinged in round 1 and 2, then every second round, then every fourth round
+            for (AtomicInteger pingCount : test.pingCounts)
+                assertEquals(8, pingCount.get());
+
+            test.numDocsPerNode.get(0).set(2);
+            test.clusterMonitor.ping(Runnable::run); // round 23 pings all nodes, and notices the change
+            test.clusterMonitor.ping(Runnable::run); // round 24 pings the changed node again
+            assertEquals(10, test.pingCounts.get(0).get());
+            assertEquals(9, test.pingCounts.get(1).get());
+            assertEquals(3, test.searchCluster.group(0).activeDocuments());
+            assertEquals(2, test.searchCluster.group(1).activeDocuments());
+
+            Bucket snapshot = metric.getSnapshot();
+            assertEquals(4 * 24 - 10 - 3 * 9, // all node rounds minus the pings above
+                         snapshot.getMapForMetric("dispatch.skipped_pings").values().iterator().next().getCount());
+            // Coverage is only recomputed in the rounds where a node changed
+            for (var coverageComputation : snapshot.getMapForMetric("dispatch.coverage_computation_time").values())
+                assertEquals(2, coverageComputation.getCount());
+        }
+    }
+
     @Test
     void requireThatPingSequenceIsUpHeld() {
         Node node = new Node("test", 1, "n", 1);
@@ -13,6 +13,7 @@ import com.yahoo.processing.IllegalInputException;
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.grouping.GroupingQueryParser;
 import com.yahoo.search.grouping.GroupingRequest;
 import com.yahoo.search.grouping.request.AllOperation;
 import com.yahoo.search.grouping.request.GroupingOperation;
@@ -23,8 +24,10 @@ import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
 import com.yahoo.search.searchchain.Execution;
 import com.yahoo.search.searchchain.SearchChain;
+import com.yahoo.searchlib.aggregation.AggregationResult;
 import com.yahoo.searchlib.aggregation.CountAggregationResult;
 import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.aggregation.GroupingLevel;
 import com.yahoo.searchlib.aggregation.HitsAggregationResult;
 import com.yahoo.searchlib.aggregation.MaxAggregationResult;
 import com.yahoo.searchlib.aggregation.MinAggregationResult;
@@ -36,6 +39,7 @@ import com.yahoo.searchlib.expression.StringResultNode;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -198,6 +202,50 @@ public class GroupingExecutorTestCase {
         assertEquals(9L, hit.getField("max(bar)"));
     }
 
+    @Test
+    void requireThatAdaptivePrecisionCollectsExactAggregatesOfCandidatesInSecondPass() {
+        Query query = new Query("?query=dummy&tracelevel=3&" + GroupingQueryParser.PARAM_ADAPTIVE_PRECISION + "=true");
+        GroupingRequest req = GroupingRequest.newInstance(query);
+        req.setRootOperation(GroupingOperation.fromString("all(group(foo) max(2) precision(100) order(-count()) each(output(count())))"));
+        ContentNodes nodes = new ContentNodes();
+        Group grp = req.getResultGroup(newExecution(new GroupingExecutor(), nodes).search(query));
+
+        assertEquals(2, nodes.requests.size());
+        assertEquals(0, nodes.requests.get(0).getFirstLevel());
+        assertEquals(1, nodes.requests.get(0).getLastLevel());
+        GroupingLevel level = nodes.requests.get(0).getLevels().get(0);
+        assertEquals(3, level.getMaxGroups()); // one more than max, to tell whether there are more groups
+        assertEquals(3, level.getPrecision());
+        assertEquals(1, nodes.requests.get(1).getFirstLevel());
+        assertEquals(List.of("a", "b", "c"), nodes.requests.get(1).getRoot().getChildren().stream().map(g -> g.getId().getString()).toList());
+        assertEquals(18, nodes.groupsReturned);
+        GroupList lst = (GroupList) grp.get(0);
+        assertEquals(2, lst.size());
+        assertEquals("group:string:b", lst.get(0).getId().toString());
+        assertEquals(18L, lst.get(0).getField("count()"));
+        assertEquals("group:string:c", lst.get(1).getId().toString());
+        assertEquals(13L, lst.get(1).getField("count()"));
+        String trace = query.getContext(false).getTrace().toString();
+        assertTrue(trace.contains("0 of 3 candidate groups had exact aggregates after the first pass."), trace);
+        assertTrue(trace.contains("Grouping pass #1 sent"), trace);
+    }
+
+    @Test
+    void requireThatGroupingsOrderedByAggregatesUseSinglePassWithoutAdaptivePrecision() {
+        Query query = newQuery();
+        GroupingRequest req = GroupingRequest.newInstance(query);
+        req.setRootOperation(GroupingOperation.fromString("all(group(foo) max(2) precision(100) order(-count()) each(output(count())))"));
+        ContentNodes nodes = new ContentNodes();
+        Group grp = req.getResultGroup(newExecution(new GroupingExecutor(), nodes).search(query));
+
+        assertEquals(1, nodes.requests.size());
+        assertEquals(24, nodes.groupsReturned);
+        GroupList lst = (GroupList) grp.get(0);
+        assertEquals(2, lst.size());
+        assertEquals(18L, lst.get(0).getField("count()"));
+        assertEquals(13L, lst.get(1).getField("count()"));
+    }
+
     @Test
     void requireThatUnexpectedGroupingResultsAreIgnored() {
         Query query = newQuery();
@@ -790,6 +838,51 @@ public class GroupingExecutorTestCase {
         }
     }
 
+    /** Simulates content nodes grouping documents by the values of a single attribute, and counting them */
+    @After (GroupingExecutor.COMPONENT_NAME)
+    private static class ContentNodes extends Searcher {
+
+        final List<Map<String, Integer>> counts = List.of(
+                Map.of("a", 10, "b", 9, "c", 1, "d", 2, "e", 1, "f", 1, "g", 1, "h", 1),
+                Map.of("a", 1, "b", 8, "c", 9, "d", 2, "e", 1, "f", 1, "g", 1, "h", 1),
+                Map.of("a", 1, "b", 1, "c", 3, "d", 6, "e", 2, "f", 1, "g", 1, "h", 1));
+        final List<Grouping> requests = new ArrayList<>();
+        int groupsReturned = 0;
+
+        @Override
+        public Result search(Query query, Execution exec) {
+            Result result = exec.search(query);
+            for (Grouping request : GroupingExecutor.getGroupingList(query))
+                requests.add(request.clone());
+            for (Map<String, Integer> nodeCounts : counts) {
+                List<Grouping> replies = new ArrayList<>();
+                for (Grouping request : GroupingExecutor.getGroupingList(query)) {
+                    Grouping reply = request.clone();
+                    GroupingLevel level = reply.getLevels().get(0);
+                    List<String> ids = reply.getFirstLevel() == 0
+                                       ? nodeCounts.keySet().stream()
+                                                   .sorted(Comparator.comparing(nodeCounts::get).reversed()
+                                                                     .thenComparing(Comparator.naturalOrder()))
+                                                   .limit(level.getPrecision()).sorted().toList()
+                                       : reply.getRoot().getChildren().stream().map(g -> g.getId().getString()).toList();
+                    com.yahoo.searchlib.aggregation.Group root = new com.yahoo.searchlib.aggregation.Group().setTag(reply.getRoot().getTag());
+                    for (String id : ids) {
+                        com.yahoo.searchlib.aggregation.Group group = level.getGroupPrototype().clone().setId(new StringResultNode(id));
+                        for (AggregationResult aggregate : group.getAggregationResults())
+                            ((CountAggregationResult) aggregate).setCount(nodeCounts.get(id));
+                        root.addChild(group);
+                    }
+                    groupsReturned += ids.size();
+                    replies.add(reply.setRoot(root));
+                }
+                GroupingListHit hit = new GroupingListHit(replies, null, query);
+                hit.setSerializedSize(100);
+                result.hits().add(hit);
+            }
+            return result;
+        }
+    }
+
     /** Simulate multiple document types returning a grouping result */
     @After (GroupingExecutor.COMPONENT_NAME)
     private static class MultiDocumentTypeResultProvider extends Searcher {
@@ -0,0 +1,66 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.profile.compiled;
+
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.query.profile.DimensionBinding;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DimensionalMapTestCase {
+
+    private static final CompoundName a = CompoundName.from("a");
+    private static final CompoundName b = CompoundName.from("b.c");
+
+    @Test
+    void testResolvedLookupsAreEquivalentToResolvingEachTime() {
+        DimensionalMap<String> map = createMap();
+        for (int repetition = 0; repetition < 3; repetition++) {
+            assertEquals("default", map.get(a, null));
+            assertEquals("default", map.get(a, Map.of()));
+            assertNull(map.get(b, Map.of()));
+            assertNull(map.get(CompoundName.from("c"), Map.of()));
+            assertEquals("eu", map.get(a, Map.of("region", "eu")));
+            assertEquals("eu", map.get(a, Map.of("region", "eu", "other", "value")));
+            assertEquals("eu-mobile", map.get(a, Map.of("region", "eu", "device", "mobile")));
+            assertEquals("default", map.get(a, Map.of("region", "us", "device", "mobile")));
+            assertEquals("mobile", map.get(b, Map.of("region", "us", "device", "mobile")));
+            assertNull(map.get(b, Map.of("region", "eu")));
+        }
+    }
+
+    @Test
+    void testLookupsBeyondTheResolvedContextsAreCorrect() {
+        DimensionalMap<String> map = createMap();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, String> context = new HashMap<>();
+            context.put("region", "region" + i);
+            context.put("device", i % 2 == 0 ? "mobile" : "desktop");
+            assertEquals("default", map.get(a, context));
+            assertEquals(i % 2 == 0 ? "mobile" : null, map.get(b, context));
+            assertEquals("eu-mobile", map.get(a, Map.of("region", "eu", "device", "mobile")));
+        }
+        for (var entry : map.entrySet())
+            assertEquals(entry.getValue().get(Map.of("region", "eu")), map.get(entry.getKey(), Map.of("region", "eu")));
+    }
+
+    private DimensionalMap<String> createMap() {
+        List<String> dimensions = List.of("region", "device");
+        DimensionalMap.Builder<String> builder = new DimensionalMap.Builder<>();
+        builder.put(a, binding(dimensions, Map.of()), "default");
+        builder.put(a, binding(dimensions, Map.of("region", "eu")), "eu");
+        builder.put(a, binding(dimensions, Map.of("region", "eu", "device", "mobile")), "eu-mobile");
+        builder.put(b, binding(dimensions, Map.of("device", "mobile")), "mobile");
+        return builder.build();
+    }
+
+    private Binding binding(List<String> dimensions, Map<String, String> values) {
+        return Binding.createFrom(DimensionBinding.createFrom(dimensions, values));
+    }
+
+}
@@ -1,6 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.rendering;
 
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.yahoo.json.Jackson;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.yahoo.component.ComponentId;
@@ -1419,6 +1420,44 @@ public class JsonRendererTestCase {
         assertEqualJsonContent(expected, summary);
     }
 
+    @Test
+    @Timeout(300)
+    void testDirectUtf8RenderingIsIdenticalToRenderingThroughStrings() throws InterruptedException, ExecutionException {
+        String direct = render(resultWithStructuredFields("renderer.json.directUtf8=true"));
+        String throughStrings = render(resultWithStructuredFields("renderer.json.directUtf8=false"));
+        assertEquals(throughStrings, direct);
+    }
+
+    @Test
+    void testQuotedRawUtf8ValueIsEscaped() throws IOException {
+        String value = "{\"k\u00e6\":\"v\n\"}";
+        RawUtf8Value raw = new RawUtf8Value(Utf8.toBytes(value));
+        SerializedString expected = new SerializedString(value);
+        assertEquals("{\\\"k\u00e6\\\":\\\"v\\n\\\"}", Utf8.toString(raw.asQuotedUTF8()));
+        assertEquals(Utf8.toString(expected.asQuotedUTF8()), Utf8.toString(raw.asQuotedUTF8()));
+        assertEquals(new String(expected.asQuotedChars()), new String(raw.asQuotedChars()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expected.asQuotedUTF8().length, raw.writeQuotedUTF8(out));
+        assertEquals(Utf8.toString(expected.asQuotedUTF8()), Utf8.toString(out.toByteArray()));
+        assertEquals(value, Utf8.toString(raw.asUnquotedUTF8()));
+    }
+
+    private Result resultWithStructuredFields(String parameter) {
+        Result r = new Result(new Query("/?" + parameter));
+        for (int i = 0; i < 1000; i++) {
+            Hit h = new Hit("hit" + i);
+            h.setField("map", dataFromSimplified("[ { key: 'k\\u00e6', value: 'v\\n\\\"1\\\"' }, { key: 'k2', value: [ 1, 2.5, true ] } ]"));
+            h.setField("struct", dataFromSimplified("{ a: 'x', b: { c: -17, d: [] }, e: {} }"));
+            h.setField("data", new Value.ArrayValue().add(new Value.DataValue(new byte[] { 0x0a, (byte)0xfe }))
+                                                     .add(new Value.DoubleValue(Double.NaN))
+                                                     .add(Value.empty()));
+            h.setField("tensor", Tensor.from("tensor(x[3]):[1.0, 2.0, " + i + "]"));
+            r.hits().add(h);
+        }
+        r.setTotalHitCount(1000L);
+        return r;
+    }
+
     private static SlimeAdapter dataFromSimplified(String simplified) {
         var decoder = new com.yahoo.slime.JsonDecoder();
         var slime = decoder.decode(new Slime(), Utf8.toBytes(simplified));
@@ -0,0 +1,91 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.container.QrSearchersConfig;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.schema.SchemaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncExecutorTestCase {
+
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+
+    @Test
+    void testTimeoutAndCancellationOnThreadPerTask() throws InterruptedException {
+        AsyncExecutor executor = AsyncExecutor.onThreads(Thread::new, metric, () -> { });
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Chain<Searcher> blocking = new Chain<>(new Searcher() {
+            @Override
+            public Result search(Query query, Execution execution) {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                }
+                catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return new Result(query);
+            }
+        });
+
+        FutureResult future = new AsyncExecution(blocking, contextWith(executor)).search(new Query("?hits=0"));
+        assertTrue(started.await(60, TimeUnit.SECONDS));
+        assertEquals(1, executor.active());
+        assertNotNull(future.get(1, TimeUnit.MILLISECONDS).hits().getError());
+
+        future.cancel(true);
+        awaitInactive(executor);
+        assertTrue(interrupted.get());
+
+        Chain<Searcher> answering = new Chain<>(new Searcher() {
+            @Override
+            public Result search(Query query, Execution execution) { return new Result(query); }
+        });
+        Result result = new AsyncExecution(answering, contextWith(executor)).search(new Query("?hits=0")).get(60, TimeUnit.SECONDS);
+        assertNull(result.hits().getError());
+        awaitInactive(executor);
+
+        var snapshot = metric.getSnapshot();
+        assertEquals(2, snapshot.getMapForMetric("search.async.tasks").values().iterator().next().getCount());
+        assertEquals(2, snapshot.getMapForMetric("search.async.active").values().iterator().next().getCount());
+    }
+
+    @Test
+    void testFallsBackToPoolWithoutVirtualThreads() {
+        if (AsyncExecutor.virtualThreadFactory().isPresent()) return;
+
+        Executor pool = Runnable::run;
+        AsyncExecutor executor = AsyncExecutor.create(QrSearchersConfig.AsyncExecution.VIRTUAL_THREADS, pool, metric);
+        Thread[] ranOn = new Thread[1];
+        executor.execute(() -> ranOn[0] = Thread.currentThread());
+        assertEquals(Thread.currentThread(), ranOn[0]);
+        assertEquals(0, executor.active());
+        executor.close();
+    }
+
+    private static Execution.Context contextWith(Executor executor) {
+        return new Execution.Context(null, null, SchemaInfo.empty(), null, null, new SimpleLinguistics(), executor);
+    }
+
+    private static void awaitInactive(AsyncExecutor executor) throws InterruptedException {
+        while (executor.active() > 0)
+            Thread.sleep(1);
+    }
+
+}
@@ -0,0 +1,174 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.component.chain.Chain;
+import com.yahoo.metrics.simple.Bucket;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.metrics.simple.UntypedMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.result.Hit;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearcherProfilerTestCase {
+
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+
+    @Test
+    void testCostOfEachSearcherIsSampled() {
+        Chain<Searcher> chain = new Chain<>(new Sleeping("first", 0),
+                                            new Nesting("nesting", new Sleeping("nested", 100)),
+                                            new Sleeping("last", 50));
+        Execution.Context context = Execution.Context.createContextStub();
+        context.setProfiler(SearcherProfiler.create(metric, 1.0));
+
+        Execution execution = new Execution(chain, context);
+        Result result = execution.search(new Query("?hits=1"));
+        execution.fill(result, "default");
+
+        Bucket snapshot = metric.getSnapshot();
+        Map<Point, UntypedMetric> wallTime = snapshot.getMapForMetric("search.searcher.wall_time");
+        for (String searcher : new String[] { "first", "nesting", "nested", "last" }) {
+            assertEquals(1, wallTime.get(point(searcher, "search")).getCount(), searcher);
+            assertEquals(1, wallTime.get(point(searcher, "fill")).getCount(), searcher);
+        }
+        assertTrue(wallTime.get(point("nested", "search")).getSum() >= 100);
+        assertTrue(wallTime.get(point("last", "search")).getSum() >= 50);
+        assertTrue(wallTime.get(point("first", "search")).getSum() < 50, "Excludes the searchers called");
+        assertTrue(wallTime.get(point("nesting", "search")).getSum() < 100, "Excludes the nested execution");
+
+        Map<Point, UntypedMetric> allocated = snapshot.getMapForMetric("search.searcher.allocated_bytes");
+        if (allocated != null)
+            assertTrue(allocated.get(point("first", "search")).getSum() >= Sleeping.allocation);
+    }
+
+    @Test
+    void testAsyncExecutionInAnotherThreadIsSampledSeparately() {
+        Chain<Searcher> chain = new Chain<>(new Forking("forking"),
+                                            new Sleeping("first", 20),
+                                            new Sleeping("last", 20));
+        Execution.Context context = Execution.Context.createContextStub();
+        context.setProfiler(SearcherProfiler.create(metric, 1.0));
+
+        Execution execution = new Execution(chain, context);
+        Result result = execution.search(new Query("?hits=1"));
+        assertEquals(1, result.hits().size());
+
+        Map<Point, UntypedMetric> wallTime = metric.getSnapshot().getMapForMetric("search.searcher.wall_time");
+        assertEquals(1, wallTime.get(point("forking", "search")).getCount());
+        assertEquals(2, wallTime.get(point("first", "search")).getCount(), "Sampled in both threads");
+        assertEquals(2, wallTime.get(point("last", "search")).getCount(), "Sampled in both threads");
+    }
+
+    @Test
+    void testDisabledProfilerSamplesNothing() {
+        assertSame(SearcherProfiler.disabled, SearcherProfiler.create(metric, 0));
+        assertSame(SearcherProfiler.disabled, SearcherProfiler.create(MetricReceiver.nullImplementation, 1.0));
+        assertNull(SearcherProfiler.disabled.sample());
+        assertThrows(IllegalArgumentException.class, () -> SearcherProfiler.create(metric, 1.5));
+
+        Execution execution = new Execution(new Chain<>(new Sleeping("only", 0)), Execution.Context.createContextStub());
+        execution.search(new Query());
+        assertTrue(metric.getSnapshot().getAllMetricNames().isEmpty());
+    }
+
+    private Point point(String searcher, String operation) {
+        return metric.pointBuilder().set("searcher", searcher).set("operation", operation).build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Sleeping extends Searcher {
+
+        static final int allocation = 1 << 20;
+
+        private final long millis;
+
+        static byte[] allocated;
+
+        Sleeping(String id, long millis) {
+            super(new ComponentId(id));
+            this.millis = millis;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            allocated = new byte[allocation];
+            sleep(millis);
+            Result result = execution.search(query);
+            if (result.hits().size() == 0) {
+                Hit hit = new Hit("hit");
+                hit.setFillable();
+                result.hits().add(hit);
+            }
+            return result;
+        }
+
+        @Override
+        public void fill(Result result, String summaryClass, Execution execution) {
+            sleep(millis);
+            execution.fill(result, summaryClass);
+        }
+
+    }
+
+    /** Searches the rest of the chain both in this thread and asynchronously in another, at the same time */
+    private static class Forking extends Searcher {
+
+        Forking(String id) {
+            super(new ComponentId(id));
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            FutureResult async = new AsyncExecution(execution).search(query.clone());
+            Result result = execution.search(query);
+            Result asyncResult = async.get();
+            assertNull(asyncResult.hits().getErrorHit());
+            return result;
+        }
+
+    }
+
+    private static class Nesting extends Searcher {
+
+        private final Searcher nested;
+
+        Nesting(String id, Searcher nested) {
+            super(new ComponentId(id));
+            this.nested = nested;
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            new Execution(nested, execution.context()).search(query);
+            return execution.search(query);
+        }
+
+        @Override
+        public void fill(Result result, String summaryClass, Execution execution) {
+            new Execution(nested, execution.context()).fill(result, summaryClass);
+            execution.fill(result, summaryClass);
+        }
+
+    }
+
+}
@@ -18,7 +18,10 @@ import org.junit.jupiter.api.Test;
 import com.yahoo.test.ManualClock;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -72,6 +75,32 @@ public class RateLimitingSearcherTestCase {
         assertEquals(9, tryRequests(chain, "id1"), "'rate' request are available initially");
     }
 
+    @Test
+    void testConcurrentRateLimiting() throws InterruptedException {
+        ManualClock clock = new ManualClock();
+        MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+        var chain = createChain(true, clock, metric);
+        int threadCount = 8;
+        AtomicInteger allowed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; j++)
+                    if (executeWasAllowed(chain, "id1", 2000))
+                        allowed.incrementAndGet();
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+            thread.join();
+
+        // Each thread may overspend the capacity it is granted by less than the cost of one query
+        assertTrue(allowed.get() >= 1999 && allowed.get() <= 2000 + threadCount, "Allowed " + allowed.get());
+
+        Bucket snapshot = metric.getSnapshot();
+        assertTrue(snapshot.getMapForMetric("rate_limiting.capacity_request_time").values().iterator().next().getCount() >= threadCount);
+    }
+
     private Chain<Searcher> createChain(boolean localRate, ManualClock clock, MetricReceiver.MockReceiver metric) {
         RateLimitingConfig.Builder rateLimitingConfig = new RateLimitingConfig.Builder();
         rateLimitingConfig.maxAvailableCapacity(4);
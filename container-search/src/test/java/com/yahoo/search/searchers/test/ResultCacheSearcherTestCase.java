@@ -0,0 +1,132 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers.test;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ResultCacheConfig;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchers.ResultCacheSearcher;
+import com.yahoo.test.ManualClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the result cache searcher
+ */
+public class ResultCacheSearcherTestCase {
+
+    private final ManualClock clock = new ManualClock();
+    private final AtomicLong contentGeneration = new AtomicLong(0);
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+    private final CountingBackend backend = new CountingBackend();
+
+    @Test
+    void testCaching() {
+        var chain = createChain(new ResultCacheConfig.Builder().enabledByDefault(true));
+
+        assertEquals("foo:1", search(chain, "?query=foo"));
+        assertEquals("foo:1", search(chain, "?query=foo"));
+        assertEquals(1, backend.invocations, "Second query is answered from the cache");
+
+        assertEquals("foo:2", search(chain, "?query=foo&hits=5"));
+        assertEquals(2, backend.invocations, "Hits is part of the key");
+
+        assertEquals("foo:1", search(chain, "?query=foo&trace.level=3&timeout=7s"));
+        assertEquals(2, backend.invocations, "Tracing and timeout is not part of the key");
+
+        assertEquals("foo:3", search(chain, "?query=foo&noCache=true"));
+        assertEquals("foo:4", search(chain, "?query=foo&resultCache.enabled=false"));
+        assertEquals(4, backend.invocations, "Queries may opt out");
+
+        var snapshot = metric.getSnapshot();
+        assertEquals(2, snapshot.getMapForMetric("query_result_cache.misses").values().iterator().next().getCount());
+        assertEquals(2, snapshot.getMapForMetric("query_result_cache.hits").values().iterator().next().getCount());
+    }
+
+    @Test
+    void testOptIn() {
+        var chain = createChain(new ResultCacheConfig.Builder().enabledByDefault(false));
+        search(chain, "?query=foo");
+        search(chain, "?query=foo");
+        assertEquals(2, backend.invocations);
+        search(chain, "?query=foo&resultCache.enabled=true");
+        search(chain, "?query=foo&resultCache.enabled=true");
+        assertEquals(3, backend.invocations);
+    }
+
+    @Test
+    void testInvalidation() {
+        var chain = createChain(new ResultCacheConfig.Builder().enabledByDefault(true).ttl(10));
+        assertEquals("foo:1", search(chain, "?query=foo"));
+        clock.advance(Duration.ofSeconds(9));
+        assertEquals("foo:1", search(chain, "?query=foo"));
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals("foo:2", search(chain, "?query=foo"), "Expired by ttl");
+
+        contentGeneration.incrementAndGet();
+        assertEquals("foo:3", search(chain, "?query=foo"), "Invalidated by content change");
+        assertEquals("foo:3", search(chain, "?query=foo"));
+    }
+
+    @Test
+    void testErrorsAreNotCached() {
+        var chain = createChain(new ResultCacheConfig.Builder().enabledByDefault(true));
+        search(chain, "?query=error");
+        search(chain, "?query=error");
+        assertEquals(2, backend.invocations);
+    }
+
+    @Test
+    void testSizeBoundedEviction() {
+        var chain = createChain(new ResultCacheConfig.Builder().enabledByDefault(true).maxSizeBytes(1000));
+        search(chain, "?query=a");
+        search(chain, "?query=b");
+        search(chain, "?query=c");
+        assertEquals(3, backend.invocations);
+        assertEquals("c:3", search(chain, "?query=c"));
+        assertEquals(3, backend.invocations, "The last one is retained");
+        assertEquals("a:4", search(chain, "?query=a"), "The first one is evicted");
+        assertEquals(3, metric.getSnapshot().getMapForMetric("query_result_cache.evictions").values().iterator().next().getCount());
+    }
+
+    private Chain<Searcher> createChain(ResultCacheConfig.Builder config) {
+        return new Chain<>("test", new ResultCacheSearcher(new ResultCacheConfig(config), contentGeneration::get, metric, clock),
+                           backend);
+    }
+
+    private String search(Chain<Searcher> chain, String request) {
+        Result result = new Execution(chain, Execution.Context.createContextStub()).search(new Query(request));
+        if (result.hits().getError() != null) return "error";
+        return result.hits().get(0).getField("title").toString();
+    }
+
+    private static class CountingBackend extends Searcher {
+
+        int invocations = 0;
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            invocations++;
+            String term = query.getModel().getQueryString();
+            if (term.equals("error"))
+                return new Result(query, ErrorMessage.createBackendCommunicationError("Failed"));
+            Result result = new Result(query);
+            Hit hit = new Hit("hit");
+            hit.setField("title", term + ":" + invocations);
+            result.hits().add(hit);
+            result.setTotalHitCount(1);
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.yql;
+
+import com.yahoo.metrics.simple.Bucket;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.search.Query;
+import com.yahoo.search.query.QueryTree;
+import com.yahoo.search.query.parser.Parsable;
+import com.yahoo.search.query.parser.ParserEnvironment;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+public class YqlParseCacheTestCase {
+
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+
+    @Test
+    void testProgramsDifferingInLiteralsAreBoundToTheSameTemplate() throws Exception {
+        YqlParseCache cache = new YqlParseCache(10, metric);
+        cache.parse("select * from sources * where title contains 'madonna' and year > 1990 limit 10");
+        assertParsedAsWithoutCache("select * from sources * where title contains \"the beatles\" and year > -19 limit 3", cache);
+        assertParsedAsWithoutCache("select  *   from sources * where title contains 'x' and year > 2000000000000 limit 10", cache);
+        assertParsedAsWithoutCache("select * from sources * where title contains 'x' and year > 1.5 limit 10", cache);
+        var snapshot = metric.getSnapshot();
+        assertEquals(4, count(snapshot, "yql.parse_cache.hits"));
+        assertEquals(3, count(snapshot, "yql.parse_cache.misses"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testLiteralsWhichAreNotParametersMustMatch() throws Exception {
+        YqlParseCache cache = new YqlParseCache(10, metric);
+        cache.parse("select * from sources * where {label:'a', weight:10}title contains 'madonna'");
+        assertParsedAsWithoutCache("select * from sources * where {label:'a', weight:10}title contains 'cher'", cache);
+        assertParsedAsWithoutCache("select * from sources * where {label:'b', weight:10}title contains 'cher'", cache);
+        assertParsedAsWithoutCache("select * from sources * where true | all(group(a) max(3) each(output(count())))", cache);
+        assertParsedAsWithoutCache("select * from sources * where true | all(group(a) max(4) each(output(count())))", cache);
+        var snapshot = metric.getSnapshot();
+        assertEquals(5, count(snapshot, "yql.parse_cache.hits"));
+        assertEquals(4, count(snapshot, "yql.parse_cache.misses"));
+    }
+
+    @Test
+    void testAnnotationsOfParametersAreKept() throws Exception {
+        YqlParseCache cache = new YqlParseCache(10, metric);
+        cache.parse("select * from sources * where title contains ({stem:false}\"a\")");
+        assertParsedAsWithoutCache("select * from sources * where title contains ({stem:false}\"b\")", cache);
+        cache.parse("select * from sources * where title contains ({prefix:true, weight:200}\"a\")");
+        assertParsedAsWithoutCache("select * from sources * where title contains ({prefix:true, weight:200}\"b\")", cache);
+        assertEquals(4, count(metric.getSnapshot(), "yql.parse_cache.hits"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedProgramsAreEvicted() throws Exception {
+        YqlParseCache cache = new YqlParseCache(2, metric);
+        cache.parse("select * from sources * where a contains 'x'");
+        cache.parse("select * from sources * where b contains 'x'");
+        cache.parse("select * from sources * where a contains 'y'");
+        cache.parse("select * from sources * where c contains 'x'");
+        cache.parse("select * from sources * where a contains 'z'");
+        cache.parse("select * from sources * where b contains 'y'");
+        var snapshot = metric.getSnapshot();
+        assertEquals(2, count(snapshot, "yql.parse_cache.hits"));
+        assertEquals(4, count(snapshot, "yql.parse_cache.misses"));
+        assertEquals(2, count(snapshot, "yql.parse_cache.evictions"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void testItemTreesAreBuiltFromBoundPrograms() {
+        YqlParseCache cache = new YqlParseCache(10, metric);
+        assertEquals("AND title:madonna year:>1990", parse("select * from sources * where title contains 'madonna' and year > 1990", cache));
+        assertEquals("AND title:cher year:>2000", parse("select * from sources * where title contains 'cher' and year > 2000", cache));
+        assertEquals("AND title:\"the beatles\" year:<1970",
+                     parse("select * from sources * where title contains phrase('the', 'beatles') and year < 1970", cache));
+        var snapshot = metric.getSnapshot();
+        assertEquals(1, count(snapshot, "yql.parse_cache.hits"));
+    }
+
+    private void assertParsedAsWithoutCache(String program, YqlParseCache cache) throws Exception {
+        OperatorNode<StatementOperator> expected = new ProgramParser().parse("query", program);
+        OperatorNode<StatementOperator> cached = cache.parse(program);
+        assertEquals(expected, cached);
+        assertNotSame(cached, cache.parse(program));
+    }
+
+    private String parse(String program, YqlParseCache cache) {
+        YqlParser parser = new YqlParser(new ParserEnvironment());
+        parser.setParseCache(cache);
+        parser.setUserQuery(new Query());
+        QueryTree tree = parser.parse(new Parsable().setQuery(program));
+        return tree.toString();
+    }
+
+    private long count(Bucket snapshot, String name) {
+        var values = snapshot.getMapForMetric(name);
+        return values == null || values.isEmpty() ? 0 : values.values().iterator().next().getCount();
+    }
+
+}
@@ -123,6 +123,11 @@ public class StreamingSearcherTestCase {
             return new VisitorStatistics();
         }
 
+        @Override
+        public ReplyStatistics getReplyStatistics() {
+            return new ReplyStatistics(0, 0, 0, 0, 0);
+        }
+
         @Override
         public List<SearchResult.Hit> getHits() {
             return hits;
@@ -24,6 +24,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -311,6 +312,45 @@ public class StreamingVisitorTest {
         verifyVisitorFails(factory, qa, route, searchCluster);
     }
 
+    @Test
+    void testOnlyTheBestHitsAndTheirSummariesAreKept() throws Exception {
+        QueryArguments qa = new QueryArguments();
+        qa.offset = 1;
+        qa.hits = 2;
+        StreamingVisitor visitor = new StreamingVisitor(buildQuery(qa), "searchClusterConfigId",
+                                                        Route.parse("storageClusterRouteSpec"), "mytype",
+                                                        new MockVisitorSessionFactory(), 0);
+        visitor.doSearch();
+        double[] ranks = { 0.3, 1.0, 0.5, 0.1, 0.9, 0.2, 0.7 };
+        for (int i = 0; i < ranks.length; i++)
+            visitor.onMessage(createQRM("id:ns:type::" + i, ranks[i]), null);
+
+        assertEquals(14, visitor.getTotalHitCount());
+        assertEquals(2, visitor.getHits().size());
+        assertEquals("id:ns:type::4", visitor.getHits().get(0).getDocId());
+        assertEquals("id:ns:type::6", visitor.getHits().get(1).getDocId());
+        assertEquals(Set.of("id:ns:type::1", "id:ns:type::4", "id:ns:type::6"), visitor.getSummaryMap().keySet());
+        assertEquals(new ReplyStatistics(7, 7, 3, 7, 3), visitor.getReplyStatistics());
+    }
+
+    @Test
+    void testSummaryIsKeptWhileAnotherHitOfTheSameDocumentIsKept() throws Exception {
+        QueryArguments qa = new QueryArguments();
+        qa.hits = 2;
+        StreamingVisitor visitor = new StreamingVisitor(buildQuery(qa), "searchClusterConfigId",
+                                                        Route.parse("storageClusterRouteSpec"), "mytype",
+                                                        new MockVisitorSessionFactory(), 0);
+        visitor.doSearch();
+        visitor.onMessage(createQRM("id:ns:type::0", 0.5), null);
+        visitor.onMessage(createQRM("id:ns:type::0", 0.9), null);
+        visitor.onMessage(createQRM("id:ns:type::1", 0.7), null); // Evicts the first hit of document 0
+
+        assertEquals(2, visitor.getHits().size());
+        assertEquals("id:ns:type::0", visitor.getHits().get(0).getDocId());
+        assertEquals("id:ns:type::1", visitor.getHits().get(1).getDocId());
+        assertEquals(Set.of("id:ns:type::0", "id:ns:type::1"), visitor.getSummaryMap().keySet());
+    }
+
     private void verifyVisitorOk(MockVisitorSessionFactory factory, QueryArguments qa, Route route, String searchCluster) throws Exception {
         StreamingVisitor visitor = new StreamingVisitor(buildQuery(qa), searchCluster, route, "mytype", factory, 0);
         visitor.doSearch();
@@ -347,7 +387,7 @@ public class StreamingVisitorTest {
     private void verifyResults(QueryArguments qa, StreamingVisitor visitor) {
         assertEquals(6, visitor.getTotalHitCount());
         assertEquals(Math.min(3 - qa.offset, qa.hits), visitor.getHits().size());
-        assertEquals(3, visitor.getSummaryMap().size());
+        assertEquals(Math.min(3, qa.offset + qa.hits), visitor.getSummaryMap().size());
         assertEquals(0, visitor.getGroupings().size());
         assertNull(visitor.getStatistics());
 
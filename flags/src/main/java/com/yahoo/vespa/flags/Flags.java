@@ -66,7 +66,7 @@ public class Flags {
             "query-dispatch-policy", "adaptive",
             List.of("baldersheim"), "2022-08-20", "2025-02-01",
             "Select query dispatch policy, valid values are adaptive, round-robin, best-of-random-2," +
-                    " latency-amortized-over-requests, latency-amortized-over-time",
+                    " latency-amortized-over-requests, latency-amortized-over-time, latency-aware",
             "Takes effect at redeployment (requires restart)",
             INSTANCE_ID);
 
@@ -78,6 +78,10 @@ public interface Embedder {
         void sampleEmbeddingLatency(double millis, Context ctx);
         /** Add a sample embedding length to this */
         void sampleSequenceLength(long length, Context ctx);
+        /** Add a sample of the number of embed calls evaluated together in one batch to this */
+        default void sampleBatchSize(int size, Context ctx) { }
+        /** Add a sample of the time an embed call waited to be evaluated in a batch to this */
+        default void sampleBatchQueueTime(double millis, Context ctx) { }
 
         static Runtime testInstance() {
             return new Runtime() {
@@ -0,0 +1,144 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.language.significance.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A significance model in a compact binary format which is memory mapped read-only when read,
+ * such that the document frequencies are not loaded onto the heap.
+ * <p>
+ * The file consists of a header, followed by one {@link MappedDocumentFrequencies} table per language key:
+ * <pre>
+ * int magic, int version
+ * string id, string description
+ * int language count
+ * per language: string language key, int table offset, int table size
+ * tables
+ * </pre>
+ * where strings are an int byte length followed by UTF-8 bytes. Files must be less than 2Gb.
+ */
+public final class BinarySignificanceModelFile {
+
+    private static final int magic = 0x5653_4d46; // "VSMF"
+    private static final int version = 1;
+
+    private final String id;
+    private final String description;
+    private final Map<String, MappedDocumentFrequencies> languages;
+
+    private BinarySignificanceModelFile(String id, String description, Map<String, MappedDocumentFrequencies> languages) {
+        this.id = id;
+        this.description = description;
+        this.languages = Collections.unmodifiableMap(languages);
+    }
+
+    public String id() { return id; }
+
+    public String description() { return description; }
+
+    /** Returns the document frequencies of this by comma-separated language tags */
+    public Map<String, MappedDocumentFrequencies> languages() { return languages; }
+
+    /** Returns whether the given file is a binary significance model */
+    public static boolean isBinary(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] start = in.readNBytes(4);
+            return start.length == 4 && ByteBuffer.wrap(start).getInt() == magic;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed reading " + path, e);
+        }
+    }
+
+    /** Memory maps the given binary significance model file */
+    public static BinarySignificanceModelFile read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Significance model " + path + " is larger than 2Gb");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != magic)
+                throw new IllegalArgumentException(path + " is not a binary significance model");
+            if (buffer.getInt() != version)
+                throw new IllegalArgumentException("Unsupported version of binary significance model " + path);
+            String id = getString(buffer);
+            String description = getString(buffer);
+            int languageCount = buffer.getInt();
+            Map<String, MappedDocumentFrequencies> languages = new LinkedHashMap<>();
+            for (int i = 0; i < languageCount; i++) {
+                String languageKey = getString(buffer);
+                int offset = buffer.getInt();
+                int size = buffer.getInt();
+                languages.put(languageKey, new MappedDocumentFrequencies(buffer.slice(offset, size)));
+            }
+            return new BinarySignificanceModelFile(id, description, languages);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed reading " + path, e);
+        }
+    }
+
+    /** Writes a binary significance model file containing the given document frequencies by language key */
+    public static void write(String id, String description, Map<String, DocumentFrequencyFile> languages, Path path) {
+        id = Objects.requireNonNullElse(id, "");
+        description = Objects.requireNonNullElse(description, "");
+        long size = 4 + 4 + sizeOf(id) + sizeOf(description) + 4;
+        for (String languageKey : languages.keySet())
+            size += sizeOf(languageKey) + 4 + 4;
+        long headerSize = size;
+        for (DocumentFrequencyFile language : languages.values())
+            size += MappedDocumentFrequencies.sizeOf(language.frequencies());
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("A binary significance model must be less than 2Gb, but this is " + size + " bytes");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size);
+        buffer.putInt(magic).putInt(version);
+        putString(id, buffer);
+        putString(description, buffer);
+        buffer.putInt(languages.size());
+        int offset = (int)headerSize;
+        for (var language : languages.entrySet()) {
+            int tableSize = (int)MappedDocumentFrequencies.sizeOf(language.getValue().frequencies());
+            putString(language.getKey(), buffer);
+            buffer.putInt(offset).putInt(tableSize);
+            offset += tableSize;
+        }
+        for (DocumentFrequencyFile language : languages.values())
+            MappedDocumentFrequencies.write(language.documentCount(), language.frequencies(), buffer);
+
+        try {
+            Files.write(path, buffer.array());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed writing " + path, e);
+        }
+    }
+
+    private static long sizeOf(String s) {
+        return 4 + s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(String s, ByteBuffer buffer) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -7,31 +7,53 @@ import com.yahoo.language.significance.SignificanceModel;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
+ * A significance model backed either by document frequencies on the heap, or by a
+ * memory mapped {@link BinarySignificanceModelFile}.
  *
  * @author MariusArhaug
  */
 public class DefaultSignificanceModel implements SignificanceModel {
     private final long corpusSize;
     private final Map<String, Long> frequencies;
+    private final MappedDocumentFrequencies mappedFrequencies;
 
     private String id;
 
     public DefaultSignificanceModel(DocumentFrequencyFile file, String id) {
         this.frequencies = file.frequencies();
+        this.mappedFrequencies = null;
         this.corpusSize = file.documentCount();
         this.id = id;
     }
 
+    public DefaultSignificanceModel(MappedDocumentFrequencies frequencies, String id) {
+        this.frequencies = null;
+        this.mappedFrequencies = frequencies;
+        this.corpusSize = frequencies.documentCount();
+        this.id = id;
+    }
+
+    /** Creates a model from a document frequency json file, or a binary significance model file with a single language */
     public DefaultSignificanceModel(Path path) {
+        if (BinarySignificanceModelFile.isBinary(path)) {
+            var file = BinarySignificanceModelFile.read(path);
+            if (file.languages().size() != 1)
+                throw new IllegalArgumentException("Expected a single language in " + path + " but got " + file.languages().keySet());
+            this.frequencies = null;
+            this.mappedFrequencies = file.languages().values().iterator().next();
+            this.corpusSize = mappedFrequencies.documentCount();
+            this.id = file.id();
+            return;
+        }
+
         ObjectMapper objectMapper = new ObjectMapper();
         try {
             var file         = objectMapper.readValue(path.toFile(), DocumentFrequencyFile.class);
             this.frequencies = file.frequencies();
+            this.mappedFrequencies = null;
             this.corpusSize  = file.documentCount();
         } catch (IOException e) {
             throw new RuntimeException("Failed to load model from " + path, e);
@@ -40,10 +62,15 @@ public class DefaultSignificanceModel implements SignificanceModel {
 
     @Override
     public DocumentFrequency documentFrequency(String word) {
-        if (frequencies.containsKey(word)) {
-            return new DocumentFrequency(frequencies.get(word), corpusSize);
-        }
-        return new DocumentFrequency(1, corpusSize);
+        long frequency = frequency(word);
+        return new DocumentFrequency(frequency < 0 ? 1 : frequency, corpusSize);
+    }
+
+    /** Returns the document frequency of the given word, or -1 if it is not in this model */
+    private long frequency(String word) {
+        if (mappedFrequencies != null) return mappedFrequencies.frequency(word);
+        Long frequency = frequencies.get(word);
+        return frequency == null ? -1 : frequency;
     }
 
     @Override
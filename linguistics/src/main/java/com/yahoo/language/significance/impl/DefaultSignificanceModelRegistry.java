@@ -51,6 +51,10 @@ public final class DefaultSignificanceModelRegistry implements SignificanceModel
 
     public void addModel(Path path) {
         log.fine(() -> "Loading model from " + path);
+        if (BinarySignificanceModelFile.isBinary(path)) {
+            addBinaryModel(path);
+            return;
+        }
         ObjectMapper objectMapper = new ObjectMapper();
         try {
             InputStream in = path.toString().endsWith(".zst") ?
@@ -75,6 +79,17 @@ public final class DefaultSignificanceModelRegistry implements SignificanceModel
         }
     }
 
+    private void addBinaryModel(Path path) {
+        var file = BinarySignificanceModelFile.read(path);
+        for (var pair : file.languages().entrySet()) {
+            for (var languageTag : pair.getKey().split(",")) {
+                var language = Language.fromLanguageTag(languageTag);
+                log.fine(() -> "Adding memory mapped model for language %s with id %s".formatted(language, file.id()));
+                this.models.put(language, new DefaultSignificanceModel(pair.getValue(), file.id()));
+            }
+        }
+    }
+
     @Override
     public Optional<SignificanceModel> getModel(Language language) {
         if (!models.containsKey(language))
@@ -0,0 +1,174 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.language.significance.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The document frequencies of a language in a binary significance model file,
+ * read directly from the (memory mapped) buffer holding them.
+ * <p>
+ * The terms are stored in an open addressing hash table with linear probing, where each slot holds
+ * the hash of the term and the offset of the term entry, or 0 if empty. Each term entry holds the
+ * document frequency, the length of the term and the UTF-8 bytes of the term.
+ * Lookups hash and compare the UTF-8 encoding of the term on the fly, without allocating.
+ * <p>
+ * This is thread safe, as it only reads the buffer with absolute gets.
+ */
+public final class MappedDocumentFrequencies {
+
+    private static final int fnvOffset = 0x811c9dc5;
+    private static final int fnvPrime = 0x01000193;
+
+    /** The size of the fixed part of a table: Document count, term count and slot count */
+    static final int headerSize = 8 + 4 + 4;
+
+    /** The size of a slot: Term hash and term entry offset */
+    static final int slotSize = 4 + 4;
+
+    private final ByteBuffer buffer;
+    private final long documentCount;
+    private final int size;
+    private final int slotMask;
+
+    /** Creates a table from a buffer starting at the table, which must be written by {@link #write} */
+    MappedDocumentFrequencies(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.documentCount = buffer.getLong(0);
+        this.size = buffer.getInt(8);
+        int slotCount = buffer.getInt(12);
+        if (Integer.bitCount(slotCount) != 1)
+            throw new IllegalArgumentException("Corrupt significance model: Slot count " + slotCount + " is not a power of 2");
+        this.slotMask = slotCount - 1;
+    }
+
+    /** Returns the number of documents the frequencies are counted over */
+    public long documentCount() { return documentCount; }
+
+    /** Returns the number of terms in this */
+    public int size() { return size; }
+
+    /** Returns the document frequency of the given term, or -1 if it is not present */
+    public long frequency(String term) {
+        int hash = hash(term);
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            int slotStart = headerSize + slot * slotSize;
+            int entry = buffer.getInt(slotStart + 4);
+            if (entry == 0) return -1;
+            if (buffer.getInt(slotStart) == hash && matches(term, entry + 8 + 4, buffer.getInt(entry + 8)))
+                return buffer.getLong(entry);
+        }
+    }
+
+    /** Returns the frequencies of this as a map. This allocates all the terms and should only be used by tools. */
+    public Map<String, Long> toMap() {
+        Map<String, Long> frequencies = new TreeMap<>();
+        for (int slot = 0; slot <= slotMask; slot++) {
+            int entry = buffer.getInt(headerSize + slot * slotSize + 4);
+            if (entry == 0) continue;
+            byte[] term = new byte[buffer.getInt(entry + 8)];
+            buffer.get(entry + 8 + 4, term);
+            frequencies.put(new String(term, StandardCharsets.UTF_8), buffer.getLong(entry));
+        }
+        return frequencies;
+    }
+
+    private boolean matches(String term, int start, int length) {
+        int position = 0;
+        for (int i = 0; i < term.length(); ) {
+            int codePoint = term.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int byteCount = utf8Length(codePoint);
+            if (position + byteCount > length) return false;
+            for (int k = 0; k < byteCount; k++)
+                if (buffer.get(start + position++) != utf8Byte(codePoint, byteCount, k)) return false;
+        }
+        return position == length;
+    }
+
+    /** Writes a table of the given frequencies to the given buffer, which must have room for {@link #sizeOf} bytes */
+    static void write(long documentCount, Map<String, Long> frequencies, ByteBuffer buffer) {
+        int start = buffer.position();
+        int slotCount = slotCount(frequencies.size());
+        int entry = headerSize + slotCount * slotSize;
+        buffer.putLong(documentCount).putInt(frequencies.size()).putInt(slotCount);
+        for (var frequency : frequencies.entrySet()) {
+            byte[] term = frequency.getKey().getBytes(StandardCharsets.UTF_8);
+            int hash = hash(term);
+            int slot = hash & (slotCount - 1);
+            while (buffer.getInt(start + headerSize + slot * slotSize + 4) != 0)
+                slot = (slot + 1) & (slotCount - 1);
+            buffer.putInt(start + headerSize + slot * slotSize, hash);
+            buffer.putInt(start + headerSize + slot * slotSize + 4, entry);
+            buffer.putLong(start + entry, frequency.getValue());
+            buffer.putInt(start + entry + 8, term.length);
+            buffer.put(start + entry + 8 + 4, term);
+            entry += 8 + 4 + term.length;
+        }
+        buffer.position(start + entry);
+    }
+
+    /** Returns the number of bytes needed to write a table of the given frequencies */
+    static long sizeOf(Map<String, Long> frequencies) {
+        long size = headerSize + (long)slotCount(frequencies.size()) * slotSize;
+        for (String term : frequencies.keySet())
+            size += 8 + 4 + term.getBytes(StandardCharsets.UTF_8).length;
+        return size;
+    }
+
+    /** Returns a power of 2 giving a load factor of at most 0.5 */
+    private static int slotCount(int size) {
+        return Integer.highestOneBit(Math.max(1, size) * 2 - 1) * 2;
+    }
+
+    /** Returns the hash of the UTF-8 encoding of the given term, as encoded by String.getBytes */
+    static int hash(String term) {
+        int hash = fnvOffset;
+        for (int i = 0; i < term.length(); ) {
+            int codePoint = term.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int byteCount = utf8Length(codePoint);
+            for (int k = 0; k < byteCount; k++)
+                hash = (hash ^ (utf8Byte(codePoint, byteCount, k) & 0xff)) * fnvPrime;
+        }
+        return mix(hash);
+    }
+
+    static int hash(byte[] term) {
+        int hash = fnvOffset;
+        for (byte b : term)
+            hash = (hash ^ (b & 0xff)) * fnvPrime;
+        return mix(hash);
+    }
+
+    /** Spreads the entropy of the hash to its low bits, which are used to select slots */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80 || isSurrogate(codePoint)) return 1;
+        if (codePoint < 0x800) return 2;
+        if (codePoint < 0x10000) return 3;
+        return 4;
+    }
+
+    /** Returns byte k of the UTF-8 encoding of the given code point, where an unpaired surrogate is encoded as '?' */
+    private static byte utf8Byte(int codePoint, int byteCount, int k) {
+        if (isSurrogate(codePoint)) return (byte)'?';
+        if (byteCount == 1) return (byte)codePoint;
+        if (k == 0) return (byte)(((0xf00 >> byteCount) & 0xff) | (codePoint >> (6 * (byteCount - 1))));
+        return (byte)(0x80 | ((codePoint >> (6 * (byteCount - 1 - k))) & 0x3f));
+    }
+
+    /** Returns whether this is a surrogate char, which String.codePointAt only returns if it is unpaired */
+    private static boolean isSurrogate(int codePoint) {
+        return codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE;
+    }
+
+}
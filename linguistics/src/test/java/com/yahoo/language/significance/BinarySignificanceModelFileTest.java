@@ -0,0 +1,86 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.language.significance;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.significance.impl.BinarySignificanceModelFile;
+import com.yahoo.language.significance.impl.DefaultSignificanceModel;
+import com.yahoo.language.significance.impl.DefaultSignificanceModelRegistry;
+import com.yahoo.language.significance.impl.DocumentFrequencyFile;
+import com.yahoo.language.significance.impl.MappedDocumentFrequencies;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinarySignificanceModelFileTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testBinaryModelGivesTheSameFrequenciesAsTheJsonModel() {
+        Map<String, Long> english = new TreeMap<>();
+        for (int i = 0; i < 10000; i++)
+            english.put("term" + i, (long)i + 2);
+        english.put("", 7L);
+        english.put("blåbærsyltetøy", 3L);
+        english.put("日本語", 4L);
+        english.put("😀", 5L);
+        english.put("unpaired\uD800", 6L);
+        Map<String, DocumentFrequencyFile> languages = new LinkedHashMap<>();
+        languages.put("en", new DocumentFrequencyFile("English", 20000, english));
+        languages.put("nb,un", new DocumentFrequencyFile("Norwegian", 30, Map.of("hei", 12L)));
+        Path path = tempDir.resolve("model.bin");
+        BinarySignificanceModelFile.write("test::3", "A test model", languages, path);
+
+        assertTrue(BinarySignificanceModelFile.isBinary(path));
+        assertFalse(BinarySignificanceModelFile.isBinary(Path.of("src/test/models/docv1.json")));
+        assertFalse(BinarySignificanceModelFile.isBinary(Path.of("src/test/models/docv1.json.zst")));
+
+        var file = BinarySignificanceModelFile.read(path);
+        assertEquals("test::3", file.id());
+        assertEquals("A test model", file.description());
+        assertEquals(List.of("en", "nb,un"), List.copyOf(file.languages().keySet()));
+        MappedDocumentFrequencies mapped = file.languages().get("en");
+        assertEquals(20000, mapped.documentCount());
+        assertEquals(english.size(), mapped.size());
+        for (var entry : english.entrySet())
+            assertEquals(entry.getValue(), mapped.frequency(entry.getKey()), "Frequency of '" + entry.getKey() + "'");
+        assertEquals(-1, mapped.frequency("term10000"));
+        assertEquals(-1, mapped.frequency("term"));
+        assertEquals(-1, mapped.frequency("blåbær"));
+        assertEquals(-1, mapped.frequency("hei"));
+        english.remove("unpaired\uD800"); // Encoded as '?', like String.getBytes does
+        english.put("unpaired?", 6L);
+        assertEquals(english, mapped.toMap());
+
+        var registry = new DefaultSignificanceModelRegistry(List.of(path));
+        var norwegian = registry.getModel(Language.NORWEGIAN_BOKMAL).get();
+        assertEquals("test::3", norwegian.getId());
+        assertEquals(new DocumentFrequency(12, 30), norwegian.documentFrequency("hei"));
+        assertEquals(new DocumentFrequency(1, 30), registry.getModel(Language.UNKNOWN).get().documentFrequency("nei"));
+        assertEquals(new DocumentFrequency(3, 20000), registry.getModel(Language.ENGLISH).get().documentFrequency("blåbærsyltetøy"));
+        assertTrue(registry.getModel(Language.GERMAN).isEmpty());
+    }
+
+    @Test
+    void testSingleLanguageBinaryModelCanBeLoadedDirectly() {
+        Path path = tempDir.resolve("en.bin");
+        BinarySignificanceModelFile.write("test::4", null,
+                                          Map.of("en", new DocumentFrequencyFile(null, 10, Map.of("test", 2L, "hello", 3L))),
+                                          path);
+        var model = new DefaultSignificanceModel(path);
+        assertEquals(new DocumentFrequency(2, 10), model.documentFrequency("test"));
+        assertEquals(new DocumentFrequency(3, 10), model.documentFrequency("hello"));
+        assertEquals(new DocumentFrequency(1, 10), model.documentFrequency("non-existent-word"));
+    }
+
+}
@@ -143,6 +143,30 @@ public enum ContainerMetrics implements VespaMetrics {
     TOTAL_HITS_PER_QUERY("totalhits_per_query", Unit.HIT_PER_QUERY, "The total number of documents found to match queries"),
     EMPTY_RESULTS("empty_results", Unit.OPERATION, "Number of queries matching no documents"),
     REQUESTS_OVER_QUOTA("requestsOverQuota", Unit.OPERATION, "The number of requests rejected due to exceeding quota"),
+    RATE_LIMITING_CAPACITY_REQUEST_TIME("rate_limiting.capacity_request_time", Unit.MILLISECOND, "The time spent by a thread obtaining more capacity for a rate limiting id from the capacity shared by all threads"),
+    RATE_LIMITING_CAPACITY_CONTENTION("rate_limiting.capacity_contention", Unit.OPERATION, "The number of times updating the capacity shared by all threads for a rate limiting id was retried due to concurrent updates"),
+    QUERY_RESULT_CACHE_HITS("query_result_cache.hits", Unit.OPERATION, "The number of queries answered from the container result cache"),
+    QUERY_RESULT_CACHE_MISSES("query_result_cache.misses", Unit.OPERATION, "The number of cacheable queries not found in the container result cache"),
+    QUERY_RESULT_CACHE_EVICTIONS("query_result_cache.evictions", Unit.OPERATION, "The number of results evicted from the container result cache to stay within its size limit"),
+    QUERY_RESULT_CACHE_SIZE("query_result_cache.size", Unit.BYTE, "The estimated size of the results in the container result cache"),
+    DISPATCH_GROUP_SHED("dispatch.group_shed", Unit.OPERATION, "The number of times a group was skipped by the latency-aware dispatch policy because it was predicted to not complete the query in time"),
+    DISPATCH_QUERY_SHED("dispatch.query_shed", Unit.OPERATION, "The number of queries rejected by the latency-aware dispatch policy because no group was predicted to complete them in time"),
+    DISPATCH_PREDICTED_LATENCY("dispatch.predicted_latency", Unit.MILLISECOND, "The latency predicted by the latency-aware dispatch policy for the groups it dispatches queries to"),
+    DISPATCH_HEDGED("dispatch.hedged", Unit.OPERATION, "The number of queries which were also sent to a second group because the first group did not answer in time"),
+    DISPATCH_HEDGE_WINS("dispatch.hedge_wins", Unit.OPERATION, "The number of hedged queries where the second group answered first"),
+    DISPATCH_COVERAGE_COMPUTATION_TIME("dispatch.coverage_computation_time", Unit.MILLISECOND, "The time spent recomputing the coverage of a group after a round of pinging the nodes of a content cluster"),
+    DISPATCH_SKIPPED_PINGS("dispatch.skipped_pings", Unit.OPERATION, "The number of pings not sent to content nodes because they have not changed for a while, with event driven monitoring"),
+    DOCSUM_FIELDS_AVAILABLE("docsum.fields_available", Unit.ITEM, "The number of summary fields received from content nodes in document summaries"),
+    DOCSUM_FIELDS_DECODED("docsum.fields_decoded", Unit.ITEM, "The number of summary fields received from content nodes which were decoded, by being accessed or rendered"),
+    YQL_PARSE_CACHE_HITS("yql.parse_cache.hits", Unit.OPERATION, "The number of YQL queries whose parse tree was bound from a cached template"),
+    YQL_PARSE_CACHE_MISSES("yql.parse_cache.misses", Unit.OPERATION, "The number of YQL queries which had to be parsed from scratch"),
+    YQL_PARSE_CACHE_EVICTIONS("yql.parse_cache.evictions", Unit.OPERATION, "The number of YQL templates evicted from the parse cache to stay within its size limit"),
+    SEARCH_ASYNC_TASKS("search.async.tasks", Unit.OPERATION, "The number of search chain executions, federation targets and fills started asynchronously"),
+    SEARCH_ASYNC_ACTIVE("search.async.active", Unit.THREAD, "The number of asynchronous search chain executions, federation targets and fills running concurrently"),
+    SEARCH_ASYNC_PINNED("search.async.pinned", Unit.OPERATION, "The number of times a virtual thread pinned its carrier thread while blocking, when asynchronous search executions run on virtual threads"),
+    SEARCH_SEARCHER_WALL_TIME("search.searcher.wall_time", Unit.MILLISECOND, "The wall time spent in a searcher itself in sampled search chain executions, by searcher and operation"),
+    SEARCH_SEARCHER_CPU_TIME("search.searcher.cpu_time", Unit.MILLISECOND, "The CPU time spent in a searcher itself in sampled search chain executions, by searcher and operation"),
+    SEARCH_SEARCHER_ALLOCATED_BYTES("search.searcher.allocated_bytes", Unit.BYTE, "The bytes allocated by a searcher itself in sampled search chain executions, by searcher and operation"),
     
     RELEVANCE_AT_1("relevance.at_1", Unit.SCORE, "The relevance of hit number 1"),
     RELEVANCE_AT_3("relevance.at_3", Unit.SCORE, "The relevance of hit number 3"),
@@ -207,7 +231,9 @@ public enum ContainerMetrics implements VespaMetrics {
     SERVER_STARTED_MILLIS("serverStartedMillis", Unit.MILLISECOND, "Time since the service was started"),
 
     EMBEDDER_LATENCY("embedder.latency", Unit.MILLISECOND, "Time spent creating an embedding"),
-    EMBEDDER_SEQUENCE_LENGTH("embedder.sequence_length", Unit.BYTE, "Size of sequence produced by tokenizer");
+    EMBEDDER_SEQUENCE_LENGTH("embedder.sequence_length", Unit.BYTE, "Size of sequence produced by tokenizer"),
+    EMBEDDER_BATCH_SIZE("embedder.batch_size", Unit.OPERATION, "Number of embed calls evaluated by the model in a single batch"),
+    EMBEDDER_BATCH_QUEUE_TIME("embedder.batch_queue_time", Unit.MILLISECOND, "Time an embed call waited for other calls to be batched with");
 
     private final String name;
     private final Unit unit;
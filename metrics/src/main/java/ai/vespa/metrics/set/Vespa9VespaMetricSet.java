@@ -214,6 +214,8 @@ public class Vespa9VespaMetricSet {
         // Embedders
         addMetric(metrics, ContainerMetrics.EMBEDDER_LATENCY, EnumSet.of(max, sum, count));
         addMetric(metrics, ContainerMetrics.EMBEDDER_SEQUENCE_LENGTH, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.EMBEDDER_BATCH_SIZE, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.EMBEDDER_BATCH_QUEUE_TIME, EnumSet.of(max, sum, count));
 
         return metrics;
     }
@@ -283,6 +285,30 @@ public class Vespa9VespaMetricSet {
         addMetric(metrics, ContainerMetrics.TOTAL_HITS_PER_QUERY, EnumSet.of(sum, count, max, ninety_five_percentile, ninety_nine_percentile));
         addMetric(metrics, ContainerMetrics.EMPTY_RESULTS.rate());
         addMetric(metrics, ContainerMetrics.REQUESTS_OVER_QUOTA, EnumSet.of(rate, count));
+        addMetric(metrics, ContainerMetrics.RATE_LIMITING_CAPACITY_REQUEST_TIME, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.RATE_LIMITING_CAPACITY_CONTENTION.rate());
+        addMetric(metrics, ContainerMetrics.QUERY_RESULT_CACHE_HITS.rate());
+        addMetric(metrics, ContainerMetrics.QUERY_RESULT_CACHE_MISSES.rate());
+        addMetric(metrics, ContainerMetrics.QUERY_RESULT_CACHE_EVICTIONS.rate());
+        addMetric(metrics, ContainerMetrics.QUERY_RESULT_CACHE_SIZE, EnumSet.of(average, max));
+        addMetric(metrics, ContainerMetrics.DISPATCH_GROUP_SHED.rate());
+        addMetric(metrics, ContainerMetrics.DISPATCH_QUERY_SHED.rate());
+        addMetric(metrics, ContainerMetrics.DISPATCH_PREDICTED_LATENCY, EnumSet.of(average, max));
+        addMetric(metrics, ContainerMetrics.DISPATCH_HEDGED.rate());
+        addMetric(metrics, ContainerMetrics.DISPATCH_HEDGE_WINS.rate());
+        addMetric(metrics, ContainerMetrics.DISPATCH_COVERAGE_COMPUTATION_TIME, EnumSet.of(max, sum, count));
+        addMetric(metrics, ContainerMetrics.DISPATCH_SKIPPED_PINGS.rate());
+        addMetric(metrics, ContainerMetrics.DOCSUM_FIELDS_AVAILABLE.rate());
+        addMetric(metrics, ContainerMetrics.DOCSUM_FIELDS_DECODED.rate());
+        addMetric(metrics, ContainerMetrics.YQL_PARSE_CACHE_HITS.rate());
+        addMetric(metrics, ContainerMetrics.YQL_PARSE_CACHE_MISSES.rate());
+        addMetric(metrics, ContainerMetrics.YQL_PARSE_CACHE_EVICTIONS.rate());
+        addMetric(metrics, ContainerMetrics.SEARCH_ASYNC_TASKS.rate());
+        addMetric(metrics, ContainerMetrics.SEARCH_ASYNC_ACTIVE, EnumSet.of(average, max));
+        addMetric(metrics, ContainerMetrics.SEARCH_ASYNC_PINNED.rate());
+        addMetric(metrics, ContainerMetrics.SEARCH_SEARCHER_WALL_TIME, EnumSet.of(sum, count, max, ninety_nine_percentile));
+        addMetric(metrics, ContainerMetrics.SEARCH_SEARCHER_CPU_TIME, EnumSet.of(sum, count, max, ninety_nine_percentile));
+        addMetric(metrics, ContainerMetrics.SEARCH_SEARCHER_ALLOCATED_BYTES, EnumSet.of(sum, count, max, ninety_nine_percentile));
 
         addMetric(metrics, ContainerMetrics.RELEVANCE_AT_1, EnumSet.of(sum, count));
         addMetric(metrics, ContainerMetrics.RELEVANCE_AT_3, EnumSet.of(sum, count));
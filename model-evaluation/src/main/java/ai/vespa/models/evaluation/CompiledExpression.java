@@ -0,0 +1,58 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.tensor.TensorType;
+
+/**
+ * A scalar function compiled to bytecode by {@link ExpressionCompiler}.
+ * This is immutable and can be used by multiple threads at the same time.
+ */
+final class CompiledExpression {
+
+    /** The generated code, which reads the argument values from an array */
+    interface Evaluator {
+
+        double evaluate(double[] arguments);
+
+    }
+
+    private final Evaluator evaluator;
+
+    /** The index in the context of the value of each argument, in the order of the arguments array */
+    private final int[] argumentIndexes;
+
+    CompiledExpression(Evaluator evaluator, int[] argumentIndexes) {
+        this.evaluator = evaluator;
+        this.argumentIndexes = argumentIndexes;
+    }
+
+    /**
+     * Evaluates this with the arguments bound in the given context.
+     *
+     * @return the result, or null if some argument is not bound to a scalar, such that the function must be
+     *         evaluated by the ranking expression instead
+     */
+    Value evaluate(LazyArrayContext context) {
+        double[] arguments = new double[argumentIndexes.length];
+        for (int i = 0; i < arguments.length; i++) {
+            Value value = context.get(argumentIndexes[i]);
+            if ( ! isScalar(value)) return null;
+            arguments[i] = value.asDouble();
+        }
+        return new DoubleValue(evaluator.evaluate(arguments));
+    }
+
+    /**
+     * Returns whether the given value is a scalar tensor of double cells, as bound by {@link FunctionEvaluator}.
+     * The compiled code has the semantics of expressions over such tensors, which differs from that over
+     * doubles for some functions of NaN, and from that over other cell types in precision and result type,
+     * so other values are left to the expression.
+     */
+    private static boolean isScalar(Value value) {
+        return value instanceof TensorValue && value.hasDouble() && value.type().valueType() == TensorType.Value.DOUBLE;
+    }
+
+}
@@ -0,0 +1,549 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleCompatibleValue;
+import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.Function;
+import com.yahoo.searchlib.rankingexpression.rule.FunctionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NegativeNode;
+import com.yahoo.searchlib.rankingexpression.rule.NotNode;
+import com.yahoo.searchlib.rankingexpression.rule.OperationNode;
+import com.yahoo.searchlib.rankingexpression.rule.Operator;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.tensor.TensorType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles scalar functions to bytecode in a hidden class, which reads the argument values from an array.
+ * This lets the JIT compiler compile and inline the entire expression, instead of evaluating it node by node,
+ * creating a value object at each node.
+ * <p>
+ * Expressions consisting of constants, scalar arguments, arithmetic, comparisons, if and the scalar functions are
+ * compiled. Others, such as tensor expressions and references to other functions, are evaluated as expressions.
+ */
+final class ExpressionCompiler {
+
+    /** The largest method the JIT compiler will compile by default (HotSpot's HugeMethodLimit) */
+    private static final int maxCodeSize = 8000;
+
+    private static final String generatedClass = "ai/vespa/models/evaluation/GeneratedExpression";
+    private static final String evaluatorClass = "ai/vespa/models/evaluation/CompiledExpression$Evaluator";
+    private static final String compilerClass = "ai/vespa/models/evaluation/ExpressionCompiler";
+    private static final String functionClass = "com/yahoo/searchlib/rankingexpression/rule/Function";
+
+    private final ExpressionFunction function;
+    private final LazyArrayContext context;
+
+    /** The context index of each argument read by the code, in the order of the arguments array */
+    private final List<Integer> argumentIndexes = new ArrayList<>();
+
+    /** The index in the arguments array of each argument read by the code */
+    private final Map<String, Integer> argumentSlots = new HashMap<>();
+
+    private final ConstantPool constants = new ConstantPool();
+    private final Code code = new Code();
+
+    private ExpressionCompiler(ExpressionFunction function, LazyArrayContext context) {
+        this.function = function;
+        this.context = context;
+    }
+
+    /**
+     * Compiles the given function.
+     *
+     * @param context the context the function is evaluated in, which determines the arguments of the function
+     * @return the compiled function, or null if it cannot be compiled
+     */
+    static CompiledExpression compile(ExpressionFunction function, LazyArrayContext context) {
+        ExpressionCompiler compiler = new ExpressionCompiler(function, context);
+        ExpressionNode root = function.getBody().getRoot();
+        if ( ! compiler.isCompilable(root)) return null;
+
+        compiler.compile(root);
+        compiler.code.op(DRETURN, -2);
+        if (compiler.code.size() > maxCodeSize) return null;
+        return new CompiledExpression(compiler.define(), compiler.argumentIndexes.stream().mapToInt(i -> i).toArray());
+    }
+
+    private boolean isCompilable(ExpressionNode node) {
+        if (node instanceof ConstantNode constant)
+            return constant.getValue() instanceof DoubleCompatibleValue;
+        if (node instanceof ReferenceNode)
+            return isScalarArgument(node.toString());
+        if (node instanceof OperationNode operation) {
+            if (operation.operators().contains(Operator.approxEqual)) return false;
+        }
+        else if (node instanceof FunctionNode functionNode) {
+            if (functionNode.children().isEmpty()) return false;
+        }
+        else if ( ! (node instanceof IfNode || node instanceof EmbracedNode ||
+                     node instanceof NegativeNode || node instanceof NotNode)) {
+            return false;
+        }
+        return ((CompositeNode)node).children().stream().allMatch(this::isCompilable);
+    }
+
+    private boolean isScalarArgument(String name) {
+        if ( ! context.arguments().contains(name)) return false;
+        if (context.onnxModels().containsKey(name)) return false;
+        TensorType type = function.getArgumentType(name);
+        return type == null || type.rank() == 0;
+    }
+
+    /** Adds code which leaves the value of the given node on the stack */
+    private void compile(ExpressionNode node) {
+        if (node instanceof ConstantNode constant) {
+            code.pushDouble(constant.getValue().asDouble(), constants);
+        }
+        else if (node instanceof ReferenceNode) {
+            loadArgument(node.toString());
+        }
+        else if (node instanceof EmbracedNode embraced) {
+            compile(embraced.children().get(0));
+        }
+        else if (node instanceof NegativeNode negative) {
+            compile(negative.getValue());
+            code.op(DNEG, 0);
+        }
+        else if (node instanceof NotNode not) {
+            compile(not.children().get(0));
+            code.pushDouble(0, constants);
+            code.op(DCMPL, -3);
+            pushBoolean(IFNE);
+        }
+        else if (node instanceof IfNode ifNode) {
+            int falseLabel = code.newLabel();
+            int endLabel = code.newLabel();
+            compileJumpIfFalse(ifNode.getCondition(), falseLabel);
+            compile(ifNode.getTrueExpression());
+            code.jump(GOTO, endLabel);
+            code.place(falseLabel, -2); // the true value is not on the stack in the false branch
+            compile(ifNode.getFalseExpression());
+            code.place(endLabel, 0);
+        }
+        else if (node instanceof FunctionNode functionNode && isTensorMaxOrMin(functionNode)) {
+            compile(functionNode.children().get(0));
+            compile(functionNode.children().get(1));
+            code.op(INVOKESTATIC, constants.method(compilerClass, functionNode.getFunction().name(), "(DD)D"), -2);
+        }
+        else if (node instanceof FunctionNode functionNode) {
+            code.op(GETSTATIC, constants.field(functionClass, functionNode.getFunction().name(), "L" + functionClass + ";"), 1);
+            compile(functionNode.children().get(0));
+            if (functionNode.children().size() > 1)
+                compile(functionNode.children().get(1));
+            else
+                code.pushDouble(0, constants);
+            code.op(INVOKEVIRTUAL, constants.method(functionClass, "evaluate", "(DD)D"), -3);
+        }
+        else if (node instanceof OperationNode operation) {
+            compileOperation(operation);
+        }
+        else {
+            throw new IllegalStateException("Cannot compile " + node);
+        }
+    }
+
+    /**
+     * Returns whether this is max or min of a value computed from arguments, which are scalar tensors,
+     * such that it has the semantics of max and min of tensors, rather than of doubles, for NaN
+     */
+    private static boolean isTensorMaxOrMin(FunctionNode node) {
+        return (node.getFunction() == Function.max || node.getFunction() == Function.min) && readsArguments(node);
+    }
+
+    private static boolean readsArguments(ExpressionNode node) {
+        if (node instanceof ReferenceNode) return true;
+        return node instanceof CompositeNode composite && composite.children().stream().anyMatch(child -> readsArguments(child));
+    }
+
+    /** Applies the operators in the same order as {@link OperationNode#evaluate} */
+    private void compileOperation(OperationNode operation) {
+        Iterator<ExpressionNode> children = operation.children().iterator();
+        Deque<Operator> pending = new ArrayDeque<>();
+        compile(children.next());
+        for (Iterator<Operator> operators = operation.operators().iterator(); operators.hasNext() && children.hasNext(); ) {
+            Operator operator = operators.next();
+            while ( ! pending.isEmpty() && ! operator.hasPrecedenceOver(pending.peek()))
+                apply(pending.pop());
+            compile(children.next());
+            pending.push(operator);
+        }
+        while ( ! pending.isEmpty())
+            apply(pending.pop());
+    }
+
+    /** Adds code which replaces the two values on top of the stack by the result of the given operator */
+    private void apply(Operator operator) {
+        switch (operator) {
+            case plus -> code.op(DADD, -2);
+            case minus -> code.op(DSUB, -2);
+            case multiply -> code.op(DMUL, -2);
+            case divide -> code.op(DDIV, -2);
+            case modulo -> code.op(DREM, -2);
+            case power -> code.op(INVOKESTATIC, constants.method("java/lang/Math", "pow", "(DD)D"), -2);
+            case and -> code.op(INVOKESTATIC, constants.method(compilerClass, "and", "(DD)D"), -2);
+            case or -> code.op(INVOKESTATIC, constants.method(compilerClass, "or", "(DD)D"), -2);
+            default -> {
+                code.op(compareInstruction(operator), -3);
+                pushBoolean(jumpIfFalseInstruction(operator));
+            }
+        }
+    }
+
+    /** Adds code which jumps to the given label if the given condition is false */
+    private void compileJumpIfFalse(ExpressionNode condition, int label) {
+        while (condition instanceof EmbracedNode embraced)
+            condition = embraced.children().get(0);
+        if (condition instanceof OperationNode operation && operation.operators().size() == 1
+            && jumpIfFalseInstruction(operation.operators().get(0)) != 0) {
+            Operator operator = operation.operators().get(0);
+            compile(operation.children().get(0));
+            compile(operation.children().get(1));
+            code.op(compareInstruction(operator), -3);
+            code.jump(jumpIfFalseInstruction(operator), label);
+        }
+        else {
+            compile(condition);
+            code.pushDouble(0, constants);
+            code.op(DCMPL, -3);
+            code.jump(IFEQ, label);
+        }
+    }
+
+    /** Replaces the comparison result on top of the stack by 0.0 if the given jump is taken, and 1.0 otherwise */
+    private void pushBoolean(int jumpIfFalseInstruction) {
+        int falseLabel = code.newLabel();
+        int endLabel = code.newLabel();
+        code.jump(jumpIfFalseInstruction, falseLabel);
+        code.pushDouble(1, constants);
+        code.jump(GOTO, endLabel);
+        code.place(falseLabel, -2);
+        code.pushDouble(0, constants);
+        code.place(endLabel, 0);
+    }
+
+    /** Returns the instruction comparing two doubles for the given operator, which gives the false outcome on NaN */
+    private static int compareInstruction(Operator operator) {
+        return operator == Operator.smaller || operator == Operator.smallerOrEqual ? DCMPG : DCMPL;
+    }
+
+    /** Returns the instruction jumping if the comparison for the given operator is false, or 0 if it is not a comparison */
+    private static int jumpIfFalseInstruction(Operator operator) {
+        return switch (operator) {
+            case smaller -> IFGE;
+            case smallerOrEqual -> IFGT;
+            case larger -> IFLE;
+            case largerOrEqual -> IFLT;
+            case equal -> IFNE;
+            case notEqual -> IFEQ;
+            default -> 0;
+        };
+    }
+
+    private void loadArgument(String name) {
+        int slot = argumentSlots.computeIfAbsent(name, __ -> {
+            argumentIndexes.add(context.getIndex(name));
+            return argumentIndexes.size() - 1;
+        });
+        code.op(ALOAD_1, 1);
+        code.pushInt(slot, constants);
+        code.op(DALOAD, 0);
+    }
+
+    /** Returns whether both values are true, as given by {@link com.yahoo.searchlib.rankingexpression.evaluation.Value#and}. Called by generated code. */
+    static double and(double x, double y) { return x != 0.0 && y != 0.0 ? 1.0 : 0.0; }
+
+    /** Returns whether either value is true, as given by {@link com.yahoo.searchlib.rankingexpression.evaluation.Value#or}. Called by generated code. */
+    static double or(double x, double y) { return x != 0.0 || y != 0.0 ? 1.0 : 0.0; }
+
+    /** Returns the larger value, as given by {@link com.yahoo.tensor.Tensor#max(com.yahoo.tensor.Tensor)}. Called by generated code. */
+    static double max(double x, double y) { return x > y ? x : y; }
+
+    /** Returns the smaller value, as given by {@link com.yahoo.tensor.Tensor#min(com.yahoo.tensor.Tensor)}. Called by generated code. */
+    static double min(double x, double y) { return x < y ? x : y; }
+
+    private CompiledExpression.Evaluator define() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(toClassFile(), true);
+            return (CompiledExpression.Evaluator)lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                                                       .invoke();
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException("Could not define the compiled code of " + function, e);
+        }
+    }
+
+    /** Returns a class implementing CompiledExpression.Evaluator by the compiled code */
+    private byte[] toClassFile() {
+        int thisClass = constants.classReference(generatedClass);
+        int superClass = constants.classReference("java/lang/Object");
+        int interfaceClass = constants.classReference(evaluatorClass);
+        int superConstructor = constants.method("java/lang/Object", "<init>", "()V");
+        int constructorName = constants.utf8("<init>");
+        int constructorDescriptor = constants.utf8("()V");
+        int evaluateName = constants.utf8("evaluate");
+        int evaluateDescriptor = constants.utf8("([D)D");
+        int codeName = constants.utf8("Code");
+        byte[] constructorCode = { (byte)ALOAD_0, (byte)INVOKESPECIAL, (byte)(superConstructor >> 8), (byte)superConstructor,
+                                   (byte)RETURN };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49); // Class files of this version are verified without stack map frames
+            constants.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+            writeMethod(out, ACC_PUBLIC, constructorName, constructorDescriptor, codeName, 1, 1, constructorCode);
+            writeMethod(out, ACC_PUBLIC | ACC_FINAL, evaluateName, evaluateDescriptor, codeName,
+                        code.maxStack(), 2, code.toBytes());
+            out.writeShort(0); // attributes
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1); // attributes
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DREM = 0x73;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    /** The code of a method, with the maximal depth of the operand stack it reaches */
+    private static class Code {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /** The position of each label, or -1 if not placed yet */
+        private final List<Integer> labels = new ArrayList<>();
+
+        /** The position and target label of each jump instruction */
+        private final List<int[]> jumps = new ArrayList<>();
+
+        private int stack = 0;
+        private int maxStack = 0;
+
+        /** Adds an instruction which changes the depth of the operand stack by the given number of words */
+        void op(int opcode, int stackChange) {
+            bytes.write(opcode);
+            adjustStack(stackChange);
+        }
+
+        /** Adds an instruction with a two-byte operand */
+        void op(int opcode, int operand, int stackChange) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+            adjustStack(stackChange);
+        }
+
+        void pushDouble(double value, ConstantPool constants) {
+            if (Double.doubleToRawLongBits(value) == 0L)
+                op(DCONST_0, 2);
+            else if (value == 1.0)
+                op(DCONST_1, 2);
+            else
+                op(LDC2_W, constants.doubleConstant(value), 2);
+        }
+
+        void pushInt(int value, ConstantPool constants) {
+            if (value <= 5) {
+                op(ICONST_0 + value, 1);
+            }
+            else if (value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                bytes.write(value);
+            }
+            else if (value <= Short.MAX_VALUE) {
+                op(SIPUSH, value, 1);
+            }
+            else {
+                op(LDC_W, constants.integer(value), 1);
+            }
+        }
+
+        int newLabel() {
+            labels.add(-1);
+            return labels.size() - 1;
+        }
+
+        /** Places a label at the current position, where the stack depth differs by the given change from the current */
+        void place(int label, int stackChange) {
+            labels.set(label, bytes.size());
+            stack += stackChange;
+        }
+
+        /** Adds a goto, or an if instruction consuming the int on top of the stack */
+        void jump(int opcode, int label) {
+            jumps.add(new int[] { bytes.size(), label });
+            op(opcode, 0, opcode == GOTO ? 0 : -1);
+        }
+
+        private void adjustStack(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        int size() { return bytes.size(); }
+
+        int maxStack() { return maxStack; }
+
+        byte[] toBytes() {
+            byte[] code = bytes.toByteArray();
+            for (int[] jump : jumps) {
+                int offset = labels.get(jump[1]) - jump[0];
+                code[jump[0] + 1] = (byte)(offset >> 8);
+                code[jump[0] + 2] = (byte)offset;
+            }
+            return code;
+        }
+
+    }
+
+    /** The constant pool of a class, where each distinct constant is added once */
+    private static class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        /** The number of entries, where entry 0 is unused and doubles take two */
+        private int count = 1;
+
+        int utf8(String value) {
+            return add("utf8 " + value, 1, () -> { out.writeByte(1); out.writeUTF(value); });
+        }
+
+        int integer(int value) {
+            return add("integer " + value, 1, () -> { out.writeByte(3); out.writeInt(value); });
+        }
+
+        int doubleConstant(double value) {
+            return add("double " + Double.doubleToRawLongBits(value), 2, () -> { out.writeByte(6); out.writeDouble(value); });
+        }
+
+        int classReference(String name) {
+            int nameIndex = utf8(name);
+            return add("class " + name, 1, () -> { out.writeByte(7); out.writeShort(nameIndex); });
+        }
+
+        int field(String owner, String name, String descriptor) {
+            return memberReference(9, owner, name, descriptor);
+        }
+
+        int method(String owner, String name, String descriptor) {
+            return memberReference(10, owner, name, descriptor);
+        }
+
+        private int memberReference(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classReference(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndTypeIndex = add("nameAndType " + name + " " + descriptor, 1,
+                                       () -> { out.writeByte(12); out.writeShort(nameIndex); out.writeShort(descriptorIndex); });
+            return add("member " + tag + " " + owner + " " + name + " " + descriptor, 1,
+                       () -> { out.writeByte(tag); out.writeShort(ownerIndex); out.writeShort(nameAndTypeIndex); });
+        }
+
+        private int add(String key, int size, Entry entry) {
+            Integer index = indexes.get(key);
+            if (index != null) return index;
+            try {
+                entry.write();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = count;
+            count += size;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        private interface Entry {
+
+            void write() throws IOException;
+
+        }
+
+    }
+
+}
@@ -4,6 +4,7 @@ package ai.vespa.models.evaluation;
 import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
 import com.yahoo.searchlib.rankingexpression.evaluation.StringValue;
 import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 
@@ -21,11 +22,20 @@ public class FunctionEvaluator {
 
     private final ExpressionFunction function;
     private final LazyArrayContext context;
+
+    /** The function compiled to bytecode, or null if it is not compiled */
+    private final CompiledExpression compiled;
+
     private boolean evaluated = false;
 
     FunctionEvaluator(ExpressionFunction function, LazyArrayContext context) {
+        this(function, context, null);
+    }
+
+    FunctionEvaluator(ExpressionFunction function, LazyArrayContext context, CompiledExpression compiled) {
         this.function = function;
         this.context = context;
+        this.compiled = compiled;
     }
 
     /**
@@ -106,6 +116,10 @@ public class FunctionEvaluator {
                 .forEach(argument -> checkArgument(argument.getKey(), argument.getValue()));
         evaluated = true;
         evaluateOnnxModels();
+        if (compiled != null) {
+            Value result = compiled.evaluate(context);
+            if (result != null) return result.asTensor();
+        }
         return function.getBody().evaluate(context).asTensor();
     }
 
@@ -145,4 +159,7 @@ public class FunctionEvaluator {
 
     public LazyArrayContext context() { return context; }
 
+    /** Returns whether this evaluates the function by bytecode compiled from it */
+    boolean isCompiled() { return compiled != null; }
+
 }
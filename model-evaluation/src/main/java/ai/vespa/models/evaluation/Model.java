@@ -50,6 +50,9 @@ public class Model implements AutoCloseable {
     /** Context prototypes, indexed by function name (as all invocations of the same function share the same context prototype) */
     private final Map<String, LazyArrayContext> contextPrototypes;
 
+    /** The free functions which are compiled to bytecode, indexed by function name */
+    private final Map<String, CompiledExpression> compiledFunctions;
+
     private final ExpressionOptimizer expressionOptimizer = new ExpressionOptimizer();
 
     private final List<Runnable> closeActions;
@@ -169,6 +172,14 @@ public class Model implements AutoCloseable {
             }
         }
         this.contextPrototypes = Map.copyOf(contextBuilder);
+        // Compile free functions, before the optimizations below replace nodes by ones which are not compiled
+        Map<String, CompiledExpression> compiledBuilder = new LinkedHashMap<>();
+        for (ExpressionFunction function : functions.values()) {
+            CompiledExpression compiled = ExpressionCompiler.compile(function, contextPrototypes.get(function.getName()));
+            if (compiled != null)
+                compiledBuilder.put(function.getName(), compiled);
+        }
+        this.compiledFunctions = Map.copyOf(compiledBuilder);
         // Optimize free functions
         this.functions = List.copyOf(functions.entrySet()
                                      .stream()
@@ -292,7 +303,9 @@ public class Model implements AutoCloseable {
 
     /** Returns a single-use evaluator of a function */
     private FunctionEvaluator evaluatorOf(ExpressionFunction function) {
-        return new FunctionEvaluator(function, requireContextPrototype(function.getName()).copy());
+        return new FunctionEvaluator(function,
+                                     requireContextPrototype(function.getName()).copy(),
+                                     compiledFunctions.get(function.getName()));
     }
 
     private void throwUndeterminedFunction(String message) {
@@ -0,0 +1,90 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.tensor.Tensor;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of compiled functions, compared to evaluating the optimized ranking expression.
+ */
+public class ExpressionCompilerBenchmark {
+
+    private final static Random random = new Random(42);
+
+    private static final int features = 10;
+
+    /** Returns the time in microseconds per evaluation of the given evaluation */
+    public double benchmark(int iterations, Evaluation evaluation) {
+        evaluate(evaluation, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        evaluate(evaluation, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000.0 / iterations;
+    }
+
+    private double evaluate(Evaluation evaluation, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += evaluation.evaluate();
+        return result;
+    }
+
+    /** Returns a sum of trees of the given depth, as produced by importing a gradient boosted forest */
+    private static String forest(int trees, int depth) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < trees; i++) {
+            if (i > 0) b.append(" + ");
+            tree(depth, b);
+        }
+        return b.toString();
+    }
+
+    private static void tree(int depth, StringBuilder b) {
+        if (depth == 0) {
+            b.append(random.nextDouble() - 0.5);
+            return;
+        }
+        b.append("if (f").append(random.nextInt(features)).append(" < ").append(random.nextDouble()).append(", ");
+        tree(depth - 1, b);
+        b.append(", ");
+        tree(depth - 1, b);
+        b.append(")");
+    }
+
+    private void run(int iterations, String name, String expression) {
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from(expression));
+        FunctionEvaluator evaluator = new Model("benchmark", List.of(function)).evaluatorOf("test");
+        LazyArrayContext context = evaluator.context();
+        for (int i = 0; i < features; i++)
+            if (context.arguments().contains("f" + i))
+                context.put("f" + i, new TensorValue(Tensor.from(random.nextDouble())));
+        // The model optimizes the expression of the function in place, so compile it from a new one
+        CompiledExpression compiled = ExpressionCompiler.compile(new ExpressionFunction("test", RankingExpression.from(expression)),
+                                                                 context);
+        if (compiled == null) throw new IllegalArgumentException(name + " is not compiled");
+
+        double compiledTime = benchmark(iterations, () -> compiled.evaluate(context).asDouble());
+        double interpretedTime = benchmark(iterations, () -> evaluator.function().getBody().evaluate(context).asDouble());
+        System.out.printf("%s: %10.3f us compiled, %10.3f us interpreted\n", name, compiledTime, interpretedTime);
+    }
+
+    public static void main(String[] args) {
+        ExpressionCompilerBenchmark benchmark = new ExpressionCompilerBenchmark();
+        benchmark.run(1000000, "arithmetic", "f0 * f1 + pow(f2, 2) - f3 / (1 + exp(-f4)) + max(f5, f6) * 0.5");
+        benchmark.run(100000, "20 trees of depth 4", forest(20, 4));
+        benchmark.run(100000, "100 trees of depth 2", forest(100, 2));
+    }
+
+    private interface Evaluation {
+
+        double evaluate();
+
+    }
+
+}
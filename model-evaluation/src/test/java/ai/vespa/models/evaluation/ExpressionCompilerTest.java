@@ -0,0 +1,127 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionCompilerTest {
+
+    private static final double[] values = { -1.5, 0.0, 1.0, 2.5, Double.NaN };
+
+    @Test
+    public void testCompiledExpressions() {
+        assertCompiled("x + y * z");
+        assertCompiled("x - y - z");
+        assertCompiled("x / y / z");
+        assertCompiled("x ^ y ^ 2");
+        assertCompiled("x * y ^ 2 + z % 2");
+        assertCompiled("(x + y) * z");
+        assertCompiled("-(x + y)");
+        assertCompiled("x < y");
+        assertCompiled("x <= y");
+        assertCompiled("x > y");
+        assertCompiled("x >= y");
+        assertCompiled("x == y");
+        assertCompiled("x != y");
+        assertCompiled("x + 2 == 3 + y");
+        assertCompiled("!(x > y)");
+        assertCompiled("!x");
+        assertCompiled("x && y");
+        assertCompiled("x || z");
+        assertCompiled("x > 0 && y < 0 || z == 1");
+        assertCompiled("if (x < y, x, y)");
+        assertCompiled("if (x, 1, 2)");
+        assertCompiled("if ((x >= 1), if (y < 2.5, 1.25, -1), z)");
+        assertCompiled("if (x > 0 && y > 0, x * y, -1)");
+        assertCompiled("max(x, y) + min(x, y) * atan2(y, z)");
+        assertCompiled("exp(x) + sigmoid(y) + relu(z) + isNan(x)");
+        assertCompiled("log10(2) + round(x) + fmod(y, 2)");
+        assertCompiled("true + x");
+        assertCompiled("17");
+    }
+
+    @Test
+    public void testExpressionsWhichAreNotCompiled() {
+        assertNotCompiled("x ~= y");
+        assertNotCompiled("if (x in [1, 2], y, z)");
+        assertNotCompiled("sum(x * y)", "tensor(d0[3])");
+        assertNotCompiled("x + y", "tensor(d0[3])");
+    }
+
+    @Test
+    public void testNonScalarValuesAreEvaluatedAsExpression() {
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from("x + 1"));
+        FunctionEvaluator evaluator = new Model("test-model", List.of(function)).evaluatorOf("test");
+        CompiledExpression compiled = ExpressionCompiler.compile(evaluator.function(), evaluator.context());
+        LazyArrayContext context = evaluator.context();
+
+        context.put("x", new TensorValue(Tensor.from("tensor(d0[2]):[1, 2]")));
+        assertNull(compiled.evaluate(context));
+        context.put("x", new DoubleValue(Double.NaN));
+        assertNull(compiled.evaluate(context));
+        context.put("x", new TensorValue(Tensor.from(3.0)));
+        assertEquals(4.0, compiled.evaluate(context).asDouble(), 0.0);
+
+        Tensor floatScalar = Tensor.Builder.of(TensorType.fromSpec("tensor<float>()")).cell(0.1f).build();
+        context.put("x", new TensorValue(floatScalar));
+        assertNull(compiled.evaluate(context));
+        Tensor expected = function.getBody().evaluate(context).asTensor();
+        Tensor result = evaluator.bind("x", floatScalar).evaluate();
+        assertEquals(TensorType.fromSpec("tensor<float>()"), expected.type());
+        assertEquals(expected.type(), result.type());
+        assertEquals(expected.asDouble(), result.asDouble(), 0.0);
+    }
+
+    private void assertCompiled(String expression) {
+        Model model = model(expression);
+        for (double x : values) {
+            for (double y : values) {
+                for (double z : values) {
+                    FunctionEvaluator evaluator = model.evaluatorOf("test");
+                    bindIfArgument("x", x, evaluator);
+                    bindIfArgument("y", y, evaluator);
+                    bindIfArgument("z", z, evaluator);
+                    assertTrue(evaluator.isCompiled());
+                    Tensor expected = evaluator.function().getBody().evaluate(evaluator.context()).asTensor();
+                    Tensor result = evaluator.evaluate();
+                    assertEquals(expected.type(), result.type());
+                    assertEquals(expression + " with x=" + x + ", y=" + y + ", z=" + z,
+                                 expected.asDouble(), result.asDouble(), 0.0);
+                }
+            }
+        }
+    }
+
+    private void bindIfArgument(String name, double value, FunctionEvaluator evaluator) {
+        if (evaluator.function().arguments().contains(name))
+            evaluator.bind(name, value);
+    }
+
+    private void assertNotCompiled(String expression) {
+        assertFalse(model(expression).evaluatorOf("test").isCompiled());
+    }
+
+    private void assertNotCompiled(String expression, String argumentType) {
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from(expression))
+                                              .withArgument("x", TensorType.fromSpec(argumentType))
+                                              .withArgument("y", TensorType.fromSpec(argumentType));
+        assertFalse(new Model("test-model", List.of(function)).evaluatorOf("test").isCompiled());
+    }
+
+    private Model model(String expression) {
+        return new Model("test-model", List.of(new ExpressionFunction("test", RankingExpression.from(expression))));
+    }
+
+}
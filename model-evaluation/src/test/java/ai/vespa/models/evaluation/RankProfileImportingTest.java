@@ -38,7 +38,7 @@ public class RankProfileImportingTest {
         Model m = tester.models().get("default");
         assertEquals("default", m.name());
         assertEquals(1, m.functions().size());
-        tester.assertFunction("globalphase", "reduce(attribute(aa) * query(zz), sum)", m);
+        tester.assertFunction("globalphase", "reduce(join(attribute(aa), query(zz), f(a,b)(a * b)), sum)", m); // optimized to a reduce-join
         var f = m.functions().get(0);
         assertEquals("globalphase", f.getName());
         assertEquals(2, f.arguments().size());
@@ -13,7 +13,9 @@ import com.yahoo.tensor.IndexedTensor;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +46,7 @@ public class BertBaseEmbedder extends AbstractComponent implements Embedder {
     private final Embedder.Runtime runtime;
     private final WordPieceEmbedder tokenizer;
     private final OnnxEvaluator evaluator;
+    private final EmbeddingBatcher batcher;
 
     @Inject
     public BertBaseEmbedder(OnnxRuntime onnx, Embedder.Runtime runtime, BertBaseEmbedderConfig config) {
@@ -66,6 +69,10 @@ public class BertBaseEmbedder extends AbstractComponent implements Embedder {
         this.evaluator = onnx.evaluatorOf(config.transformerModel().toString(), options);
 
         validateModel();
+        batcher = new EmbeddingBatcher(evaluator, inputIdsName, attentionMaskName, tokenTypeIdsName, outputName,
+                                       config.batching().maxSize(),
+                                       Duration.ofNanos((long)(config.batching().maxDelayMillis() * 1_000_000)),
+                                       runtime);
     }
 
     private void validateModel() {
@@ -108,7 +115,7 @@ public class BertBaseEmbedder extends AbstractComponent implements Embedder {
         }
         List<Integer> tokens = embedWithSeparatorTokens(text, context, maxTokens);
         runtime.sampleSequenceLength(tokens.size(), context);
-        var embedding = embedTokens(tokens, type);
+        var embedding = embedTokens(tokens, context, type);
         runtime.sampleEmbeddingLatency((System.nanoTime() - start)/1_000_000d, context);
         return embedding;
     }
@@ -117,24 +124,12 @@ public class BertBaseEmbedder extends AbstractComponent implements Embedder {
 
     private List<Integer> tokenize(String text, Context ctx) { return tokenizer.embed(text, ctx); }
 
-    Tensor embedTokens(List<Integer> tokens, TensorType type) {
-        Tensor inputSequence = createTensorRepresentation(tokens, "d1");
-        Tensor attentionMask = createAttentionMask(inputSequence);
-        Tensor tokenTypeIds = createTokenTypeIds(inputSequence);
+    Tensor embedTokens(List<Integer> tokens, Context context, TensorType type) {
+        Tensor attentionMask = createAttentionMask(createTensorRepresentation(tokens, "d1"));
+        List<Integer> attentionMaskValues = tokens.stream().map(token -> token > 0 ? 1 : 0).toList();
+        List<Integer> tokenTypeIds = Collections.nCopies(tokens.size(), 0);  // Assume only one token type
 
-
-        Map<String, Tensor> inputs;
-        if (!"".equals(tokenTypeIdsName)) {
-            inputs = Map.of(inputIdsName, inputSequence.expand("d0"),
-                                            attentionMaskName, attentionMask.expand("d0"),
-                                            tokenTypeIdsName, tokenTypeIds.expand("d0"));
-        } else {
-            inputs = Map.of(inputIdsName, inputSequence.expand("d0"),
-                                 attentionMaskName, attentionMask.expand("d0"));
-        }
-        Map<String, Tensor> outputs = evaluator.evaluate(inputs);
-
-        Tensor tokenEmbeddings = outputs.get(outputName);
+        Tensor tokenEmbeddings = batcher.evaluate(tokens, attentionMaskValues, tokenTypeIds, context);
 
         return poolingStrategy.toSentenceEmbedding(type, tokenEmbeddings, attentionMask);
     }
@@ -165,8 +160,4 @@ public class BertBaseEmbedder extends AbstractComponent implements Embedder {
         return d.map((x) -> x > 0 ? 1:0);
     }
 
-    private static Tensor createTokenTypeIds(Tensor d)  {
-        return d.map((x) -> 0);  // Assume only one token type
-    }
-
 }
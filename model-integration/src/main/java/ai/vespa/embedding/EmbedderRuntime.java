@@ -8,9 +8,11 @@ import com.yahoo.language.Language;
 import com.yahoo.language.process.Embedder;
 import com.yahoo.metrics.simple.Gauge;
 import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.MetricSettings;
 import com.yahoo.metrics.simple.Point;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -20,12 +22,17 @@ public class EmbedderRuntime implements Embedder.Runtime {
 
     private final Gauge embedLatency;
     private final Gauge sequenceLength;
+    private final Gauge batchSize;
+    private final Gauge batchQueueTime;
     private final Map<MetricDimensions, Point> metricPointCache = new ConcurrentHashMap<>();
 
     @Inject
     public EmbedderRuntime(MetricReceiver metrics) {
         embedLatency = metrics.declareGauge(ContainerMetrics.EMBEDDER_LATENCY.baseName());
         sequenceLength = metrics.declareGauge(ContainerMetrics.EMBEDDER_SEQUENCE_LENGTH.baseName());
+        var histogram = new MetricSettings.Builder().histogram(true).build();
+        batchSize = metrics.declareGauge(ContainerMetrics.EMBEDDER_BATCH_SIZE.baseName(), Optional.empty(), histogram);
+        batchQueueTime = metrics.declareGauge(ContainerMetrics.EMBEDDER_BATCH_QUEUE_TIME.baseName(), Optional.empty(), histogram);
     }
 
     @Override
@@ -38,6 +45,16 @@ public class EmbedderRuntime implements Embedder.Runtime {
         sequenceLength.sample(length, metricPoint(ctx));
     }
 
+    @Override
+    public void sampleBatchSize(int size, Embedder.Context ctx) {
+        batchSize.sample(size, metricPoint(ctx));
+    }
+
+    @Override
+    public void sampleBatchQueueTime(double millis, Embedder.Context ctx) {
+        batchQueueTime.sample(millis, metricPoint(ctx));
+    }
+
     private Point metricPoint(Embedder.Context ctx) {
         var dimensions = new MetricDimensions(ctx.getEmbedderId(), ctx.getLanguage(), ctx.getDestination());
         return metricPointCache.computeIfAbsent(
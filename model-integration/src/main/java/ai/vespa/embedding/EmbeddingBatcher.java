@@ -0,0 +1,229 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import ai.vespa.modelintegration.evaluator.OnnxEvaluator;
+import com.yahoo.language.process.Embedder;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Evaluates the token sequences of concurrent embed calls to a transformer model in batches,
+ * such that the model is invoked once for many calls under high load.
+ * <p>
+ * The first call which finds no batch open starts one, and waits until either the batch is full or
+ * the max delay has passed. It then evaluates all the sequences added to the batch in one invocation
+ * of the model, where the sequences are padded to the length of the longest, and completes the futures
+ * of the other calls with their part of the output. This means an embed call waits at most the max delay
+ * in addition to the time evaluating its batch, and no separate threads are used.
+ * <p>
+ * The model must have a batch dimension followed by a token sequence dimension in all its inputs and
+ * the output, where the attention mask is used to exclude padding from the output of each sequence.
+ */
+public class EmbeddingBatcher {
+
+    private final OnnxEvaluator evaluator;
+    private final String inputIdsName;
+    private final String attentionMaskName;
+    private final String tokenTypeIdsName;
+    private final String outputName;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final Embedder.Runtime runtime;
+
+    /** The batch currently accepting sequences, or null if none */
+    private Batch open = null;
+
+    /**
+     * Creates a batcher evaluating the given model.
+     *
+     * @param tokenTypeIdsName the name of the token type ids input, or empty if the model has none
+     * @param maxSize the max number of sequences evaluated in one batch
+     * @param maxDelay the max time to wait for other sequences to add to a batch
+     */
+    public EmbeddingBatcher(OnnxEvaluator evaluator,
+                            String inputIdsName, String attentionMaskName, String tokenTypeIdsName, String outputName,
+                            int maxSize, Duration maxDelay, Embedder.Runtime runtime) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Max batch size must be at least 1, but was " + maxSize);
+        if (maxDelay.isNegative())
+            throw new IllegalArgumentException("Max batch delay cannot be negative, but was " + maxDelay);
+        this.evaluator = evaluator;
+        this.inputIdsName = inputIdsName;
+        this.attentionMaskName = attentionMaskName;
+        this.tokenTypeIdsName = tokenTypeIdsName;
+        this.outputName = outputName;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.runtime = runtime;
+    }
+
+    /** Returns whether this will ever evaluate more than one sequence at the time */
+    public boolean isBatching() { return maxSize > 1 && maxDelayNanos > 0; }
+
+    /**
+     * Evaluates a token sequence, possibly in a batch with others, and returns the model output for it,
+     * having a batch dimension of size 1 and a sequence dimension of the length of the given sequence.
+     *
+     * @param tokenTypeIds the token type ids of the sequence, which may be empty, ignored if the model has no such input
+     */
+    public IndexedTensor evaluate(List<? extends Number> inputIds, List<? extends Number> attentionMask,
+                                  List<? extends Number> tokenTypeIds, Embedder.Context context) {
+        try {
+            return submit(new Sequence(inputIds, attentionMask, tokenTypeIds, context)).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    private CompletableFuture<IndexedTensor> submit(Sequence sequence) {
+        if ( ! isBatching()) {
+            evaluate(List.of(sequence));
+            return sequence.output;
+        }
+
+        Batch batch;
+        boolean leader;
+        synchronized (this) {
+            leader = open == null;
+            if (leader)
+                open = new Batch(System.nanoTime() + maxDelayNanos);
+            batch = open;
+            batch.sequences.add(sequence);
+            if (batch.sequences.size() >= maxSize) {
+                open = null;
+                notifyAll();
+            }
+        }
+        if (leader) {
+            awaitClosed(batch);
+            evaluate(batch.sequences);
+        }
+        return sequence.output;
+    }
+
+    /** Waits until the given batch is full or its deadline has passed, and closes it */
+    private synchronized void awaitClosed(Batch batch) {
+        boolean interrupted = false;
+        long remaining;
+        while (open == batch && (remaining = batch.deadline - System.nanoTime()) > 0) {
+            try {
+                wait(remaining / 1_000_000, (int)(remaining % 1_000_000));
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (open == batch)
+            open = null;
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /** Evaluates the given closed batch of sequences and completes their futures */
+    private void evaluate(List<Sequence> sequences) {
+        try {
+            long start = System.nanoTime();
+            if (isBatching()) {
+                runtime.sampleBatchSize(sequences.size(), sequences.get(0).context);
+                for (Sequence sequence : sequences)
+                    runtime.sampleBatchQueueTime((start - sequence.submitted) / 1_000_000d, sequence.context);
+            }
+            int maxLength = 0;
+            for (Sequence sequence : sequences)
+                maxLength = Math.max(maxLength, sequence.inputIds.size());
+
+            Map<String, Tensor> inputs = new HashMap<>();
+            inputs.put(inputIdsName, paddedInput(sequences, maxLength, Sequence::inputIds));
+            inputs.put(attentionMaskName, paddedInput(sequences, maxLength, Sequence::attentionMask));
+            if ( ! tokenTypeIdsName.isEmpty() && sequences.stream().anyMatch(s -> ! s.tokenTypeIds.isEmpty()))
+                inputs.put(tokenTypeIdsName, paddedInput(sequences, maxLength, Sequence::tokenTypeIds));
+            IndexedTensor output = (IndexedTensor)evaluator.evaluate(inputs).get(outputName);
+            if (output.shape().length != 3)
+                throw new IllegalArgumentException("Expected 3 output dimensions for output name '" + outputName +
+                                                   "': [batch, sequence, embedding], got " + output.shape().length);
+
+            if (sequences.size() == 1 && output.shape()[1] == sequences.get(0).inputIds.size())
+                sequences.get(0).output.complete(output);
+            else
+                for (int i = 0; i < sequences.size(); i++)
+                    sequences.get(i).output.complete(slice(output, i, sequences.get(i).inputIds.size()));
+        }
+        catch (RuntimeException e) {
+            for (Sequence sequence : sequences)
+                sequence.output.completeExceptionally(e);
+        }
+    }
+
+    private static IndexedTensor paddedInput(List<Sequence> sequences, int length,
+                                             Function<Sequence, List<? extends Number>> values) {
+        TensorType type = new TensorType.Builder(TensorType.Value.FLOAT).indexed("d0", sequences.size())
+                                                                        .indexed("d1", length)
+                                                                        .build();
+        float[] cells = new float[sequences.size() * length];
+        for (int i = 0; i < sequences.size(); i++) {
+            List<? extends Number> sequenceValues = values.apply(sequences.get(i));
+            for (int j = 0; j < sequenceValues.size(); j++)
+                cells[i * length + j] = sequenceValues.get(j).floatValue();
+        }
+        return IndexedTensor.Builder.of(type, cells).build();
+    }
+
+    /** Returns the output of one sequence in a batch, without the padding */
+    private static IndexedTensor slice(IndexedTensor output, int sequence, int length) {
+        long[] shape = output.shape();
+        var dimensions = output.type().dimensions();
+        TensorType type = new TensorType.Builder(output.type().valueType()).indexed(dimensions.get(0).name(), 1)
+                                                                           .indexed(dimensions.get(1).name(), length)
+                                                                           .indexed(dimensions.get(2).name(), shape[2])
+                                                                           .build();
+        int size = (int)(length * shape[2]);
+        long offset = sequence * shape[1] * shape[2];
+        if (type.valueType() == TensorType.Value.DOUBLE) {
+            double[] cells = new double[size];
+            for (int i = 0; i < size; i++)
+                cells[i] = output.get(offset + i);
+            return IndexedTensor.Builder.of(type, cells).build();
+        }
+        else {
+            float[] cells = new float[size];
+            for (int i = 0; i < size; i++)
+                cells[i] = output.getFloat(offset + i);
+            return IndexedTensor.Builder.of(type, cells).build();
+        }
+    }
+
+    private static class Batch {
+
+        final long deadline;
+        final List<Sequence> sequences = new ArrayList<>();
+
+        Batch(long deadline) {
+            this.deadline = deadline;
+        }
+
+    }
+
+    private record Sequence(List<? extends Number> inputIds, List<? extends Number> attentionMask,
+                            List<? extends Number> tokenTypeIds, Embedder.Context context,
+                            long submitted, CompletableFuture<IndexedTensor> output) {
+
+        Sequence(List<? extends Number> inputIds, List<? extends Number> attentionMask,
+                 List<? extends Number> tokenTypeIds, Embedder.Context context) {
+            this(inputIds, attentionMask, tokenTypeIds, context, System.nanoTime(), new CompletableFuture<>());
+        }
+
+    }
+
+}
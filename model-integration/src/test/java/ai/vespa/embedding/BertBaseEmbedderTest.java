@@ -30,7 +30,7 @@ public class BertBaseEmbedderTest {
 
         TensorType destType = TensorType.fromSpec("tensor<float>(x[7])");
         List<Integer> tokens = List.of(1,2,3,4,5);  // use random tokens instead of invoking the tokenizer
-        Tensor embedding = embedder.embedTokens(tokens, destType);
+        Tensor embedding = embedder.embedTokens(tokens, new Embedder.Context("schema.indexing"), destType);
 
         Tensor expected = Tensor.from("tensor<float>(x[7]):[-0.6178509, -0.8135831, 0.34416935, 0.3912577, -0.13068882, 2.5897025E-4, -0.18638384]");
         assertEquals(embedding, expected);
@@ -50,7 +50,7 @@ public class BertBaseEmbedderTest {
 
         TensorType destType = TensorType.fromSpec("tensor<float>(x[7])");
         List<Integer> tokens = List.of(1,2,3,4,5);  // use random tokens instead of invoking the tokenizer
-        Tensor embedding = embedder.embedTokens(tokens, destType);
+        Tensor embedding = embedder.embedTokens(tokens, new Embedder.Context("schema.indexing"), destType);
 
         Tensor expected = Tensor.from("tensor<float>(x[7]):[0.10873623, 0.56411576, 0.6044973, -0.4819714, 0.7519982, -0.83261716, 0.30430704]");
         assertEquals(embedding, expected);
@@ -0,0 +1,102 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.embedding;
+
+import ai.vespa.modelintegration.evaluator.OnnxEvaluator;
+import ai.vespa.modelintegration.evaluator.OnnxRuntime;
+import com.yahoo.language.process.Embedder;
+import com.yahoo.tensor.IndexedTensor;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
+
+public class EmbeddingBatcherTest {
+
+    private static final String modelPath = "src/test/models/onnx/transformer/dummy_transformer.onnx";
+
+    @Test
+    public void testConcurrentCallsAreEvaluatedInOneBatch() throws Exception {
+        assumeTrue(OnnxRuntime.isRuntimeAvailable(modelPath));
+        List<Long> tokens = List.of(1L, 2L, 3L, 4L, 5L);
+        List<Long> mask = List.of(1L, 1L, 1L, 1L, 1L);
+        List<Long> types = List.of(0L, 0L, 0L, 0L, 0L);
+        var context = new Embedder.Context("query.q");
+        try (OnnxEvaluator evaluator = new OnnxRuntime().evaluatorOf(modelPath)) {
+            IndexedTensor expected = batcher(evaluator, 1, Duration.ZERO, new RecordingRuntime())
+                                             .evaluate(tokens, mask, types, context);
+            assertArrayEquals(new long[] { 1, 5, 16 }, expected.shape());
+
+            int calls = 4;
+            var runtime = new RecordingRuntime();
+            // Only closed when full, such that all the calls end up in the same batch
+            EmbeddingBatcher batcher = batcher(evaluator, calls, Duration.ofMinutes(1), runtime);
+            ExecutorService executor = Executors.newFixedThreadPool(calls);
+            try {
+                List<Future<IndexedTensor>> results = new ArrayList<>();
+                for (int i = 0; i < calls; i++)
+                    results.add(executor.submit(() -> batcher.evaluate(tokens, mask, types, context)));
+                for (Future<IndexedTensor> result : results)
+                    assertEquals(expected.toString(), result.get().toString());
+            }
+            finally {
+                executor.shutdown();
+            }
+            assertEquals(List.of(calls), runtime.batchSizes);
+            assertEquals(calls, runtime.queueTimes.size());
+        }
+    }
+
+    @Test
+    public void testSequencesArePaddedAndSplit() throws Exception {
+        assumeTrue(OnnxRuntime.isRuntimeAvailable(modelPath));
+        var context = new Embedder.Context("query.q");
+        try (OnnxEvaluator evaluator = new OnnxRuntime().evaluatorOf(modelPath)) {
+            var runtime = new RecordingRuntime();
+            EmbeddingBatcher batcher = batcher(evaluator, 2, Duration.ofMinutes(1), runtime);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<IndexedTensor> shorter = executor.submit(() -> batcher.evaluate(List.of(1, 2, 3), List.of(1, 1, 1),
+                                                                                       List.of(0, 0, 0), context));
+                Future<IndexedTensor> longer = executor.submit(() -> batcher.evaluate(List.of(1, 2, 3, 4, 5), List.of(1, 1, 1, 1, 1),
+                                                                                      List.of(0, 0, 0, 0, 0), context));
+                assertArrayEquals(new long[] { 1, 3, 16 }, shorter.get().shape());
+                assertArrayEquals(new long[] { 1, 5, 16 }, longer.get().shape());
+            }
+            finally {
+                executor.shutdown();
+            }
+            assertEquals(List.of(2), runtime.batchSizes);
+
+            assertFalse(batcher(evaluator, 8, Duration.ZERO, runtime).isBatching());
+            assertThrows(IllegalArgumentException.class, () -> batcher(evaluator, 0, Duration.ZERO, runtime));
+        }
+    }
+
+    private static EmbeddingBatcher batcher(OnnxEvaluator evaluator, int maxSize, Duration maxDelay, Embedder.Runtime runtime) {
+        return new EmbeddingBatcher(evaluator, "input_ids", "attention_mask", "token_type_ids", "output_0",
+                                    maxSize, maxDelay, runtime);
+    }
+
+    private static class RecordingRuntime implements Embedder.Runtime {
+
+        final List<Integer> batchSizes = new ArrayList<>();
+        final List<Double> queueTimes = new ArrayList<>();
+
+        @Override public void sampleEmbeddingLatency(double millis, Embedder.Context ctx) { }
+        @Override public void sampleSequenceLength(long length, Embedder.Context ctx) { }
+        @Override public synchronized void sampleBatchSize(int size, Embedder.Context ctx) { batchSizes.add(size); }
+        @Override public synchronized void sampleBatchQueueTime(double millis, Embedder.Context ctx) { queueTimes.add(millis); }
+
+    }
+
+}
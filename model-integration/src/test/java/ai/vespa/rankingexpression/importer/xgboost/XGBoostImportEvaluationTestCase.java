@@ -8,10 +8,12 @@ import com.yahoo.searchlib.rankingexpression.evaluation.ContextIndex;
 import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
 import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
 import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForest;
 import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestNode;
 import com.yahoo.tensor.Tensor;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -55,6 +57,21 @@ public class XGBoostImportEvaluationTestCase {
         assertXGBoostEvaluation(11.0, expression, features(context));
         assertXGBoostEvaluation(5.0, expression, features(context, "f1", Tensor.from(0.0)));
         assertXGBoostEvaluation(6.0, expression, features(context, "f1", Tensor.from(1.0)));
+
+        GBDTForest forest = ((GBDTForestNode)expression.getRoot()).forest();
+        double[][] batch = { vector(context, 0.0, 0.0), vector(context, 0.0, 1.0), vector(context, 1.0, 0.0),
+                             vector(context, 1.0, 1.0), vector(context, 0.0, Double.NaN), vector(context, 1.0, Double.NaN),
+                             vector(context, Double.NaN, 0.0), vector(context, Double.NaN, 1.0),
+                             vector(context, Double.NaN, Double.NaN) };
+        assertArrayEquals(new double[] { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 9.0, 11.0 }, forest.evaluate(batch), 1e-9);
+    }
+
+    /** Returns a feature vector for batch evaluation, where NaN is a missing value */
+    private double[] vector(ArrayContext context, double f1, double f2) {
+        double[] vector = new double[context.size()];
+        vector[context.getIndex("f1")] = f1;
+        vector[context.getIndex("f2")] = f2;
+        return vector;
     }
 
     private ArrayContext features(ArrayContext context) {
@@ -79,9 +79,7 @@ public class Group extends Identifiable {
             rank = rhs.rank; // keep highest rank
         }
         if (currentLevel >= firstLevel) {
-            for (int i = 0, len = aggregationResults.size(); i < len; ++i) {
-                aggregationResults.get(i).merge(rhs.aggregationResults.get(i));
-            }
+            mergeAggregationResults(rhs);
         }
 
         ArrayList<Group> merged = new ArrayList<>();
@@ -120,7 +118,24 @@ public class Group extends Identifiable {
         children = merged;
     }
 
-    private void executeOrderBy() {
+    /** Merges the aggregation results of the given group into the aggregation results of this. */
+    void mergeAggregationResults(Group rhs) {
+        for (int i = 0, len = aggregationResults.size(); i < len; ++i) {
+            aggregationResults.get(i).merge(rhs.aggregationResults.get(i));
+        }
+    }
+
+    /** Completes the merged aggregation results of this, and evaluates the order-by expressions using them. */
+    void postMergeAggregationResults() {
+        for (AggregationResult result : aggregationResults) {
+            result.postMerge();
+        }
+        for (ExpressionNode result : orderByExp) {
+            result.execute();
+        }
+    }
+
+    void executeOrderBy() {
         for (ExpressionNode node : orderByExp) {
             node.prepare();
             node.execute();
@@ -137,12 +152,7 @@ public class Group extends Identifiable {
      */
     public void postMerge(List<GroupingLevel> levels, int firstLevel, int currentLevel) {
         if (currentLevel >= firstLevel) {
-            for (AggregationResult result : aggregationResults) {
-                result.postMerge();
-            }
-            for (ExpressionNode result : orderByExp) {
-                result.execute();
-            }
+            postMergeAggregationResults();
         }
         if (currentLevel < levels.size()) {
             int maxGroups = (int)levels.get(currentLevel).getMaxGroups();
@@ -230,6 +240,17 @@ public class Group extends Identifiable {
         return this;
     }
 
+    /** Returns the child groups of this without copying them. */
+    List<Group> childList() {
+        return children;
+    }
+
+    /** Replaces the child groups of this by the given list, which must be sorted by id. */
+    void setChildrenSortedById(List<Group> children) {
+        this.children = children;
+        sortType = SortType.BYID;
+    }
+
     /** Returns immutable list of child groups to this. */
     public List<Group> getChildren() {
         return List.copyOf(children);
@@ -314,11 +335,11 @@ public class Group extends Identifiable {
         return List.copyOf(orderByExp);
     }
 
-    private int compareId(Group rhs) {
+    int compareId(Group rhs) {
         return getId().compareTo(rhs.getId());
     }
 
-    private int compareRank(Group rhs) {
+    int compareRank(Group rhs) {
         long diff = 0;
         for (int i = 0, m = orderByIdx.size(); (diff == 0) && (i < m); i++) {
             int rawIndex = orderByIdx.get(i);
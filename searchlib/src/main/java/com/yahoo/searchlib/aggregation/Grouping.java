@@ -80,6 +80,11 @@ public final class Grouping extends Identifiable {
         postMergeCompleted = true;
     }
 
+    /** Records that the content of this has been merged and post merged by other means than {@link #postMerge()}. */
+    void setPostMergeCompleted() {
+        postMergeCompleted = true;
+    }
+
     /** Returns the client id of this grouping request. */
     public int getId() {
         return id;
@@ -0,0 +1,286 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Merges the partial results of one grouping request returned from any number of nodes.
+ * <p>
+ * This produces the same result as merging the groupings pairwise by {@link Grouping#merge(Grouping)} followed by
+ * {@link Grouping#postMerge()}, but merges all the partial results of one level at once: The groups of a level are
+ * collected into a hash table of primitive arrays keyed by the hash of the group id, which also holds the highest
+ * rank of each group. The groups to keep are then selected using the max of the level, and only those have their
+ * aggregation results and children merged. Groups which are pruned are never merged, no intermediate groups or
+ * lists of children are created, and the final tree consists of the first received instance of each kept group.
+ * <p>
+ * When the groups of a level are ordered by expressions over their aggregation results, these must be merged
+ * for all the groups of the level before selecting those to keep, but their children are still only merged
+ * for the kept groups.
+ * <p>
+ * Content nodes return the children of each group sorted by id. Partial results where this is not the case are
+ * merged pairwise, as the result then depends on the order of the children.
+ * <p>
+ * The groupings added are modified by merging. This is not thread safe.
+ */
+public final class GroupingMerger {
+
+    private final List<Grouping> groupings = new ArrayList<>();
+    private boolean merged = false;
+
+    /** Adds a partial result to merge, which must be for the same grouping request as those already added */
+    public GroupingMerger add(Grouping grouping) {
+        if ( ! groupings.isEmpty() && groupings.get(0).getId() != grouping.getId())
+            throw new IllegalArgumentException("Cannot merge grouping " + grouping.getId() +
+                                               " with grouping " + groupings.get(0).getId());
+        groupings.add(grouping);
+        merged = false;
+        return this;
+    }
+
+    /** Returns the number of partial results added to this */
+    public int size() { return groupings.size(); }
+
+    /**
+     * Merges and post merges all the added groupings into the first one added, and returns it.
+     * The merged groupings are removed from this, such that calling this again returns the same result.
+     *
+     * @throws IllegalStateException if no groupings are added
+     */
+    public Grouping merge() {
+        if (groupings.isEmpty()) throw new IllegalStateException("No groupings to merge");
+        Grouping target = groupings.get(0);
+        if (merged) return target;
+        Group[] roots = new Group[groupings.size()];
+        for (int i = 0; i < roots.length; i++)
+            roots[i] = groupings.get(i).getRoot();
+        if (Arrays.stream(roots).allMatch(GroupingMerger::isSortedById)) {
+            LevelMerger merger = new LevelMerger(target.getLevels(), target.getFirstLevel());
+            merger.mergeGroup(roots, 0);
+            merger.mergeSubtree(roots, 0, true);
+            target.setPostMergeCompleted();
+        }
+        else { // the result of merging unsorted children depends on their order, so keep doing it pairwise
+            for (int i = 1; i < groupings.size(); i++)
+                target.merge(groupings.get(i));
+            target.postMerge();
+        }
+        groupings.subList(1, groupings.size()).clear();
+        merged = true;
+        return target;
+    }
+
+    /** Returns whether the children of the given group and all its descendants are sorted by id */
+    private static boolean isSortedById(Group group) {
+        Group previous = null;
+        for (Group child : group.childList()) {
+            if (previous != null && previous.compareId(child) >= 0) return false;
+            if ( ! isSortedById(child)) return false;
+            previous = child;
+        }
+        return true;
+    }
+
+    private static final class LevelMerger {
+
+        private final List<GroupingLevel> levels;
+        private final int firstLevel;
+
+        LevelMerger(List<GroupingLevel> levels, int firstLevel) {
+            this.levels = levels;
+            this.firstLevel = firstLevel;
+        }
+
+        /** Merges the rank and aggregation results of the given instances of a group into the first */
+        void mergeGroup(Group[] instances, int level) {
+            Group target = instances[0];
+            for (int i = 1; i < instances.length; i++) {
+                if (instances[i].getRank() > target.getRank())
+                    target.setRank(instances[i].getRank()); // keep highest rank
+                if (level >= firstLevel)
+                    target.mergeAggregationResults(instances[i]);
+            }
+        }
+
+        /**
+         * Post merges the given instances of a group, which have been merged by {@link #mergeGroup}, and merges
+         * the children of these into the first instance.
+         */
+        void mergeSubtree(Group[] instances, int level, boolean postMerge) {
+            Group target = instances[0];
+            if (instances.length == 1) { // nothing to merge below this
+                if (postMerge)
+                    target.postMerge(levels, firstLevel, level);
+                return;
+            }
+            if (postMerge && level >= firstLevel)
+                target.postMergeAggregationResults();
+
+            ChildTable children = new ChildTable(instances);
+            if (children.size() == 0) return;
+
+            boolean prune = postMerge && level < levels.size();
+            int maxGroups = prune ? (int)levels.get(level).getMaxGroups() : -1;
+            int[] kept;
+            if ( ! prune || maxGroups < 0 || children.size() <= maxGroups) {
+                kept = IntStream.range(0, children.size()).toArray();
+                mergeGroups(children, kept, level + 1);
+                if (prune)
+                    executeOrderBy(children, kept);
+            }
+            else if (children.isRankedByRelevance()) { // select by the rank in the table before merging
+                kept = IntStream.range(0, children.size()).boxed()
+                                .sorted(Comparator.<Integer>comparingDouble(children::rank).reversed()
+                                                  .thenComparing((a, b) -> children.first(a).compareId(children.first(b))))
+                                .limit(maxGroups)
+                                .mapToInt(Integer::intValue)
+                                .toArray();
+                mergeGroups(children, kept, level + 1);
+            }
+            else { // the order depends on the merged aggregation results
+                int[] all = IntStream.range(0, children.size()).toArray();
+                mergeGroups(children, all, level + 1);
+                executeOrderBy(children, all);
+                kept = IntStream.range(0, children.size()).boxed()
+                                .sorted((a, b) -> compareRankThenId(children.first(a), children.first(b)))
+                                .limit(maxGroups)
+                                .mapToInt(Integer::intValue)
+                                .toArray();
+            }
+
+            List<Group> merged = new ArrayList<>(kept.length);
+            for (int entry : kept)
+                merged.add(children.first(entry));
+            merged.sort(Group::compareId);
+            target.setChildrenSortedById(merged);
+            for (int entry : kept)
+                mergeSubtree(children.instances(entry), level + 1, prune);
+        }
+
+        private void mergeGroups(ChildTable children, int[] entries, int level) {
+            for (int entry : entries) {
+                if (children.instanceCount(entry) > 1)
+                    mergeGroup(children.instances(entry), level);
+            }
+        }
+
+        private static void executeOrderBy(ChildTable children, int[] entries) {
+            for (int entry : entries)
+                children.first(entry).executeOrderBy();
+        }
+
+        private static int compareRankThenId(Group a, Group b) {
+            int cmp = a.compareRank(b);
+            return cmp != 0 ? cmp : a.compareId(b);
+        }
+
+    }
+
+    /**
+     * An open addressing hash table of the distinct children of some instances of a group,
+     * where each distinct child is an entry holding all its instances in the order they were added.
+     */
+    private static final class ChildTable {
+
+        /** All the child instances, in the order they were added */
+        private final Group[] instances;
+
+        /** The next instance of the same entry as each instance, or -1 if none */
+        private final int[] nextInstance;
+
+
+        /** The entry number + 1 by hash slot, or 0 if the slot is empty */
+        private final int[] slots;
+
+        // Entry columns
+        private final int[] hashes;
+        private final int[] firstInstance;
+        private final int[] lastInstance;
+        private final int[] instanceCount;
+        private final double[] rank;
+        private int size = 0;
+
+        private boolean rankedByRelevance = true;
+
+        ChildTable(Group[] parents) {
+            int instanceCount = 0;
+            for (Group parent : parents)
+                instanceCount += parent.getNumChildren();
+            this.instances = new Group[instanceCount];
+            this.nextInstance = new int[instanceCount];
+            this.slots = new int[Integer.highestOneBit(Math.max(1, instanceCount * 2 - 1)) << 1];
+            this.hashes = new int[instanceCount];
+            this.firstInstance = new int[instanceCount];
+            this.lastInstance = new int[instanceCount];
+            this.instanceCount = new int[instanceCount];
+            this.rank = new double[instanceCount];
+
+            int instance = 0;
+            for (Group parent : parents) {
+                for (Group child : parent.childList()) {
+                    add(instance++, child);
+                    rankedByRelevance &= child.isRankedByRelevance();
+                }
+            }
+        }
+
+        private void add(int instance, Group child) {
+            instances[instance] = child;
+            nextInstance[instance] = -1;
+            int hash = hash(child);
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots[slot] - 1;
+                if (entry < 0) {
+                    entry = size++;
+                    slots[slot] = entry + 1;
+                    hashes[entry] = hash;
+                    firstInstance[entry] = instance;
+                    lastInstance[entry] = instance;
+                    instanceCount[entry] = 1;
+                    rank[entry] = child.getRank();
+                    return;
+                }
+                if (hashes[entry] == hash && instances[firstInstance[entry]].compareId(child) == 0) {
+                    nextInstance[lastInstance[entry]] = instance;
+                    lastInstance[entry] = instance;
+                    instanceCount[entry]++;
+                    rank[entry] = Math.max(rank[entry], child.getRank());
+                    return;
+                }
+            }
+        }
+
+        private static int hash(Group group) {
+            int hash = group.getId() == null ? 0 : group.getId().hashCode();
+            return (hash ^ (hash >>> 16)) * 0x45d9f3b;
+        }
+
+        /** Returns the number of distinct children in this */
+        int size() { return size; }
+
+        /** Returns whether all the children are ordered by rank only */
+        boolean isRankedByRelevance() { return rankedByRelevance; }
+
+        /** Returns the highest rank of the instances of the given entry */
+        double rank(int entry) { return rank[entry]; }
+
+        /** Returns the first instance of the given entry, which is the one merged into */
+        Group first(int entry) { return instances[firstInstance[entry]]; }
+
+        int instanceCount(int entry) { return instanceCount[entry]; }
+
+        /** Returns all the instances of the given entry, first to last */
+        Group[] instances(int entry) {
+            Group[] entryInstances = new Group[instanceCount[entry]];
+            for (int i = 0, instance = firstInstance[entry]; instance >= 0; instance = nextInstance[instance])
+                entryInstances[i++] = instances[instance];
+            return entryInstances;
+        }
+
+    }
+
+}
@@ -50,7 +50,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value largerOrEqual(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.largerOrEqual(this);
+            return new TensorValue(asTensor()).largerOrEqual(tensor);
         else
             return new BooleanValue(this.asDouble() >= value.asDouble());
     }
@@ -58,7 +58,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value larger(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.larger(this);
+            return new TensorValue(asTensor()).larger(tensor);
         else
             return new BooleanValue(this.asDouble() > value.asDouble());
     }
@@ -66,7 +66,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value smallerOrEqual(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.smallerOrEqual(this);
+            return new TensorValue(asTensor()).smallerOrEqual(tensor);
         else
             return new BooleanValue(this.asDouble() <= value.asDouble());
     }
@@ -74,7 +74,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value smaller(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.smaller(this);
+            return new TensorValue(asTensor()).smaller(tensor);
         else
             return new BooleanValue(this.asDouble() < value.asDouble());
     }
@@ -114,7 +114,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value subtract(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.subtract(this);
+            return new TensorValue(asTensor()).subtract(tensor);
         else
             return new DoubleValue(asDouble() - value.asDouble());
     }
@@ -130,7 +130,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value divide(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.divide(this);
+            return new TensorValue(asTensor()).divide(tensor);
         else
             return new DoubleValue(asDouble() / value.asDouble());
     }
@@ -138,7 +138,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value modulo(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.modulo(this);
+            return new TensorValue(asTensor()).modulo(tensor);
         else
             return new DoubleValue(asDouble() % value.asDouble());
     }
@@ -146,7 +146,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value power(Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.power(this);
+            return new TensorValue(asTensor()).power(tensor);
         else
             return new DoubleValue(Function.pow.evaluate(asDouble(), value.asDouble()));
     }
@@ -154,7 +154,7 @@ public abstract class DoubleCompatibleValue extends Value {
     @Override
     public Value function(Function function, Value value) {
         if (value instanceof TensorValue tensor)
-            return tensor.function(function, this);
+            return new TensorValue(asTensor()).function(function, tensor);
         else
             return new DoubleValue(function.evaluate(asDouble(), value.asDouble()));
     }
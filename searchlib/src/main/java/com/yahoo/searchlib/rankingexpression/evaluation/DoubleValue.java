@@ -113,7 +113,7 @@ public final class DoubleValue extends DoubleCompatibleValue {
     public Value function(Function function, Value value) {
         // use the tensor implementation of max and min if the argument is a tensor
         if ( (function.equals(Function.min) || function.equals(Function.max)) && value instanceof TensorValue)
-            return value.function(function, this);
+            return new TensorValue(asTensor()).function(function, value);
 
         try {
             return mutable(function.evaluate(this.value, value.asDouble()));
@@ -0,0 +1,307 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.evaluation.Context;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A sum of decision trees laid out as a struct of arrays: The nodes of each tree are stored breadth first
+ * in parallel arrays, such that the nodes visited by every evaluation are adjacent in memory,
+ * and a batch of feature vectors can be scored one tree at a time while that tree is in cache.
+ *
+ * The node to go to when the condition of a node is false is stored right after the one to go to when it is true,
+ * so the next node can be computed from the outcome of a condition without branching. A leaf is a node whose
+ * condition is false for any value and which goes to itself in that case, so evaluation can take as many steps
+ * through a tree as it is deep without testing whether a leaf is reached. This is only done for trees which are
+ * close to balanced: Trees grown leaf-wise, as by LightGBM, are often much deeper than most paths through them,
+ * and are instead evaluated until a leaf is reached.
+ *
+ * This is immutable and can be used by multiple threads at the same time.
+ */
+public final class GBDTForest {
+
+    private static final byte LESS = 0;
+    private static final byte EQUAL = 1;
+    private static final byte IN = 2;
+    private static final byte NOT_LARGER_OR_EQUAL = 3;
+
+    /**
+     * The max ratio of the depth of a tree to its expected path length, if each branch is taken half of the time,
+     * for which evaluation takes as many steps as the tree is deep
+     */
+    private static final double maxDepthToPathLength = 1.5;
+
+    /** The index of the root node of each tree */
+    private final int[] roots;
+
+    /**
+     * The number of conditions on the longest path from the root of each tree if it is evaluated by taking that
+     * many steps, or -1 if it is evaluated until a leaf is reached
+     */
+    private final int[] depths;
+
+    /** The context index of the feature tested by each node */
+    private final int[] variables;
+
+    /** The comparison made by each node */
+    private final byte[] operators;
+
+    /** The number a feature value is multiplied by before a LESS comparison: -1 if the condition is rewritten, else 1 */
+    private final double[] signs;
+
+    /** The value compared with by each node, or for IN, the index in sets of the set size and values */
+    private final double[] constants;
+
+    /** The index of the node to go to from each node if its condition is true. The next one is used otherwise. */
+    private final int[] children;
+
+    /** The value of each leaf node */
+    private final double[] values;
+
+    /** The sets tested by IN conditions, each stored as its size followed by its values */
+    private final double[] sets;
+
+    /** Whether all conditions are LESS, as in forests of numerical features imported from XGBoost and LightGBM */
+    private final boolean onlyLess;
+
+    /**
+     * Creates a forest from trees encoded as by {@link GBDTForestOptimizer}:
+     * Each tree is preceded by its length, and encoded as in {@link GBDTNode}.
+     */
+    GBDTForest(double[] encoded) {
+        Builder builder = new Builder();
+        int pc = 0;
+        while (pc < encoded.length) {
+            int treeLength = (int)encoded[pc++];
+            builder.add(parse(encoded, pc));
+            pc += treeLength;
+        }
+        roots = builder.roots.stream().mapToInt(i -> i).toArray();
+        depths = builder.depths.stream().mapToInt(i -> i).toArray();
+        variables = builder.variables.stream().mapToInt(i -> i).toArray();
+        operators = new byte[builder.operators.size()];
+        for (int i = 0; i < operators.length; i++)
+            operators[i] = builder.operators.get(i);
+        signs = builder.signs.stream().mapToDouble(d -> d).toArray();
+        constants = builder.constants.stream().mapToDouble(d -> d).toArray();
+        children = builder.children.stream().mapToInt(i -> i).toArray();
+        values = builder.values.stream().mapToDouble(d -> d).toArray();
+        sets = builder.sets.stream().mapToDouble(d -> d).toArray();
+        onlyLess = builder.operators.stream().allMatch(operator -> operator == LESS);
+    }
+
+    /** Returns the number of trees in this */
+    public int trees() { return roots.length; }
+
+    /** Returns the sum of the trees for the feature values in the given context */
+    public double evaluate(Context context) {
+        double sum = 0;
+        for (int tree = 0; tree < roots.length; tree++) {
+            int node = roots[tree];
+            if (onlyLess && depths[tree] >= 0) {
+                for (int step = 0; step < depths[tree]; step++)
+                    node = next(node, context.getDouble(variables[node]));
+            }
+            else if (onlyLess) {
+                while (children[node] > node) // not a leaf
+                    node = next(node, context.getDouble(variables[node]));
+            }
+            else {
+                while (children[node] > node) // not a leaf
+                    node = children[node] + (test(node, context.getDouble(variables[node])) ? 0 : 1);
+            }
+            sum += values[node];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the trees for each of the given feature vectors.
+     * This gives the same result as evaluating each one by itself, but is faster for large batches.
+     *
+     * @param features the feature vectors to score, each holding the value of every feature at its index in the
+     *                 context the forest was optimized with, and NaN for missing values
+     * @return the score of each feature vector, in the same order
+     */
+    public double[] evaluate(double[][] features) {
+        double[] scores = new double[features.length];
+        for (int tree = 0; tree < roots.length; tree++) {
+            int root = roots[tree];
+            int depth = depths[tree];
+            int i = 0;
+            if (onlyLess && depth >= 0) { // score four vectors at the time, such that their node lookups overlap
+                for (; i + 3 < features.length; i += 4) {
+                    double[] v0 = features[i], v1 = features[i + 1], v2 = features[i + 2], v3 = features[i + 3];
+                    int n0 = root, n1 = root, n2 = root, n3 = root;
+                    for (int step = 0; step < depth; step++) {
+                        n0 = next(n0, v0[variables[n0]]);
+                        n1 = next(n1, v1[variables[n1]]);
+                        n2 = next(n2, v2[variables[n2]]);
+                        n3 = next(n3, v3[variables[n3]]);
+                    }
+                    scores[i] += values[n0];
+                    scores[i + 1] += values[n1];
+                    scores[i + 2] += values[n2];
+                    scores[i + 3] += values[n3];
+                }
+            }
+            for (; i < features.length; i++) {
+                double[] vector = features[i];
+                int node = root;
+                while (children[node] > node) // not a leaf
+                    node = children[node] + (test(node, vector[variables[node]]) ? 0 : 1);
+                scores[i] += values[node];
+            }
+        }
+        return scores;
+    }
+
+    /** Returns the next node from one with a LESS condition */
+    private int next(int node, double value) {
+        return children[node] + (value * signs[node] < constants[node] ? 0 : 1);
+    }
+
+    private boolean test(int node, double value) {
+        return switch (operators[node]) {
+            case LESS -> value * signs[node] < constants[node];
+            case EQUAL -> value == constants[node];
+            case NOT_LARGER_OR_EQUAL -> ! (value >= constants[node]);
+            default -> contains((int)constants[node], value);
+        };
+    }
+
+    private boolean contains(int set, double value) {
+        int size = (int)sets[set];
+        for (int i = set + 1; i <= set + size; i++) {
+            if (sets[i] == value) return true;
+        }
+        return false;
+    }
+
+    /** Parses the tree encoded in the given values from the given offset */
+    private static Tree parse(double[] encoded, int pc) {
+        double nextValue = encoded[pc++];
+        if (nextValue < GBDTNode.MAX_LEAF_VALUE) return new Leaf(nextValue);
+
+        int offset = (int)nextValue - GBDTNode.MAX_LEAF_VALUE;
+        byte operator = (byte)(offset / GBDTNode.MAX_VARIABLES);
+        int variable = offset % GBDTNode.MAX_VARIABLES;
+        double[] set = null;
+        double constant = 0;
+        if (operator == IN) {
+            set = Arrays.copyOfRange(encoded, pc, pc + (int)encoded[pc] + 1);
+            pc += set.length;
+        }
+        else {
+            constant = encoded[pc++];
+        }
+        int falseBranch = pc + (int)encoded[pc];
+        return new Condition(variable, operator, constant, set, parse(encoded, pc + 1), parse(encoded, falseBranch));
+    }
+
+    private sealed interface Tree permits Condition, Leaf {
+
+        int depth();
+
+        /** Returns the expected number of conditions evaluated if each branch is taken half of the time */
+        double pathLength();
+
+    }
+
+    private record Condition(int variable, byte operator, double constant, double[] set,
+                             Tree trueBranch, Tree falseBranch) implements Tree {
+
+        @Override
+        public int depth() { return 1 + Math.max(trueBranch.depth(), falseBranch.depth()); }
+
+        @Override
+        public double pathLength() { return 1 + (trueBranch.pathLength() + falseBranch.pathLength()) / 2; }
+
+    }
+
+    private record Leaf(double value) implements Tree {
+
+        @Override
+        public int depth() { return 0; }
+
+        @Override
+        public double pathLength() { return 0; }
+
+    }
+
+    private static class Builder {
+
+        final List<Integer> roots = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        final List<Integer> variables = new ArrayList<>();
+        final List<Byte> operators = new ArrayList<>();
+        final List<Double> signs = new ArrayList<>();
+        final List<Double> constants = new ArrayList<>();
+        final List<Integer> children = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        final List<Double> sets = new ArrayList<>();
+
+        /** Adds the nodes of a tree breadth first */
+        void add(Tree root) {
+            roots.add(variables.size());
+            int depth = root.depth();
+            depths.add(depth <= maxDepthToPathLength * root.pathLength() ? depth : -1);
+            // Node indexes are assigned as nodes are enqueued, which is the order they are added in
+            int nextNode = variables.size() + 1;
+            Deque<Tree> queue = new ArrayDeque<>();
+            Deque<Integer> parentVariables = new ArrayDeque<>();
+            queue.add(root);
+            parentVariables.add(0);
+            while ( ! queue.isEmpty()) {
+                Tree tree = queue.remove();
+                int parentVariable = parentVariables.remove();
+                int node = variables.size();
+                if (tree instanceof Leaf leaf) {
+                    // Reads the variable of its parent, which is bound if the parent was evaluated,
+                    // and compares with NaN, which is false such that the leaf goes to itself
+                    add(parentVariable, LESS, 1, Double.NaN, node - 1, leaf.value());
+                    continue;
+                }
+                Condition condition = (Condition)tree;
+                Tree first = condition.trueBranch();
+                Tree second = condition.falseBranch();
+                if (condition.operator() == NOT_LARGER_OR_EQUAL && condition.constant() != Double.NEGATIVE_INFINITY) {
+                    // Rewrite !(value >= constant) to -value < -nextDown(constant), which is its negation for
+                    // numbers, and false for NaN like other LESS conditions, and go to the false branch if true
+                    add(condition.variable(), LESS, -1, -Math.nextDown(condition.constant()), nextNode, 0);
+                    first = condition.falseBranch();
+                    second = condition.trueBranch();
+                }
+                else if (condition.operator() == IN) {
+                    add(condition.variable(), IN, 1, sets.size(), nextNode, 0);
+                    for (double value : condition.set())
+                        sets.add(value);
+                }
+                else {
+                    add(condition.variable(), condition.operator(), 1, condition.constant(), nextNode, 0);
+                }
+                nextNode += 2;
+                queue.add(first);
+                queue.add(second);
+                parentVariables.add(condition.variable());
+                parentVariables.add(condition.variable());
+            }
+        }
+
+        private void add(int variable, byte operator, double sign, double constant, int trueChild, double value) {
+            variables.add(variable);
+            operators.add(operator);
+            signs.add(sign);
+            constants.add(constant);
+            children.add(trueChild);
+            values.add(value);
+        }
+
+    }
+
+}
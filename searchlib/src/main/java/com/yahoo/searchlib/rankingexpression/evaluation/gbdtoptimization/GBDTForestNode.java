@@ -22,34 +22,36 @@ import java.util.Objects;
  */
 public class GBDTForestNode extends ExpressionNode {
 
-    private final double[] values;
+    private final GBDTForest forest;
+
+    /** The size and hash of the encoded trees this was created from, which are not kept */
+    private final int encodedLength;
+    private final int encodedHash;
 
     public GBDTForestNode(double[] values) {
-        this.values=values;
+        this.forest = new GBDTForest(values);
+        this.encodedLength = values.length;
+        this.encodedHash = Arrays.hashCode(values);
     }
 
+    /** Returns the trees of this, which can also score batches of feature vectors */
+    public GBDTForest forest() { return forest; }
+
     @Override
     public final TensorType type(TypeContext<Reference> context) { return TensorType.empty; }
 
     @Override
     public final Value evaluate(Context context) {
-        int pc = 0;
-        double treeSum = 0;
-        while (pc < values.length) {
-            int nextTree = (int)values[pc++];
-            treeSum += GBDTNode.evaluate(values, pc, context);
-            pc += nextTree;
-        }
-        return new DoubleValue(treeSum);
+        return new DoubleValue(forest.evaluate(context));
     }
 
     /** Returns (optimized sum of condition trees) */
     @Override
     public StringBuilder toString(StringBuilder string, SerializationContext context, Deque<String> path, CompositeNode parent) {
-        return string.append("(optimized sum of condition trees of size ").append(values.length*8).append(" bytes)");
+        return string.append("(optimized sum of condition trees of size ").append(encodedLength*8).append(" bytes)");
     }
 
     @Override
-    public int hashCode() { return Objects.hash("gbdtForest", Arrays.hashCode(values)); }
+    public int hashCode() { return Objects.hash("gbdtForest", encodedHash); }
 
 }
@@ -8,14 +8,18 @@ import com.yahoo.searchlib.rankingexpression.evaluation.OptimizationReport;
 import com.yahoo.searchlib.rankingexpression.evaluation.Optimizer;
 import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
 import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.OperationNode;
 import com.yahoo.searchlib.rankingexpression.rule.TensorFunctionNode;
 import com.yahoo.tensor.functions.Join;
+import com.yahoo.tensor.functions.Matmul;
 import com.yahoo.tensor.functions.Reduce;
 import com.yahoo.tensor.functions.ReduceJoin;
+import com.yahoo.tensor.functions.ScalarFunctions;
 import com.yahoo.tensor.functions.TensorFunction;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.DoubleBinaryOperator;
 
 /**
  * Recognizes and optimizes tensor expressions.
@@ -51,7 +55,8 @@ public class TensorOptimizer extends Optimizer {
     }
 
     /**
-     * Recognized a reduce followed by a join. In many cases, chunking these
+     * Recognized a reduce followed by a join, where the join is either a join function
+     * or an arithmetic operation such as a * b. In many cases, chunking these
      * two operations together is significantly more efficient than evaluating
      * each on its own, avoiding the cost of a temporary tensor.
      *
@@ -64,6 +69,10 @@ public class TensorOptimizer extends Optimizer {
             return node;
         }
         TensorFunction<Reference> function = ((TensorFunctionNode) node).function();
+        if (function instanceof Matmul) {
+            report.incMetric("Fused matmul", 1); // Matmul is evaluated as a reduce-join
+            return node;
+        }
         if ( ! (function instanceof Reduce)) {
             return node;
         }
@@ -72,6 +81,17 @@ public class TensorOptimizer extends Optimizer {
             return node;
         }
         ExpressionNode child = children.get(0);
+        if (child instanceof OperationNode operation) {
+            DoubleBinaryOperator combinator = combinatorOf(operation);
+            if (combinator == null) {
+                return node;
+            }
+            report.incMetric("Replaced reduce->operation", 1);
+            Join<Reference> join = new Join<>(TensorFunctionNode.wrap(operation.children().get(0)),
+                                              TensorFunctionNode.wrap(operation.children().get(1)),
+                                              combinator);
+            return new TensorFunctionNode(new ReduceJoin<>((Reduce<Reference>)function, join));
+        }
         if ( ! (child instanceof TensorFunctionNode)) {
             return node;
         }
@@ -83,4 +103,16 @@ public class TensorOptimizer extends Optimizer {
         return node;
     }
 
+    /** Returns the join combinator of an operation with a single arithmetic operator, or null if it is not such */
+    private DoubleBinaryOperator combinatorOf(OperationNode operation) {
+        if (operation.operators().size() != 1) return null;
+        return switch (operation.operators().get(0)) {
+            case plus -> ScalarFunctions.add();
+            case minus -> ScalarFunctions.subtract();
+            case multiply -> ScalarFunctions.multiply();
+            case divide -> ScalarFunctions.divide();
+            default -> null;
+        };
+    }
+
 }
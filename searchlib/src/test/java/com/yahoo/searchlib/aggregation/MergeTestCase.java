@@ -13,9 +13,11 @@ import com.yahoo.searchlib.expression.MultiplyFunctionNode;
 import com.yahoo.searchlib.expression.StringResultNode;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Simon Thoresen Hult
@@ -723,6 +725,55 @@ public class MergeTestCase {
         assertMerge(request, rhs, lhs, expect);
     }
 
+    @Test
+    public void testMergeWideGroupingsFromManyNodes() {
+        for (boolean orderByCount : List.of(false, true)) {
+            List<Grouping> nodes = new ArrayList<>();
+            for (int node = 0; node < 20; node++) {
+                Group root = new Group().addAggregationResult(new CountAggregationResult().setCount(node));
+                for (int id = node % 3; id < 3000; id += 1 + node % 4) {
+                    Group child = wideGroup(id, node, orderByCount);
+                    for (int grandChildId = id % 5; grandChildId < 40; grandChildId += 3)
+                        child.addChild(wideGroup(grandChildId, node, orderByCount));
+                    root.addChild(child);
+                }
+                nodes.add(new Grouping(7).setFirstLevel(0).setLastLevel(2)
+                                         .addLevel(new GroupingLevel().setMaxGroups(100).setPrecision(3000))
+                                         .addLevel(new GroupingLevel().setMaxGroups(10).setPrecision(40))
+                                         .setRoot(root));
+            }
+
+            Grouping expected = nodes.get(0).clone();
+            for (int i = 1; i < nodes.size(); i++)
+                expected.merge(nodes.get(i));
+            expected.postMerge();
+
+            GroupingMerger merger = new GroupingMerger();
+            nodes.forEach(node -> merger.add(node.clone()));
+            Grouping merged = merger.merge();
+            assertEquals(100, merged.getRoot().getNumChildren());
+            assertEquals(expected.getRoot().toString(), merged.getRoot().toString());
+            assertEquals(expected.getRoot(), merged.getRoot());
+            assertSame(merged, merger.merge());
+            assertEquals(1, merger.size());
+        }
+    }
+
+    private static Group wideGroup(int id, int node, boolean orderByCount) {
+        Group group = new Group().setId(new IntegerResultNode(id))
+                                 .setRank((id * 31 + node * 7) % 101)
+                                 .addAggregationResult(new CountAggregationResult().setCount(id % 17 + node))
+                                 .addAggregationResult(new SumAggregationResult().setSum(new IntegerResultNode(id)));
+        if (orderByCount)
+            group.addOrderBy(new AggregationRefNode(0), false);
+        return group;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergingDifferentGroupingsFails() {
+        new GroupingMerger().add(new Grouping(1)).add(new Grouping(2));
+    }
+
     private static void assertMerge(Grouping request, Group lhs, Group rhs, Group expect) {
         assertMerge(List.of(request.clone().setRoot(lhs.clone()),
                                   request.clone().setRoot(rhs.clone())),
@@ -748,6 +799,12 @@ public class MergeTestCase {
         tmp.postMerge();
         assertEquals(expect.toString(), tmp.getRoot().toString());
         assertEquals(expect, tmp.getRoot());
+
+        GroupingMerger merger = new GroupingMerger();
+        groupingList.forEach(grouping -> merger.add(grouping.clone()));
+        Grouping merged = merger.merge();
+        assertEquals(expect.toString(), merged.getRoot().toString());
+        assertEquals(expect, merged.getRoot());
     }
 
 }
@@ -254,6 +254,19 @@ public class EvaluationTestCase {
                                "(tensor0 && 1) == map(tensor0, f(x) (x && 1))", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
         tester.assertEvaluates("{ {d1:0}:1, {d1:1}:1, {d1:2 }:1 }",
                                "!tensor0 == map(tensor0, f(x) (!x))", "{ {d1:0}:0, {d1:1}:1, {d1:2}:0 }");
+        // -- operators with a scalar first
+        tester.assertEvaluates("{ {d1:0}:0, {d1:1}:0, {d1:2 }:1 }",
+                               "3 < tensor0", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
+        tester.assertEvaluates("{ {d1:0}:0, {d1:1}:1, {d1:2 }:1 }",
+                               "3 <= tensor0", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
+        tester.assertEvaluates("{ {d1:0}:1, {d1:1}:0, {d1:2 }:0 }",
+                               "3 > tensor0", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
+        tester.assertEvaluates("{ {d1:0}:1, {d1:1}:1, {d1:2 }:0 }",
+                               "3 >= tensor0", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
+        tester.assertEvaluates("{ {d1:0}:4, {d1:1}:8, {d1:2 }:16 }",
+                               "2 ^ tensor0", "{ {d1:0}:2, {d1:1}:3, {d1:2}:4 }");
+        tester.assertEvaluates("{ {d1:0}:1, {d1:1}:-1, {d1:2 }:-2 }",
+                               "(1 > 0) - tensor0", "{ {d1:0}:0, {d1:1}:2, {d1:2}:3 }");
 
         // -- explicitly implemented functions (not foolproof tests as we don't bother testing float value equivalence)
         tester.assertEvaluates("{ {x:0}:1, {x:1}:2 }",     "abs(tensor0)",    "{ {x:0}:1, {x:1}:-2 }");
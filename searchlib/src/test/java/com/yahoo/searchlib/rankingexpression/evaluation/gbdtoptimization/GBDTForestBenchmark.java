@@ -0,0 +1,186 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.parser.ParseException;
+import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of forests scored in the flat layout, one vector at a time and in batches, compared to
+ * interpreting the encoding of each tree.
+ */
+public class GBDTForestBenchmark {
+
+    private final static Random random = new Random(42);
+
+    private static final int features = 50;
+
+    /** Returns the time in microseconds per scored vector */
+    public double benchmark(int iterations, int vectors, Evaluation evaluation) {
+        evaluate(evaluation, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        evaluate(evaluation, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000.0 / iterations / vectors;
+    }
+
+    private double evaluate(Evaluation evaluation, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += evaluation.evaluate();
+        return result;
+    }
+
+    private static String forest(int trees, int depth) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < trees; i++) {
+            if (i > 0) b.append(" + ");
+            tree(depth, b);
+        }
+        return b.toString();
+    }
+
+    private static void tree(int depth, StringBuilder b) {
+        if (depth == 0) {
+            b.append(random.nextDouble() - 0.5);
+            return;
+        }
+        condition(b);
+        tree(depth - 1, b);
+        b.append(", ");
+        tree(depth - 1, b);
+        b.append(")");
+    }
+
+    /** Returns trees with the given number of leaves, which are unbalanced as trees grown leaf-wise by LightGBM */
+    private static String unbalancedForest(int trees, int leaves) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < trees; i++) {
+            if (i > 0) b.append(" + ");
+            unbalancedTree(leaves, b);
+        }
+        return b.toString();
+    }
+
+    /** Adds a tree where each condition has at most a quarter of the leaves below it on one side */
+    private static void unbalancedTree(int leaves, StringBuilder b) {
+        if (leaves == 1) {
+            b.append(random.nextDouble() - 0.5);
+            return;
+        }
+        int smallSide = 1 + random.nextInt(Math.max(1, leaves / 4));
+        condition(b);
+        if (random.nextBoolean()) {
+            unbalancedTree(smallSide, b);
+            b.append(", ");
+            unbalancedTree(leaves - smallSide, b);
+        }
+        else {
+            unbalancedTree(leaves - smallSide, b);
+            b.append(", ");
+            unbalancedTree(smallSide, b);
+        }
+        b.append(")");
+    }
+
+    private static void condition(StringBuilder b) {
+        if (random.nextBoolean())
+            b.append("if (f").append(random.nextInt(features)).append(" < ").append(random.nextDouble()).append(", ");
+        else // as imported when missing values go to the true branch
+            b.append("if (!(f").append(random.nextInt(features)).append(" >= ").append(random.nextDouble()).append("), ");
+    }
+
+    /** Returns the trees in the encoding of GBDTForestOptimizer, as interpreted by GBDTForestNode before */
+    private static double[] encodedTrees(ExpressionNode node, List<double[]> trees) {
+        if (node instanceof GBDTNode tree)
+            trees.add(tree.values());
+        else if (node instanceof CompositeNode composite)
+            composite.children().forEach(child -> encodedTrees(child, trees));
+        int size = trees.stream().mapToInt(tree -> tree.length + 1).sum();
+        double[] values = new double[size];
+        int i = 0;
+        for (double[] tree : trees) {
+            values[i++] = tree.length;
+            System.arraycopy(tree, 0, values, i, tree.length);
+            i += tree.length;
+        }
+        return values;
+    }
+
+    private void run(int iterations, String description, String forestString, int vectors) throws ParseException {
+        RankingExpression expression = new RankingExpression(forestString);
+        ArrayContext prototype = new ArrayContext(expression, DoubleValue.NaN);
+
+        ExpressionOptimizer treeOptimizer = new ExpressionOptimizer();
+        treeOptimizer.getOptimizer(GBDTForestOptimizer.class).setEnabled(false);
+        treeOptimizer.optimize(expression, prototype);
+        double[] encoded = encodedTrees(expression.getRoot(), new ArrayList<>());
+
+        RankingExpression optimized = new RankingExpression(forestString);
+        new ExpressionOptimizer().optimize(optimized, prototype);
+        GBDTForest forest = ((GBDTForestNode)optimized.getRoot()).forest();
+
+        ArrayContext[] contexts = new ArrayContext[vectors];
+        double[][] batch = new double[vectors][prototype.size()];
+        for (int i = 0; i < vectors; i++) {
+            contexts[i] = prototype.clone();
+            for (String name : prototype.names()) {
+                double value = random.nextDouble();
+                if (value < 0.1) { // missing
+                    batch[i][prototype.getIndex(name)] = Double.NaN;
+                    continue;
+                }
+                contexts[i].put(name, value);
+                batch[i][prototype.getIndex(name)] = value;
+            }
+        }
+
+        double interpreted = benchmark(iterations, vectors, () -> {
+            double sum = 0;
+            for (ArrayContext context : contexts) {
+                int pc = 0;
+                while (pc < encoded.length) {
+                    int nextTree = (int)encoded[pc++];
+                    sum += GBDTNode.evaluate(encoded, pc, context);
+                    pc += nextTree;
+                }
+            }
+            return sum;
+        });
+        double flat = benchmark(iterations, vectors, () -> {
+            double sum = 0;
+            for (ArrayContext context : contexts)
+                sum += forest.evaluate(context);
+            return sum;
+        });
+        double batched = benchmark(iterations, vectors, () -> forest.evaluate(batch)[0]);
+        System.out.printf("%s, %d vectors: %8.3f us interpreted, %8.3f us flat, %8.3f us batched\n",
+                          description, vectors, interpreted, flat, batched);
+    }
+
+    public static void main(String[] args) throws ParseException {
+        GBDTForestBenchmark benchmark = new GBDTForestBenchmark();
+        benchmark.run(2000, "100 trees of depth 6", forest(100, 6), 256);
+        benchmark.run(500, "500 trees of depth 6", forest(500, 6), 256);
+        benchmark.run(500, "1000 trees of depth 4", forest(1000, 4), 256);
+        benchmark.run(20000, "500 trees of depth 6", forest(500, 6), 16);
+        benchmark.run(500, "500 unbalanced trees of 31 leaves", unbalancedForest(500, 31), 256);
+        benchmark.run(20000, "500 unbalanced trees of 31 leaves", unbalancedForest(500, 31), 16);
+    }
+
+    private interface Evaluation {
+
+        double evaluate();
+
+    }
+
+}
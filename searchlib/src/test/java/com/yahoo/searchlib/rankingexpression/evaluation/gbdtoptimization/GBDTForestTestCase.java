@@ -0,0 +1,115 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.evaluation.MapContext;
+import com.yahoo.searchlib.rankingexpression.parser.ParseException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GBDTForestTestCase {
+
+    private static final List<String> features = List.of("f0", "f1", "f2", "f3");
+    private static final double[] values = { -1, 0, 0.5, 1, 2, Double.NaN };
+
+    @Test
+    public void testForestEvaluation() throws ParseException {
+        assertForest("if (f0 < 0.5, 1, 2) + if (f1 == 1, 3, 4)");
+        assertForest("if (f0 < 0.5, if (f1 < 1, 1, 2), 3) + if (f2 < 0, 4, if (f3 < 1, if (f0 < -1, 5, 6), 7))");
+        assertForest("if (f0 < 0.5, if (f1 < 1, 1, 2), if (f2 in [0, 2], 3, if (!(f3 >= 1), 4, 5)))");
+        assertForest("if (f0 < 0.5, 1, if (f1 < 0.5, 2, if (f2 < 0.5, 3, if (f3 < 0.5, 4, 5)))) + " +
+                     "if (f3 == 0, if (f2 == 0, if (f1 == 0, if (f0 == 0, 6, 7), 8), 9), 10) + " +
+                     "if (f1 in [-1, 0.5, 2], 11, 12)");
+        Random random = new Random(42);
+        for (int i = 0; i < 10; i++)
+            assertForest(randomForest(1 + random.nextInt(20), 1 + random.nextInt(6), random));
+    }
+
+    @Test
+    public void testForestOfUnbalancedTrees() throws ParseException {
+        // Evaluated until a leaf is reached, as the trees are much deeper than most paths through them
+        String unbalanced = "if (f0 < 0.5, 1, if (!(f1 >= 0.5), 2, if (f2 < 0.5, 3, if (f3 < 0.5, 4, if (f0 < 1.5, 5, 6)))))";
+        String balanced = "if (f0 < 0.5, if (f1 < 1, 7, 8), if (!(f2 >= 1), 9, 10))";
+        assertForest(unbalanced);
+        assertForest(unbalanced + " + " + balanced);
+        assertForest(balanced + " + " + unbalanced + " + if (f3 < 1, 11, 12)");
+    }
+
+    private void assertForest(String expressionString) throws ParseException {
+        RankingExpression expression = new RankingExpression(expressionString);
+        ArrayContext context = new ArrayContext(expression, DoubleValue.NaN);
+        RankingExpression optimized = new RankingExpression(expressionString);
+        new ExpressionOptimizer().optimize(optimized, context);
+        assertTrue(optimized.getRoot() instanceof GBDTForestNode);
+        GBDTForest forest = ((GBDTForestNode)optimized.getRoot()).forest();
+
+        double[][] batch = new double[(int)Math.pow(values.length, features.size())][];
+        ArrayContext[] contexts = new ArrayContext[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            MapContext arguments = new MapContext(DoubleValue.NaN);
+            contexts[i] = context.clone();
+            batch[i] = new double[context.size()];
+            Arrays.fill(batch[i], Double.NaN);
+            int valueIndex = i;
+            for (String feature : features) {
+                double value = values[valueIndex % values.length];
+                valueIndex /= values.length;
+                if (Double.isNaN(value)) continue; // missing
+                arguments.put(feature, value);
+                if (context.names().contains(feature)) {
+                    contexts[i].put(feature, value);
+                    batch[i][context.getIndex(feature)] = value;
+                }
+            }
+            double expected = expression.evaluate(arguments).asDouble();
+            assertEquals(expressionString + " with " + arguments, expected, optimized.evaluate(contexts[i]).asDouble(), 0);
+            assertEquals(expressionString + " with " + arguments, expected, forest.evaluate(contexts[i]), 0);
+        }
+
+        double[] scores = forest.evaluate(batch);
+        assertEquals(batch.length, scores.length);
+        for (int i = 0; i < batch.length; i++)
+            assertEquals(forest.evaluate(contexts[i]), scores[i], 0);
+        double[] someScores = forest.evaluate(Arrays.copyOf(batch, 7));
+        for (int i = 0; i < someScores.length; i++)
+            assertEquals(scores[i], someScores[i], 0);
+    }
+
+    private String randomForest(int trees, int depth, Random random) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < trees; i++) {
+            if (i > 0) b.append(" + ");
+            randomTree(random.nextInt(depth) + 1, random, b);
+        }
+        return b.toString();
+    }
+
+    private void randomTree(int depth, Random random, StringBuilder b) {
+        if (depth == 0) {
+            b.append(random.nextInt(100) / 10.0 - 5);
+            return;
+        }
+        String feature = features.get(random.nextInt(features.size()));
+        double value = values[random.nextInt(values.length - 1)];
+        switch (random.nextInt(4)) {
+            case 0 -> b.append("if (").append(feature).append(" < ").append(value).append(", ");
+            case 1 -> b.append("if (").append(feature).append(" == ").append(value).append(", ");
+            case 2 -> b.append("if (").append(feature).append(" in [").append(value).append(", 2], ");
+            default -> b.append("if (!(").append(feature).append(" >= ").append(value).append("), ");
+        }
+        randomTree(depth - 1, random, b);
+        b.append(", ");
+        randomTree(random.nextInt(depth), random, b);
+        b.append(")");
+    }
+
+}
@@ -9,12 +9,17 @@ import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
 import com.yahoo.searchlib.rankingexpression.parser.ParseException;
 import com.yahoo.searchlib.rankingexpression.rule.TensorFunctionNode;
 import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
 import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.functions.Reduce;
 import com.yahoo.tensor.functions.ReduceJoin;
 import org.junit.Test;
 
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author lesters
@@ -44,12 +49,54 @@ public class TensorOptimizerTestCase {
         assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]");
         assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d0,d1,d2");
 
+        assertWillOptimize("d0[2],d1[3]", "d1[3]", "d0");  // reducing on a dimension not joining on
+        assertWillOptimize("d0[1],d1[2]", "d1[2],d2[3]", "d2");  // same
+        assertWillOptimize("d0[3]", "d0[3],d1[2]");  // reducing on more then we are combining
+        assertWillOptimize("d0[1],d2[3]", "d1[2],d2[3]");  // same
+        assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d1,d2");  // reducing on less then joining on
+        assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d1,d2", "max");
+        assertWillOptimize("cat{},d0[3]", "d0[3],d1[2]", "d0");
+        assertWillOptimize("cat{},d0[3]", "cat{},d0[3]", "d0");
+
         // Will not currently use reduce-join optimization
-        assertCantOptimize("d0[2],d1[3]", "d1[3]", "d0");  // reducing on a dimension not joining on
-        assertCantOptimize("d0[1],d1[2]", "d1[2],d2[3]", "d2");  // same
-        assertCantOptimize("d0[3]", "d0[3],d1[2]");  // reducing on more then we are combining
-        assertCantOptimize("d0[1],d2[3]", "d1[2],d2[3]");  // same
-        assertCantOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d1,d2");  // reducing on less then joining on
+        assertCantOptimize("d0[2]", "d1[3]");  // no dimensions in common
+        assertCantOptimize("cat{},d0[3]", "cat{},d0[3]", "cat");  // reducing a mapped dimension
+    }
+
+    @Test
+    public void testReduceOperationOptimization() throws ParseException {
+        assertReduceOperation("sum(a * b, d1)", "d0[2],d1[3]", "d0[2],d1[3]", 1);
+        assertReduceOperation("sum(a * b, d1)", "d0[2],d1[3]", "d1[3],d2[4]", 1);
+        assertReduceOperation("reduce(a - b, max, d0)", "cat{},d0[3]", "d0[3]", 1);
+        assertReduceOperation("sum(a / b)", "d0[3]", "d0[3]", 1);
+        assertReduceOperation("sum(a + b * a, d0)", "d0[3]", "d0[3]", 0);  // more than one operator
+        assertReduceOperation("sum(a % b, d0)", "d0[3]", "d0[3]", 0);  // not a join operator
+    }
+
+    @Test
+    public void testMatmulIsReported() throws ParseException {
+        RankingExpression expression = new RankingExpression("matmul(a, b, d1)");
+        ArrayContext context = generateContext(generateRandomTensor("d0[2],d1[3]"), generateRandomTensor("d1[3],d2[4]"), expression);
+        Tensor result = expression.evaluate(context).asTensor();
+        OptimizationReport report = new ExpressionOptimizer().optimize(expression, context);
+        assertEquals(1, report.getMetric("Fused matmul"));
+        assertEquals(result, expression.evaluate(context).asTensor());
+    }
+
+    private void assertReduceOperation(String expressionString, String aType, String bType, int expectedReplacements) throws ParseException {
+        RankingExpression expression = new RankingExpression(expressionString);
+        ArrayContext context = generateContext(generateRandomTensor(aType), generateRandomTensor(bType), expression);
+        Tensor result = expression.evaluate(context).asTensor();
+
+        OptimizationReport report = new ExpressionOptimizer().optimize(expression, context);
+        if (expectedReplacements > 0) {
+            assertEquals(expectedReplacements, report.getMetric("Replaced reduce->operation"));
+            assertTrue(((TensorFunctionNode)expression.getRoot()).function() instanceof ReduceJoin);
+        }
+        else {
+            assertFalse(((TensorFunctionNode)expression.getRoot()).function() instanceof ReduceJoin);
+        }
+        assertEquals(result, expression.evaluate(context).asTensor());
     }
 
     private void assertWillOptimize(String aType, String bType) throws ParseException {
@@ -110,7 +157,24 @@ public class TensorOptimizerTestCase {
     }
 
     private Tensor generateRandomTensor(String type) {
-        return Tensor.random(TensorType.fromSpec("tensor(" + type + ")"));
+        TensorType tensorType = TensorType.fromSpec("tensor(" + type + ")");
+        if (tensorType.mappedSubtype().rank() == 0)
+            return Tensor.random(tensorType);
+
+        Tensor.Builder builder = Tensor.Builder.of(tensorType);
+        for (String label : List.of("a", "b", "c")) {
+            for (var cell : Tensor.random(tensorType.indexedSubtype()).cells().entrySet()) {
+                TensorAddress.Builder address = new TensorAddress.Builder(tensorType);
+                for (var dimension : tensorType.dimensions()) {
+                    if (dimension.isMapped())
+                        address.add(dimension.name(), label);
+                    else
+                        address.add(dimension.name(), cell.getKey().label(tensorType.indexedSubtype().indexOfDimension(dimension.name()).get()));
+                }
+                builder.cell(address.build(), cell.getValue());
+            }
+        }
+        return builder.build();
     }
 
 }
@@ -26,6 +26,9 @@ public class ClientParameters {
     // Zstandard compression
     public final boolean zstCompression;
 
+    // Write the memory mappable binary format instead of json
+    public final boolean binaryFormat;
+
     public ClientParameters(
             boolean help,
             String inputFile,
@@ -33,12 +36,24 @@ public class ClientParameters {
             String field,
             String language,
             boolean zstCompression) {
+        this(help, inputFile, outputFile, field, language, zstCompression, false);
+    }
+
+    public ClientParameters(
+            boolean help,
+            String inputFile,
+            String outputFile,
+            String field,
+            String language,
+            boolean zstCompression,
+            boolean binaryFormat) {
         this.help = help;
         this.inputFile = inputFile;
         this.outputFile = outputFile;
         this.field = field;
         this.language = language;
         this.zstCompression = zstCompression;
+        this.binaryFormat = binaryFormat;
     }
 
     public static class Builder {
@@ -48,6 +63,7 @@ public class ClientParameters {
         private String field;
         private String language;
         private boolean zstCompression;
+        private boolean binaryFormat;
 
         public Builder setHelp(boolean help) {
             this.help = help;
@@ -78,8 +94,13 @@ public class ClientParameters {
             return this;
         }
 
+        public Builder setBinaryFormat(boolean binaryFormat) {
+            this.binaryFormat = binaryFormat;
+            return this;
+        }
+
         public ClientParameters build() {
-            return new ClientParameters(help, inputFile, outputFile, field, language, zstCompression);
+            return new ClientParameters(help, inputFile, outputFile, field, language, zstCompression, binaryFormat);
         }
     }
 }
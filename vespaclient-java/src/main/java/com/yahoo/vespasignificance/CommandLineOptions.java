@@ -26,6 +26,7 @@ public class CommandLineOptions {
     public static final String FIELD_OPTION = "field";
     public static final String LANGUAGE_OPTION = "language";
     public static final String ZST_COMPRESSION = "zst-compression";
+    public static final String BINARY_FORMAT = "binary";
 
     private final Options options = createOptions();
 
@@ -73,6 +74,13 @@ public class CommandLineOptions {
                 .longOpt(ZST_COMPRESSION)
                 .build());
 
+        options.addOption(Option.builder("b")
+                .hasArg(false)
+                .desc("Write the model in a binary format which is memory mapped when loaded, instead of json. " +
+                      "Binary models are not compressed.")
+                .longOpt(BINARY_FORMAT)
+                .build());
+
         return options;
     }
 
@@ -96,7 +104,9 @@ public class CommandLineOptions {
             builder.setOutputFile(cl.getOptionValue(OUTPUT_OPTION));
             builder.setField(cl.getOptionValue(FIELD_OPTION));
             builder.setLanguage(cl.getOptionValue(LANGUAGE_OPTION));
-            builder.setZstCompression(cl.hasOption(ZST_COMPRESSION) ? cl.getOptionValue(ZST_COMPRESSION) : "true");
+            builder.setBinaryFormat(cl.hasOption(BINARY_FORMAT));
+            builder.setZstCompression(cl.hasOption(ZST_COMPRESSION) ? cl.getOptionValue(ZST_COMPRESSION)
+                                                                     : String.valueOf( ! cl.hasOption(BINARY_FORMAT)));
 
             return builder.build();
         } catch (ParseException e) {
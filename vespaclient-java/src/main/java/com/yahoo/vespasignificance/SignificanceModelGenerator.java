@@ -22,6 +22,7 @@ import com.yahoo.language.process.Token;
 import com.yahoo.language.process.TokenScript;
 import com.yahoo.language.process.TokenType;
 import com.yahoo.language.process.Tokenizer;
+import com.yahoo.language.significance.impl.BinarySignificanceModelFile;
 import com.yahoo.language.significance.impl.DocumentFrequencyFile;
 import com.yahoo.language.significance.impl.SignificanceModelFile;
 import com.yahoo.text.Utf8;
@@ -67,6 +68,7 @@ public class SignificanceModelGenerator {
     final DocumentTypeManager types = new DocumentTypeManager();
     final DocumentType docType;
     private final boolean useZstCompression;
+    private final boolean useBinaryFormat;
     private final static String VERSION = "1.0";
     private final static String ID = "1";
     private final static String SIGNIFICANCE_DESCRIPTION = "Significance model for input file";
@@ -86,6 +88,10 @@ public class SignificanceModelGenerator {
             throw new IllegalArgumentException("Output file must not have .zst extension when not using zst compression");
         }
 
+        if (clientParameters.zstCompression && clientParameters.binaryFormat) {
+            throw new IllegalArgumentException("Binary models cannot use zst compression as they are memory mapped when loaded");
+        }
+
         this.languages = Arrays.stream(clientParameters.language.split(","))
                 .map(Language::fromLanguageTag)
                 .collect(Collectors.toList());
@@ -99,6 +105,7 @@ public class SignificanceModelGenerator {
         docType = new DocumentType(DUMMY_DOC_TYPE);
         docType.addField(new Field(clientParameters.field, DataType.STRING));
         useZstCompression = clientParameters.zstCompression;
+        useBinaryFormat = clientParameters.binaryFormat;
 
         types.registerDocumentType(docType);
     }
@@ -141,6 +148,10 @@ public class SignificanceModelGenerator {
         SignificanceModelFile modelFile;
         File outputFile = Paths.get(clientParameters.outputFile).toFile();
         String languagesKey = String.join(",", this.languages.stream().map(Language::languageCode).toList());
+        if (useBinaryFormat) {
+            writeBinary(outputFile.toPath(), languagesKey, new DocumentFrequencyFile(DOC_FREQ_DESCRIPTION, pageCount, getFinalDocumentFrequency()));
+            return;
+        }
         if (outputFile.exists()) {
 
             InputStream in = outputFile.toString().endsWith(".zst") ?
@@ -171,6 +182,24 @@ public class SignificanceModelGenerator {
         }
     }
 
+    /** Writes the given document frequencies to a binary model file, replacing any frequencies for the same languages */
+    private void writeBinary(Path outputFile, String languagesKey, DocumentFrequencyFile documentFrequency) {
+        String id = ID;
+        String description = SIGNIFICANCE_DESCRIPTION + clientParameters.inputFile;
+        Map<String, DocumentFrequencyFile> languages = new TreeMap<>();
+        if (outputFile.toFile().exists()) {
+            BinarySignificanceModelFile existing = BinarySignificanceModelFile.read(outputFile);
+            id = existing.id();
+            description = existing.description();
+            for (var language : existing.languages().entrySet())
+                languages.put(language.getKey(), new DocumentFrequencyFile(DOC_FREQ_DESCRIPTION,
+                                                                           language.getValue().documentCount(),
+                                                                           language.getValue().toMap()));
+        }
+        languages.put(languagesKey, documentFrequency);
+        BinarySignificanceModelFile.write(id, description, languages, outputFile);
+    }
+
     private void handleTokenization(String field) {
         var tokens = tokenizer.tokenize(field, languageTag, StemMode.NONE, false);
 
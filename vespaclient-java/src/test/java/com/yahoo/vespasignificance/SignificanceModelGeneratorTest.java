@@ -3,6 +3,7 @@
 package com.yahoo.vespasignificance;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yahoo.language.significance.impl.BinarySignificanceModelFile;
 import com.yahoo.language.significance.impl.DocumentFrequencyFile;
 import com.yahoo.language.significance.impl.SignificanceModelFile;
 import io.airlift.compress.zstd.ZstdInputStream;
@@ -15,6 +16,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -200,4 +202,28 @@ public class SignificanceModelGeneratorTest {
         DocumentFrequencyFile documentFrequencyFile = languages.get("nb,un");
         assertNorwegianFrequencies1(documentFrequencyFile);
     }
+
+    @Test
+    void testGenerateBinaryFileWithMultipleLanguages() throws IOException {
+        String outputPath = "output.bin";
+        ClientParameters zstParams = createParameters("no_1.jsonl", outputPath, "text", "nb", "true").setBinaryFormat(true).build();
+        assertThrows(IllegalArgumentException.class, () -> createSignificanceModelGenerator(zstParams));
+
+        createSignificanceModelGenerator(createParameters("no_1.jsonl", outputPath, "text", "nb", "false").setBinaryFormat(true).build()).generate();
+        createSignificanceModelGenerator(createParameters("en.jsonl", outputPath, "text", "en", "false").setBinaryFormat(true).build()).generate();
+
+        Path outputFile = tempDir.resolve(outputPath);
+        assertTrue(BinarySignificanceModelFile.isBinary(outputFile));
+        var modelFile = BinarySignificanceModelFile.read(outputFile);
+        assertEquals(Set.of("nb", "en"), modelFile.languages().keySet());
+
+        var nb = modelFile.languages().get("nb");
+        assertEquals(3, nb.documentCount());
+        assertEquals(3, nb.frequency("norske"));
+        assertEquals(2, nb.frequency("wiki"));
+        assertEquals(-1, nb.frequency("sider"));
+        assertEnglishFrequencies(new DocumentFrequencyFile(null, modelFile.languages().get("en").documentCount(),
+                                                           modelFile.languages().get("en").toMap()));
+    }
+
 }
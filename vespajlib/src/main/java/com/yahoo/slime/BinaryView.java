@@ -284,10 +284,15 @@ public final class BinaryView implements Inspector {
     }
 
     public static Inspector inspect(byte[] data) {
-        var input = new BufferedInput(data);
+        return inspect(data, 0, data.length);
+    }
+
+    /** Returns a view of the binary slime found at the given range of the given array, without copying it */
+    public static Inspector inspect(byte[] data, int offset, int length) {
+        var input = new BufferedInput(data, offset, length);
         var names = new SymbolTable();
         BinaryDecoder.decodeSymbolTable(input, names);
-        var index = new DecodeIndex(input.getBacking().length, input.getPosition());
+        var index = new DecodeIndex(offset + length, input.getPosition());
         buildIndex(input, index, 0, 0);
         if (input.failed()) {
             throw new IllegalArgumentException("bad input: " + input.getErrorMessage());
@@ -63,16 +63,26 @@ public class CosineSimilarity<NAMETYPE extends Name> extends TensorFunction<NAME
         return toPrimitive().type(context);
     }
 
-    /** Evaluates this by first converting it to a primitive function */
+    /**
+     * Evaluates this in one pass over the cells if the arguments are dense vectors, or a dense vector and
+     * a mixed tensor of such vectors, and otherwise by first converting it to a primitive function.
+     */
     @Override
     public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
-        return toPrimitive().evaluate(context);
+        Tensor a = arg1.evaluate(context);
+        Tensor b = arg2.evaluate(context);
+        Tensor result = VectorKernels.evaluate(a, b, context.resolveBinding(dimension), VectorKernels.cosineSimilarity,
+                                               () -> toPrimitive(new ConstantTensor<>(a), new ConstantTensor<>(b)).type(context));
+        if (result != null) return result;
+        return toPrimitive(new ConstantTensor<>(a), new ConstantTensor<>(b)).evaluate(context);
     }
 
     @Override
     public PrimitiveTensorFunction<NAMETYPE> toPrimitive() {
-        TensorFunction<NAMETYPE> a = arg1.toPrimitive();
-        TensorFunction<NAMETYPE> b = arg2.toPrimitive();
+        return toPrimitive(arg1.toPrimitive(), arg2.toPrimitive());
+    }
+
+    private PrimitiveTensorFunction<NAMETYPE> toPrimitive(TensorFunction<NAMETYPE> a, TensorFunction<NAMETYPE> b) {
         var aa = new Join<>(a, a, ScalarFunctions.multiply());
         var ab = new Join<>(a, b, ScalarFunctions.multiply());
         var bb = new Join<>(b, b, ScalarFunctions.multiply());
@@ -0,0 +1,235 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.DirectIndexedAddress;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
+import com.yahoo.tensor.TensorType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Joins dense tensors, and the dense subspaces of mixed tensors, by computing the direct index of each
+ * argument cell from the strides of the argument dimensions while iterating over the joined cells in the
+ * standard value order, and writing the joined values directly into a primitive array.
+ * This avoids creating addresses and boxing values.
+ */
+final class DenseJoin {
+
+    private final DimensionSizes joinedSizes;
+    private final long[] aStrides;
+    private final long[] bStrides;
+
+    /** Creates the plan for joining dense tensors of the given types and sizes into the given joined sizes */
+    private DenseJoin(TensorType aType, DimensionSizes aSizes, TensorType bType, DimensionSizes bSizes,
+                      TensorType joinedType, DimensionSizes joinedSizes) {
+        this.joinedSizes = joinedSizes;
+        this.aStrides = strides(aType, aSizes, joinedType);
+        this.bStrides = strides(bType, bSizes, joinedType);
+    }
+
+    /**
+     * Returns the stride in the given argument of each joined dimension,
+     * which is 0 for joined dimensions which are not in the argument
+     */
+    static long[] strides(TensorType type, DimensionSizes sizes, TensorType joinedType) {
+        DirectIndexedAddress address = DirectIndexedAddress.of(sizes);
+        long[] strides = new long[joinedType.rank()];
+        for (int i = 0; i < strides.length; i++) {
+            int index = type.indexOfDimensionAsInt(joinedType.dimensions().get(i).name());
+            strides[i] = index < 0 ? 0 : address.getStride(index);
+        }
+        return strides;
+    }
+
+    /** Joins two tensors having indexed dimensions only */
+    static Tensor join(IndexedTensor a, IndexedTensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
+        if (a.isEmpty() || b.isEmpty())
+            return Tensor.Builder.of(joinedType, new DimensionSizes.Builder(joinedType.rank()).build()).build();
+        DimensionSizes joinedSizes = joinedSize(joinedType, a, b);
+        var join = new DenseJoin(a.type(), a.dimensionSizes(), b.type(), b.dimensionSizes(), joinedType, joinedSizes);
+        if (joinedType.valueType() == TensorType.Value.DOUBLE) {
+            double[] values = new double[(int)joinedSizes.totalSize()];
+            join.joinInto(a, b, combinator, values);
+            return IndexedTensor.Builder.of(joinedType, joinedSizes, values).build();
+        }
+        else {
+            float[] values = new float[(int)joinedSizes.totalSize()];
+            join.joinInto(a, b, combinator, values);
+            return IndexedTensor.Builder.of(joinedType, joinedSizes, values).build();
+        }
+    }
+
+    /**
+     * Joins a mixed tensor with a dense tensor, or two mixed tensors having the same mapped dimensions,
+     * by joining dense subspaces. Returns empty if the tensors are not of this kind.
+     */
+    static Optional<Tensor> joinMixed(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
+        if (joinedType.dimensions().stream().anyMatch(d -> d.type() == TensorType.Dimension.Type.indexedUnbound))
+            return Optional.empty();
+        if (a instanceof MixedTensor ma && b instanceof IndexedTensor ib)
+            return Optional.ofNullable(joinMixedWithDense(ma, ib, false, joinedType, combinator));
+        if (a instanceof IndexedTensor ia && b instanceof MixedTensor mb)
+            return Optional.ofNullable(joinMixedWithDense(mb, ia, true, joinedType, combinator));
+        if (a instanceof MixedTensor ma && b instanceof MixedTensor mb
+            && ma.type().mappedSubtype().dimensions().equals(mb.type().mappedSubtype().dimensions()))
+            return Optional.ofNullable(joinMixedWithMixed(ma, mb, joinedType, combinator));
+        return Optional.empty();
+    }
+
+    private static Tensor joinMixedWithDense(MixedTensor mixed, IndexedTensor dense, boolean reversedArgumentOrder,
+                                             TensorType joinedType, DoubleBinaryOperator combinator) {
+        TensorType subspaceType = doubleType(mixed.type().indexedSubtype());
+        DimensionSizes subspaceSizes = DimensionSizes.of(subspaceType);
+        TensorType joinedSubspaceType = joinedType.indexedSubtype();
+        DimensionSizes joinedSubspaceSizes = DimensionSizes.of(joinedSubspaceType);
+        if ( ! sizesMatch(subspaceType, subspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+        if ( ! sizesMatch(dense.type(), dense.dimensionSizes(), joinedSubspaceType, joinedSubspaceSizes)) return null;
+
+        var join = reversedArgumentOrder
+                   ? new DenseJoin(dense.type(), dense.dimensionSizes(), subspaceType, subspaceSizes, joinedSubspaceType, joinedSubspaceSizes)
+                   : new DenseJoin(subspaceType, subspaceSizes, dense.type(), dense.dimensionSizes(), joinedSubspaceType, joinedSubspaceSizes);
+        var builder = MixedTensor.BoundBuilder.of(joinedType);
+        double[] values = new double[(int)joinedSubspaceSizes.totalSize()];
+        for (MixedTensor.DenseSubspace subspace : mixed.getInternalDenseSubspaces()) {
+            IndexedTensor subspaceTensor = IndexedTensor.Builder.of(subspaceType, subspaceSizes, subspace.cells).build();
+            if (reversedArgumentOrder)
+                join.joinInto(dense, subspaceTensor, combinator, values);
+            else
+                join.joinInto(subspaceTensor, dense, combinator, values);
+            builder.block(subspace.sparseAddress, values);
+        }
+        return builder.build();
+    }
+
+    private static Tensor joinMixedWithMixed(MixedTensor a, MixedTensor b,
+                                             TensorType joinedType, DoubleBinaryOperator combinator) {
+        TensorType aSubspaceType = doubleType(a.type().indexedSubtype());
+        DimensionSizes aSubspaceSizes = DimensionSizes.of(aSubspaceType);
+        TensorType bSubspaceType = doubleType(b.type().indexedSubtype());
+        DimensionSizes bSubspaceSizes = DimensionSizes.of(bSubspaceType);
+        TensorType joinedSubspaceType = joinedType.indexedSubtype();
+        DimensionSizes joinedSubspaceSizes = DimensionSizes.of(joinedSubspaceType);
+        if ( ! sizesMatch(aSubspaceType, aSubspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+        if ( ! sizesMatch(bSubspaceType, bSubspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+
+        List<MixedTensor.DenseSubspace> bSubspaces = b.getInternalDenseSubspaces();
+        Map<TensorAddress, double[]> bCellsByAddress = new HashMap<>((int)(bSubspaces.size() / 0.75) + 1);
+        for (MixedTensor.DenseSubspace subspace : bSubspaces)
+            bCellsByAddress.put(subspace.sparseAddress, subspace.cells);
+
+        var join = new DenseJoin(aSubspaceType, aSubspaceSizes, bSubspaceType, bSubspaceSizes, joinedSubspaceType, joinedSubspaceSizes);
+        var builder = MixedTensor.BoundBuilder.of(joinedType);
+        double[] values = new double[(int)joinedSubspaceSizes.totalSize()];
+        for (MixedTensor.DenseSubspace aSubspace : a.getInternalDenseSubspaces()) {
+            double[] bCells = bCellsByAddress.get(aSubspace.sparseAddress);
+            if (bCells == null) continue;
+            join.joinInto(IndexedTensor.Builder.of(aSubspaceType, aSubspaceSizes, aSubspace.cells).build(),
+                          IndexedTensor.Builder.of(bSubspaceType, bSubspaceSizes, bCells).build(),
+                          combinator,
+                          values);
+            builder.block(aSubspace.sparseAddress, values);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the given type with double values. Mixed tensors hold cells as doubles regardless of type,
+     * so this allows viewing their subspaces as dense tensors without converting them.
+     */
+    static TensorType doubleType(TensorType type) {
+        return new TensorType(TensorType.Value.DOUBLE, type.dimensions());
+    }
+
+    /** Returns whether the dimensions of the given type have the same size in the joined type */
+    static boolean sizesMatch(TensorType type, DimensionSizes sizes, TensorType joinedType, DimensionSizes joinedSizes) {
+        for (int i = 0; i < type.rank(); i++) {
+            int joinedIndex = joinedType.indexOfDimensionAsInt(type.dimensions().get(i).name());
+            if (joinedIndex < 0 || sizes.size(i) != joinedSizes.size(joinedIndex)) return false;
+        }
+        return true;
+    }
+
+    private void joinInto(IndexedTensor a, IndexedTensor b, DoubleBinaryOperator combinator, double[] values) {
+        int rank = aStrides.length;
+        if (values.length == 0) return;
+        if (rank == 0) {
+            values[0] = combinator.applyAsDouble(a.get(0), b.get(0));
+            return;
+        }
+        int innerSize = (int)joinedSizes.size(rank - 1);
+        long aInnerStride = aStrides[rank - 1];
+        long bInnerStride = bStrides[rank - 1];
+        int[] indexes = new int[rank - 1];
+        long aOffset = 0;
+        long bOffset = 0;
+        for (int valueIndex = 0; valueIndex < values.length; ) {
+            long aIndex = aOffset;
+            long bIndex = bOffset;
+            for (int i = 0; i < innerSize; i++, aIndex += aInnerStride, bIndex += bInnerStride)
+                values[valueIndex++] = combinator.applyAsDouble(a.get(aIndex), b.get(bIndex));
+            for (int d = rank - 2; d >= 0; d--) { // advance the outer indexes
+                aOffset += aStrides[d];
+                bOffset += bStrides[d];
+                if (++indexes[d] < joinedSizes.size(d)) break;
+                aOffset -= aStrides[d] * indexes[d];
+                bOffset -= bStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+        }
+    }
+
+    private void joinInto(IndexedTensor a, IndexedTensor b, DoubleBinaryOperator combinator, float[] values) {
+        int rank = aStrides.length;
+        if (values.length == 0) return;
+        if (rank == 0) {
+            values[0] = (float)combinator.applyAsDouble(a.get(0), b.get(0));
+            return;
+        }
+        int innerSize = (int)joinedSizes.size(rank - 1);
+        long aInnerStride = aStrides[rank - 1];
+        long bInnerStride = bStrides[rank - 1];
+        int[] indexes = new int[rank - 1];
+        long aOffset = 0;
+        long bOffset = 0;
+        for (int valueIndex = 0; valueIndex < values.length; ) {
+            long aIndex = aOffset;
+            long bIndex = bOffset;
+            for (int i = 0; i < innerSize; i++, aIndex += aInnerStride, bIndex += bInnerStride)
+                values[valueIndex++] = (float)combinator.applyAsDouble(a.get(aIndex), b.get(bIndex));
+            for (int d = rank - 2; d >= 0; d--) { // advance the outer indexes
+                aOffset += aStrides[d];
+                bOffset += bStrides[d];
+                if (++indexes[d] < joinedSizes.size(d)) break;
+                aOffset -= aStrides[d] * indexes[d];
+                bOffset -= bStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+        }
+    }
+
+    /** Returns the sizes of the joined dimensions, which is the smallest of the argument sizes of shared dimensions */
+    static DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
+        DimensionSizes.Builder builder = new DimensionSizes.Builder(joinedType.dimensions().size());
+        for (int i = 0; i < builder.dimensions(); i++) {
+            String dimensionName = joinedType.dimensions().get(i).name();
+            int aIndex = a.type().indexOfDimensionAsInt(dimensionName);
+            int bIndex = b.type().indexOfDimensionAsInt(dimensionName);
+            if (aIndex >= 0 && bIndex >= 0)
+                builder.set(i, Math.min(b.dimensionSizes().size(bIndex), a.dimensionSizes().size(aIndex)));
+            else if (aIndex >= 0)
+                builder.set(i, a.dimensionSizes().size(aIndex));
+            else if (bIndex >= 0)
+                builder.set(i, b.dimensionSizes().size(bIndex));
+        }
+        return builder.build();
+    }
+
+}
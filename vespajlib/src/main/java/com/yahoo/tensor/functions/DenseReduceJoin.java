@@ -0,0 +1,290 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
+import com.yahoo.tensor.TensorType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Evaluates a reduce of a join of dense tensors, or of the dense subspaces of mixed tensors, in one pass:
+ * For each cell of the result, the joined cells along the reduced dimensions are computed from the argument
+ * cells at their direct index and aggregated at once, such that the joined tensor is never created.
+ * This covers dot products and matrix multiplications, with any number of additional (batch) dimensions
+ * in either argument.
+ */
+final class DenseReduceJoin {
+
+    /** The sizes of the joined dimensions which are kept, in the order of the result */
+    private final int[] keptSizes;
+    private final int[] aKeptStrides;
+    private final int[] bKeptStrides;
+
+    /** The sizes of the joined dimensions which are reduced, in the order of the joined type */
+    private final int[] reducedSizes;
+    private final int[] aReducedStrides;
+    private final int[] bReducedStrides;
+
+    private final DoubleBinaryOperator combinator;
+    private final Reduce.Aggregator aggregator;
+
+    /** Whether this is a sum of products, which is computed without calling the combinator */
+    private final boolean isDotProduct;
+
+    private DenseReduceJoin(TensorType aType, DimensionSizes aSizes, TensorType bType, DimensionSizes bSizes,
+                            TensorType joinedType, DimensionSizes joinedSizes, List<String> reduceDimensions,
+                            DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        long[] aStrides = DenseJoin.strides(aType, aSizes, joinedType);
+        long[] bStrides = DenseJoin.strides(bType, bSizes, joinedType);
+        int reducedRank = 0;
+        for (int i = 0; i < joinedType.rank(); i++)
+            if (isReduced(joinedType.dimensions().get(i).name(), reduceDimensions))
+                reducedRank++;
+        keptSizes = new int[joinedType.rank() - reducedRank];
+        aKeptStrides = new int[keptSizes.length];
+        bKeptStrides = new int[keptSizes.length];
+        reducedSizes = new int[reducedRank];
+        aReducedStrides = new int[reducedRank];
+        bReducedStrides = new int[reducedRank];
+        for (int i = 0, kept = 0, reduced = 0; i < joinedType.rank(); i++) {
+            if (isReduced(joinedType.dimensions().get(i).name(), reduceDimensions)) {
+                reducedSizes[reduced] = (int)joinedSizes.size(i);
+                aReducedStrides[reduced] = (int)aStrides[i];
+                bReducedStrides[reduced++] = (int)bStrides[i];
+            }
+            else {
+                keptSizes[kept] = (int)joinedSizes.size(i);
+                aKeptStrides[kept] = (int)aStrides[i];
+                bKeptStrides[kept++] = (int)bStrides[i];
+            }
+        }
+        this.combinator = combinator;
+        this.aggregator = aggregator;
+        this.isDotProduct = combinator instanceof ScalarFunctions.Multiply && aggregator == Reduce.Aggregator.sum;
+    }
+
+    private static boolean isReduced(String dimension, List<String> reduceDimensions) {
+        return reduceDimensions.isEmpty() || reduceDimensions.contains(dimension);
+    }
+
+    /**
+     * Returns whether the reduce-join of the given arguments can be evaluated by this: Both must be dense,
+     * or one mixed and the other dense or mixed with the same mapped dimensions, in which case only indexed
+     * dimensions can be reduced. The arguments must also have at least one dimension in common.
+     */
+    static boolean canEvaluate(Tensor a, Tensor b, List<String> reduceDimensions) {
+        if (a.type().dimensions().stream().noneMatch(d -> b.type().dimension(d.name()).isPresent())) return false;
+        TensorType joinedType = new TensorType.Builder(a.type(), b.type()).build();
+        for (String dimension : reduceDimensions)
+            if (joinedType.dimension(dimension).isEmpty()) return false;
+        if (a instanceof IndexedTensor && b instanceof IndexedTensor) return true;
+
+        if (reduceDimensions.isEmpty()) return false;
+        if (joinedType.dimensions().stream().anyMatch(d -> d.type() == TensorType.Dimension.Type.indexedUnbound)) return false;
+        for (String dimension : reduceDimensions)
+            if ( ! joinedType.dimension(dimension).get().isIndexed()) return false;
+        if (a instanceof MixedTensor && b instanceof IndexedTensor) return true;
+        if (a instanceof IndexedTensor && b instanceof MixedTensor) return true;
+        return a instanceof MixedTensor && b instanceof MixedTensor
+               && a.type().mappedSubtype().dimensions().equals(b.type().mappedSubtype().dimensions());
+    }
+
+    /**
+     * Evaluates the reduce-join of the given arguments, which must be accepted by {@link #canEvaluate},
+     * or returns null if their sizes turn out not to allow it
+     */
+    static Tensor evaluate(Tensor a, Tensor b, TensorType joinedType, List<String> reduceDimensions,
+                           DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        TensorType reducedType = Reduce.outputType(joinedType, reduceDimensions);
+        if (a instanceof IndexedTensor ia && b instanceof IndexedTensor ib)
+            return evaluateDense(ia, ib, joinedType, reducedType, reduceDimensions, combinator, aggregator);
+        if (a instanceof MixedTensor ma && b instanceof IndexedTensor ib)
+            return evaluateMixedWithDense(ma, ib, false, joinedType, reducedType, reduceDimensions, combinator, aggregator);
+        if (a instanceof IndexedTensor ia && b instanceof MixedTensor mb)
+            return evaluateMixedWithDense(mb, ia, true, joinedType, reducedType, reduceDimensions, combinator, aggregator);
+        return evaluateMixedWithMixed((MixedTensor)a, (MixedTensor)b, joinedType, reducedType, reduceDimensions, combinator, aggregator);
+    }
+
+    private static Tensor evaluateDense(IndexedTensor a, IndexedTensor b, TensorType joinedType, TensorType reducedType,
+                                        List<String> reduceDimensions, DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        DimensionSizes joinedSizes = DenseJoin.joinedSize(joinedType, a, b);
+        var reduceJoin = new DenseReduceJoin(a.type(), a.dimensionSizes(), b.type(), b.dimensionSizes(),
+                                             joinedType, joinedSizes, reduceDimensions, combinator, aggregator);
+        double[] values = new double[reduceJoin.resultSize()];
+        reduceJoin.evaluateInto(cells(a), cells(b), values);
+        if (reducedType.rank() == 0)
+            return Tensor.Builder.of(TensorType.empty).cell(values[0]).build();
+        DimensionSizes.Builder reducedSizes = new DimensionSizes.Builder(reducedType.rank());
+        for (int i = 0; i < reduceJoin.keptSizes.length; i++)
+            reducedSizes.set(i, reduceJoin.keptSizes[i]);
+        return IndexedTensor.Builder.of(reducedType, reducedSizes.build(), values).build();
+    }
+
+    private static Tensor evaluateMixedWithDense(MixedTensor mixed, IndexedTensor dense, boolean reversedArgumentOrder,
+                                                 TensorType joinedType, TensorType reducedType, List<String> reduceDimensions,
+                                                 DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        TensorType subspaceType = DenseJoin.doubleType(mixed.type().indexedSubtype());
+        DimensionSizes subspaceSizes = DimensionSizes.of(subspaceType);
+        TensorType joinedSubspaceType = joinedType.indexedSubtype();
+        DimensionSizes joinedSubspaceSizes = DimensionSizes.of(joinedSubspaceType);
+        if ( ! DenseJoin.sizesMatch(subspaceType, subspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+        if ( ! DenseJoin.sizesMatch(dense.type(), dense.dimensionSizes(), joinedSubspaceType, joinedSubspaceSizes)) return null;
+
+        var reduceJoin = reversedArgumentOrder
+                         ? new DenseReduceJoin(dense.type(), dense.dimensionSizes(), subspaceType, subspaceSizes,
+                                               joinedSubspaceType, joinedSubspaceSizes, reduceDimensions, combinator, aggregator)
+                         : new DenseReduceJoin(subspaceType, subspaceSizes, dense.type(), dense.dimensionSizes(),
+                                               joinedSubspaceType, joinedSubspaceSizes, reduceDimensions, combinator, aggregator);
+        double[] denseCells = cells(dense);
+        var result = new SubspaceBuilder(reducedType, reduceJoin.resultSize());
+        for (MixedTensor.DenseSubspace subspace : mixed.getInternalDenseSubspaces()) {
+            if (reversedArgumentOrder)
+                reduceJoin.evaluateInto(denseCells, subspace.cells, result.values);
+            else
+                reduceJoin.evaluateInto(subspace.cells, denseCells, result.values);
+            result.add(subspace.sparseAddress);
+        }
+        return result.build();
+    }
+
+    private static Tensor evaluateMixedWithMixed(MixedTensor a, MixedTensor b,
+                                                 TensorType joinedType, TensorType reducedType, List<String> reduceDimensions,
+                                                 DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        TensorType aSubspaceType = DenseJoin.doubleType(a.type().indexedSubtype());
+        DimensionSizes aSubspaceSizes = DimensionSizes.of(aSubspaceType);
+        TensorType bSubspaceType = DenseJoin.doubleType(b.type().indexedSubtype());
+        DimensionSizes bSubspaceSizes = DimensionSizes.of(bSubspaceType);
+        TensorType joinedSubspaceType = joinedType.indexedSubtype();
+        DimensionSizes joinedSubspaceSizes = DimensionSizes.of(joinedSubspaceType);
+        if ( ! DenseJoin.sizesMatch(aSubspaceType, aSubspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+        if ( ! DenseJoin.sizesMatch(bSubspaceType, bSubspaceSizes, joinedSubspaceType, joinedSubspaceSizes)) return null;
+
+        List<MixedTensor.DenseSubspace> bSubspaces = b.getInternalDenseSubspaces();
+        Map<TensorAddress, double[]> bCellsByAddress = new HashMap<>((int)(bSubspaces.size() / 0.75) + 1);
+        for (MixedTensor.DenseSubspace subspace : bSubspaces)
+            bCellsByAddress.put(subspace.sparseAddress, subspace.cells);
+
+        var reduceJoin = new DenseReduceJoin(aSubspaceType, aSubspaceSizes, bSubspaceType, bSubspaceSizes,
+                                             joinedSubspaceType, joinedSubspaceSizes, reduceDimensions, combinator, aggregator);
+        var result = new SubspaceBuilder(reducedType, reduceJoin.resultSize());
+        for (MixedTensor.DenseSubspace aSubspace : a.getInternalDenseSubspaces()) {
+            double[] bCells = bCellsByAddress.get(aSubspace.sparseAddress);
+            if (bCells == null) continue;
+            reduceJoin.evaluateInto(aSubspace.cells, bCells, result.values);
+            result.add(aSubspace.sparseAddress);
+        }
+        return result.build();
+    }
+
+    private int resultSize() {
+        int size = 1;
+        for (int keptSize : keptSizes)
+            size *= keptSize;
+        return size;
+    }
+
+    /** Returns a copy of the cells of the given tensor in the standard value order */
+    private static double[] cells(IndexedTensor tensor) {
+        double[] cells = new double[tensor.sizeAsInt()];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = tensor.get(i);
+        return cells;
+    }
+
+    /** Writes the reduced values of the given argument cells to the given array in the standard value order */
+    private void evaluateInto(double[] a, double[] b, double[] values) {
+        Reduce.ValueAggregator valueAggregator = aggregator == Reduce.Aggregator.sum ? null : Reduce.ValueAggregator.ofType(aggregator);
+        int rank = keptSizes.length;
+        int[] indexes = new int[rank];
+        int[] reducedIndexes = new int[Math.max(reducedSizes.length - 1, 0)];
+        int aOffset = 0;
+        int bOffset = 0;
+        for (int valueIndex = 0; valueIndex < values.length; valueIndex++) {
+            values[valueIndex] = reduce(a, b, aOffset, bOffset, valueAggregator, reducedIndexes);
+            for (int d = rank - 1; d >= 0; d--) { // advance the kept indexes
+                aOffset += aKeptStrides[d];
+                bOffset += bKeptStrides[d];
+                if (++indexes[d] < keptSizes[d]) break;
+                aOffset -= aKeptStrides[d] * indexes[d];
+                bOffset -= bKeptStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the aggregate of the joined cells along the reduced dimensions from the given offsets,
+     * which is computed directly if the aggregator is sum, and otherwise using the given value aggregator.
+     */
+    private double reduce(double[] a, double[] b, int aOffset, int bOffset,
+                          Reduce.ValueAggregator valueAggregator, int[] indexes) {
+        int rank = reducedSizes.length;
+        int innerSize = reducedSizes[rank - 1];
+        int aInnerStride = aReducedStrides[rank - 1];
+        int bInnerStride = bReducedStrides[rank - 1];
+        double sum = 0;
+        if (valueAggregator != null)
+            valueAggregator.reset();
+        while (true) {
+            int aIndex = aOffset;
+            int bIndex = bOffset;
+            if (isDotProduct) {
+                for (int i = 0; i < innerSize; i++, aIndex += aInnerStride, bIndex += bInnerStride)
+                    sum += a[aIndex] * b[bIndex];
+            }
+            else if (valueAggregator == null) {
+                for (int i = 0; i < innerSize; i++, aIndex += aInnerStride, bIndex += bInnerStride)
+                    sum += combinator.applyAsDouble(a[aIndex], b[bIndex]);
+            }
+            else {
+                for (int i = 0; i < innerSize; i++, aIndex += aInnerStride, bIndex += bInnerStride)
+                    valueAggregator.aggregate(combinator.applyAsDouble(a[aIndex], b[bIndex]));
+            }
+            int d = rank - 2;
+            for (; d >= 0; d--) { // advance the outer reduced indexes
+                aOffset += aReducedStrides[d];
+                bOffset += bReducedStrides[d];
+                if (++indexes[d] < reducedSizes[d]) break;
+                aOffset -= aReducedStrides[d] * indexes[d];
+                bOffset -= bReducedStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+            if (d < 0) break; // all reduced cells visited, and the indexes are reset
+        }
+        return valueAggregator == null ? sum : valueAggregator.aggregatedValue();
+    }
+
+    /** Collects the reduced values of each subspace into a mixed or mapped result */
+    private static class SubspaceBuilder {
+
+        final double[] values;
+        private final MixedTensor.BoundBuilder mixedBuilder;
+        private final Tensor.Builder mappedBuilder;
+
+        SubspaceBuilder(TensorType type, int subspaceSize) {
+            this.values = new double[subspaceSize];
+            boolean hasIndexedDimensions = type.indexedSubtype().rank() > 0;
+            this.mixedBuilder = hasIndexedDimensions ? MixedTensor.BoundBuilder.of(type) : null;
+            this.mappedBuilder = hasIndexedDimensions ? null : Tensor.Builder.of(type);
+        }
+
+        /** Adds the current values as the subspace at the given address */
+        void add(TensorAddress sparseAddress) {
+            if (mixedBuilder != null)
+                mixedBuilder.block(sparseAddress, values);
+            else
+                mappedBuilder.cell(sparseAddress, values[0]);
+        }
+
+        Tensor build() { return mixedBuilder != null ? mixedBuilder.build() : mappedBuilder.build(); }
+
+    }
+
+}
@@ -61,16 +61,26 @@ public class EuclideanDistance<NAMETYPE extends Name> extends TensorFunction<NAM
         return toPrimitive().type(context);
     }
 
-    /** Evaluates this by first converting it to a primitive function */
+    /**
+     * Evaluates this in one pass over the cells if the arguments are dense vectors, or a dense vector and
+     * a mixed tensor of such vectors, and otherwise by first converting it to a primitive function.
+     */
     @Override
     public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
-        return toPrimitive().evaluate(context);
+        Tensor a = arg1.evaluate(context);
+        Tensor b = arg2.evaluate(context);
+        Tensor result = VectorKernels.evaluate(a, b, context.resolveBinding(dimension), VectorKernels.euclideanDistance,
+                                               () -> toPrimitive(new ConstantTensor<>(a), new ConstantTensor<>(b)).type(context));
+        if (result != null) return result;
+        return toPrimitive(new ConstantTensor<>(a), new ConstantTensor<>(b)).evaluate(context);
     }
 
     @Override
     public PrimitiveTensorFunction<NAMETYPE> toPrimitive() {
-        TensorFunction<NAMETYPE> primitive1 = arg1.toPrimitive();
-        TensorFunction<NAMETYPE> primitive2 = arg2.toPrimitive();
+        return toPrimitive(arg1.toPrimitive(), arg2.toPrimitive());
+    }
+
+    private PrimitiveTensorFunction<NAMETYPE> toPrimitive(TensorFunction<NAMETYPE> primitive1, TensorFunction<NAMETYPE> primitive2) {
         // this should match the C++ optimized "l2_distance"
         var diffs = new Join<>(primitive1, primitive2, ScalarFunctions.subtract());
         var squaredDiffs = new Map<>(diffs, ScalarFunctions.square());
@@ -1,10 +1,7 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
-import com.google.common.collect.Sets;
-import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
-import com.yahoo.tensor.PartialAddress;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
 import com.yahoo.tensor.TensorType;
@@ -19,13 +16,11 @@ import com.yahoo.tensor.impl.TensorAddressAny;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.function.DoubleBinaryOperator;
 
 /**
@@ -99,8 +94,11 @@ public class Join<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMETYP
 
     static Tensor evaluate(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
         // Choose join algorithm
-        if (hasSingleIndexedDimension(a) && hasSingleIndexedDimension(b) && a.type().dimensions().get(0).name().equals(b.type().dimensions().get(0).name()))
-            return indexedVectorJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, combinator);
+        if (a instanceof IndexedTensor indexedA && b instanceof IndexedTensor indexedB)
+            return DenseJoin.join(indexedA, indexedB, joinedType, combinator);
+        Optional<Tensor> mixedJoin = DenseJoin.joinMixed(a, b, joinedType, combinator);
+        if (mixedJoin.isPresent())
+            return mixedJoin.get();
         else if (joinedType.dimensions().size() == a.type().dimensions().size() && joinedType.dimensions().size() == b.type().dimensions().size())
             return singleSpaceJoin(a, b, joinedType, combinator);
         else if (a.type().dimensions().containsAll(b.type().dimensions()))
@@ -112,20 +110,6 @@ public class Join<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMETYP
 
     }
 
-    private static boolean hasSingleIndexedDimension(Tensor tensor) {
-        return tensor.type().dimensions().size() == 1 && tensor.type().dimensions().get(0).isIndexed();
-    }
-
-    private static Tensor indexedVectorJoin(IndexedTensor a, IndexedTensor b, TensorType type, DoubleBinaryOperator combinator) {
-        int joinedRank = (int)Math.min(a.dimensionSizes().size(0), b.dimensionSizes().size(0));
-        Iterator<Double> aIterator = a.valueIterator();
-        Iterator<Double> bIterator = b.valueIterator();
-        IndexedTensor.Builder builder = IndexedTensor.Builder.of(type, new DimensionSizes.Builder(1).set(0, joinedRank).build());
-        for (int i = 0; i < joinedRank; i++)
-            builder.cell(combinator.applyAsDouble(aIterator.next(), bIterator.next()), i);
-        return builder.build();
-    }
-
     /** When both tensors have the same dimensions, at most one cell matches a cell in the other tensor */
     private static Tensor singleSpaceJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
         Tensor.Builder builder = Tensor.Builder.of(joinedType);
@@ -142,66 +126,7 @@ public class Join<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMETYP
 
     /** Join a tensor into a superspace */
     private static Tensor subspaceJoin(Tensor subspace, Tensor superspace, TensorType joinedType, boolean reversedArgumentOrder, DoubleBinaryOperator combinator) {
-        if (subspace instanceof IndexedTensor && superspace instanceof IndexedTensor)
-            return indexedSubspaceJoin((IndexedTensor) subspace, (IndexedTensor) superspace, joinedType, reversedArgumentOrder, combinator);
-        else
-            return generalSubspaceJoin(subspace, superspace, joinedType, reversedArgumentOrder, combinator);
-    }
-
-    private static Tensor indexedSubspaceJoin(IndexedTensor subspace, IndexedTensor superspace, TensorType joinedType, boolean reversedArgumentOrder, DoubleBinaryOperator combinator) {
-        if (subspace.isEmpty() || superspace.isEmpty()) // special case empty here to avoid doing it when finding sizes
-            return Tensor.Builder.of(joinedType, new DimensionSizes.Builder(joinedType.dimensions().size()).build()).build();
-
-        DimensionSizes joinedSizes = joinedSize(joinedType, subspace, superspace);
-
-        IndexedTensor.Builder builder = (IndexedTensor.Builder)Tensor.Builder.of(joinedType, joinedSizes);
-
-        // Find dimensions which are only in the supertype
-        Set<String> superDimensionNames = new HashSet<>(superspace.type().dimensionNames());
-        superDimensionNames.removeAll(subspace.type().dimensionNames());
-
-        for (Iterator<IndexedTensor.SubspaceIterator> i = superspace.subspaceIterator(superDimensionNames, joinedSizes); i.hasNext(); ) {
-            IndexedTensor.SubspaceIterator subspaceInSuper = i.next();
-            joinSubspaces(subspace.valueIterator(), subspace.size(),
-                    subspaceInSuper, subspaceInSuper.size(),
-                    reversedArgumentOrder, builder, combinator);
-        }
-
-        return builder.build();
-    }
-
-    private static void joinSubspaces(Iterator<Double> subspace, long subspaceSize,
-                                      Iterator<Tensor.Cell> superspace, long superspaceSize,
-                                      boolean reversedArgumentOrder, IndexedTensor.Builder builder,
-                                      DoubleBinaryOperator combinator) {
-        int joinedLength = (int)Math.min(subspaceSize, superspaceSize);
-        if (reversedArgumentOrder) {
-            for (int i = 0; i < joinedLength; i++) {
-                Tensor.Cell supercell = superspace.next();
-                builder.cell(supercell, combinator.applyAsDouble(supercell.getValue(), subspace.next()));
-            }
-        } else {
-            for (int i = 0; i < joinedLength; i++) {
-                Tensor.Cell supercell = superspace.next();
-                builder.cell(supercell, combinator.applyAsDouble(subspace.next(), supercell.getValue()));
-            }
-        }
-    }
-
-    private static DimensionSizes joinedSize(TensorType joinedType, IndexedTensor a, IndexedTensor b) {
-        DimensionSizes.Builder builder = new DimensionSizes.Builder(joinedType.dimensions().size());
-        for (int i = 0; i < builder.dimensions(); i++) {
-            String dimensionName = joinedType.dimensions().get(i).name();
-            Optional<Integer> aIndex = a.type().indexOfDimension(dimensionName);
-            Optional<Integer> bIndex = b.type().indexOfDimension(dimensionName);
-            if (aIndex.isPresent() && bIndex.isPresent())
-                builder.set(i, Math.min(b.dimensionSizes().size(bIndex.get()), a.dimensionSizes().size(aIndex.get())));
-            else if (aIndex.isPresent())
-                builder.set(i, a.dimensionSizes().size(aIndex.get()));
-            else if (bIndex.isPresent())
-                builder.set(i, b.dimensionSizes().size(bIndex.get()));
-        }
-        return builder.build();
+        return generalSubspaceJoin(subspace, superspace, joinedType, reversedArgumentOrder, combinator);
     }
 
     private static Tensor generalSubspaceJoin(Tensor subspace, Tensor superspace, TensorType joinedType, boolean reversedArgumentOrder, DoubleBinaryOperator combinator) {
@@ -231,72 +156,7 @@ public class Join<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMETYP
 
     /** Slow join which works for any two tensors */
     private static Tensor generalJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
-        if (a instanceof IndexedTensor && b instanceof IndexedTensor)
-            return indexedGeneralJoin((IndexedTensor) a, (IndexedTensor) b, joinedType, combinator);
-        else
-            return mappedHashJoin(a, b, joinedType, combinator);
-    }
-
-    private static Tensor indexedGeneralJoin(IndexedTensor a, IndexedTensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
-        DimensionSizes joinedSize = joinedSize(joinedType, a, b);
-        Tensor.Builder builder = Tensor.Builder.of(joinedType, joinedSize);
-        int[] aToIndexes = mapIndexes(a.type(), joinedType);
-        int[] bToIndexes = mapIndexes(b.type(), joinedType);
-        joinTo(a, b, joinedType, joinedSize, aToIndexes, bToIndexes, builder, combinator);
-        return builder.build();
-    }
-
-    private static void joinTo(IndexedTensor a, IndexedTensor b, TensorType joinedType, DimensionSizes joinedSize,
-                               int[] aToIndexes, int[] bToIndexes, Tensor.Builder builder,
-                               DoubleBinaryOperator combinator) {
-        Set<String> sharedDimensions = Set.copyOf(Sets.intersection(a.type().dimensionNames(), b.type().dimensionNames()));
-        int sharedDimensionSize = sharedDimensions.size();  // Expensive to compute size after intersection
-        Set<String> dimensionsOnlyInA = Set.copyOf(Sets.difference(a.type().dimensionNames(), b.type().dimensionNames()));
-
-        DimensionSizes aIterateSize = joinedSizeOf(a.type(), joinedType, joinedSize);
-        DimensionSizes bIterateSize = joinedSizeOf(b.type(), joinedType, joinedSize);
-
-        // for each combination of dimensions only in a
-        for (Iterator<IndexedTensor.SubspaceIterator> ia = a.subspaceIterator(dimensionsOnlyInA, aIterateSize); ia.hasNext(); ) {
-            IndexedTensor.SubspaceIterator aSubspace = ia.next();
-            // for each combination of dimensions in a which is also in b
-            while (aSubspace.hasNext()) {
-                Tensor.Cell aCell = aSubspace.next();
-                PartialAddress matchingBCells = sharedDimensionSize > 0
-                        ? partialAddress(a.type(), aSubspace.address(), sharedDimensions, sharedDimensionSize)
-                        : empty;
-                // for each matching combination of dimensions ony in b
-                for (IndexedTensor.SubspaceIterator bSubspace = b.cellIterator(matchingBCells, bIterateSize); bSubspace.hasNext(); ) {
-                    Tensor.Cell bCell = bSubspace.next();
-                    TensorAddress joinedAddress = joinAddresses(aCell.getKey(), aToIndexes, bCell.getKey(), bToIndexes, joinedType);
-                    double joinedValue = combinator.applyAsDouble(aCell.getValue(), bCell.getValue());
-                    builder.cell(joinedAddress, joinedValue);
-                }
-            }
-        }
-    }
-
-    private static final PartialAddress empty = new PartialAddress.Builder(0).build();
-    private static PartialAddress partialAddress(TensorType addressType, TensorAddress address,
-                                                 Set<String> retainDimensions, int sharedDimensionSize) {
-        PartialAddress.Builder builder = new PartialAddress.Builder(sharedDimensionSize);
-        for (int i = 0; i < addressType.dimensions().size(); i++) {
-            String dimension = addressType.dimensions().get(i).name();
-            if (retainDimensions.contains(dimension))
-                builder.add(dimension, address.objectLabel(i));
-        }
-        return builder.build();
-    }
-
-    /** Returns the sizes from the joined sizes which are present in the type argument */
-    private static DimensionSizes joinedSizeOf(TensorType type, TensorType joinedType, DimensionSizes joinedSizes) {
-        DimensionSizes.Builder builder = new DimensionSizes.Builder(type.dimensions().size());
-        int dimensionIndex = 0;
-        for (int i = 0; i < joinedType.dimensions().size(); i++) {
-            if (type.dimensionNames().contains(joinedType.dimensions().get(i).name()))
-                builder.set(dimensionIndex++, joinedSizes.size(i));
-        }
-        return builder.build();
+        return mappedHashJoin(a, b, joinedType, combinator);
     }
 
     private static Tensor mappedGeneralJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
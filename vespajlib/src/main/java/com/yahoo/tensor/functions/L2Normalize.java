@@ -1,6 +1,11 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.EvaluationContext;
 import com.yahoo.tensor.evaluation.Name;
 
 import java.util.List;
@@ -29,9 +34,49 @@ public class L2Normalize<NAMETYPE extends Name> extends CompositeTensorFunction<
         return new L2Normalize<>(arguments.get(0), dimension);
     }
 
+    /**
+     * Evaluates this in one pass over the cells if the argument is a dense vector or a mixed tensor of such vectors,
+     * and otherwise by first converting it to a primitive function.
+     */
+    @Override
+    public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
+        Tensor tensor = argument.evaluate(context);
+        var primitive = toPrimitive(new ConstantTensor<>(tensor));
+        String resolvedDimension = context.resolveBinding(dimension);
+        double[] cells = VectorKernels.cells(tensor, resolvedDimension);
+        if (cells != null) {
+            TensorType type = primitive.type(context);
+            if (VectorKernels.isVector(type, resolvedDimension))
+                return IndexedTensor.Builder.of(type, ((IndexedTensor)tensor).dimensionSizes(), normalize(cells, cells)).build();
+        }
+        else if (tensor instanceof MixedTensor mixed && VectorKernels.isVector(mixed.type().indexedSubtype(), resolvedDimension)) {
+            TensorType type = primitive.type(context);
+            if (type.dimensions().equals(mixed.type().dimensions())
+                && type.dimension(resolvedDimension).get().type() == TensorType.Dimension.Type.indexedBound) {
+                var builder = MixedTensor.BoundBuilder.of(type);
+                double[] normalized = new double[(int)mixed.denseSubspaceSize()];
+                for (MixedTensor.DenseSubspace subspace : mixed.getInternalDenseSubspaces())
+                    builder.block(subspace.sparseAddress, normalize(subspace.cells, normalized));
+                return builder.build();
+            }
+        }
+        return primitive.evaluate(context);
+    }
+
+    /** Writes the given vector divided by its length to the given target, and returns the target */
+    private static double[] normalize(double[] vector, double[] target) {
+        double length = Math.sqrt(VectorKernels.sumOfSquares(vector));
+        for (int i = 0; i < vector.length; i++)
+            target[i] = vector[i] / length;
+        return target;
+    }
+
     @Override
     public PrimitiveTensorFunction<NAMETYPE> toPrimitive() {
-        TensorFunction<NAMETYPE> primitiveArgument = argument.toPrimitive();
+        return toPrimitive(argument.toPrimitive());
+    }
+
+    private PrimitiveTensorFunction<NAMETYPE> toPrimitive(TensorFunction<NAMETYPE> primitiveArgument) {
         return new Join<>(primitiveArgument,
                           new Map<>(new Reduce<>(new Map<>(primitiveArgument, ScalarFunctions.square()),
                                                  Reduce.Aggregator.sum,
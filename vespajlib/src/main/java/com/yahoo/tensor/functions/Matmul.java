@@ -1,7 +1,9 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
+import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.EvaluationContext;
 import com.yahoo.tensor.evaluation.Name;
 
 import java.util.List;
@@ -44,6 +46,13 @@ public class Matmul<NAMETYPE extends Name> extends CompositeTensorFunction<NAMET
                             dimension);
     }
 
+    /** Evaluates this as a reduce-join, such that the product of the arguments is not created */
+    @Override
+    public Tensor evaluate(EvaluationContext<NAMETYPE> context) {
+        return new ReduceJoin<>(argument1, argument2, ScalarFunctions.multiply(), Reduce.Aggregator.sum, List.of(dimension))
+                       .evaluate(context);
+    }
+
     @Override
     public String toString(ToStringContext<NAMETYPE> context) {
         return "matmul(" + argument1.toString(context) + ", " + argument2.toString(context) + ", " + context.resolveBinding(dimension) + ")";
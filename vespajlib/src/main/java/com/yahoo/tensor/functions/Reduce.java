@@ -14,6 +14,7 @@ import com.yahoo.tensor.evaluation.TypeContext;
 import com.yahoo.tensor.impl.Convert;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -132,6 +133,9 @@ public class Reduce<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMET
         int[] indexesToReduce = createIndexesToReduce(argument.type(), dimensions);
         int[] indexesToKeep = createIndexesToKeep(argument.type(), indexesToReduce);
         if (argument instanceof IndexedTensor indexedTensor && reducedType.hasOnlyIndexedBoundDimensions()) {
+            ArithmeticAggregator arithmetic = ArithmeticAggregator.of(aggregator);
+            if (indexesToReduce.length == 1 && arithmetic != null)
+                return reduceIndexedDimension(indexedTensor, reducedType, indexesToReduce[0], arithmetic);
             return reduceIndexedTensor(indexedTensor, reducedType, indexesToKeep, indexesToReduce, aggregator);
         } else {
             return reduceGeneral(argument, reducedType, indexesToKeep, aggregator);
@@ -184,6 +188,107 @@ public class Reduce<NAMETYPE extends Name> extends PrimitiveTensorFunction<NAMET
         return reducedBuilder.build();
     }
 
+    /**
+     * The aggregators which are computed by arithmetic on the values only.
+     * Max and min are not, and are not faster when aggregated into arrays than by the general path.
+     */
+    private enum ArithmeticAggregator {
+
+        sum, avg, prod, count;
+
+        /** Returns the given aggregator as an arithmetic one, or null if it is not */
+        static ArithmeticAggregator of(Aggregator aggregator) {
+            return switch (aggregator) {
+                case sum -> sum;
+                case avg -> avg;
+                case prod -> prod;
+                case count -> count;
+                default -> null;
+            };
+        }
+
+    }
+
+    /**
+     * Reduces a single dimension of a dense tensor by aggregating the rows of cells along the reduced
+     * dimension into a primitive array of the remaining cells, such that the cells are read in order.
+     */
+    private static Tensor reduceIndexedDimension(IndexedTensor argument, TensorType reducedType, int reduceIndex,
+                                                 ArithmeticAggregator aggregator) {
+        DimensionSizes sizes = argument.dimensionSizes();
+        DimensionSizes.Builder reducedSizes = new DimensionSizes.Builder(reducedType.rank());
+        for (int i = 0, j = 0; i < sizes.dimensions(); i++)
+            if (i != reduceIndex)
+                reducedSizes.set(j++, sizes.size(i));
+
+        int outerSize = 1;
+        for (int i = 0; i < reduceIndex; i++)
+            outerSize *= Convert.safe2Int(sizes.size(i));
+        int reducedSize = Convert.safe2Int(sizes.size(reduceIndex));
+        int innerSize = Convert.safe2Int(argument.directAddress().getStride(reduceIndex));
+        double[] values = new double[outerSize * innerSize];
+        switch (aggregator) {
+            case prod -> Arrays.fill(values, 1.0);
+            case count -> Arrays.fill(values, reducedSize);
+        }
+        if (aggregator != ArithmeticAggregator.count) {
+            for (int outer = 0; outer < outerSize; outer++) {
+                if (innerSize == 1) { // reducing the innermost dimension: aggregate a contiguous run
+                    values[outer] = aggregateRun(argument, (long)outer * reducedSize, reducedSize, values[outer], aggregator);
+                }
+                else {
+                    int valueOffset = outer * innerSize;
+                    for (int r = 0; r < reducedSize; r++)
+                        aggregateRow(argument, ((long)outer * reducedSize + r) * innerSize, values, valueOffset, innerSize, aggregator);
+                }
+            }
+        }
+        if (aggregator == ArithmeticAggregator.avg) {
+            for (int i = 0; i < values.length; i++)
+                values[i] /= reducedSize;
+        }
+        return IndexedTensor.Builder.of(reducedType, reducedSizes.build(), values).build();
+    }
+
+    /**
+     * Returns the given initial value aggregated with a contiguous run of cells in the given tensor.
+     * Counts do not depend on the cells and are returned unchanged.
+     */
+    private static double aggregateRun(IndexedTensor argument, long cellOffset, int size, double value,
+                                       ArithmeticAggregator aggregator) {
+        switch (aggregator) {
+            case avg, sum -> {
+                for (int i = 0; i < size; i++)
+                    value += argument.get(cellOffset + i);
+            }
+            case prod -> {
+                for (int i = 0; i < size; i++)
+                    value *= argument.get(cellOffset + i);
+            }
+            case count -> { }
+        }
+        return value;
+    }
+
+    /**
+     * Aggregates a contiguous row of cells in the given tensor into the values at the given offset.
+     * Counts do not depend on the cells and are left unchanged.
+     */
+    private static void aggregateRow(IndexedTensor argument, long cellOffset, double[] values, int valueOffset, int size,
+                                     ArithmeticAggregator aggregator) {
+        switch (aggregator) {
+            case avg, sum -> {
+                for (int i = 0; i < size; i++)
+                    values[valueOffset + i] += argument.get(cellOffset + i);
+            }
+            case prod -> {
+                for (int i = 0; i < size; i++)
+                    values[valueOffset + i] *= argument.get(cellOffset + i);
+            }
+            case count -> { }
+        }
+    }
+
     private static Tensor reduceGeneral(Tensor argument, TensorType reducedType, int[] indexesToKeep, Aggregator aggregator) {
         // TODO cells.size() is most likely an overestimate, and might need a better heuristic
         // But the upside is larger than the downside.
@@ -0,0 +1,137 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.function.Supplier;
+
+/**
+ * Primitive kernels over dense vectors, used to evaluate the vector functions of ranking (similarities,
+ * distances and norms) in one pass over primitive arrays instead of by the joins, maps and reductions
+ * they are defined by, which each create an intermediate tensor.
+ * <p>
+ * The loops over cells use four independent accumulators, such that consecutive additions do not wait
+ * for each other, which lets the processor execute them in parallel.
+ */
+final class VectorKernels {
+
+    private VectorKernels() {}
+
+    /** A function of two vectors of the same size */
+    @FunctionalInterface
+    interface VectorFunction {
+
+        double apply(double[] a, double[] b);
+
+    }
+
+    static final VectorFunction cosineSimilarity = VectorKernels::cosineSimilarity;
+    static final VectorFunction euclideanDistance = (a, b) -> Math.sqrt(squaredDistance(a, b));
+
+    /**
+     * Evaluates a function of two vectors over the given dimension, if the arguments are either two dense
+     * vectors in that dimension, or a dense vector and a mixed tensor whose dense subspaces are vectors in it.
+     *
+     * @param resultType supplies the type of the result when it is not a scalar
+     * @return the result, or null if the arguments are not of this kind
+     */
+    static Tensor evaluate(Tensor a, Tensor b, String dimension, VectorFunction function, Supplier<TensorType> resultType) {
+        double[] aCells = cells(a, dimension);
+        double[] bCells = cells(b, dimension);
+        if (aCells != null && bCells != null) {
+            if (aCells.length != bCells.length) return null;
+            return Tensor.from(function.apply(aCells, bCells));
+        }
+        if (aCells != null && b instanceof MixedTensor mixedB)
+            return evaluateSubspaces(aCells, mixedB, dimension, function, resultType);
+        if (bCells != null && a instanceof MixedTensor mixedA)
+            return evaluateSubspaces(bCells, mixedA, dimension, function, resultType);
+        return null;
+    }
+
+    private static Tensor evaluateSubspaces(double[] vector, MixedTensor mixed, String dimension,
+                                            VectorFunction function, Supplier<TensorType> resultType) {
+        if ( ! isVector(mixed.type().indexedSubtype(), dimension) || mixed.denseSubspaceSize() != vector.length) return null;
+        TensorType type = resultType.get();
+        if ( ! type.dimensions().equals(mixed.type().mappedSubtype().dimensions())) return null;
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        for (MixedTensor.DenseSubspace subspace : mixed.getInternalDenseSubspaces())
+            builder.cell(subspace.sparseAddress, function.apply(vector, subspace.cells));
+        return builder.build();
+    }
+
+    /** Returns a copy of the cells of the given tensor if it is a dense vector in the given dimension, and null otherwise */
+    static double[] cells(Tensor tensor, String dimension) {
+        if ( ! (tensor instanceof IndexedTensor indexed) || ! isVector(tensor.type(), dimension)) return null;
+        double[] cells = new double[indexed.sizeAsInt()];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = indexed.get(i);
+        return cells;
+    }
+
+    /** Returns whether the given type consists of the given indexed dimension only */
+    static boolean isVector(TensorType type, String dimension) {
+        return type.rank() == 1 && type.dimensions().get(0).isIndexed() && type.dimensions().get(0).name().equals(dimension);
+    }
+
+    static double squaredDistance(double[] a, double[] b) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            double d0 = a[i]     - b[i];
+            double d1 = a[i + 1] - b[i + 1];
+            double d2 = a[i + 2] - b[i + 2];
+            double d3 = a[i + 3] - b[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < a.length; i++) {
+            double d = a[i] - b[i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double sumOfSquares(double[] a) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i]     * a[i];
+            s1 += a[i + 1] * a[i + 1];
+            s2 += a[i + 2] * a[i + 2];
+            s3 += a[i + 3] * a[i + 3];
+        }
+        for (; i < a.length; i++)
+            s0 += a[i] * a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /** Returns the cosine similarity of two vectors, computing the dot product and both norms in one pass */
+    static double cosineSimilarity(double[] a, double[] b) {
+        double ab0 = 0, ab1 = 0, aa0 = 0, aa1 = 0, bb0 = 0, bb1 = 0;
+        int i = 0;
+        for (; i + 1 < a.length; i += 2) {
+            double a0 = a[i], a1 = a[i + 1];
+            double b0 = b[i], b1 = b[i + 1];
+            ab0 += a0 * b0;
+            ab1 += a1 * b1;
+            aa0 += a0 * a0;
+            aa1 += a1 * a1;
+            bb0 += b0 * b0;
+            bb1 += b1 * b1;
+        }
+        for (; i < a.length; i++) {
+            double a0 = a[i], b0 = b[i];
+            ab0 += a0 * b0;
+            aa0 += a0 * a0;
+            bb0 += b0 * b0;
+        }
+        return (ab0 + ab1) / Math.sqrt((aa0 + aa1) * (bb0 + bb1));
+    }
+
+}
@@ -306,6 +306,21 @@ public class BinaryViewTest {
         }
     }
 
+    @Test public void testBinaryViewOfArrayRangeShapesParity() {
+        for (int i = 0; i < numShapes; ++i) {
+            var slime = makeSlime(i);
+            ctx = "case " + i + ": '" + slime.toString() + "'";
+            byte[] data = BinaryFormat.encode(slime);
+            byte[] padded = new byte[data.length + 10];
+            System.arraycopy(data, 0, padded, 7, data.length);
+            try {
+                checkParity(slime.get(), BinaryView.inspect(padded, 7, data.length));
+            } catch (Exception e) {
+                fail(ctx + ", got exception: " + e);
+            }
+        }
+    }
+
     void assertFail(byte[] data, String reason) {
         try {
             var view = BinaryView.inspect(data);
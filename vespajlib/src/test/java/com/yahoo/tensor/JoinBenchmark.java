@@ -0,0 +1,75 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import java.util.Random;
+
+/**
+ * Microbenchmark of joining dense and mixed tensors of various shapes.
+ */
+public class JoinBenchmark {
+
+    private final static Random random = new Random(42);
+
+    /** Returns the time in microseconds per join of the two given tensors */
+    public double benchmark(int iterations, Tensor a, Tensor b) {
+        join(a, b, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        join(a, b, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000.0 / iterations;
+    }
+
+    private double join(Tensor a, Tensor b, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += a.multiply(b).size();
+        return result;
+    }
+
+    private static Tensor random(String typeSpec) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        if (type.mappedSubtype().rank() > 0) {
+            for (int label = 0; label < 64; label++)
+                addCells(builder, type, new TensorAddress.Builder(type).add("cat", "label" + label));
+        }
+        else {
+            addCells(builder, type, new TensorAddress.Builder(type));
+        }
+        return builder.build();
+    }
+
+    private static void addCells(Tensor.Builder builder, TensorType type, TensorAddress.Builder sparse) {
+        TensorType dense = type.indexedSubtype();
+        DimensionSizes sizes = DimensionSizes.of(dense);
+        for (long i = 0; i < sizes.totalSize(); i++) {
+            TensorAddress.Builder address = sparse.copy();
+            long index = i;
+            for (int d = dense.rank() - 1; d >= 0; d--) {
+                address.add(dense.dimensions().get(d).name(), index % sizes.size(d));
+                index /= sizes.size(d);
+            }
+            builder.cell(address.build(), random.nextDouble());
+        }
+    }
+
+    private void run(String aType, String bType) {
+        double time = benchmark(20000, random(aType), random(bType));
+        System.out.printf("%-36s * %-36s: %10.3f us per join\n", aType, bType, time);
+    }
+
+    public static void main(String[] args) {
+        JoinBenchmark benchmark = new JoinBenchmark();
+        benchmark.run("tensor<float>(x[64],y[64])", "tensor<float>(x[64],y[64])");
+        benchmark.run("tensor(x[64],y[64])", "tensor(x[64],y[64])");
+        benchmark.run("tensor<float>(x[64],y[64])", "tensor<float>(y[64])");
+        benchmark.run("tensor<float>(x[64])", "tensor<float>(x[64],y[64])");
+        benchmark.run("tensor<float>(x[64])", "tensor<float>(y[64])");
+        benchmark.run("tensor<float>(x[16],y[64])", "tensor<float>(y[64],z[16])");
+        benchmark.run("tensor<float>(x[256])", "tensor<float>(x[256])");
+        benchmark.run("tensor<float>(cat{},x[64])", "tensor<float>(x[64])");
+        benchmark.run("tensor<float>(cat{},x[64])", "tensor<float>(cat{},x[64])");
+    }
+
+}
@@ -0,0 +1,84 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.evaluation.Name;
+import com.yahoo.tensor.functions.ConstantTensor;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.ReduceJoin;
+import com.yahoo.tensor.functions.ScalarFunctions;
+import com.yahoo.tensor.functions.TensorFunction;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of reduce-joins evaluated in one pass, compared to evaluating the join and the reduce separately.
+ */
+public class ReduceJoinBenchmark {
+
+    private final static Random random = new Random(42);
+
+    /** Returns the time in microseconds per evaluation of the given function */
+    public double benchmark(int iterations, TensorFunction<Name> function) {
+        evaluate(function, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        evaluate(function, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000.0 / iterations;
+    }
+
+    private double evaluate(TensorFunction<Name> function, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += function.evaluate().size();
+        return result;
+    }
+
+    private static ConstantTensor<Name> random(String typeSpec) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        if (type.mappedSubtype().rank() > 0) {
+            for (int label = 0; label < 64; label++)
+                addCells(builder, type, new TensorAddress.Builder(type).add("cat", "label" + label));
+        }
+        else {
+            addCells(builder, type, new TensorAddress.Builder(type));
+        }
+        return new ConstantTensor<>(builder.build());
+    }
+
+    private static void addCells(Tensor.Builder builder, TensorType type, TensorAddress.Builder sparse) {
+        TensorType dense = type.indexedSubtype();
+        DimensionSizes sizes = DimensionSizes.of(dense);
+        for (long i = 0; i < sizes.totalSize(); i++) {
+            TensorAddress.Builder address = sparse.copy();
+            long index = i;
+            for (int d = dense.rank() - 1; d >= 0; d--) {
+                address.add(dense.dimensions().get(d).name(), index % sizes.size(d));
+                index /= sizes.size(d);
+            }
+            builder.cell(address.build(), random.nextDouble());
+        }
+    }
+
+    private void run(int iterations, String aType, String bType, String ... dimensions) {
+        var reduceJoin = new ReduceJoin<>(random(aType), random(bType), ScalarFunctions.multiply(),
+                                          Reduce.Aggregator.sum, List.of(dimensions));
+        double fused = benchmark(iterations, reduceJoin);
+        double unfused = benchmark(iterations, reduceJoin.toPrimitive());
+        System.out.printf("sum(%s * %s, %s): %10.3f us fused, %10.3f us unfused\n",
+                          aType, bType, String.join(",", dimensions), fused, unfused);
+    }
+
+    public static void main(String[] args) {
+        ReduceJoinBenchmark benchmark = new ReduceJoinBenchmark();
+        benchmark.run(100000, "tensor<float>(x[384])", "tensor<float>(x[384])", "x");
+        benchmark.run(10000, "tensor<float>(x[64],y[64])", "tensor<float>(y[64],z[64])", "y");
+        benchmark.run(10000, "tensor<float>(b[32],d[128])", "tensor<float>(b[32],d[128])", "d");
+        benchmark.run(10000, "tensor<float>(b[32],d[128])", "tensor<float>(d[128])", "d");
+        benchmark.run(1000, "tensor<float>(cat{},x[64])", "tensor<float>(x[64],y[16])", "x");
+        benchmark.run(1000, "tensor<float>(cat{},x[64])", "tensor<float>(cat{},x[64])", "x");
+    }
+
+}
@@ -0,0 +1,97 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.evaluation.Name;
+import com.yahoo.tensor.functions.ConstantTensor;
+import com.yahoo.tensor.functions.CosineSimilarity;
+import com.yahoo.tensor.functions.EuclideanDistance;
+import com.yahoo.tensor.functions.L2Normalize;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.TensorFunction;
+
+import java.util.Random;
+
+/**
+ * Microbenchmark of the vector functions used in ranking, over embedding sized vectors.
+ */
+public class VectorFunctionBenchmark {
+
+    private final static Random random = new Random(42);
+
+    /** Returns the time in microseconds per evaluation of the given function */
+    public double benchmark(int iterations, TensorFunction<Name> function) {
+        evaluate(function, Math.max(iterations / 10, 10)); // warmup
+        System.gc();
+        long startTime = System.nanoTime();
+        evaluate(function, iterations);
+        long totalTime = System.nanoTime() - startTime;
+        return totalTime / 1000.0 / iterations;
+    }
+
+    private double evaluate(TensorFunction<Name> function, int iterations) {
+        double result = 0;
+        for (int i = 0; i < iterations; i++)
+            result += function.evaluate().size();
+        return result;
+    }
+
+    private static ConstantTensor<Name> random(String typeSpec) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        if (type.mappedSubtype().rank() > 0) {
+            for (int label = 0; label < 100; label++)
+                addCells(builder, type, new TensorAddress.Builder(type).add("doc", "label" + label));
+        }
+        else {
+            addCells(builder, type, new TensorAddress.Builder(type));
+        }
+        return new ConstantTensor<>(builder.build());
+    }
+
+    private static void addCells(Tensor.Builder builder, TensorType type, TensorAddress.Builder sparse) {
+        TensorType dense = type.indexedSubtype();
+        DimensionSizes sizes = DimensionSizes.of(dense);
+        for (long i = 0; i < sizes.totalSize(); i++) {
+            TensorAddress.Builder address = sparse.copy();
+            long index = i;
+            for (int d = dense.rank() - 1; d >= 0; d--) {
+                address.add(dense.dimensions().get(d).name(), index % sizes.size(d));
+                index /= sizes.size(d);
+            }
+            builder.cell(address.build(), random.nextDouble());
+        }
+    }
+
+    private void run(String name, int iterations, TensorFunction<Name> function) {
+        System.out.printf("%-50s: %10.3f us per evaluation\n", name, benchmark(iterations, function));
+    }
+
+    public static void main(String[] args) {
+        VectorFunctionBenchmark benchmark = new VectorFunctionBenchmark();
+        String vector = "tensor<float>(x[384])";
+        String vectors = "tensor<float>(doc{},x[384])";
+        benchmark.run("cosine_similarity(vector, vector)", 200000,
+                      new CosineSimilarity<>(random(vector), random(vector), "x"));
+        benchmark.run("cosine_similarity(vector, 100 vectors)", 2000,
+                      new CosineSimilarity<>(random(vector), random(vectors), "x"));
+        benchmark.run("euclidean_distance(vector, vector)", 200000,
+                      new EuclideanDistance<>(random(vector), random(vector), "x"));
+        benchmark.run("euclidean_distance(vector, 100 vectors)", 2000,
+                      new EuclideanDistance<>(random(vector), random(vectors), "x"));
+        benchmark.run("l2_normalize(vector)", 200000,
+                      new L2Normalize<>(random(vector), "x"));
+        benchmark.run("l2_normalize(100 vectors)", 2000,
+                      new L2Normalize<>(random(vectors), "x"));
+        benchmark.run("sum(vector)", 200000,
+                      new Reduce<>(random(vector), Reduce.Aggregator.sum));
+        benchmark.run("sum(x[64],y[384], x)", 20000,
+                      new Reduce<>(random("tensor<float>(x[64],y[384])"), Reduce.Aggregator.sum, "x"));
+        benchmark.run("sum(x[64],y[384], y)", 20000,
+                      new Reduce<>(random("tensor<float>(x[64],y[384])"), Reduce.Aggregator.sum, "y"));
+        benchmark.run("max(x[64],y[384], x)", 20000,
+                      new Reduce<>(random("tensor<float>(x[64],y[384])"), Reduce.Aggregator.max, "x"));
+        benchmark.run("max(x[64],y[384], y)", 20000,
+                      new Reduce<>(random("tensor<float>(x[64],y[384])"), Reduce.Aggregator.max, "y"));
+    }
+
+}
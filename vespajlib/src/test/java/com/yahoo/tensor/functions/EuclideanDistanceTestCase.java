@@ -46,6 +46,22 @@ public class EuclideanDistanceTestCase {
         assertEquals(expect, result);
     }
 
+    @Test
+    public void testVectorAgainstMixed() {
+        assertSameAsPrimitive("tensor(x[5]):[1.0, 2.0, 3.0, 4.0, 5.0]",
+                              "tensor(c{},x[5]):{foo:[5.0, 4.0, 3.0, 2.0, 1.0],bar:[-1.0, 0.0, 1.0, 0.0, -1.0]}");
+        assertSameAsPrimitive("tensor<float>(c{},x[5]):{foo:[5.0, 4.0, 3.0, 2.0, 1.0],bar:[-1.0, 0.0, 1.0, 0.0, -1.0]}",
+                              "tensor<float>(x[5]):[1.0, 2.0, 3.0, 4.0, 5.0]");
+        assertSameAsPrimitive("tensor<float>(x[5]):[1.0, 2.0, 3.0, 4.0, 5.0]",
+                              "tensor(x[5]):[0.5, -2.0, 3.0, 0.0, 1.0]");
+        assertSameAsPrimitive("tensor(x[3]):[1.0, 2.0, 3.0]",
+                              "tensor(x[3],y[2]):[[1.0, 2.0], [3.0, 4.0], [5.0, 6.0]]");
+    }
+
+    private static void assertSameAsPrimitive(String a, String b) {
+        PrimitiveEvaluationAssert.assertSameAsPrimitive(new EuclideanDistance<>(new ConstantTensor<>(a), new ConstantTensor<>(b), "x"));
+    }
+
     static class MyContext implements TypeContext<Name> {
         Map<String, TensorType> map = new HashMap<>();
         public TensorType getType(Name name) { return getType(name.name()); }
@@ -1,10 +1,20 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
 import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
+import com.yahoo.tensor.TensorType;
 import org.junit.Test;
 
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author bratseth
@@ -46,4 +56,101 @@ public class JoinTestCase {
                              .divide(Tensor.from("tensor(y[],z[]):{ {y:0,z:0}:2, {y:1,z:0}:4, {y:2,z:0}:6 }")));
     }
 
+    @Test
+    public void testDenseJoin() {
+        assertJoin("tensor<float>(x[3],y[4])", "tensor<float>(x[3],y[4])");
+        assertJoin("tensor(x[3],y[4])", "tensor<float>(x[3],y[4])");
+        assertJoin("tensor(x[3],y[4])", "tensor(y[4])");
+        assertJoin("tensor(y[4])", "tensor(x[3],y[4])");
+        assertJoin("tensor(x[3])", "tensor(x[3],y[4])");
+        assertJoin("tensor<float>(x[3])", "tensor<float>(y[4])");
+        assertJoin("tensor(x[2],y[3])", "tensor(y[3],z[2])");
+        assertJoin("tensor(x[2],z[3])", "tensor(y[3],z[3])");
+        assertJoin("tensor(x[2],y[5])", "tensor(y[5],z[2])");
+        assertJoin("tensor<bfloat16>(x[4])", "tensor<int8>(x[4])");
+        assertJoin("tensor()", "tensor(x[3])");
+        assertJoin("tensor()", "tensor()");
+        assertEquals(Tensor.from("tensor(x[],y[]):{{x:0,y:0}:3, {x:1,y:0}:8}"),
+                     Tensor.from("tensor(x[]):{{x:0}:1, {x:1}:2, {x:2}:3}").multiply(Tensor.from("tensor(x[],y[]):{{x:0,y:0}:3, {x:1,y:0}:4}")));
+        assertEquals(Tensor.from("tensor(x[3]):[-1, -2, -3]"),
+                     Tensor.from("tensor(x[3]):[1, 2, 3]").join(Tensor.from("tensor(x[3]):[2, 4, 6]"), (a, b) -> a - b));
+        assertEquals(Tensor.from("tensor(x[2],y[2]):[[0, -1], [1, 0]]"),
+                     Tensor.from("tensor(x[2]):[1, 2]").join(Tensor.from("tensor(y[2]):[1, 2]"), (a, b) -> a - b));
+    }
+
+    @Test
+    public void testMixedJoin() {
+        assertJoin("tensor(cat{},x[3])", "tensor(x[3])");
+        assertJoin("tensor(x[3])", "tensor<float>(cat{},x[3])");
+        assertJoin("tensor(cat{},x[3])", "tensor(y[2])");
+        assertJoin("tensor(cat{},x[2],y[3])", "tensor(y[3])");
+        assertJoin("tensor<float>(cat{},x[3])", "tensor<float>(cat{},x[3])");
+        assertJoin("tensor(cat{},x[3])", "tensor(cat{},y[2])");
+        assertJoin("tensor(a{},cat{},x[3])", "tensor(cat{},x[3])");
+        assertJoin("tensor(cat{},x[3])", "tensor(y{})"); // not handled by dense subspaces
+        assertEquals(Tensor.from("tensor(cat{},x[2]):{a:[0, 1], b:[2, 3]}"),
+                     Tensor.from("tensor(cat{},x[2]):{a:[1, 2], b:[3, 4]}").join(Tensor.from("tensor(x[2]):[1, 1]"), (a, b) -> a - b));
+    }
+
+    private void assertJoin(String aType, String bType) {
+        Tensor a = randomTensor(aType);
+        Tensor b = randomTensor(bType);
+        assertTrue(a instanceof IndexedTensor || a instanceof MixedTensor || a.type().rank() == 0);
+        DoubleBinaryOperator combinator = (x, y) -> x * 10 - y;
+        Tensor joined = a.join(b, combinator);
+        Tensor expected = referenceJoin(a, b, joined.type(), combinator);
+        assertEquals(aType + " join " + bType, expected, joined);
+    }
+
+    /** Joins by comparing all pairs of cells */
+    private static Tensor referenceJoin(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
+        Tensor.Builder builder = Tensor.Builder.of(joinedType);
+        for (Iterator<Tensor.Cell> i = a.cellIterator(); i.hasNext(); ) {
+            Tensor.Cell aCell = i.next();
+            for (Iterator<Tensor.Cell> j = b.cellIterator(); j.hasNext(); ) {
+                Tensor.Cell bCell = j.next();
+                TensorAddress.Builder address = new TensorAddress.Builder(joinedType);
+                boolean matches = true;
+                for (var dimension : joinedType.dimensions()) {
+                    int aIndex = a.type().indexOfDimensionAsInt(dimension.name());
+                    int bIndex = b.type().indexOfDimensionAsInt(dimension.name());
+                    String aLabel = aIndex < 0 ? null : aCell.getKey().label(aIndex);
+                    String bLabel = bIndex < 0 ? null : bCell.getKey().label(bIndex);
+                    if (aLabel != null && bLabel != null && ! aLabel.equals(bLabel)) matches = false;
+                    address.add(dimension.name(), aLabel != null ? aLabel : bLabel);
+                }
+                if (matches)
+                    builder.cell(address.build(), combinator.applyAsDouble(aCell.getValue(), bCell.getValue()));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Tensor randomTensor(String typeSpec) {
+        Random random = new Random(typeSpec.hashCode());
+        TensorType type = TensorType.fromSpec(typeSpec);
+        TensorType dense = type.indexedSubtype();
+        TensorType sparse = type.mappedSubtype();
+        DimensionSizes sizes = DimensionSizes.of(dense);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        int sparseCount = (int)Math.pow(3, sparse.rank());
+        for (int s = 0; s < sparseCount; s++) {
+            for (long i = 0; i < sizes.totalSize(); i++) {
+                TensorAddress.Builder address = new TensorAddress.Builder(type);
+                int sparseIndex = s;
+                for (var dimension : sparse.dimensions()) {
+                    address.add(dimension.name(), String.valueOf((char)('a' + sparseIndex % 3)));
+                    sparseIndex /= 3;
+                }
+                long index = i;
+                for (int d = dense.rank() - 1; d >= 0; d--) {
+                    address.add(dense.dimensions().get(d).name(), index % sizes.size(d));
+                    index /= sizes.size(d);
+                }
+                builder.cell(address.build(), random.nextInt(100) - 50);
+            }
+        }
+        return builder.build();
+    }
+
 }
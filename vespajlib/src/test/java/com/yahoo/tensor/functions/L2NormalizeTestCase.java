@@ -0,0 +1,28 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.Tensor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class L2NormalizeTestCase {
+
+    @Test
+    public void testNormalizeVectors() {
+        var op = new L2Normalize<>(new ConstantTensor<>("tensor(x[2]):[3.0, 4.0]"), "x");
+        assertEquals(Tensor.from("tensor(x[2]):[0.6, 0.8]"), op.evaluate());
+
+        assertSameAsPrimitive("tensor(x[5]):[1.0, 2.0, 3.0, 4.0, 5.0]", "x");
+        assertSameAsPrimitive("tensor<float>(x[5]):[1.0, 2.0, 3.0, 4.0, 5.0]", "x");
+        assertSameAsPrimitive("tensor(c{},x[3]):{foo:[3.0, 0.0, 4.0],bar:[1.0, -1.0, 1.0]}", "x");
+        assertSameAsPrimitive("tensor<float>(c{},x[3]):{foo:[3.0, 0.0, 4.0],bar:[1.0, -1.0, 1.0]}", "x");
+        assertSameAsPrimitive("tensor(x[2],y[2]):[[3.0, 4.0], [6.0, 8.0]]", "x");
+        assertSameAsPrimitive("tensor(c{},x[3]):{foo:[3.0, 0.0, 4.0],bar:[1.0, -1.0, 1.0]}", "c");
+    }
+
+    private static void assertSameAsPrimitive(String tensor, String dimension) {
+        PrimitiveEvaluationAssert.assertSameAsPrimitive(new L2Normalize<>(new ConstantTensor<>(tensor), dimension));
+    }
+
+}
@@ -96,4 +96,14 @@ public class MatmulTestCase {
         assertEquals(r, result);
     }
 
+    @Test
+    public void testMatmulMixed() {
+        Tensor a = Tensor.from("tensor(cat{},d0[2],d1[3]):{a:[[1, 2, 3], [4, 5, 6]], b:[[0, 1, 0], [1, 0, -1]]}");
+        Tensor b = Tensor.from("tensor(d1[3],d2[2]):[[1, 2], [3, 4], [5, 6]]");
+        var matmul = new Matmul<>(new ConstantTensor<>(a), new ConstantTensor<>(b), "d1");
+        Tensor expected = Tensor.from("tensor(cat{},d0[2],d2[2]):{a:[[22, 28], [49, 64]], b:[[3, 4], [-4, -4]]}");
+        assertEquals(expected, matmul.evaluate());
+        assertEquals(expected, matmul.toPrimitive().evaluate());
+    }
+
 }
@@ -0,0 +1,20 @@
+// Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.Tensor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Asserts that composite tensor functions evaluate to the same as their primitive expansion.
+ */
+class PrimitiveEvaluationAssert {
+
+    static void assertSameAsPrimitive(TensorFunction<?> function) {
+        Tensor expected = function.toPrimitive().evaluate();
+        Tensor result = function.evaluate();
+        assertEquals(expected.type(), result.type());
+        assertEquals(expected, result);
+    }
+
+}
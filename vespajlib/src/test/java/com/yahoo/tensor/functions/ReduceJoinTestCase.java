@@ -1,10 +1,18 @@
 // Copyright Vespa.ai. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor.functions;
 
+import com.yahoo.tensor.DimensionSizes;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MixedTensor;
 import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorAddress;
+import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.evaluation.Name;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -37,4 +45,84 @@ public class ReduceJoinTestCase {
         var rj = new ReduceJoin<Name>(r, j);
         assertFalse(rj.canOptimize(a, b));
     }
+
+    @Test
+    public void testFusedEvaluation() {
+        // Dot products and matrix multiplications
+        assertFused("tensor(x[5])", "tensor(x[5])", Reduce.Aggregator.sum, "x");
+        assertFused("tensor<float>(x[5])", "tensor<float>(x[5])", Reduce.Aggregator.sum);
+        assertFused("tensor(x[3],y[4])", "tensor(y[4],z[2])", Reduce.Aggregator.sum, "y");
+        assertFused("tensor(x[3],y[4])", "tensor(x[3],z[2])", Reduce.Aggregator.sum, "x");
+        // Batch dimensions in both arguments, which are kept
+        assertFused("tensor(b[2],d[4])", "tensor(b[2],d[4])", Reduce.Aggregator.sum, "d");
+        assertFused("tensor(b[2],x[3],y[4])", "tensor(b[2],y[4],z[2])", Reduce.Aggregator.sum, "y");
+        // Reducing dimensions in only one argument, and several dimensions
+        assertFused("tensor(x[2],y[3])", "tensor(y[3])", Reduce.Aggregator.sum, "x");
+        assertFused("tensor(x[2],y[3],z[2])", "tensor(y[3],z[2])", Reduce.Aggregator.sum, "x", "z");
+        assertFused("tensor(x[2],y[3])", "tensor(y[3],z[4])", Reduce.Aggregator.sum);
+        // Other aggregators
+        assertFused("tensor(x[3],y[4])", "tensor(y[4],z[2])", Reduce.Aggregator.max, "y");
+        assertFused("tensor(x[3],y[4])", "tensor(y[4],z[2])", Reduce.Aggregator.avg, "x", "y");
+        assertFused("tensor(x[3],y[4])", "tensor(y[4])", Reduce.Aggregator.median, "y");
+        // Mixed tensors
+        assertFused("tensor(cat{},x[4])", "tensor(x[4])", Reduce.Aggregator.sum, "x");
+        assertFused("tensor(x[4],y[3])", "tensor(cat{},x[4])", Reduce.Aggregator.sum, "x");
+        assertFused("tensor(cat{},x[2],y[3])", "tensor(y[3],z[2])", Reduce.Aggregator.sum, "y");
+        assertFused("tensor(cat{},x[3])", "tensor(cat{},x[3])", Reduce.Aggregator.sum, "x");
+        assertFused("tensor<float>(cat{},x[3],y[2])", "tensor<float>(cat{},y[2])", Reduce.Aggregator.min, "y");
+    }
+
+    @Test
+    public void testUnfusedEvaluation() {
+        assertUnfused("tensor(cat{},x[3])", "tensor(x[3])", Reduce.Aggregator.sum, "cat");
+        assertUnfused("tensor(cat{},x[3])", "tensor(x[3])", Reduce.Aggregator.sum);
+        assertUnfused("tensor(cat{},x[3])", "tensor(dog{},x[3])", Reduce.Aggregator.sum, "x");
+        assertUnfused("tensor(x[3])", "tensor(y[2])", Reduce.Aggregator.sum, "x");
+    }
+
+    private void assertFused(String aType, String bType, Reduce.Aggregator aggregator, String ... dimensions) {
+        assertReduceJoin(aType, bType, aggregator, List.of(dimensions), true);
+    }
+
+    private void assertUnfused(String aType, String bType, Reduce.Aggregator aggregator, String ... dimensions) {
+        assertReduceJoin(aType, bType, aggregator, List.of(dimensions), false);
+    }
+
+    private void assertReduceJoin(String aType, String bType, Reduce.Aggregator aggregator, List<String> dimensions,
+                                  boolean fused) {
+        Tensor a = randomTensor(aType);
+        Tensor b = randomTensor(bType);
+        assertTrue(a instanceof IndexedTensor || a instanceof MixedTensor);
+        var reduceJoin = new ReduceJoin<Name>(new ConstantTensor<>(a), new ConstantTensor<>(b),
+                                              (x, y) -> x * 10 - y, aggregator, dimensions);
+        String description = aggregator + " over " + dimensions + " of " + aType + " join " + bType;
+        assertEquals(description, fused, reduceJoin.canOptimize(a, b));
+        Tensor expected = reduceJoin.toPrimitive().evaluate();
+        Tensor result = reduceJoin.evaluate();
+        assertEquals(description, expected.type(), result.type());
+        assertEquals(description, expected, result);
+    }
+
+    private static Tensor randomTensor(String typeSpec) {
+        Random random = new Random(typeSpec.hashCode());
+        TensorType type = TensorType.fromSpec(typeSpec);
+        TensorType dense = type.indexedSubtype();
+        DimensionSizes sizes = DimensionSizes.of(dense);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        for (String label : type.mappedSubtype().rank() > 0 ? List.of("a", "b", "c") : List.of("")) {
+            for (long i = 0; i < sizes.totalSize(); i++) {
+                TensorAddress.Builder address = new TensorAddress.Builder(type);
+                for (var dimension : type.mappedSubtype().dimensions())
+                    address.add(dimension.name(), label);
+                long index = i;
+                for (int d = dense.rank() - 1; d >= 0; d--) {
+                    address.add(dense.dimensions().get(d).name(), index % sizes.size(d));
+                    index /= sizes.size(d);
+                }
+                builder.cell(address.build(), random.nextInt(100) - 50);
+            }
+        }
+        return builder.build();
+    }
+
 }
@@ -2,6 +2,7 @@
 package com.yahoo.tensor.functions;
 
 import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -27,6 +28,23 @@ public class ReduceTestCase {
         assertNan(Tensor.Builder.of("tensor(x[1])").cell(Double.NaN, 0).build().median());
     }
 
+    @Test
+    public void testReduceIndexedDimension() {
+        Tensor tensor = Tensor.from("tensor(x[2],y[3]):[[1, -2, 3], [4, 5, -6]]");
+        assertEquals(Tensor.from("tensor(y[3]):[5, 3, -3]"), tensor.sum("x"));
+        assertEquals(Tensor.from("tensor(x[2]):[2, 3]"), tensor.sum("y"));
+        assertEquals(Tensor.from("tensor(y[3]):[2.5, 1.5, -1.5]"), tensor.avg("x"));
+        assertEquals(Tensor.from("tensor(y[3]):[4, 5, 3]"), tensor.max("x"));
+        assertEquals(Tensor.from("tensor(x[2]):[-2, -6]"), tensor.min("y"));
+        assertEquals(Tensor.from("tensor(x[2]):[-6, -120]"), tensor.prod("y"));
+        assertEquals(Tensor.from("tensor(y[3]):[2, 2, 2]"), tensor.count("x"));
+
+        Tensor floats = Tensor.from("tensor<float>(x[2],y[2],z[2]):[[[1, 2], [3, 4]], [[5, 6], [7, 8]]]");
+        assertEquals(Tensor.from("tensor<float>(x[2],z[2]):[[4, 6], [12, 14]]"), floats.sum("y"));
+        assertEquals(TensorType.fromSpec("tensor<float>(x[2],z[2])"), floats.sum("y").type());
+        assertEquals(Tensor.from("tensor<float>(y[2],z[2]):[[5, 6], [7, 8]]"), floats.max("x"));
+    }
+
     @Test
     public void testEmptyReduce() {
         assertEquals(0.0, Tensor.from("tensor(x[3],y{})", "{}").avg().asDouble(), delta);